@@ -11,6 +11,7 @@ import io.digdag.core.archive.ArchiveMetadata;
 import io.digdag.core.archive.ProjectArchive;
 import io.digdag.core.archive.ProjectArchiveLoader;
 import io.digdag.core.config.ConfigLoaderManager;
+import io.digdag.core.config.PropertyUtils;
 import io.digdag.core.repository.ArchiveType;
 import io.digdag.core.repository.Revision;
 import io.digdag.core.repository.WorkflowDefinition;
@@ -32,6 +33,7 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Properties;
 import java.util.Set;
 
 import static io.digdag.cli.Arguments.loadParams;
@@ -88,7 +90,12 @@ public class Check
     public void check(String workflowNameArg)
             throws Exception
     {
+        // check uses only an in-memory database. Don't apply other settings of system config here.
+        Properties systemProps = new Properties();
+        systemProps.setProperty("database.schemaSnapshotDir", ConfigUtil.defaultSchemaSnapshotPath(env).toString());
+
         try (DigdagEmbed digdag = new DigdagEmbed.Bootstrap()
+                .setSystemConfig(PropertyUtils.toConfigElement(systemProps))
                 .withWorkflowExecutor(false)
                 .withScheduleExecutor(false)
                 .withLocalAgent(false)
@@ -29,6 +29,11 @@ public class ConfigUtil
         return configHome(env).resolve("digdag").resolve("plugins");
     }
 
+    static Path defaultSchemaSnapshotPath(Map<String, String> env)
+    {
+        return digdagConfigHome(env).resolve("cache");
+    }
+
     private static Path configHome(Map<String, String> env)
     {
         String configHome = env.get("XDG_CONFIG_HOME");
@@ -2,74 +2,217 @@ package io.digdag.cli;
 
 import java.util.List;
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.stream.Stream;
 import java.util.stream.Collectors;
 import java.io.PrintWriter;
-import java.io.StringWriter;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.IOException;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.Writer;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import com.google.common.io.ByteStreams;
+import io.digdag.core.session.TaskStateCode;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
 
 public class GraphvizWorkflowVisualizer
 {
-    private List<String> commands;
+    // names of tasks generated by for_each>, for_range> and loop> operators
+    private static final Pattern GENERATED_TASK_NAME_PREFIX = Pattern.compile("^\\+(?:for|range|loop)-");
+    private static final Pattern NUMBERS = Pattern.compile("[0-9]+");
+
+    private final List<String> commands;
+    private final int maxDepth;
+    private final int collapseThreshold;
 
     public GraphvizWorkflowVisualizer()
+    {
+        this(0, 0);
+    }
+
+    /**
+     * @param maxDepth tasks deeper than this depth are folded into their
+     *        parent task. The root task is at depth 1. 0 means unlimited.
+     * @param collapseThreshold if more than this number of consecutive
+     *        sibling tasks have similar names (e.g. children of for_each>),
+     *        tasks except the first and the last one are folded into one
+     *        node. 0 disables collapsing.
+     */
+    public GraphvizWorkflowVisualizer(int maxDepth, int collapseThreshold)
     {
         this.commands = ImmutableList.of("dot", "-Tpng");
+        this.maxDepth = maxDepth;
+        this.collapseThreshold = collapseThreshold;
     }
 
     public void visualize(List<WorkflowVisualizerNode> nodes, File output)
             throws InterruptedException
     {
-        Map<Long, NodeBuilder> idMap = new HashMap<>();
-        for (WorkflowVisualizerNode node : nodes) {
-            idMap.put(node.getId(), new NodeBuilder(node));
+        GraphNode root = buildGraph(nodes);
+        try {
+            generate(root, output);
         }
+        catch (IOException ex) {
+            throw Throwables.propagate(ex);
+        }
+    }
+
+    public void writeDot(List<WorkflowVisualizerNode> nodes, Writer writer)
+    {
+        GraphNode root = buildGraph(nodes);
+        writeDot(root, writer);
+    }
+
+    /**
+     * Writes the graph as a JSON adjacency list:
+     * {"nodes": [{"id": ..., "name": ..., "parent_id": ..., "upstream_ids": [...], "state": ..., "folded_tasks": ...}, ...]}
+     */
+    public void writeJson(List<WorkflowVisualizerNode> nodes, OutputStream output)
+            throws IOException
+    {
+        GraphNode root = buildGraph(nodes);
+        try (JsonGenerator gen = new JsonFactory().createGenerator(output, JsonEncoding.UTF8)) {
+            gen.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);  // output may be stdout
+            gen.writeStartObject();
+            gen.writeArrayFieldStart("nodes");
+            root.writeJsonTo(gen, null);
+            gen.writeEndArray();
+            gen.writeEndObject();
+        }
+    }
+
+    private static void writeDot(GraphNode root, Writer writer)
+    {
+        PrintWriter out = new PrintWriter(writer);
+        out.println("digraph session {");
+        out.println("compound=true");
+        root.buildTo(out);
+        out.println("}");
+        out.flush();
+    }
 
-        NodeBuilder root = null;
-        for (NodeBuilder builder : idMap.values()) {
-            if (builder.isRoot()) {
-                root = builder;
+    private GraphNode buildGraph(List<WorkflowVisualizerNode> nodes)
+    {
+        Map<Long, List<WorkflowVisualizerNode>> childrenMap = new HashMap<>();  // {parent id => children}
+        WorkflowVisualizerNode root = null;
+        for (WorkflowVisualizerNode node : nodes) {
+            if (node.getParentId().isPresent()) {
+                childrenMap.computeIfAbsent(node.getParentId().get(), id -> new ArrayList<>()).add(node);
             }
             else {
-                NodeBuilder parent = idMap.get(builder.getParentId());
-                if (parent == null) {
-                    throw new IllegalArgumentException();
-                }
-                parent.addChild(builder);
+                root = node;
             }
-            builder.addUpstream(idMap);
         }
         if (root == null) {
             throw new IllegalArgumentException();
         }
 
-        try {
-            StringWriter writer = new StringWriter();
-            try (PrintWriter out = new PrintWriter(writer)) {
-                out.println("digraph session {");
-                out.println("compound=true");
-                root.buildTo(out);
-                out.println("}");
+        // {task id => node that shows the task}
+        Map<Long, GraphNode> shownBy = new HashMap<>();
+        GraphNode rootNode = addNode(root, 1, childrenMap, shownBy);
+        if (shownBy.size() != nodes.size()) {
+            // some tasks are not reachable from the root
+            throw new IllegalArgumentException();
+        }
+
+        // upstreams are always siblings. If a task and its upstream are folded
+        // into the same node, the edge is hidden.
+        for (WorkflowVisualizerNode node : nodes) {
+            GraphNode dst = shownBy.get(node.getId());
+            for (long upstreamId : node.getUpstreamIds()) {
+                GraphNode src = shownBy.get(upstreamId);
+                if (src == null) {
+                    throw new IllegalArgumentException();
+                }
+                if (src != dst) {
+                    dst.upstreams.add(src);
+                }
             }
-            String dot = writer.toString();
+        }
+        return rootNode;
+    }
+
+    private GraphNode addNode(WorkflowVisualizerNode task, int depth,
+            Map<Long, List<WorkflowVisualizerNode>> childrenMap, Map<Long, GraphNode> shownBy)
+    {
+        GraphNode node = new GraphNode(task.getId(), task.getName(), task.getState());
+        shownBy.put(task.getId(), node);
 
-            generate(dot, output);
+        List<WorkflowVisualizerNode> children = childrenMap.getOrDefault(task.getId(), ImmutableList.of());
+        if (maxDepth > 0 && depth >= maxDepth) {
+            for (WorkflowVisualizerNode child : children) {
+                fold(child, node, childrenMap, shownBy);
+            }
+            return node;
         }
-        catch (IOException ex) {
-            throw Throwables.propagate(ex);
+
+        int i = 0;
+        while (i < children.size()) {
+            String shape = nameShape(children.get(i).getName());
+            int end = i + 1;
+            while (end < children.size() && nameShape(children.get(end).getName()).equals(shape)) {
+                end++;
+            }
+
+            // at least 3 tasks so that there's a task to fold
+            if (collapseThreshold > 0 && end - i > Math.max(collapseThreshold, 2)) {
+                // keep the first and the last tasks so that edges to
+                // the preceding and following tasks are still visible.
+                node.children.add(addNode(children.get(i), depth + 1, childrenMap, shownBy));
+                WorkflowVisualizerNode firstFolded = children.get(i + 1);
+                GraphNode folded = new GraphNode(firstFolded.getId(), "...", firstFolded.getState());
+                for (int j = i + 1; j < end - 1; j++) {
+                    fold(children.get(j), folded, childrenMap, shownBy);
+                }
+                node.children.add(folded);
+                node.children.add(addNode(children.get(end - 1), depth + 1, childrenMap, shownBy));
+            }
+            else {
+                for (int j = i; j < end; j++) {
+                    node.children.add(addNode(children.get(j), depth + 1, childrenMap, shownBy));
+                }
+            }
+            i = end;
+        }
+        return node;
+    }
+
+    private static void fold(WorkflowVisualizerNode task, GraphNode into,
+            Map<Long, List<WorkflowVisualizerNode>> childrenMap, Map<Long, GraphNode> shownBy)
+    {
+        shownBy.put(task.getId(), into);
+        into.foldedTaskCount++;
+        if (task.getState() == TaskStateCode.ERROR) {
+            into.state = TaskStateCode.ERROR;
+        }
+        for (WorkflowVisualizerNode child : childrenMap.getOrDefault(task.getId(), ImmutableList.of())) {
+            fold(child, into, childrenMap, shownBy);
+        }
+    }
+
+    static String nameShape(String name)
+    {
+        Matcher m = GENERATED_TASK_NAME_PREFIX.matcher(name);
+        if (m.find()) {
+            return m.group();
         }
+        return NUMBERS.matcher(name).replaceAll("#");
     }
 
-    private void generate(String dot, File output)
+    private void generate(GraphNode root, File output)
             throws InterruptedException, IOException
     {
         List<String> c = new ArrayList<>(commands);
@@ -95,8 +238,9 @@ public class GraphvizWorkflowVisualizer
         });
         t.start();
 
-        try (OutputStream stdin = p.getOutputStream()) {
-            stdin.write(dot.getBytes());
+        // write DOT to stdin directly instead of building the whole string in memory
+        try (Writer stdin = new OutputStreamWriter(p.getOutputStream(), UTF_8)) {
+            writeDot(root, stdin);
         }
 
         int ecode = p.waitFor();
@@ -107,66 +251,54 @@ public class GraphvizWorkflowVisualizer
         }
     }
 
-    private static class NodeBuilder
+    private static class GraphNode
     {
-        private final WorkflowVisualizerNode node;
-        private final List<NodeBuilder> children;
-        private final List<NodeBuilder> upstreams;
+        private final long id;
+        private final String name;
+        private TaskStateCode state;
+        private final List<GraphNode> children;
+        private final Set<GraphNode> upstreams;
+        private int foldedTaskCount;
 
-        private NodeBuilder(WorkflowVisualizerNode node)
+        private GraphNode(long id, String name, TaskStateCode state)
         {
-            this.node = node;
+            this.id = id;
+            this.name = name;
+            this.state = state;
             this.children = new ArrayList<>();
-            this.upstreams = new ArrayList<>();
+            this.upstreams = new LinkedHashSet<>();
+            this.foldedTaskCount = 0;
         }
 
         private long getId()
         {
-            return node.getId();
-        }
-
-        private void addChild(NodeBuilder child)
-        {
-            children.add(child);
-        }
-
-        private void addUpstream(Map<Long, NodeBuilder> idMap)
-        {
-            for (long upstreamId : node.getUpstreamIds()) {
-                NodeBuilder upstream = idMap.get(upstreamId);
-                if (upstream == null) {
-                    throw new IllegalArgumentException();
-                }
-                upstreams.add(upstream);
-            }
-        }
-
-        private boolean isRoot()
-        {
-            return !node.getParentId().isPresent();
+            return id;
         }
 
-        private long getParentId()
+        private String getLabel()
         {
-            return node.getParentId().get();
+            String label = (foldedTaskCount > 0) ?
+                String.format("%s (%d tasks)", name, foldedTaskCount) :
+                name;
+            return label.replace("\\", "\\\\").replace("\"", "\\\"");
         }
 
         private void buildTo(PrintWriter out)
         {
             if (children.isEmpty()) {
                 out.println(String.format("\"%s\" [label=\"%s\" style=filled fillcolor=%s]",
-                            node.getId(), node.getName(), getColor()));
+                            getId(), getLabel(), getColor()));
             }
             else {
                 out.println(String.format("subgraph \"cluster_%s\" {",
-                            node.getId()));
+                            getId()));
                 out.println(String.format("label = \"%s\"",
-                            node.getName()));
+                            getLabel()));
                 out.println("style=filled");
                 out.println(String.format("bgcolor=%s", getColor()));
-                for (NodeBuilder child : children) {
+                for (GraphNode child : children) {
                     child.buildTo(out);
-                    for (NodeBuilder upstream : child.upstreams) {
+                    for (GraphNode upstream : child.upstreams) {
                         String src, dst;
                         String lopt = null, ropt = null;
                         if (upstream.children.isEmpty()) {
@@ -202,9 +334,35 @@ public class GraphvizWorkflowVisualizer
             }
         }
 
+        private void writeJsonTo(JsonGenerator gen, GraphNode parent)
+                throws IOException
+        {
+            gen.writeStartObject();
+            gen.writeNumberField("id", id);
+            gen.writeStringField("name", name);
+            if (parent == null) {
+                gen.writeNullField("parent_id");
+            }
+            else {
+                gen.writeNumberField("parent_id", parent.getId());
+            }
+            gen.writeArrayFieldStart("upstream_ids");
+            for (GraphNode upstream : upstreams) {
+                gen.writeNumber(upstream.getId());
+            }
+            gen.writeEndArray();
+            gen.writeStringField("state", state.toString());
+            gen.writeNumberField("folded_tasks", foldedTaskCount);
+            gen.writeEndObject();
+
+            for (GraphNode child : children) {
+                child.writeJsonTo(gen, this);
+            }
+        }
+
         private String getColor()
         {
-            switch (node.getState()) {
+            switch (state) {
             case BLOCKED:
                 return "gray74";
             case READY:
@@ -230,13 +388,13 @@ public class GraphvizWorkflowVisualizer
             }
         }
 
-        private static String firstLeafNodeId(NodeBuilder builder)
+        private static String firstLeafNodeId(GraphNode node)
         {
-            if (builder.children.isEmpty()) {
-                return Long.toString(builder.getId());
+            if (node.children.isEmpty()) {
+                return Long.toString(node.getId());
             }
             else {
-                return firstLeafNodeId(builder.children.get(0));
+                return firstLeafNodeId(node.children.get(0));
             }
         }
     }
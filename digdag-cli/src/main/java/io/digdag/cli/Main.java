@@ -91,6 +91,7 @@ public class Main
         jc.addCommand("init", injector.getInstance(Init.class), "new");
         jc.addCommand("run", injector.getInstance(Run.class), "r");
         jc.addCommand("check", injector.getInstance(Check.class), "c");
+        jc.addCommand("show", injector.getInstance(Show.class));
         jc.addCommand("scheduler", injector.getInstance(Sched.class), "sched");
 
         jc.addCommand("server", injector.getInstance(Server.class));
@@ -304,6 +305,7 @@ public class Main
         err.println("    init <dir>                         create a new workflow project");
         err.println("    r[un] <workflow.dig>               run a workflow");
         err.println("    c[heck]                            show workflow definitions");
+        err.println("    show <workflow.dig>                draw a graph of a workflow");
         err.println("    sched[uler]                        run a scheduler server");
         err.println("    migrate (run|check)                migrate database");
         err.println("    selfupdate                         update cli to the latest version");
@@ -1,23 +1,34 @@
 package io.digdag.cli;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.FileNotFoundException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import javax.annotation.PreDestroy;
 
 import io.digdag.core.database.TransactionManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.inject.Inject;
 import com.google.common.base.Optional;
 import com.google.common.base.Throwables;
@@ -32,53 +43,153 @@ import io.digdag.spi.TaskResult;
 import io.digdag.spi.TaskReport;
 import io.digdag.client.config.ConfigFactory;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+
+/**
+ * Saves state of successfully finished tasks of digdag run to a session
+ * directory so that following runs can skip them.
+ *
+ * States are appended to a journal file (one JSON line per task) in the
+ * directory by a background thread. On resume, the journal is read once
+ * and indexed by task name. Directories written by older versions have a
+ * YAML file per task, which is still read if the journal doesn't have
+ * the task.
+ */
 class ResumeStateManager
 {
     private static Logger logger = LoggerFactory.getLogger(ResumeStateManager.class);
 
+    static final String JOURNAL_FILE_NAME = "resume_journal.jsonl";
+
+    private static final ObjectMapper TASK_NAME_READER = new ObjectMapper();
+
     private final ConfigFactory cf;
     private final TransactionManager tm;
     private final SessionStoreManager sessionStoreManager;
     private final YamlMapper mapper;
+    private final ObjectMapper jsonMapper;
     private final List<ResumeStateDir> managedDirs;
-    private final YAMLFactory yaml = new YAMLFactory();
+    private final ConcurrentMap<Path, Map<String, TaskResumeState>> journals = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Path, Set<String>> restoredTaskNames = new ConcurrentHashMap<>();
 
     private ScheduledExecutorService executor = null;
 
     @Inject
-    private ResumeStateManager(ConfigFactory cf, SessionStoreManager sessionStoreManager, TransactionManager tm, YamlMapper mapper)
+    ResumeStateManager(ConfigFactory cf, SessionStoreManager sessionStoreManager, TransactionManager tm, YamlMapper mapper, ObjectMapper jsonMapper)
     {
         this.cf = cf;
         this.tm = tm;
         this.sessionStoreManager = sessionStoreManager;
         this.mapper = mapper;
+        this.jsonMapper = jsonMapper;
         this.managedDirs = new CopyOnWriteArrayList<>();
     }
 
     TaskResult readSuccessfulTaskReport(Path dir, String fullName)
     {
-        TaskResumeState resumeState;
-        try {
-            resumeState = mapper.readFile(dir.resolve(fullName + ".yml").toFile(), TaskResumeState.class);
+        TaskResumeState resumeState = getJournal(dir).get(fullName);
+        if (resumeState == null) {
+            // written by an older version
+            try {
+                resumeState = mapper.readFile(dir.resolve(fullName + ".yml").toFile(), TaskResumeState.class);
+            }
+            catch (FileNotFoundException ex) {
+                return null;
+            }
+            catch (IOException ex) {
+                throw Throwables.propagate(ex);
+            }
         }
-        catch (FileNotFoundException ex) {
+        if (resumeState.getState() == TaskStateCode.SUCCESS) {
+            restoredTaskNames.computeIfAbsent(normalize(dir), (key) -> ConcurrentHashMap.newKeySet())
+                .add(fullName);
+            return resumeState.getResult();
+        }
+        else {
             return null;
         }
+    }
+
+    private Map<String, TaskResumeState> getJournal(Path dir)
+    {
+        return journals.computeIfAbsent(normalize(dir), this::readJournal);
+    }
+
+    private static Path normalize(Path dir)
+    {
+        return dir.toAbsolutePath().normalize();
+    }
+
+    private Map<String, TaskResumeState> readJournal(Path dir)
+    {
+        Map<String, TaskResumeState> states = new HashMap<>();
+        try (BufferedReader reader = Files.newBufferedReader(dir.resolve(JOURNAL_FILE_NAME), UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                try {
+                    TaskResumeState state = jsonMapper.readValue(line, TaskResumeState.class);
+                    // later entries overwrite earlier ones
+                    states.put(state.getFullName(), state);
+                }
+                catch (JsonProcessingException ex) {
+                    // a line can be partially written if the previous run was killed
+                    logger.warn("Ignoring a broken line in resume state journal at {}", dir, ex);
+                }
+            }
+        }
+        catch (NoSuchFileException ex) {
+            // no journal
+        }
         catch (IOException ex) {
             throw Throwables.propagate(ex);
         }
-        if (resumeState.getState() == TaskStateCode.SUCCESS) {
-            return resumeState.getResult();
+        return states;
+    }
+
+    /**
+     * Returns names of tasks saved in the journal of the directory without
+     * fully parsing task states.
+     */
+    static List<String> readJournalTaskNames(Path dir)
+        throws IOException
+    {
+        List<String> names = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(dir.resolve(JOURNAL_FILE_NAME), UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                try {
+                    String name = TASK_NAME_READER.readTree(line).path("fullName").asText("");
+                    if (!name.isEmpty()) {
+                        names.add(name);
+                    }
+                }
+                catch (JsonProcessingException ex) {
+                    // ignore broken lines
+                }
+            }
         }
-        else {
-            return null;
+        catch (NoSuchFileException ex) {
+            // no journal
         }
+        return names;
     }
 
     @PreDestroy
     public synchronized void shutdown()
     {
         backgroundUpdateAll();
+        for (ResumeStateDir dir : managedDirs) {
+            dir.closeJournal();
+        }
         if (executor != null) {
             executor.shutdown();
             executor = null;
@@ -133,6 +244,7 @@ class ResumeStateManager
         private final Path dir;
         private final StoredSessionAttemptWithSession attempt;
         private final Set<Long> doneTaskIdList = new HashSet<>();
+        private Writer journal = null;
 
         private ResumeStateDir(Path dir, StoredSessionAttemptWithSession attempt)
         {
@@ -150,7 +262,7 @@ class ResumeStateManager
             return attempt;
         }
 
-        private void update()
+        private synchronized void update()
         {
             List<ArchivedTask> tasks = sessionStoreManager
                 .getSessionStore(attempt.getSiteId())
@@ -158,6 +270,27 @@ class ResumeStateManager
             for (ArchivedTask task : tasks) {
                 tryWriteStateFile(task);
             }
+            if (journal != null) {
+                try {
+                    journal.flush();
+                }
+                catch (IOException ex) {
+                    logger.error("Failed to write state file", ex);
+                }
+            }
+        }
+
+        private synchronized void closeJournal()
+        {
+            if (journal != null) {
+                try {
+                    journal.close();
+                }
+                catch (IOException ex) {
+                    logger.error("Failed to close state file", ex);
+                }
+                journal = null;
+            }
         }
 
         private void tryWriteStateFile(ArchivedTask task)
@@ -168,7 +301,7 @@ class ResumeStateManager
             if (doneTaskIdList.contains(task.getId())) {
                 return;
             }
-            if (task.getState() == TaskStateCode.SUCCESS) {
+            if (task.getState() == TaskStateCode.SUCCESS && !isRestored(task)) {
                 try {
                     writeStateFile(task);
                 }
@@ -180,6 +313,16 @@ class ResumeStateManager
             doneTaskIdList.add(task.getId());
         }
 
+        private boolean isRestored(ArchivedTask task)
+        {
+            // tasks skipped by resuming are restored from the journal as successful
+            // tasks. Writing them again would grow the journal at every resume.
+            // Tasks run again by --rerun, --start or --goal are appended so that
+            // the new entry overwrites the old one.
+            Set<String> names = restoredTaskNames.get(normalize(dir));
+            return names != null && names.contains(task.getFullName());
+        }
+
         private void writeStateFile(ArchivedTask task)
             throws IOException
         {
@@ -194,7 +337,32 @@ class ResumeStateManager
                         .report(task.getReport().or(TaskReport.empty()))
                         .build());
 
-            mapper.writeFile(dir.resolve(task.getFullName() + ".yml").toFile(), state);
+            if (journal == null) {
+                journal = openJournal();
+            }
+            journal.write(jsonMapper.writeValueAsString(state));
+            journal.write('\n');
+        }
+
+        private Writer openJournal()
+            throws IOException
+        {
+            Path path = dir.resolve(JOURNAL_FILE_NAME);
+            Files.createDirectories(dir);
+            boolean needsNewLine = false;
+            if (Files.exists(path) && Files.size(path) > 0) {
+                // terminate a partially written line left by a killed run
+                try (SeekableByteChannel channel = Files.newByteChannel(path, READ)) {
+                    ByteBuffer last = ByteBuffer.allocate(1);
+                    channel.position(channel.size() - 1).read(last);
+                    needsNewLine = last.get(0) != '\n';
+                }
+            }
+            Writer writer = Files.newBufferedWriter(path, UTF_8, CREATE, APPEND);
+            if (needsNewLine) {
+                writer.write('\n');
+            }
+            return writer;
         }
     }
 }
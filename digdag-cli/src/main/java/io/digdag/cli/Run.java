@@ -142,13 +142,15 @@ public class Run
     boolean dryRunAndShowParams = false;
 
     @Parameter(names = {"--max-task-threads"})
-    int maxTaskThreads = 0;
+    String maxTaskThreads = null;
 
     @Parameter(names = {"-O", "--task-log"})
     String taskLogPath = null;
 
     private Path resumeStatePath;
 
+    private final TaskExecutionStats executionStats = new TaskExecutionStats();
+
     @Override
     public void main()
             throws Exception
@@ -204,7 +206,8 @@ public class Run
         err.println("    -E, --show-params                show task parameters before running a task");
         err.println("        --session <daily | hourly | schedule | last | \"yyyy-MM-dd[ HH:mm:ss]\">  set session_time to this time");
         err.println("                                     (default: last, reuses the latest session time stored at .digdag/status)");
-        err.println("    --max-task-threads               Limit maximum number of task execution threads on the execution");
+        err.println("    --max-task-threads <N | auto>    Limit maximum number of task execution threads on the execution");
+        err.println("                                     (auto: number of available processors)");
         err.println("    -O, --task-log DIR               store task logs to this path");
         Main.showCommonOptions(env, err);
         return systemExit(error);
@@ -228,6 +231,7 @@ public class Run
                 .setEnvironment(env)
                 .setSystemConfig(PropertyUtils.toConfigElement(systemProps))
                 .setSystemPlugins(loadSystemPlugins(systemProps))
+                .withScheduleExecutor(false)
                 .addModules(binder -> {
                     Multibinder.newSetBinder(binder, SecretStore.class);
                     binder.bind(SecretStoreManager.class).to(LocalSecretStoreManager.class).in(Scopes.SINGLETON);
@@ -246,8 +250,8 @@ public class Run
     {
         Properties systemProps = loadSystemProperties();
 
-        if (maxTaskThreads > 0) {
-            systemProps.setProperty("agent.max-task-threads", String.valueOf(maxTaskThreads));
+        if (maxTaskThreads != null) {
+            systemProps.setProperty("agent.max-task-threads", String.valueOf(parseMaxTaskThreads(maxTaskThreads)));
         }
 
         if (taskLogPath != null) {
@@ -255,11 +259,29 @@ public class Run
             systemProps.setProperty("log-server.local.path", taskLogPath);
         }
 
+        if (!systemProps.containsKey("database.schemaSnapshotDir")) {
+            systemProps.setProperty("database.schemaSnapshotDir", ConfigUtil.defaultSchemaSnapshotPath(env).toString());
+        }
+
         try (DigdagEmbed digdag = setupBootstrap(systemProps).initializeWithoutShutdownHook()) {
             run(systemProps, digdag.getInjector(), workflowNameArg, matchPattern);
         }
     }
 
+    private int parseMaxTaskThreads(String value)
+            throws SystemExitException
+    {
+        if (value.equals("auto")) {
+            return Runtime.getRuntime().availableProcessors();
+        }
+        try {
+            return Integer.parseInt(value);
+        }
+        catch (NumberFormatException ex) {
+            throw usage("--max-task-threads must be a number or auto: " + value);
+        }
+    }
+
     private void run(Properties systemProps, Injector injector, String workflowNameArg, String matchPattern)
             throws Exception
     {
@@ -298,6 +320,7 @@ public class Run
                         project.getArchiveMetadata()), ResourceConflictException.class);
 
         // submit workflow
+        executionStats.start();
         StoredSessionAttemptWithSession attempt = tm.begin(() ->
                 submitWorkflow(injector,
                         stored.getRevision(), stored.getWorkflowDefinitions(),
@@ -309,6 +332,7 @@ public class Run
         // wait until it's done
         localSite.runUntilDone(attempt.getId());
         rsm.sync();
+        executionStats.finish();
 
         // show results
         ArrayList<ArchivedTask> failedTasks = new ArrayList<>();
@@ -332,6 +356,8 @@ public class Run
             logger.debug("    error: " + task.getError());
         }
 
+        err.println(executionStats.formatSummary(tasks));
+
         if (!failedTasks.isEmpty()) {
             StringBuilder sb = new StringBuilder();
             sb.append(String.format("%n"));
@@ -640,6 +666,14 @@ public class Run
     private static boolean taskExists(Path dir, String workflowName)
         throws IOException
     {
+        Pattern taskNamePattern = Pattern.compile(Pattern.quote("+" + workflowName) + "[\\+\\^].*");
+        for (String taskName : ResumeStateManager.readJournalTaskNames(dir)) {
+            if (taskNamePattern.matcher(taskName).matches()) {
+                return true;
+            }
+        }
+
+        // state files written by older versions
         Pattern namePattern = Pattern.compile(Pattern.quote("+" + workflowName) + "[\\+\\^].*\\.yml");
         try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, f -> Files.isRegularFile(f))) {
             for (Path file : ds) {
@@ -685,10 +719,17 @@ public class Run
                 try (SetThreadName threadName = new SetThreadName(origThreadName)) {
                     logger.warn("Skipped");
                 }
+                cmd.executionStats.taskSkipped();
                 callback.taskSucceeded(request, agentId, result);
             }
             else {
-                super.run(request);
+                cmd.executionStats.taskStarted();
+                try {
+                    super.run(request);
+                }
+                finally {
+                    cmd.executionStats.taskFinished(request.getTaskId());
+                }
             }
         }
 
@@ -1,50 +1,86 @@
 package io.digdag.cli;
 
 import com.beust.jcommander.Parameter;
+import com.google.common.base.Optional;
 import com.google.inject.Injector;
 import io.digdag.client.config.ConfigFactory;
 import io.digdag.core.DigdagEmbed;
-import io.digdag.core.config.ConfigLoaderManager;
+import io.digdag.core.archive.ProjectArchiveLoader;
 import io.digdag.core.repository.WorkflowDefinition;
-import io.digdag.core.repository.WorkflowDefinitionList;
+import io.digdag.core.workflow.TaskMatchPattern;
 import io.digdag.core.workflow.Workflow;
 import io.digdag.core.workflow.WorkflowCompiler;
+import io.digdag.core.workflow.WorkflowTaskList;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.List;
 import java.util.stream.Collectors;
 
 import static io.digdag.cli.SystemExitException.systemExit;
+import static io.digdag.core.archive.ProjectArchive.WORKFLOW_FILE_SUFFIX;
+import static java.nio.charset.StandardCharsets.UTF_8;
 
 public class Show
     extends Command
 {
+    private static final int DEFAULT_COLLAPSE_THRESHOLD = 10;
+
+    @Parameter(names = {"--project"})
+    String projectDirName = null;
+
     @Parameter(names = {"-o", "--output"})
     String output = "digdag.png";
 
+    @Parameter(names = {"--format"})
+    String format = null;
+
+    @Parameter(names = {"--depth"})
+    int maxDepth = 0;
+
+    @Parameter(names = {"--collapse"})
+    int collapseThreshold = DEFAULT_COLLAPSE_THRESHOLD;
+
     // TODO support -p option? for jinja template rendering
 
     @Override
     public void main()
             throws Exception
     {
-        if (args.size() != 1) {
+        switch (args.size()) {
+        case 1:
+            show(args.get(0), Optional.absent());
+            break;
+        case 2:
+            show(args.get(0), Optional.of(args.get(1)));
+            break;
+        default:
             throw usage(null);
         }
-        show(args.get(0));
     }
 
     @Override
     public SystemExitException usage(String error)
     {
-        err.println("Usage: " + programName + " show <digdag.dig> [options...]");
+        err.println("Usage: " + programName + " show <workflow.dig> [+task] [options...]");
         err.println("  Options:");
-        err.println("    -s, --show PATH.png              store a PNG file to this path (default: digdag.png)");
+        err.println("        --project DIR                use this directory as the project directory (default: current directory)");
+        err.println("    -o, --output PATH                store the graph to this path, or - for stdout (default: digdag.png)");
+        err.println("        --format <png | dot | json>  output format (default: guessed from the file extension of --output)");
+        err.println("        --depth N                    fold tasks deeper than this depth into their parent (default: unlimited)");
+        err.println("        --collapse N                 fold more than N similar sibling tasks into one node. 0 disables (default: " + DEFAULT_COLLAPSE_THRESHOLD + ")");
         Main.showCommonOptions(env, err);
         return systemExit(error);
     }
 
-    private void show(String workflowPath)
+    private void show(String workflowArg, Optional<String> taskPattern)
             throws Exception
     {
         try (DigdagEmbed digdag = new DigdagEmbed.Bootstrap()
@@ -52,32 +88,94 @@ public class Show
                 .withScheduleExecutor(false)
                 .withLocalAgent(false)
                 .initialize()) {
-            show(digdag.getInjector(), workflowPath);
+            show(digdag.getInjector(), workflowArg, taskPattern);
         }
     }
 
-    private void show(Injector injector, String workflowPath)
+    private void show(Injector injector, String workflowArg, Optional<String> taskPattern)
             throws Exception
     {
         final ConfigFactory cf = injector.getInstance(ConfigFactory.class);
-        final ConfigLoaderManager loader = injector.getInstance(ConfigLoaderManager.class);
+        final ProjectArchiveLoader projectLoader = injector.getInstance(ProjectArchiveLoader.class);
         final WorkflowCompiler compiler = injector.getInstance(WorkflowCompiler.class);
 
-        List<WorkflowDefinition> workflowSources = loader.loadParameterizedFile(new File(workflowPath), cf.create()).convert(WorkflowDefinitionList.class).get();
+        Path projectPath = (projectDirName == null) ?
+            Paths.get("").toAbsolutePath() :
+            Paths.get(projectDirName).normalize().toAbsolutePath();
+        Path workflowPath = projectPath.resolve(
+                workflowArg.endsWith(WORKFLOW_FILE_SUFFIX) ? workflowArg : workflowArg + WORKFLOW_FILE_SUFFIX);
 
-        List<Workflow> workflows = workflowSources
-            .stream()
-            .map(wf -> compiler.compile(wf.getName(), wf.getConfig()))
-            .collect(Collectors.toList());
+        // load only the target workflow file instead of all workflows in the project
+        WorkflowDefinition def = projectLoader.loadWorkflowFileFromPath(projectPath, workflowPath, cf.create())
+            .toWorkflowDefinition();
+        Workflow workflow = compiler.compile(def.getName(), def.getConfig());
 
-        Workflow workflow = workflows.get(0);
+        WorkflowTaskList tasks = workflow.getTasks();
+        if (taskPattern.isPresent()) {
+            int fromIndex = TaskMatchPattern.compile(taskPattern.get()).findIndex(tasks);
+            if (fromIndex > 0) {  // findIndex may return 0
+                tasks = SubtreeExtract.extractSubtree(tasks, fromIndex);
+            }
+        }
 
-        List<WorkflowVisualizerNode> nodes = workflow.getTasks()
+        List<WorkflowVisualizerNode> nodes = tasks
             .stream()
             .map(task -> WorkflowVisualizerNode.of(task))
             .collect(Collectors.toList());
 
-        show(nodes, new File(output));
+        GraphvizWorkflowVisualizer visualizer = new GraphvizWorkflowVisualizer(maxDepth, collapseThreshold);
+        switch (getFormat()) {
+        case "png":
+            visualizer.visualize(nodes, new File(output));
+            err.println("Stored PNG file at '" + output + "'");
+            break;
+        case "dot":
+            try (OutputStream out = openOutput();
+                    Writer writer = new OutputStreamWriter(out, UTF_8)) {
+                visualizer.writeDot(nodes, writer);
+            }
+            break;
+        case "json":
+            try (OutputStream out = openOutput()) {
+                visualizer.writeJson(nodes, out);
+            }
+            break;
+        default:
+            throw usage("Unknown --format: " + format);
+        }
+    }
+
+    private String getFormat()
+    {
+        if (format != null) {
+            return format;
+        }
+        else if (output.endsWith(".json")) {
+            return "json";
+        }
+        else if (output.endsWith(".dot") || output.endsWith(".gv")) {
+            return "dot";
+        }
+        else {
+            return "png";
+        }
+    }
+
+    private OutputStream openOutput()
+            throws IOException
+    {
+        if (output.equals("-")) {
+            // don't close stdout
+            return new BufferedOutputStream(out) {
+                @Override
+                public void close()
+                        throws IOException
+                {
+                    flush();
+                }
+            };
+        }
+        return new BufferedOutputStream(new FileOutputStream(output));
     }
 
     // used also by Run.run
@@ -4,8 +4,9 @@ import java.util.List;
 import java.util.ArrayList;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
 import java.util.stream.Collectors;
-import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableList;
 import io.digdag.core.workflow.WorkflowTask;
 import io.digdag.core.workflow.WorkflowTaskList;
@@ -20,17 +21,27 @@ class SubtreeExtract
     private final WorkflowTaskList tasks;
     private final int targetTaskIndex;
     private final List<WorkflowTask> extracted;
+    private final Set<Integer> extractedIndexes;
+    private final Map<Integer, List<WorkflowTask>> childrenMap;  // {parent index => children}
 
     private SubtreeExtract(WorkflowTaskList tasks, int targetTaskIndex)
     {
         this.tasks = tasks;
         this.targetTaskIndex = targetTaskIndex;
         this.extracted = new ArrayList<>();
+        this.extractedIndexes = new HashSet<>();
+        this.childrenMap = new HashMap<>();
+        for (WorkflowTask task : tasks) {
+            if (task.getParentIndex().isPresent()) {
+                childrenMap.computeIfAbsent(task.getParentIndex().get(), index -> new ArrayList<>()).add(task);
+            }
+        }
     }
 
     private WorkflowTaskList getExtracted()
     {
         extracted.add(tasks.get(0));  // always add the root (=workflow itself) because root must exist
+        extractedIndexes.add(tasks.get(0).getIndex());
 
         addSubtasksRecursively(tasks.get(targetTaskIndex));
 
@@ -61,17 +72,16 @@ class SubtreeExtract
 
     private void addSubtasksRecursively(WorkflowTask task)
     {
-        if (extracted.stream().anyMatch(t -> t.getIndex() == task.getIndex())) {
+        if (!extractedIndexes.add(task.getIndex())) {
             return;
         }
         extracted.add(task);
 
-        // add child tasks recursively
-        for (WorkflowTask t : tasks.subList(task.getIndex(), tasks.size())) {
-            Optional<Integer> parentIndex = t.getParentIndex();
-            if (parentIndex.isPresent() && parentIndex.get() == task.getIndex()) {
-                addSubtasksRecursively(t);
-            }
+        // add child tasks recursively. Children are looked up from the map
+        // so that extracting from a workflow with many tasks doesn't take
+        // quadratic time.
+        for (WorkflowTask t : childrenMap.getOrDefault(task.getIndex(), ImmutableList.of())) {
+            addSubtasksRecursively(t);
         }
     }
 }
@@ -0,0 +1,107 @@
+package io.digdag.cli;
+
+import io.digdag.core.session.ArchivedTask;
+import io.digdag.core.session.TaskStateCode;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static java.util.Locale.ENGLISH;
+
+/**
+ * Counts task executions of a local run to show progress and throughput
+ * summary at the end of `digdag run`.
+ */
+class TaskExecutionStats
+{
+    // an operator runs multiple times for a task when it polls an external job
+    // or retries while operator slots are busy
+    private final Set<Long> executedTaskIds = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger operatorRuns = new AtomicInteger(0);
+    private final AtomicInteger skipped = new AtomicInteger(0);
+    private final AtomicInteger running = new AtomicInteger(0);
+    private final AtomicInteger maxRunning = new AtomicInteger(0);
+
+    private volatile long startNanos = System.nanoTime();
+    private volatile long finishNanos;
+    private volatile boolean finished = false;
+
+    void start()
+    {
+        startNanos = System.nanoTime();
+    }
+
+    void finish()
+    {
+        finishNanos = System.nanoTime();
+        finished = true;
+    }
+
+    void taskStarted()
+    {
+        maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+    }
+
+    void taskFinished(long taskId)
+    {
+        running.decrementAndGet();
+        operatorRuns.incrementAndGet();
+        executedTaskIds.add(taskId);
+    }
+
+    void taskSkipped()
+    {
+        skipped.incrementAndGet();
+    }
+
+    int getExecutedCount()
+    {
+        return executedTaskIds.size();
+    }
+
+    int getOperatorRunCount()
+    {
+        return operatorRuns.get();
+    }
+
+    int getSkippedCount()
+    {
+        return skipped.get();
+    }
+
+    int getMaxRunningCount()
+    {
+        return maxRunning.get();
+    }
+
+    double getElapsedSeconds()
+    {
+        long end = finished ? finishNanos : System.nanoTime();
+        return (end - startNanos) / 1_000_000_000.0;
+    }
+
+    String formatSummary(List<ArchivedTask> tasks)
+    {
+        double elapsed = getElapsedSeconds();
+        double throughput = (elapsed > 0) ? getExecutedCount() / elapsed : 0.0;
+
+        Map<TaskStateCode, Integer> states = new EnumMap<>(TaskStateCode.class);
+        for (ArchivedTask task : tasks) {
+            states.merge(task.getState(), 1, Integer::sum);
+        }
+        String stateSummary = states.entrySet().stream()
+            .map(pair -> pair.getKey() + "=" + pair.getValue())
+            .collect(Collectors.joining(", "));
+
+        return String.format(ENGLISH,
+                "Executed %d tasks (%d skipped, %d operator runs) in %.1f sec: %.2f tasks/sec, up to %d tasks in parallel.%n" +
+                "Task states: %s",
+                getExecutedCount(), getSkippedCount(), getOperatorRunCount(), elapsed, throughput, getMaxRunningCount(),
+                stateSummary);
+    }
+}
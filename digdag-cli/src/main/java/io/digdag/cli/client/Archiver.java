@@ -13,7 +13,6 @@ import io.digdag.core.archive.WorkflowResourceMatcher;
 import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
 import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
 import org.apache.commons.compress.archivers.tar.TarConstants;
-import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
 
 import java.io.File;
 import java.io.IOException;
@@ -25,7 +24,9 @@ import java.nio.file.LinkOption;
 import java.nio.file.Path;
 import java.nio.file.attribute.PosixFilePermission;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static java.util.Locale.ENGLISH;
@@ -35,6 +36,7 @@ class Archiver
     private final PrintStream out;
     private final ConfigFactory cf;
     private final ProjectArchiveLoader projectLoader;
+    private final int compressionThreads = Runtime.getRuntime().availableProcessors();
 
     @Inject
     Archiver(@StdOut PrintStream out, ProjectArchiveLoader projectLoader, ConfigFactory cf)
@@ -53,35 +55,60 @@ class Archiver
 
         ImmutableList.Builder<String> workflowResources = ImmutableList.builder();
 
-        try (TarArchiveOutputStream tar = new TarArchiveOutputStream(new GzipCompressorOutputStream(Files.newOutputStream(output)))) {
+        // collect entries first and write them in order of resource names so that
+        // the same files always produce the same archive regardless of directory listing order
+        Map<String, ArchiveFile> files = new TreeMap<>();
+        project.listFiles((resourceName, absPath) -> {
+            TarArchiveEntry e = buildFileOrSymlinkEntryOrNull(projectPath, absPath, resourceName, copyOutgoingSymlinks);
+            if (e != null) {
+                files.put(resourceName, new ArchiveFile(e, absPath));
+
+                if (WorkflowResourceMatcher.defaultMatcher().matches(resourceName, absPath)) {
+                    workflowResources.add(resourceName);
+                }
+
+                // If symbolic link entry is created, don't copy files recursively
+                return !e.isSymbolicLink();
+            }
+            return true;
+        });
+
+        try (TarArchiveOutputStream tar = new TarArchiveOutputStream(new ParallelGzipOutputStream(Files.newOutputStream(output), compressionThreads))) {
             // default mode for file names longer than 100 bytes is throwing an exception (LONGFILE_ERROR)
             tar.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
 
-            project.listFiles((resourceName, absPath) -> {
-                TarArchiveEntry e = buildFileOrSymlinkEntryOrNull(projectPath, absPath, resourceName, copyOutgoingSymlinks);
-                if (e != null) {
-                    tar.putArchiveEntry(e);
-                    if (!e.isSymbolicLink()) {
-                        try (InputStream in = Files.newInputStream(absPath)) {
-                            ByteStreams.copy(in, tar);
-                        }
-                    }
-                    tar.closeArchiveEntry();
-
-                    if (WorkflowResourceMatcher.defaultMatcher().matches(resourceName, absPath)) {
-                        workflowResources.add(resourceName);
+            for (ArchiveFile file : files.values()) {
+                TarArchiveEntry e = file.entry;
+                // modification time and owner are not used by servers. make them constant
+                // so that md5 of the archive changes only when contents change.
+                e.setModTime(0L);
+                e.setUserName("");
+                e.setGroupName("");
+                tar.putArchiveEntry(e);
+                if (!e.isSymbolicLink()) {
+                    try (InputStream in = Files.newInputStream(file.path)) {
+                        ByteStreams.copy(in, tar);
                     }
-
-                    // If symbolic link entry is created, don't copy files recursively
-                    return !e.isSymbolicLink();
                 }
-                return true;
-            });
+                tar.closeArchiveEntry();
+            }
         }
 
         return workflowResources.build();
     }
 
+    private static class ArchiveFile
+    {
+        private final TarArchiveEntry entry;
+        private final Path path;
+
+        ArchiveFile(TarArchiveEntry entry, Path path)
+        {
+            this.entry = entry;
+            this.path = path;
+        }
+    }
+
     private TarArchiveEntry buildFileOrSymlinkEntryOrNull(Path projectPath, Path absPath, String resourceName,
             boolean copyOutgoingSymlinks)
             throws IOException
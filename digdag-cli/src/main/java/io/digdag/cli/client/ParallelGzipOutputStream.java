@@ -0,0 +1,224 @@
+package io.digdag.cli.client;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Gzip output stream that compresses blocks of input using multiple threads.
+ *
+ * Input is split into fixed-size blocks and each block is compressed as a raw
+ * deflate stream terminated by a sync flush, using last 32KB of the previous
+ * block as the dictionary. Concatenated blocks form a single deflate stream,
+ * so that the output is a regular gzip file readable by any gzip decoder
+ * (same technique as pigz).
+ *
+ * Output is deterministic for the same input, block size and compression
+ * level regardless of number of threads. Modification time in the gzip header
+ * is always 0.
+ */
+class ParallelGzipOutputStream
+        extends FilterOutputStream
+{
+    static final int DEFAULT_BLOCK_SIZE = 128 * 1024;
+
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+
+    private static final byte[] GZIP_HEADER = new byte[] {
+        0x1f, (byte) 0x8b,  // magic
+        Deflater.DEFLATED,  // compression method
+        0,  // flags
+        0, 0, 0, 0,  // modification time
+        0,  // extra flags
+        (byte) 0xff,  // OS: unknown
+    };
+
+    private final int blockSize;
+    private final int level;
+    private final int maxPendingBlocks;
+    private final ExecutorService executor;
+    private final Deque<Future<byte[]>> pending = new ArrayDeque<>();
+    private final CRC32 crc = new CRC32();
+
+    private byte[] block;
+    private int blockLength = 0;
+    private byte[] dictionary = null;
+    private long totalLength = 0;
+    private boolean closed = false;
+
+    ParallelGzipOutputStream(OutputStream out, int threads)
+            throws IOException
+    {
+        this(out, threads, DEFAULT_BLOCK_SIZE, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    ParallelGzipOutputStream(OutputStream out, int threads, int blockSize, int level)
+            throws IOException
+    {
+        super(out);
+        this.blockSize = blockSize;
+        this.level = level;
+        this.maxPendingBlocks = threads * 2;
+        this.executor = Executors.newFixedThreadPool(threads,
+                new ThreadFactoryBuilder()
+                .setDaemon(true)
+                .setNameFormat("gzip-compressor-%d")
+                .build());
+        this.block = new byte[blockSize];
+        out.write(GZIP_HEADER);
+    }
+
+    @Override
+    public void write(int b)
+            throws IOException
+    {
+        write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len)
+            throws IOException
+    {
+        while (len > 0) {
+            if (blockLength == blockSize) {
+                submitBlock(false);
+            }
+            int n = Math.min(len, blockSize - blockLength);
+            System.arraycopy(b, off, block, blockLength, n);
+            blockLength += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    @Override
+    public void flush()
+            throws IOException
+    {
+        // blocks are not flushed before they become full so that output
+        // doesn't depend on timing of flush calls.
+        out.flush();
+    }
+
+    @Override
+    public void close()
+            throws IOException
+    {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            submitBlock(true);
+            while (!pending.isEmpty()) {
+                writeNextBlock();
+            }
+            writeTrailer();
+            out.flush();
+        }
+        finally {
+            executor.shutdownNow();
+            out.close();
+        }
+    }
+
+    private void submitBlock(boolean last)
+            throws IOException
+    {
+        byte[] input = Arrays.copyOf(block, blockLength);
+        byte[] dict = dictionary;
+        crc.update(input, 0, input.length);
+        totalLength += input.length;
+
+        pending.add(executor.submit(() -> compress(input, dict, last)));
+
+        if (input.length >= DICTIONARY_SIZE) {
+            dictionary = Arrays.copyOfRange(input, input.length - DICTIONARY_SIZE, input.length);
+        }
+        else {
+            // blocks except the last one are always larger than dictionary size
+            dictionary = input;
+        }
+        blockLength = 0;
+
+        while (pending.size() >= maxPendingBlocks) {
+            writeNextBlock();
+        }
+    }
+
+    private byte[] compress(byte[] input, byte[] dict, boolean last)
+    {
+        Deflater deflater = new Deflater(level, true);
+        try {
+            if (dict != null) {
+                deflater.setDictionary(dict);
+            }
+            deflater.setInput(input);
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(input.length / 2 + 64);
+            byte[] buffer = new byte[16 * 1024];
+            if (last) {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    int n = deflater.deflate(buffer);
+                    compressed.write(buffer, 0, n);
+                }
+            }
+            else {
+                int n;
+                do {
+                    n = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+                    compressed.write(buffer, 0, n);
+                }
+                while (n == buffer.length);
+            }
+            return compressed.toByteArray();
+        }
+        finally {
+            deflater.end();
+        }
+    }
+
+    private void writeNextBlock()
+            throws IOException
+    {
+        try {
+            out.write(pending.removeFirst().get());
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+        catch (ExecutionException ex) {
+            throw new IOException("Failed to compress data", ex.getCause());
+        }
+    }
+
+    private void writeTrailer()
+            throws IOException
+    {
+        writeIntLE(crc.getValue());
+        writeIntLE(totalLength);  // ISIZE is the input size modulo 2^32
+    }
+
+    private void writeIntLE(long v)
+            throws IOException
+    {
+        out.write((int) (v & 0xff));
+        out.write((int) ((v >> 8) & 0xff));
+        out.write((int) ((v >> 16) & 0xff));
+        out.write((int) ((v >> 24) & 0xff));
+    }
+}
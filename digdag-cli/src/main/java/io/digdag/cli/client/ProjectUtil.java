@@ -8,7 +8,17 @@ class ProjectUtil
 {
     static void showUploadedProject(PrintStream out, RestProject proj, String programName)
     {
-        out.println("Uploaded:");
+        showProject(out, "Uploaded:", proj, programName);
+    }
+
+    static void showUnchangedProject(PrintStream out, RestProject proj, String programName)
+    {
+        showProject(out, "Not changed:", proj, programName);
+    }
+
+    private static void showProject(PrintStream out, String title, RestProject proj, String programName)
+    {
+        out.println(title);
         out.println("  id: " + proj.getId());
         out.println("  name: " + proj.getName());
         out.println("  revision: " + proj.getRevision());
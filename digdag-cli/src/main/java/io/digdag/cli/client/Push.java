@@ -3,6 +3,7 @@ package io.digdag.cli.client;
 import com.beust.jcommander.Parameter;
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
+import com.google.common.hash.Hashing;
 import com.google.inject.Injector;
 import com.google.inject.Scopes;
 import io.digdag.cli.StdErr;
@@ -15,14 +16,19 @@ import io.digdag.client.api.RestProject;
 import io.digdag.client.config.ConfigElement;
 import io.digdag.core.DigdagEmbed;
 
+import javax.ws.rs.NotFoundException;
+
+import java.io.IOException;
 import java.io.PrintStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.Instant;
+import java.util.Arrays;
 import java.util.List;
 
 import static io.digdag.cli.SystemExitException.systemExit;
+import static io.digdag.cli.client.ProjectUtil.showUnchangedProject;
 import static io.digdag.cli.client.ProjectUtil.showUploadedProject;
 
 public class Push
@@ -40,6 +46,9 @@ public class Push
     @Parameter(names = {"--copy-outgoing-symlinks"})
     boolean copyOutgoingSymlinks = false;
 
+    @Parameter(names = {"--skip-if-unchanged"})
+    boolean skipIfUnchanged = false;
+
     @Override
     public void mainWithClientException()
         throws Exception
@@ -58,6 +67,7 @@ public class Push
         err.println("    -r, --revision REVISION          specific revision name instead of auto-generated UUID");
         err.println("        --schedule-from \"yyyy-MM-dd HH:mm:ss Z\"  start schedules from this time instead of current time");
         err.println("        --copy-outgoing-symlinks     transform symbolic links to regular files or directories");
+        err.println("        --skip-if-unchanged          don't upload if the project is same with the latest revision");
         showCommonOptions();
         return systemExit(error);
     }
@@ -122,10 +132,41 @@ public class Push
         if ("".equals(revision)) {
             throw usage("revision cannot be empty");
         }
+        if (skipIfUnchanged) {
+            // archives are reproducible (see Archiver) so md5 of the archive is
+            // compared with the one stored by the server.
+            Optional<RestProject> unchanged = findUnchangedProject(client, projName, archivePath);
+            if (unchanged.isPresent()) {
+                out.println("Project is not changed since the latest revision. Skipped uploading because of --skip-if-unchanged option.");
+                showUnchangedProject(out, unchanged.get(), programName);
+                return;
+            }
+            out.println("Project is changed since the latest revision. Uploading.");
+        }
         if (revision == null) {
             revision = Upload.generateDefaultRevisionName();
         }
         RestProject proj = client.putProjectRevision(projName, revision, archivePath.toFile(), scheduleFrom);
         showUploadedProject(out, proj, programName);
     }
+
+    static Optional<RestProject> findUnchangedProject(DigdagClient client, String projName, Path archivePath)
+        throws IOException
+    {
+        RestProject proj;
+        try {
+            proj = client.getProject(projName);
+        }
+        catch (NotFoundException ex) {
+            return Optional.absent();
+        }
+        if (!proj.getArchiveMd5().isPresent()) {
+            return Optional.absent();
+        }
+        byte[] md5 = com.google.common.io.Files.asByteSource(archivePath.toFile()).hash(Hashing.md5()).asBytes();
+        if (Arrays.equals(md5, proj.getArchiveMd5().get())) {
+            return Optional.of(proj);
+        }
+        return Optional.absent();
+    }
 }
@@ -5,14 +5,10 @@ import com.google.common.base.Optional;
 import io.digdag.cli.SystemExitException;
 import io.digdag.client.DigdagClient;
 import io.digdag.client.api.Id;
-import io.digdag.client.api.RestLogFileHandle;
 import io.digdag.client.api.RestSessionAttempt;
 import io.digdag.client.api.RestTask;
 import io.digdag.core.log.LogLevel;
 
-import java.io.IOException;
-import java.util.List;
-
 import static io.digdag.cli.SystemExitException.systemExit;
 
 public class ShowLog
@@ -58,41 +54,13 @@ public class ShowLog
         LogLevel level = verbose ? null : LogLevel.INFO;
         TaskLogWatcher watcher = new TaskLogWatcher(client, attemptId, level, out);
 
-        update(client, watcher, attemptId, taskName);
+        watcher.update(watcher.listFileHandles(taskName));
 
-        int interval = 500;
         if (follow) {
-            while (true) {
-                if (isFinished(client, attemptId, taskName)) {
-                    break;
-                }
-                else {
-                    Thread.sleep(interval);
-                    interval = Math.min(interval * 2, 10000);
-                    boolean updated = update(client, watcher, attemptId, taskName);
-                    if (updated) {
-                        interval = 500;
-                    }
-                }
-            }
+            watcher.follow(taskName, () -> isFinished(client, attemptId, taskName));
         }
     }
 
-    private boolean update(DigdagClient client, TaskLogWatcher watcher,
-            Id attemptId, Optional<String> taskName)
-        throws IOException
-    {
-        List<RestLogFileHandle> handles;
-        if (taskName.isPresent()) {
-            handles = client.getLogFileHandlesOfTask(attemptId, taskName.get()).getFiles();
-        }
-        else {
-            handles = client.getLogFileHandlesOfAttempt(attemptId).getFiles();
-        }
-
-        return watcher.update(handles);
-    }
-
     private boolean isFinished(DigdagClient client, Id attemptId, Optional<String> taskName)
     {
         if (taskName.isPresent()) {
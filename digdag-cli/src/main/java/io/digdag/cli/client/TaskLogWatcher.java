@@ -17,6 +17,9 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.IOException;
 import java.io.EOFException;
+import java.util.function.BooleanSupplier;
+import javax.ws.rs.NotFoundException;
+import javax.ws.rs.ServiceUnavailableException;
 import com.google.common.base.Optional;
 import io.digdag.client.DigdagClient;
 import io.digdag.client.api.Id;
@@ -30,11 +33,16 @@ class TaskLogWatcher
     // 2016-04-06 17:07:16 -0700 [INFO] ...
     private static final Pattern LEVEL_PATTERN = Pattern.compile("^[0-9\\:\\ \\-\\+\\.]*\\[([A-Za-z]+)\\]");
 
+    private static final int FOLLOW_TIMEOUT_SECONDS = 30;
+    private static final int MIN_POLL_INTERVAL_MILLIS = 500;
+    private static final int MAX_POLL_INTERVAL_MILLIS = 10000;
+
     private final DigdagClient client;
     private final Id attemptId;
     private final Map<String, TaskLogState> stateMap;
     private final LogLevel levelFilter;
     private final PrintStream out;
+    private List<RestLogFileHandle> lastHandles = Collections.emptyList();
 
     TaskLogWatcher(DigdagClient client, Id attemptId, LogLevel levelFilterOrNull, PrintStream out)
     {
@@ -45,9 +53,65 @@ class TaskLogWatcher
         this.stateMap = new HashMap<>();
     }
 
+    List<RestLogFileHandle> listFileHandles(Optional<String> taskName)
+    {
+        if (taskName.isPresent()) {
+            return client.getLogFileHandlesOfTask(attemptId, taskName.get()).getFiles();
+        }
+        else {
+            return client.getLogFileHandlesOfAttempt(attemptId).getFiles();
+        }
+    }
+
+    /**
+     * Shows new logs until finished returns true.
+     *
+     * The server holds a follow request until new log files are uploaded so
+     * that the client doesn't have to poll. Against servers that don't
+     * support it, this falls back to polling with exponential backoff.
+     */
+    void follow(Optional<String> taskName, BooleanSupplier finished)
+        throws IOException, InterruptedException
+    {
+        boolean serverFollow = true;
+        int interval = MIN_POLL_INTERVAL_MILLIS;
+        while (!finished.getAsBoolean()) {
+            if (serverFollow) {
+                try {
+                    update(client.followLogFileHandles(attemptId, taskName,
+                                lastHandles.size(), totalFileSize(lastHandles), FOLLOW_TIMEOUT_SECONDS).getFiles());
+                    continue;
+                }
+                catch (NotFoundException ex) {
+                    // server is older than this client. fallback to polling
+                    serverFollow = false;
+                }
+                catch (ServiceUnavailableException ex) {
+                    // server is shutting down. poll once and try again
+                }
+            }
+            Thread.sleep(interval);
+            interval = Math.min(interval * 2, MAX_POLL_INTERVAL_MILLIS);
+            boolean updated = update(listFileHandles(taskName));
+            if (updated) {
+                interval = MIN_POLL_INTERVAL_MILLIS;
+            }
+        }
+    }
+
+    private static long totalFileSize(List<RestLogFileHandle> handles)
+    {
+        long size = 0;
+        for (RestLogFileHandle handle : handles) {
+            size += handle.getFileSize();
+        }
+        return size;
+    }
+
     boolean update(List<RestLogFileHandle> handles)
         throws IOException
     {
+        lastHandles = handles;
         boolean updatedAtLeastOne = false;
 
         for (Map.Entry<String, List<RestLogFileHandle>> pair : sortHandles(handles).entrySet()) {
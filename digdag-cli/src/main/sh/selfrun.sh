@@ -135,5 +135,10 @@ else
     java_args="-XX:+AggressiveOpts -XX:TieredStopAtLevel=1 -Xverify:none -Djdk.attach.allowAttachSelf=true $java_args"
 fi
 
+# use class data sharing archive created by -XX:ArchiveClassesAtExit=$0.jsa if it exists
+if test -f "$0.jsa"; then
+    java_args="-XX:SharedArchiveFile=$0.jsa -Xshare:auto $java_args"
+fi
+
 exec java -Dio.digdag.cli.launcher=selfrun $java_args -jar "$0" "$@"
 exit 127
@@ -0,0 +1,107 @@
+package io.digdag.cli;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import io.digdag.core.session.TaskStateCode;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class GraphvizWorkflowVisualizerTest
+{
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    public void nameShape()
+    {
+        assertThat(GraphvizWorkflowVisualizer.nameShape("+task_12"), is("+task_#"));
+        assertThat(GraphvizWorkflowVisualizer.nameShape("+for-0=n=1=a"), is("+for-"));
+        assertThat(GraphvizWorkflowVisualizer.nameShape("+for-0=n=2=b"), is("+for-"));
+        assertThat(GraphvizWorkflowVisualizer.nameShape("+loop-3"), is("+loop-"));
+    }
+
+    @Test
+    public void writeAllTasks()
+            throws IOException
+    {
+        JsonNode json = writeJson(new GraphvizWorkflowVisualizer(), sequentialWorkflow(5));
+
+        JsonNode nodes = json.get("nodes");
+        assertThat(nodes.size(), is(7));
+        assertThat(nodes.get(0).get("name").asText(), is("+wf"));
+        assertThat(nodes.get(0).get("parent_id").isNull(), is(true));
+        assertThat(nodes.get(1).get("name").asText(), is("+group"));
+        assertThat(nodes.get(2).get("name").asText(), is("+task_0"));
+        assertThat(nodes.get(3).get("upstream_ids").get(0).asLong(), is(2L));
+        assertThat(nodes.get(3).get("folded_tasks").asInt(), is(0));
+    }
+
+    @Test
+    public void collapseSimilarSiblings()
+            throws IOException
+    {
+        JsonNode nodes = writeJson(new GraphvizWorkflowVisualizer(0, 3), sequentialWorkflow(5)).get("nodes");
+
+        // +wf, +group, +task_0, ... (folds +task_1 to +task_3), +task_4
+        assertThat(nodes.size(), is(5));
+        assertThat(nodes.get(2).get("name").asText(), is("+task_0"));
+        assertThat(nodes.get(3).get("name").asText(), is("..."));
+        assertThat(nodes.get(3).get("folded_tasks").asInt(), is(3));
+        assertThat(nodes.get(3).get("upstream_ids").get(0).asLong(), is(2L));
+        assertThat(nodes.get(4).get("name").asText(), is("+task_4"));
+        assertThat(nodes.get(4).get("upstream_ids").size(), is(1));
+        assertThat(nodes.get(4).get("upstream_ids").get(0).asLong(), is(nodes.get(3).get("id").asLong()));
+    }
+
+    @Test
+    public void limitDepth()
+            throws IOException
+    {
+        JsonNode nodes = writeJson(new GraphvizWorkflowVisualizer(2, 0), sequentialWorkflow(5)).get("nodes");
+
+        assertThat(nodes.size(), is(2));
+        assertThat(nodes.get(1).get("name").asText(), is("+group"));
+        assertThat(nodes.get(1).get("folded_tasks").asInt(), is(5));
+    }
+
+    private JsonNode writeJson(GraphvizWorkflowVisualizer visualizer, List<WorkflowVisualizerNode> nodes)
+            throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        visualizer.writeJson(nodes, out);
+        return mapper.readTree(out.toByteArray());
+    }
+
+    // +wf > +group > +task_0 -> +task_1 -> ... -> +task_{n-1}
+    private static List<WorkflowVisualizerNode> sequentialWorkflow(int n)
+    {
+        List<WorkflowVisualizerNode> nodes = new ArrayList<>();
+        nodes.add(node(0, "+wf", Optional.absent(), ImmutableList.of()));
+        nodes.add(node(1, "+group", Optional.of(0L), ImmutableList.of()));
+        for (int i = 0; i < n; i++) {
+            long id = i + 2;
+            nodes.add(node(id, "+task_" + i, Optional.of(1L),
+                        (i == 0) ? ImmutableList.of() : ImmutableList.of(id - 1)));
+        }
+        return nodes;
+    }
+
+    private static WorkflowVisualizerNode node(long id, String name, Optional<Long> parentId, List<Long> upstreamIds)
+    {
+        return WorkflowVisualizerNode.builder()
+            .id(id)
+            .name(name)
+            .parentId(parentId)
+            .upstreamIds(upstreamIds)
+            .state(TaskStateCode.BLOCKED)
+            .build();
+    }
+}
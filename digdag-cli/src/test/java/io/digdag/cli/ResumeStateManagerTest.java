@@ -0,0 +1,249 @@
+package io.digdag.cli;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import io.digdag.client.DigdagClient;
+import io.digdag.client.config.Config;
+import io.digdag.client.config.ConfigFactory;
+import io.digdag.core.database.TransactionManager;
+import io.digdag.core.session.ArchivedTask;
+import io.digdag.core.session.SessionStore;
+import io.digdag.core.session.SessionStoreManager;
+import io.digdag.core.session.StoredSessionAttemptWithSession;
+import io.digdag.core.session.TaskStateCode;
+import io.digdag.spi.TaskReport;
+import io.digdag.spi.TaskResult;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static io.digdag.cli.ResumeStateManager.JOURNAL_FILE_NAME;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ResumeStateManagerTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ObjectMapper mapper;
+    private ConfigFactory cf;
+    private YamlMapper yamlMapper;
+    private SessionStore sessionStore;
+    private SessionStoreManager sessionStoreManager;
+    private TransactionManager tm;
+    private ResumeStateManager manager;
+    private Path dir;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp()
+            throws Exception
+    {
+        mapper = DigdagClient.objectMapper();
+        cf = new ConfigFactory(mapper);
+        yamlMapper = new YamlMapper(mapper);
+
+        sessionStore = mock(SessionStore.class);
+        sessionStoreManager = mock(SessionStoreManager.class);
+        when(sessionStoreManager.getSessionStore(anyInt())).thenReturn(sessionStore);
+
+        tm = mock(TransactionManager.class);
+        when(tm.begin(any(TransactionManager.SupplierInTransaction.class))).thenAnswer(invocation ->
+                ((TransactionManager.SupplierInTransaction) invocation.getArguments()[0]).get());
+
+        manager = new ResumeStateManager(cf, sessionStoreManager, tm, yamlMapper, mapper);
+        dir = folder.newFolder("session").toPath();
+    }
+
+    @After
+    public void shutdown()
+    {
+        manager.shutdown();
+    }
+
+    @Test
+    public void readLastEntrySkippingBrokenLines()
+            throws Exception
+    {
+        writeJournal(
+                journalLine("+a", TaskStateCode.SUCCESS, "v1"),
+                "{\"fullName\":\"+b\",\"sta",
+                journalLine("+b", TaskStateCode.SUCCESS, "v1"),
+                journalLine("+a", TaskStateCode.SUCCESS, "v2"),
+                journalLine("+c", TaskStateCode.ERROR, "v1"));
+
+        assertThat(storedParam(manager.readSuccessfulTaskReport(dir, "+a")), is("v2"));
+        assertThat(storedParam(manager.readSuccessfulTaskReport(dir, "+b")), is("v1"));
+        assertThat(manager.readSuccessfulTaskReport(dir, "+c"), is(nullValue()));
+        assertThat(manager.readSuccessfulTaskReport(dir, "+d"), is(nullValue()));
+    }
+
+    @Test
+    public void fallbackToYamlFiles()
+            throws Exception
+    {
+        writeJournal(journalLine("+a", TaskStateCode.SUCCESS, "journal"));
+        yamlMapper.writeFile(dir.resolve("+a.yml").toFile(), state("+a", TaskStateCode.SUCCESS, "yaml"));
+        yamlMapper.writeFile(dir.resolve("+b.yml").toFile(), state("+b", TaskStateCode.SUCCESS, "yaml"));
+
+        // journal has priority
+        assertThat(storedParam(manager.readSuccessfulTaskReport(dir, "+a")), is("journal"));
+        assertThat(storedParam(manager.readSuccessfulTaskReport(dir, "+b")), is("yaml"));
+    }
+
+    @Test
+    public void readJournalTaskNames()
+            throws Exception
+    {
+        assertThat(ResumeStateManager.readJournalTaskNames(dir).isEmpty(), is(true));
+
+        writeJournal(
+                journalLine("+wf+a", TaskStateCode.SUCCESS, "v1"),
+                "broken",
+                "",
+                journalLine("+wf+b", TaskStateCode.SUCCESS, "v1"));
+
+        assertThat(ResumeStateManager.readJournalTaskNames(dir), contains("+wf+a", "+wf+b"));
+    }
+
+    @Test
+    public void repairMissingNewLineBeforeAppending()
+            throws Exception
+    {
+        // left by a run killed while writing a line
+        Files.write(dir.resolve(JOURNAL_FILE_NAME),
+                (journalLine("+a", TaskStateCode.SUCCESS, "v1") + "\n{\"fullName\":\"+b\"").getBytes(UTF_8));
+
+        when(sessionStore.getTasksOfAttempt(anyLong())).thenReturn(ImmutableList.of(
+                    task(1, "+c", TaskStateCode.SUCCESS, "v1")));
+        manager.startUpdate(dir, attempt());
+        manager.sync();
+        manager.shutdown();
+
+        // the broken line is terminated so that the appended line is readable
+        assertThat(ResumeStateManager.readJournalTaskNames(dir), contains("+a", "+c"));
+        ResumeStateManager reader = newManager();
+        assertThat(storedParam(reader.readSuccessfulTaskReport(dir, "+a")), is("v1"));
+        assertThat(storedParam(reader.readSuccessfulTaskReport(dir, "+c")), is("v1"));
+    }
+
+    @Test
+    public void resumedTasksAreNotAppendedAgain()
+            throws Exception
+    {
+        writeJournal(journalLine("+a", TaskStateCode.SUCCESS, "v1"));
+
+        // Run reads the journal to skip +a
+        assertThat(storedParam(manager.readSuccessfulTaskReport(dir, "+a")), is("v1"));
+
+        when(sessionStore.getTasksOfAttempt(anyLong())).thenReturn(ImmutableList.of(
+                    task(1, "+a", TaskStateCode.SUCCESS, "v1"),
+                    task(2, "+b", TaskStateCode.SUCCESS, "v1"),
+                    task(3, "+c", TaskStateCode.ERROR, "v1")));
+        manager.startUpdate(dir, attempt());
+        manager.sync();
+        manager.sync();
+        manager.shutdown();
+
+        assertThat(ResumeStateManager.readJournalTaskNames(dir), contains("+a", "+b"));
+    }
+
+    @Test
+    public void rerunTasksOverwriteSavedStates()
+            throws Exception
+    {
+        // first run
+        when(sessionStore.getTasksOfAttempt(anyLong())).thenReturn(ImmutableList.of(
+                    task(1, "+a", TaskStateCode.SUCCESS, "v1"),
+                    task(2, "+b", TaskStateCode.SUCCESS, "v1")));
+        manager.startUpdate(dir, attempt());
+        manager.sync();
+        manager.shutdown();
+
+        // rerun of +b. +a is resumed
+        ResumeStateManager rerun = new ResumeStateManager(cf, sessionStoreManager, tm, yamlMapper, mapper);
+        assertThat(storedParam(rerun.readSuccessfulTaskReport(dir, "+a")), is("v1"));
+        when(sessionStore.getTasksOfAttempt(anyLong())).thenReturn(ImmutableList.of(
+                    task(1, "+a", TaskStateCode.SUCCESS, "v1"),
+                    task(2, "+b", TaskStateCode.SUCCESS, "v2")));
+        rerun.startUpdate(dir, attempt());
+        rerun.sync();
+        rerun.shutdown();
+
+        // resume uses the result of the rerun
+        assertThat(ResumeStateManager.readJournalTaskNames(dir), contains("+a", "+b", "+b"));
+        ResumeStateManager resume = newManager();
+        assertThat(storedParam(resume.readSuccessfulTaskReport(dir, "+a")), is("v1"));
+        assertThat(storedParam(resume.readSuccessfulTaskReport(dir, "+b")), is("v2"));
+    }
+
+    private ResumeStateManager newManager()
+    {
+        return new ResumeStateManager(cf, null, null, yamlMapper, mapper);
+    }
+
+    private void writeJournal(String... lines)
+            throws IOException
+    {
+        Files.write(dir.resolve(JOURNAL_FILE_NAME), ImmutableList.copyOf(lines), UTF_8);
+    }
+
+    private String journalLine(String fullName, TaskStateCode state, String value)
+            throws IOException
+    {
+        return mapper.writeValueAsString(state(fullName, state, value));
+    }
+
+    private TaskResumeState state(String fullName, TaskStateCode state, String value)
+    {
+        return TaskResumeState.of(fullName, state, TaskResult.builder()
+                .subtaskConfig(cf.create())
+                .exportParams(cf.create())
+                .storeParams(cf.create().set("value", value))
+                .report(TaskReport.empty())
+                .build());
+    }
+
+    private static String storedParam(TaskResult result)
+    {
+        return result.getStoreParams().get("value", String.class);
+    }
+
+    private ArchivedTask task(long id, String fullName, TaskStateCode state, String value)
+    {
+        Config empty = cf.create();
+        ArchivedTask task = mock(ArchivedTask.class);
+        when(task.getId()).thenReturn(id);
+        when(task.getFullName()).thenReturn(fullName);
+        when(task.getState()).thenReturn(state);
+        when(task.getSubtaskConfig()).thenReturn(empty);
+        when(task.getExportParams()).thenReturn(empty);
+        when(task.getStoreParams()).thenReturn(cf.create().set("value", value));
+        when(task.getReport()).thenReturn(Optional.absent());
+        return task;
+    }
+
+    private static StoredSessionAttemptWithSession attempt()
+    {
+        StoredSessionAttemptWithSession attempt = mock(StoredSessionAttemptWithSession.class);
+        when(attempt.getSiteId()).thenReturn(0);
+        when(attempt.getId()).thenReturn(1L);
+        return attempt;
+    }
+}
@@ -0,0 +1,124 @@
+package io.digdag.cli.client;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import io.digdag.core.archive.ProjectArchiveLoader;
+import io.digdag.core.config.ConfigLoaderManager;
+import io.digdag.core.config.YamlConfigLoader;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static io.digdag.client.config.ConfigUtils.configFactory;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertThat;
+
+public class ArchiverTest
+{
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private Archiver archiver;
+
+    @Before
+    public void setUp()
+    {
+        ProjectArchiveLoader loader = new ProjectArchiveLoader(
+                new ConfigLoaderManager(configFactory, new YamlConfigLoader()));
+        archiver = new Archiver(new PrintStream(ByteStreams.nullOutputStream()), loader, configFactory);
+    }
+
+    @Test
+    public void archiveIsReproducible()
+            throws IOException
+    {
+        Path project1 = folder.newFolder("project1").toPath();
+        writeFile(project1, "wf.dig", "+a: {echo>: a}", 1000L);
+        writeFile(project1, "scripts/b.sh", "echo b", 2000L);
+        writeFile(project1, "scripts/a.sh", "echo a", 3000L);
+
+        // same contents written in different order with different modification time
+        Path project2 = folder.newFolder("project2").toPath();
+        writeFile(project2, "scripts/a.sh", "echo a", 9000L);
+        writeFile(project2, "scripts/b.sh", "echo b", 8000L);
+        writeFile(project2, "wf.dig", "+a: {echo>: a}", 7000L);
+
+        Path archive1 = folder.getRoot().toPath().resolve("archive1.tar.gz");
+        Path archive2 = folder.getRoot().toPath().resolve("archive2.tar.gz");
+        Path archive3 = folder.getRoot().toPath().resolve("archive3.tar.gz");
+        assertThat(archiver.createArchive(project1, archive1, false), contains("wf.dig"));
+        archiver.createArchive(project2, archive2, false);
+        // run twice on the same directory
+        archiver.createArchive(project1, archive3, false);
+
+        assertThat(md5(archive1), is(md5(archive2)));
+        assertThat(md5(archive1), is(md5(archive3)));
+
+        assertThat(entryNames(archive1), is(ImmutableList.of("scripts/a.sh", "scripts/b.sh", "wf.dig")));
+    }
+
+    @Test
+    public void archiveChangesWithContents()
+            throws IOException
+    {
+        Path project = folder.newFolder("project").toPath();
+        writeFile(project, "wf.dig", "+a: {echo>: a}", 1000L);
+
+        Path archive1 = folder.getRoot().toPath().resolve("archive1.tar.gz");
+        archiver.createArchive(project, archive1, false);
+
+        writeFile(project, "wf.dig", "+a: {echo>: b}", 1000L);
+        Path archive2 = folder.getRoot().toPath().resolve("archive2.tar.gz");
+        archiver.createArchive(project, archive2, false);
+
+        assertThat(md5(archive1), is(not(md5(archive2))));
+    }
+
+    private static void writeFile(Path dir, String name, String content, long mtimeMillis)
+            throws IOException
+    {
+        Path path = dir.resolve(name);
+        Files.createDirectories(path.getParent());
+        Files.write(path, content.getBytes(UTF_8));
+        Files.setLastModifiedTime(path, FileTime.fromMillis(mtimeMillis));
+    }
+
+    private static HashCode md5(Path path)
+            throws IOException
+    {
+        return com.google.common.io.Files.asByteSource(path.toFile()).hash(Hashing.md5());
+    }
+
+    private static List<String> entryNames(Path archive)
+            throws IOException
+    {
+        List<String> names = new ArrayList<>();
+        try (InputStream in = Files.newInputStream(archive);
+                TarArchiveInputStream tar = new TarArchiveInputStream(new GzipCompressorInputStream(in))) {
+            TarArchiveEntry entry;
+            while ((entry = tar.getNextTarEntry()) != null) {
+                assertThat(entry.getModTime().getTime(), is(0L));
+                names.add(entry.getName());
+            }
+        }
+        return names;
+    }
+}
@@ -0,0 +1,67 @@
+package io.digdag.cli.client;
+
+import com.google.common.io.ByteStreams;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class ParallelGzipOutputStreamTest
+{
+    @Test
+    public void readableByGzipDecoder()
+            throws IOException
+    {
+        for (int size : new int[] {0, 1, 1000, 64 * 1024, 64 * 1024 + 1, 1024 * 1024}) {
+            byte[] data = randomText(size);
+            byte[] compressed = compress(data, 4, 64 * 1024);
+            assertThat(decompress(compressed), is(data));
+        }
+    }
+
+    @Test
+    public void outputDoesNotDependOnThreads()
+            throws IOException
+    {
+        byte[] data = randomText(1024 * 1024);
+        assertThat(compress(data, 1, 16 * 1024), is(compress(data, 8, 16 * 1024)));
+    }
+
+    private static byte[] randomText(int size)
+    {
+        Random random = new Random(size);
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) {
+            data[i] = (byte) ('a' + random.nextInt(8));
+        }
+        return data;
+    }
+
+    private static byte[] compress(byte[] data, int threads, int blockSize)
+            throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ParallelGzipOutputStream gz = new ParallelGzipOutputStream(out, threads, blockSize, Deflater.DEFAULT_COMPRESSION)) {
+            // write in chunks not aligned to blocks
+            for (int off = 0; off < data.length; off += 1000) {
+                gz.write(data, off, Math.min(1000, data.length - off));
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] decompress(byte[] compressed)
+            throws IOException
+    {
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            return ByteStreams.toByteArray(in);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package io.digdag.cli.client;
+
+import com.google.common.base.Optional;
+import com.google.common.hash.Hashing;
+import io.digdag.client.DigdagClient;
+import io.digdag.client.api.Id;
+import io.digdag.client.api.RestProject;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.ws.rs.NotFoundException;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class PushTest
+{
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private DigdagClient client;
+    private Path archive;
+
+    @Before
+    public void setUp()
+            throws IOException
+    {
+        client = mock(DigdagClient.class);
+        archive = folder.newFile("archive.tar.gz").toPath();
+        Files.write(archive, "archive".getBytes(UTF_8));
+    }
+
+    @Test
+    public void skipIfArchiveMd5Matches()
+            throws IOException
+    {
+        byte[] md5 = Hashing.md5().hashBytes("archive".getBytes(UTF_8)).asBytes();
+        when(client.getProject("proj1")).thenReturn(project(Optional.of(md5)));
+
+        assertThat(Push.findUnchangedProject(client, "proj1", archive).isPresent(), is(true));
+    }
+
+    @Test
+    public void uploadIfArchiveMd5Differs()
+            throws IOException
+    {
+        byte[] md5 = Hashing.md5().hashBytes("changed".getBytes(UTF_8)).asBytes();
+        when(client.getProject("proj1")).thenReturn(project(Optional.of(md5)));
+
+        assertThat(Push.findUnchangedProject(client, "proj1", archive).isPresent(), is(false));
+    }
+
+    @Test
+    public void uploadIfArchiveMd5IsUnknown()
+            throws IOException
+    {
+        when(client.getProject("proj1")).thenReturn(project(Optional.absent()));
+
+        assertThat(Push.findUnchangedProject(client, "proj1", archive).isPresent(), is(false));
+    }
+
+    @Test
+    public void uploadIfProjectDoesNotExist()
+            throws IOException
+    {
+        when(client.getProject("proj1")).thenThrow(new NotFoundException());
+
+        assertThat(Push.findUnchangedProject(client, "proj1", archive).isPresent(), is(false));
+    }
+
+    private static RestProject project(Optional<byte[]> archiveMd5)
+    {
+        return RestProject.builder()
+            .id(Id.of("1"))
+            .name("proj1")
+            .revision("rev1")
+            .createdAt(Instant.ofEpochSecond(1))
+            .updatedAt(Instant.ofEpochSecond(1))
+            .deletedAt(Optional.absent())
+            .archiveType("db")
+            .archiveMd5(archiveMd5)
+            .build();
+    }
+}
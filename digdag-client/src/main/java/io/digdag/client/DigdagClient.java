@@ -4,6 +4,7 @@ import com.fasterxml.jackson.annotation.JsonValue;
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.InjectableValues;
+import com.fasterxml.jackson.databind.JavaType;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.guava.GuavaModule;
 import com.fasterxml.jackson.jaxrs.json.JacksonJsonProvider;
@@ -15,7 +16,9 @@ import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
 import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import io.digdag.client.api.Id;
+import io.digdag.client.api.RestAttemptStatusCollection;
 import io.digdag.client.api.JacksonTimeModule;
 import io.digdag.client.api.LocalTimeOrInstant;
 import io.digdag.client.api.RestLogFileHandle;
@@ -52,6 +55,7 @@ import org.jboss.resteasy.plugins.interceptors.encoding.GZIPDecodingInterceptor;
 import org.jboss.resteasy.plugins.interceptors.encoding.GZIPEncodingInterceptor;
 
 import javax.ws.rs.NotFoundException;
+import javax.ws.rs.ProcessingException;
 import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.client.Client;
 import javax.ws.rs.client.ClientRequestContext;
@@ -75,7 +79,10 @@ import java.time.LocalDateTime;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.function.Function;
 import java.util.function.Supplier;
 
@@ -85,6 +92,8 @@ import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Predicates.not;
 import static io.digdag.client.DigdagVersion.buildVersion;
 import static java.util.Locale.ENGLISH;
+import static javax.ws.rs.core.HttpHeaders.ETAG;
+import static javax.ws.rs.core.HttpHeaders.IF_NONE_MATCH;
 import static javax.ws.rs.core.HttpHeaders.USER_AGENT;
 import static javax.ws.rs.core.Response.Status.Family.SUCCESSFUL;
 import static org.jboss.resteasy.client.jaxrs.internal.ClientInvocation.handleErrorStatus;
@@ -94,6 +103,7 @@ public class DigdagClient implements AutoCloseable
     private static final int TOO_MANY_REQUESTS_429 = 429;
     private static final int REQUEST_TIMEOUT_408 = 408;
     private static final int MAX_REDIRECT = 10;
+    private static final int NOT_MODIFIED_304 = 304;
 
     public static class Builder
     {
@@ -107,6 +117,8 @@ public class DigdagClient implements AutoCloseable
         private Function<Map<String, String>, Map<String, String>> headerBuilder = null;
         private boolean disableCertValidation;
         private boolean disableDirectDownload = false;
+        private long conditionalRequestCacheSize = 0;
+        private int connectionPoolSize = 10;
 
         public Builder host(String host)
         {
@@ -174,6 +186,25 @@ public class DigdagClient implements AutoCloseable
             return this;
         }
 
+        /**
+         * Enables conditional GET requests. Response bodies with ETag are
+         * cached up to this number of bytes in total, and the server returns
+         * 304 Not Modified if the body is not changed. 0 disables it.
+         */
+        public Builder conditionalRequestCacheSize(long bytes)
+        {
+            Preconditions.checkArgument(bytes >= 0, "conditionalRequestCacheSize must not be negative");
+            this.conditionalRequestCacheSize = bytes;
+            return this;
+        }
+
+        public Builder connectionPoolSize(int connectionPoolSize)
+        {
+            Preconditions.checkArgument(connectionPoolSize > 0, "connectionPoolSize must be positive");
+            this.connectionPoolSize = connectionPoolSize;
+            return this;
+        }
+
         public DigdagClient build()
         {
             return new DigdagClient(this);
@@ -205,8 +236,13 @@ public class DigdagClient implements AutoCloseable
     private final Supplier<MultivaluedMap<String, Object>> headers;
 
     private final Client client;
+    private final ObjectMapper mapper;
     private final ConfigFactory cf;
     private final boolean disableDirectDownload;
+    private final Optional<EntityTagCache> entityTagCache;
+    private final int asyncPoolSize;
+    private ExecutorService asyncExecutor = null;  // created at the first async call
+    private boolean closed = false;
 
     private DigdagClient(Builder builder)
     {
@@ -242,9 +278,13 @@ public class DigdagClient implements AutoCloseable
             this.headers = () -> staticHeaders;
         }
 
-        ObjectMapper mapper = objectMapper();
+        this.mapper = objectMapper();
 
         ResteasyClientBuilder clientBuilder = new ResteasyClientBuilder()
+                // reuse keep-alive connections across requests and allow concurrent
+                // requests from async methods
+                .connectionPoolSize(builder.connectionPoolSize)
+                .maxPooledPerRoute(builder.connectionPoolSize)
                 .register(AcceptEncodingGZIPFilter.class)
                 .register(GZIPDecodingInterceptor.class)
                 .register(GZIPEncodingInterceptor.class)
@@ -274,11 +314,25 @@ public class DigdagClient implements AutoCloseable
 
         this.disableDirectDownload = builder.disableDirectDownload;
 
+        if (builder.conditionalRequestCacheSize > 0) {
+            this.entityTagCache = Optional.of(new EntityTagCache(builder.conditionalRequestCacheSize));
+        }
+        else {
+            this.entityTagCache = Optional.absent();
+        }
+
+        this.asyncPoolSize = builder.connectionPoolSize;
     }
 
     @Override
     public void close()
     {
+        synchronized (this) {
+            closed = true;
+            if (asyncExecutor != null) {
+                asyncExecutor.shutdownNow();
+            }
+        }
         client.close();
     }
 
@@ -639,6 +693,33 @@ public class DigdagClient implements AutoCloseable
                 .resolveTemplate("id", attemptId));
     }
 
+    public RestAttemptStatusCollection getAttemptStatuses(List<Id> attemptIds)
+    {
+        if (attemptIds.isEmpty()) {
+            // server returns statuses of recent attempts if no ids are given
+            return RestAttemptStatusCollection.builder().build();
+        }
+        return doGet(RestAttemptStatusCollection.class,
+                target("/api/attempts/status")
+                .queryParam("attempt_id", attemptIds.stream().map(Id::get).toArray()));
+    }
+
+    public RestAttemptStatusCollection getAttemptStatuses(
+            Optional<String> projName, Optional<String> workflowName,
+            Optional<Instant> fromTime, Optional<Instant> toTime, Optional<String> status,
+            Optional<Id> lastId, Optional<Integer> pageSize)
+    {
+        return doGet(RestAttemptStatusCollection.class,
+                target("/api/attempts/status")
+                .queryParam("project", projName.orNull())
+                .queryParam("workflow", workflowName.orNull())
+                .queryParam("from_time", fromTime.transform(Instant::toString).orNull())
+                .queryParam("to_time", toTime.transform(Instant::toString).orNull())
+                .queryParam("status", status.orNull())
+                .queryParam("last_id", lastId.orNull())
+                .queryParam("page_size", pageSize.orNull()));
+    }
+
     public RestTaskCollection getTasks(Id attemptId)
     {
         return doGet(RestTaskCollection.class,
@@ -669,6 +750,87 @@ public class DigdagClient implements AutoCloseable
         }
     }
 
+    /**
+     * Waits until number or total size of log files of the attempt becomes larger
+     * than given numbers, or the attempt finishes, or timeout. Returns the
+     * current list of log files.
+     *
+     * Servers older than this client don't support this method and throw
+     * NotFoundException. Servers throw ServiceUnavailableException when they
+     * shut down while waiting.
+     */
+    public RestLogFileHandleCollection followLogFileHandles(Id attemptId, Optional<String> taskName,
+            int knownFiles, long knownSize, int timeoutSeconds)
+    {
+        try {
+            WebTarget webTarget = target("/api/logs/{id}/follow")
+                    .resolveTemplate("id", attemptId)
+                    .queryParam("known_files", knownFiles)
+                    .queryParam("known_size", knownSize)
+                    .queryParam("timeout", timeoutSeconds);
+            if (taskName.isPresent()) {
+                webTarget = webTarget.queryParam("task", URLEncoder.encode(taskName.get(), "UTF-8"));
+            }
+            webTarget = addDisableDirectDownloadParam(webTarget);
+
+            return doGet(RestLogFileHandleCollection.class, webTarget);
+        } catch (UnsupportedEncodingException ex) {
+            throw Throwables.propagate(ex);
+        }
+    }
+
+    public CompletableFuture<RestSessionCollection> getSessionsAsync(Optional<Id> lastId)
+    {
+        return supplyAsync(() -> getSessions(lastId));
+    }
+
+    public CompletableFuture<RestSessionAttemptCollection> getSessionAttemptsAsync(Optional<Id> lastId, Optional<Integer> pageSize)
+    {
+        return supplyAsync(() -> getSessionAttempts(lastId, pageSize));
+    }
+
+    public CompletableFuture<RestSessionAttempt> getSessionAttemptAsync(Id attemptId)
+    {
+        return supplyAsync(() -> getSessionAttempt(attemptId));
+    }
+
+    public CompletableFuture<RestTaskCollection> getTasksAsync(Id attemptId)
+    {
+        return supplyAsync(() -> getTasks(attemptId));
+    }
+
+    public CompletableFuture<RestLogFileHandleCollection> getLogFileHandlesOfAttemptAsync(Id attemptId)
+    {
+        return supplyAsync(() -> getLogFileHandlesOfAttempt(attemptId));
+    }
+
+    public CompletableFuture<RestLogFileHandleCollection> getLogFileHandlesOfTaskAsync(Id attemptId, String taskName)
+    {
+        return supplyAsync(() -> getLogFileHandlesOfTask(attemptId, taskName));
+    }
+
+    private <T> CompletableFuture<T> supplyAsync(Supplier<T> call)
+    {
+        // number of threads is same as the connection pool size so that
+        // async calls don't wait for connections
+        return CompletableFuture.supplyAsync(call, getAsyncExecutor());
+    }
+
+    private synchronized ExecutorService getAsyncExecutor()
+    {
+        if (closed) {
+            throw new IllegalStateException("DigdagClient is already closed");
+        }
+        if (asyncExecutor == null) {
+            asyncExecutor = Executors.newFixedThreadPool(asyncPoolSize,
+                    new ThreadFactoryBuilder()
+                    .setDaemon(true)
+                    .setNameFormat("digdag-client-%d")
+                    .build());
+        }
+        return asyncExecutor;
+    }
+
     public InputStream getLogFile(Id attemptId, RestLogFileHandle handle)
     {
         if (handle.getDirect().isPresent()) {
@@ -706,6 +868,11 @@ public class DigdagClient implements AutoCloseable
     }
 
     private Response invokeWithRetry(Invocation request)
+    {
+        return invokeWithRetry(request, false);
+    }
+
+    private Response invokeWithRetry(Invocation request, boolean acceptNotModified)
     {
         Retryer<Response> retryer = RetryerBuilder.<Response>newBuilder()
                 .retryIfException(not(DigdagClient::isDeterministicError))
@@ -716,6 +883,9 @@ public class DigdagClient implements AutoCloseable
         try {
             return retryer.call(() -> {
                 Response res = request.invoke();
+                if (acceptNotModified && res.getStatus() == NOT_MODIFIED_304) {
+                    return res;
+                }
                 if (res.getStatusInfo().getFamily() != SUCCESSFUL) {
                     res.close();
                     return handleErrorStatus(res);
@@ -938,16 +1108,63 @@ public class DigdagClient implements AutoCloseable
 
     private <T> T doGet(GenericType<T> type, WebTarget target)
     {
-        return invokeWithRetry(target.request("application/json")
-            .headers(headers.get())
-            .buildGet()).readEntity(type);
+        if (!entityTagCache.isPresent()) {
+            return invokeWithRetry(target.request("application/json")
+                .headers(headers.get())
+                .buildGet()).readEntity(type);
+        }
+        return readJson(doConditionalGet(target), mapper.getTypeFactory().constructType(type.getType()));
     }
 
     private <T> T doGet(Class<T> type, WebTarget target)
     {
-        return invokeWithRetry(target.request("application/json")
-            .headers(headers.get())
-            .buildGet()).readEntity(type);
+        if (!entityTagCache.isPresent()) {
+            return invokeWithRetry(target.request("application/json")
+                .headers(headers.get())
+                .buildGet()).readEntity(type);
+        }
+        return readJson(doConditionalGet(target), mapper.getTypeFactory().constructType(type));
+    }
+
+    private byte[] doConditionalGet(WebTarget target)
+    {
+        EntityTagCache cache = entityTagCache.get();
+        String uri = target.getUri().toString();
+        Optional<EntityTagCache.Entry> cached = cache.get(uri);
+
+        Invocation.Builder request = target.request("application/json")
+            .headers(headers.get());
+        if (cached.isPresent()) {
+            request.header(IF_NONE_MATCH, cached.get().getEntityTag());
+        }
+
+        Response res = invokeWithRetry(request.buildGet(), cached.isPresent());
+        if (res.getStatus() == NOT_MODIFIED_304) {
+            res.close();
+            return cached.get().getBody();
+        }
+
+        String entityTag = res.getHeaderString(ETAG);
+        byte[] body = res.readEntity(byte[].class);
+        if (entityTag != null) {
+            cache.put(uri, entityTag, body);
+        }
+        else {
+            cache.remove(uri);
+        }
+        return body;
+    }
+
+    private <T> T readJson(byte[] body, JavaType type)
+    {
+        // deserialize for each call rather than caching objects because
+        // some models such as Config are mutable
+        try {
+            return mapper.readValue(body, type);
+        }
+        catch (IOException ex) {
+            throw new ProcessingException(ex);
+        }
     }
 
     private <T> T doPut(Class<T> type, String contentType, Object body, WebTarget target)
@@ -0,0 +1,81 @@
+package io.digdag.client;
+
+import com.google.common.base.Optional;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * LRU cache of response bodies of GET requests with their ETag values.
+ * DigdagClient sends the cached ETag as If-None-Match header and reuses
+ * the cached body if the server returns 304 Not Modified.
+ *
+ * Size of the cache is limited by the total bytes of bodies.
+ */
+class EntityTagCache
+{
+    static class Entry
+    {
+        private final String entityTag;
+        private final byte[] body;
+
+        Entry(String entityTag, byte[] body)
+        {
+            this.entityTag = entityTag;
+            this.body = body;
+        }
+
+        String getEntityTag()
+        {
+            return entityTag;
+        }
+
+        byte[] getBody()
+        {
+            return body;
+        }
+    }
+
+    private final long maxBytes;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes = 0;
+
+    EntityTagCache(long maxBytes)
+    {
+        this.maxBytes = maxBytes;
+    }
+
+    synchronized Optional<Entry> get(String uri)
+    {
+        return Optional.fromNullable(entries.get(uri));
+    }
+
+    synchronized void put(String uri, String entityTag, byte[] body)
+    {
+        remove(uri);
+        if (body.length > maxBytes) {
+            return;
+        }
+        entries.put(uri, new Entry(entityTag, body));
+        totalBytes += body.length;
+
+        Iterator<Entry> ite = entries.values().iterator();
+        while (totalBytes > maxBytes) {
+            totalBytes -= ite.next().getBody().length;
+            ite.remove();
+        }
+    }
+
+    synchronized void remove(String uri)
+    {
+        Entry removed = entries.remove(uri);
+        if (removed != null) {
+            totalBytes -= removed.getBody().length;
+        }
+    }
+
+    synchronized long getTotalBytes()
+    {
+        return totalBytes;
+    }
+}
@@ -0,0 +1,38 @@
+package io.digdag.client.api;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.google.common.base.Optional;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.util.Map;
+import org.immutables.value.Value;
+
+@Value.Immutable
+@JsonDeserialize(as = ImmutableRestAttemptStatus.class)
+public interface RestAttemptStatus
+{
+    Id getId();
+
+    IdAndName getProject();
+
+    NameOptionalId getWorkflow();
+
+    OffsetDateTime getSessionTime();
+
+    Optional<String> getRetryAttemptName();
+
+    // one of "running", "success", "error" or "killed"
+    String getStatus();
+
+    Instant getCreatedAt();
+
+    Optional<Instant> getFinishedAt();
+
+    // number of tasks by task state. Empty if tasks of the attempt are already archived.
+    Map<String, Long> getTaskCounts();
+
+    static ImmutableRestAttemptStatus.Builder builder()
+    {
+        return ImmutableRestAttemptStatus.builder();
+    }
+}
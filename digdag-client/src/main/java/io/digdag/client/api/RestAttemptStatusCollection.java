@@ -0,0 +1,17 @@
+package io.digdag.client.api;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import java.util.List;
+import org.immutables.value.Value;
+
+@Value.Immutable
+@JsonDeserialize(as = ImmutableRestAttemptStatusCollection.class)
+public interface RestAttemptStatusCollection
+{
+    List<RestAttemptStatus> getAttempts();
+
+    static ImmutableRestAttemptStatusCollection.Builder builder()
+    {
+        return ImmutableRestAttemptStatusCollection.builder();
+    }
+}
@@ -6,6 +6,7 @@ import io.digdag.client.api.Id;
 import io.digdag.client.api.RestDirectDownloadHandle;
 import io.digdag.client.api.RestLogFileHandle;
 import io.digdag.client.api.RestLogFileHandleCollection;
+import io.digdag.client.api.RestTaskCollection;
 import okhttp3.mockwebserver.MockResponse;
 import okhttp3.mockwebserver.MockWebServer;
 import okhttp3.mockwebserver.QueueDispatcher;
@@ -24,17 +25,21 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.time.Instant;
+import java.util.concurrent.TimeUnit;
 
 import static io.digdag.client.DigdagVersion.buildVersion;
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.time.temporal.ChronoUnit.SECONDS;
 import static javax.ws.rs.core.HttpHeaders.ACCEPT_ENCODING;
 import static javax.ws.rs.core.HttpHeaders.CONTENT_TYPE;
+import static javax.ws.rs.core.HttpHeaders.ETAG;
+import static javax.ws.rs.core.HttpHeaders.IF_NONE_MATCH;
 import static javax.ws.rs.core.HttpHeaders.USER_AGENT;
 import static javax.ws.rs.core.MediaType.APPLICATION_JSON;
 import static javax.ws.rs.core.MediaType.TEXT_PLAIN;
 import static okhttp3.tls.internal.TlsUtil.localhost;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
@@ -275,6 +280,75 @@ public class DigdagClientTest
         assertThat(mockWebServer.getRequestCount(), is(10));
     }
 
+    @Test
+    public void conditionalGetReusesCachedResponse()
+            throws Exception
+    {
+        RestLogFileHandleCollection expectedLogFileHandles = RestLogFileHandleCollection.builder()
+                .addFiles(
+                        RestLogFileHandle.builder()
+                                .agentId("test-agent")
+                                .fileName("test-task-1.log")
+                                .fileSize(4711)
+                                .fileTime(Instant.now().truncatedTo(SECONDS))
+                                .taskName("test-task-1")
+                                .build()
+                ).build();
+
+        mockWebServer.enqueue(new MockResponse()
+                .setBody(objectMapper.writeValueAsString(expectedLogFileHandles))
+                .setHeader(CONTENT_TYPE, APPLICATION_JSON)
+                .setHeader(ETAG, "\"v1\""));
+        mockWebServer.enqueue(new MockResponse().setResponseCode(304));
+
+        try (DigdagClient conditionalClient = DigdagClient.builder()
+                .disableCertValidation(true)
+                .ssl(true)
+                .host(mockWebServer.getHostName())
+                .port(mockWebServer.getPort())
+                .conditionalRequestCacheSize(1024 * 1024)
+                .build()) {
+            assertThat(conditionalClient.getLogFileHandlesOfAttempt(Id.of("17")), is(expectedLogFileHandles));
+            assertThat(conditionalClient.getLogFileHandlesOfAttempt(Id.of("17")), is(expectedLogFileHandles));
+        }
+
+        assertThat(mockWebServer.getRequestCount(), is(2));
+        assertThat(mockWebServer.takeRequest().getHeader(IF_NONE_MATCH), is(nullValue()));
+        assertThat(mockWebServer.takeRequest().getHeader(IF_NONE_MATCH), is("\"v1\""));
+    }
+
+    @Test
+    public void conditionalGetIsDisabledByDefault()
+            throws Exception
+    {
+        for (int i = 0; i < 2; i++) {
+            mockWebServer.enqueue(new MockResponse()
+                    .setBody("{\"files\":[]}")
+                    .setHeader(CONTENT_TYPE, APPLICATION_JSON)
+                    .setHeader(ETAG, "\"v1\""));
+        }
+
+        client.getLogFileHandlesOfAttempt(Id.of("17"));
+        client.getLogFileHandlesOfAttempt(Id.of("17"));
+
+        assertThat(mockWebServer.takeRequest().getHeader(IF_NONE_MATCH), is(nullValue()));
+        assertThat(mockWebServer.takeRequest().getHeader(IF_NONE_MATCH), is(nullValue()));
+    }
+
+    @Test
+    public void getTasksAsync()
+            throws Exception
+    {
+        mockWebServer.enqueue(new MockResponse()
+                .setBody("{\"tasks\":[]}")
+                .setHeader(CONTENT_TYPE, APPLICATION_JSON));
+
+        RestTaskCollection tasks = client.getTasksAsync(Id.of("17")).get(10, TimeUnit.SECONDS);
+
+        assertThat(tasks.getTasks().isEmpty(), is(true));
+        assertThat(mockWebServer.takeRequest().getPath(), is("/api/attempts/17/tasks"));
+    }
+
     @Test
     public void testUserAgent()
             throws Exception
@@ -0,0 +1,47 @@
+package io.digdag.client;
+
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class EntityTagCacheTest
+{
+    private final EntityTagCache cache = new EntityTagCache(10);
+
+    @Test
+    public void evictLeastRecentlyUsedBodiesByBytes()
+    {
+        cache.put("/a", "\"a\"", new byte[4]);
+        cache.put("/b", "\"b\"", new byte[4]);
+        assertThat(cache.get("/a").isPresent(), is(true));
+
+        // /b is the least recently used
+        cache.put("/c", "\"c\"", new byte[4]);
+        assertThat(cache.get("/a").isPresent(), is(true));
+        assertThat(cache.get("/b").isPresent(), is(false));
+        assertThat(cache.get("/c").isPresent(), is(true));
+        assertThat(cache.getTotalBytes(), is(8L));
+    }
+
+    @Test
+    public void replaceBodyOfSameUri()
+    {
+        cache.put("/a", "\"v1\"", new byte[4]);
+        cache.put("/a", "\"v2\"", new byte[6]);
+        assertThat(cache.get("/a").get().getEntityTag(), is("\"v2\""));
+        assertThat(cache.getTotalBytes(), is(6L));
+
+        cache.remove("/a");
+        assertThat(cache.getTotalBytes(), is(0L));
+    }
+
+    @Test
+    public void doNotCacheBodyLargerThanLimit()
+    {
+        cache.put("/a", "\"v1\"", new byte[4]);
+        cache.put("/a", "\"v2\"", new byte[11]);
+        assertThat(cache.get("/a").isPresent(), is(false));
+        assertThat(cache.getTotalBytes(), is(0L));
+    }
+}
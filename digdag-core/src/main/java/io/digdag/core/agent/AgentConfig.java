@@ -5,6 +5,8 @@ import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import org.immutables.value.Value;
 
+import java.util.Map;
+
 @Value.Immutable
 @JsonSerialize(as = ImmutableAgentConfig.class)
 @JsonDeserialize(as = ImmutableAgentConfig.class)
@@ -13,6 +15,7 @@ public interface AgentConfig
     static final int DEFAULT_HEARTBEAT_INTERVAL = 60;
     static final int DEFAULT_LOCK_RETENTION_TIME = 300;
     static final int DEFAULT_MAX_TASK_THREADS = 0;
+    static final String MAX_TASKS_PER_OPERATOR_PREFIX = "agent.max-tasks-per-operator.";
 
     boolean getEnabled();
 
@@ -22,6 +25,9 @@ public interface AgentConfig
 
     int getMaxThreads();
 
+    // {operator type => max number of tasks running the operator at the same time}
+    Map<String, Integer> getMaxTasksPerOperator();
+
     static ImmutableAgentConfig.Builder defaultBuilder()
     {
         return ImmutableAgentConfig.builder()
@@ -33,11 +39,19 @@ public interface AgentConfig
 
     static AgentConfig convertFrom(Config config)
     {
-        return defaultBuilder()
+        ImmutableAgentConfig.Builder builder = defaultBuilder()
             .enabled(config.get("agent.enabled", boolean.class, true))
             .heartbeatInterval(config.get("agent.heartbeat-interval", int.class, DEFAULT_HEARTBEAT_INTERVAL))
             .lockRetentionTime(config.get("agent.lock-retention-time", int.class, DEFAULT_LOCK_RETENTION_TIME))
-            .maxThreads(config.get("agent.max-task-threads", int.class, DEFAULT_MAX_TASK_THREADS))
-            .build();
+            .maxThreads(config.get("agent.max-task-threads", int.class, DEFAULT_MAX_TASK_THREADS));
+        for (String key : config.getKeys()) {
+            if (key.startsWith(MAX_TASKS_PER_OPERATOR_PREFIX)) {
+                int limit = config.get(key, int.class);
+                if (limit > 0) {
+                    builder.putMaxTasksPerOperator(key.substring(MAX_TASKS_PER_OPERATOR_PREFIX.length()), limit);
+                }
+            }
+        }
+        return builder.build();
     }
 }
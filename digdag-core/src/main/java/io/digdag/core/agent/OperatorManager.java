@@ -6,6 +6,7 @@ import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.inject.Inject;
 import com.fasterxml.jackson.databind.JsonNode;
 import io.digdag.client.config.Config;
+import io.digdag.client.config.ConfigElement;
 import io.digdag.client.config.ConfigException;
 import io.digdag.client.config.ConfigFactory;
 import io.digdag.core.Limits;
@@ -37,6 +38,7 @@ import javax.annotation.PreDestroy;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -44,6 +46,7 @@ import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 import java.util.stream.Collectors;
@@ -56,6 +59,9 @@ public class OperatorManager
 {
     private static Logger logger = LoggerFactory.getLogger(OperatorManager.class);
 
+    // Tasks over agent.max-tasks-per-operator are retried after this interval
+    private static final int OPERATOR_SLOT_RETRY_INTERVAL = 1;
+
     protected final AgentConfig agentConfig;
     protected final AgentId agentId;
     protected final TaskCallbackApi callback;
@@ -67,6 +73,7 @@ public class OperatorManager
 
     private final ScheduledExecutorService heartbeatScheduler;
     private final ConcurrentHashMap<Long, TaskRequest> runningTaskMap = new ConcurrentHashMap<>();  // {taskId => TaskRequest}
+    private final Map<String, Semaphore> operatorSlots;  // {operator type => Semaphore}
 
     @Inject(optional = true)
     private ErrorReporter errorReporter = ErrorReporter.empty();
@@ -93,6 +100,11 @@ public class OperatorManager
         this.secretStoreManager = secretStoreManager;
         this.limits = limits;
 
+        this.operatorSlots = new HashMap<>();
+        for (Map.Entry<String, Integer> pair : agentConfig.getMaxTasksPerOperator().entrySet()) {
+            operatorSlots.put(pair.getKey(), new Semaphore(pair.getValue(), true));
+        }
+
         this.heartbeatScheduler = Executors.newSingleThreadScheduledExecutor(
                 new ThreadFactoryBuilder()
                 .setDaemon(true)
@@ -362,7 +374,31 @@ public class OperatorManager
                     mergedRequest.getAttemptId(), mergedRequest.getTaskId()));
         }
 
-        return operator.run();
+        return runOperator(type, operator, mergedRequest);
+    }
+
+    private TaskResult runOperator(String type, Operator operator, TaskRequest mergedRequest)
+    {
+        Semaphore slots = operatorSlots.get(type);
+        if (slots == null) {
+            return operator.run();
+        }
+
+        if (!slots.tryAcquire()) {
+            // Don't block this thread to wait for a slot. It would keep the task
+            // thread and the task lock, and starve tasks of other operators.
+            // Instead, retry the task later with the same state as polling operators do.
+            logger.info("Other {}> tasks are running (max {} tasks at the same time). Retrying this task after {} seconds",
+                    type, agentConfig.getMaxTasksPerOperator().get(type), OPERATOR_SLOT_RETRY_INTERVAL);
+            throw TaskExecutionException.ofNextPolling(OPERATOR_SLOT_RETRY_INTERVAL,
+                    ConfigElement.copyOf(mergedRequest.getLastStateParams()));
+        }
+        try {
+            return operator.run();
+        }
+        finally {
+            slots.release();
+        }
     }
 
     private void heartbeat()
@@ -5,6 +5,8 @@ import java.util.Map;
 import java.util.List;
 import java.util.Collection;
 import java.util.stream.Collectors;
+import java.time.Duration;
+import javax.annotation.PostConstruct;
 import com.google.inject.Inject;
 import com.google.inject.Module;
 import com.google.inject.Binder;
@@ -24,6 +26,8 @@ import io.digdag.core.plugin.PluginSet;
 import io.digdag.core.plugin.PluginLoader;
 import io.digdag.core.plugin.DynamicPluginLoader;
 import io.digdag.core.plugin.Spec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class OperatorRegistry
 {
@@ -61,15 +65,22 @@ public class OperatorRegistry
         }
     }
 
+    private static final Logger logger = LoggerFactory.getLogger(OperatorRegistry.class);
+
     private final Map<String, OperatorFactory> map;
+    private final PluginLoader pluginLoader;
     private final DynamicPluginLoader<Map<String, OperatorFactory>> dynamicLoader;
+    private final int maxCacheSize;
+    private final boolean warmup;
+    private final Duration warmupPeriod;
 
     @Inject
     public OperatorRegistry(
             Set<OperatorFactory> injectedOperators,
             PluginSet.WithInjector systemPlugins,
             PluginLoader dynamicPluginLoader,
-            DynamicOperatorPluginInjectionModule dynamicLoaderModule)
+            DynamicOperatorPluginInjectionModule dynamicLoaderModule,
+            Config systemConfig)
     {
         // built-in operators are
         // the operators loaded by Extension interface (injectedOperators)
@@ -79,11 +90,44 @@ public class OperatorRegistry
         builder.putAll(buildTypeMap(injectedOperators));  // extension operators have higher priority
         this.map = builder.build();
 
+        this.pluginLoader = dynamicPluginLoader;
+        this.maxCacheSize = systemConfig.get("plugin.cache-size", int.class, 10);
         this.dynamicLoader = DynamicPluginLoader.build(
                 dynamicPluginLoader,
                 dynamicLoaderModule,
                 plugins -> buildTypeMap(loadOperatorFactories(plugins)),
-                10);
+                maxCacheSize);
+        this.warmup = systemConfig.get("plugin.warmup", boolean.class, false);
+        this.warmupPeriod = Duration.ofDays(systemConfig.get("plugin.warmup-days", int.class, 7));
+    }
+
+    @PostConstruct
+    public void warmUp()
+    {
+        if (!warmup) {
+            return;
+        }
+
+        // Load plugins used recently in background so that the first task
+        // using a plugin doesn't wait for resolving dependencies.
+        // Specs are sorted by the last used time and the most recent ones fit in the cache.
+        List<Spec> specs = pluginLoader.getSpecsLoadedWithin(warmupPeriod);
+        if (specs.isEmpty()) {
+            return;
+        }
+        Thread thread = new Thread(() -> {
+            for (Spec spec : specs.subList(0, Math.min(specs.size(), maxCacheSize))) {
+                try {
+                    dynamicLoader.preload(spec);
+                }
+                catch (RuntimeException ex) {
+                    logger.warn("Failed to load plugins {} in advance", spec.getDependencies(), ex);
+                }
+            }
+            logger.info("Loaded {} plugin sets in advance", Math.min(specs.size(), maxCacheSize));
+        }, "plugin-warmup");
+        thread.setDaemon(true);
+        thread.start();
     }
 
     public OperatorFactory get(TaskRequest request, String type)
@@ -0,0 +1,104 @@
+package io.digdag.core.archive;
+
+import com.google.common.base.Throwables;
+import com.google.inject.Inject;
+import io.digdag.client.config.Config;
+
+import javax.annotation.PreDestroy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Bounded fork-join pool to parse and validate workflow definitions of a
+ * project archive in parallel.
+ *
+ * A project pushed to a server may contain hundreds of workflow files.
+ * Parsing, compiling and validating them one by one takes long time while
+ * they're independent from each other. This pool processes them in parallel
+ * up to api.project_push_parallelism threads shared by all pushes.
+ */
+public class ArchiveWorkerPool
+{
+    private final ForkJoinPool pool;
+
+    @Inject
+    public ArchiveWorkerPool(Config systemConfig)
+    {
+        int defaultParallelism = Math.min(Runtime.getRuntime().availableProcessors(), 8);
+        int parallelism = systemConfig.get("api.project_push_parallelism", int.class, defaultParallelism);
+        this.pool = new ForkJoinPool(Math.max(parallelism, 1));
+    }
+
+    /**
+     * Applies func to all items in parallel and returns the results in the
+     * same order with items.
+     *
+     * If func throws an exception for some items, this method throws the
+     * exception of the first item in the order of items so that the error is
+     * the same with the one of sequential processing.
+     */
+    public <T, R> List<R> map(List<T> items, Function<T, R> func)
+    {
+        if (items.size() <= 1) {
+            return items.stream().map(func).collect(Collectors.toList());
+        }
+
+        List<Result<R>> results;
+        try {
+            results = pool.submit(() ->
+                    items.parallelStream()
+                        .map(item -> Result.apply(func, item))
+                        .collect(Collectors.toList())
+                ).get();
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(ex);
+        }
+        catch (ExecutionException ex) {
+            throw Throwables.propagate(ex.getCause());
+        }
+
+        List<R> values = new ArrayList<>(results.size());
+        for (Result<R> result : results) {
+            if (result.error != null) {
+                throw result.error;
+            }
+            values.add(result.value);
+        }
+        return values;
+    }
+
+    @PreDestroy
+    public void shutdown()
+    {
+        pool.shutdown();
+    }
+
+    private static class Result<R>
+    {
+        private final R value;
+        private final RuntimeException error;
+
+        private Result(R value, RuntimeException error)
+        {
+            this.value = value;
+            this.error = error;
+        }
+
+        static <T, R> Result<R> apply(Function<T, R> func, T item)
+        {
+            try {
+                return new Result<>(func.apply(item), null);
+            }
+            catch (RuntimeException ex) {
+                return new Result<>(null, ex);
+            }
+        }
+    }
+}
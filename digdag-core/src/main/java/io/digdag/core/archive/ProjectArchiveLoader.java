@@ -1,7 +1,13 @@
 package io.digdag.core.archive;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import com.google.common.base.Optional;
 import com.google.inject.Inject;
 import com.google.common.collect.ImmutableList;
 import io.digdag.client.config.Config;
@@ -28,32 +34,84 @@ public class ProjectArchiveLoader
             WorkflowResourceMatcher matcher,
             Config overrideParams)
         throws IOException
+    {
+        return load(projectDirectory, matcher, overrideParams, Optional.absent());
+    }
+
+    /**
+     * Same with load(projectDirectory, matcher, overrideParams) but parses
+     * workflow files in parallel using the pool.
+     */
+    public ProjectArchive load(
+            Path projectDirectory,
+            WorkflowResourceMatcher matcher,
+            Config overrideParams,
+            ArchiveWorkerPool pool)
+        throws IOException
+    {
+        return load(projectDirectory, matcher, overrideParams, Optional.of(pool));
+    }
+
+    private ProjectArchive load(
+            Path projectDirectory,
+            WorkflowResourceMatcher matcher,
+            Config overrideParams,
+            Optional<ArchiveWorkerPool> pool)
+        throws IOException
     {
         // toAbsolutePath is necessary because Paths.get("singleName").getParent() returns null instead of Paths.get("")
         Path projectPath = projectDirectory.normalize().toAbsolutePath();
 
-        // find workflow names
-        ModelValidator validator = ModelValidator.builder();
-        ImmutableList.Builder<RuntimeException> errors = ImmutableList.builder();
-        ImmutableList.Builder<WorkflowDefinition> defs = ImmutableList.builder();
-
+        // find workflow files
+        List<WorkflowPath> paths = new ArrayList<>();
         listFiles(projectPath, (resourceName, path) -> {
             if (matcher.matches(resourceName, path)) {
-                try {
-                    WorkflowFile workflowFile = loadWorkflowFile(resourceName, path, overrideParams);
-                    defs.add(workflowFile.toWorkflowDefinition());
-                }
-                catch (IOException ex) {
-                    throw ex;
-                }
-                catch (RuntimeException ex) {
-                    validator.error("workflow " + path, null, ex.getMessage());
-                    errors.add(ex);
-                }
+                paths.add(new WorkflowPath(resourceName, path));
             }
             return true;
         });
 
+        // parse workflow files
+        Function<WorkflowPath, LoadResult> loader = (workflowPath) -> {
+            try {
+                WorkflowFile workflowFile = loadWorkflowFile(workflowPath.resourceName, workflowPath.path, overrideParams);
+                return new LoadResult(workflowFile.toWorkflowDefinition(), null);
+            }
+            catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+            catch (RuntimeException ex) {
+                return new LoadResult(null, ex);
+            }
+        };
+        List<LoadResult> results;
+        try {
+            if (pool.isPresent()) {
+                results = pool.get().map(paths, loader);
+            }
+            else {
+                results = paths.stream().map(loader).collect(Collectors.toList());
+            }
+        }
+        catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+
+        ModelValidator validator = ModelValidator.builder();
+        ImmutableList.Builder<RuntimeException> errors = ImmutableList.builder();
+        ImmutableList.Builder<WorkflowDefinition> defs = ImmutableList.builder();
+
+        for (int i = 0; i < results.size(); i++) {
+            LoadResult result = results.get(i);
+            if (result.error != null) {
+                validator.error("workflow " + paths.get(i).path, null, result.error.getMessage());
+                errors.add(result.error);
+            }
+            else {
+                defs.add(result.def);
+            }
+        }
+
         try {
             validator.validate("project", projectDirectory);
         }
@@ -71,6 +129,30 @@ public class ProjectArchiveLoader
         return new ProjectArchive(projectPath, metadata);
     }
 
+    private static class WorkflowPath
+    {
+        private final String resourceName;
+        private final Path path;
+
+        WorkflowPath(String resourceName, Path path)
+        {
+            this.resourceName = resourceName;
+            this.path = path;
+        }
+    }
+
+    private static class LoadResult
+    {
+        private final WorkflowDefinition def;
+        private final RuntimeException error;
+
+        LoadResult(WorkflowDefinition def, RuntimeException error)
+        {
+            this.def = def;
+            this.error = error;
+        }
+    }
+
     private WorkflowFile loadWorkflowFile(String resourceName, Path path,
             Config overrideParams)
         throws IOException
@@ -203,6 +203,11 @@ public abstract class BasicDatabaseStoreManager <D>
         }
     }
 
+    public void afterCommit(Runnable callback)
+    {
+        transactionManager.afterCommit(callback);
+    }
+
     // TODO should be changed naming of this method
     public <T> T autoCommit(AutoCommitAction<T, D> action)
     {
@@ -1,5 +1,6 @@
 package io.digdag.core.database;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableMap;
 import io.digdag.client.config.Config;
@@ -31,6 +32,9 @@ public interface DatabaseConfig
 
     boolean getAutoMigrate();
 
+    // directory to cache the migrated schema of in-memory H2 databases. See H2SchemaSnapshot.
+    Optional<String> getSchemaSnapshotDir();
+
     ////
     // HikariCP config params
     //
@@ -128,9 +132,45 @@ public interface DatabaseConfig
         builder.expireLockInterval(
                 config.get(keyPrefix + "." + "queue.expireLockInterval", int.class, 10));
 
+        builder.schemaSnapshotDir(config.getOptional(keyPrefix + "." + "schemaSnapshotDir", String.class));
+
         return builder.build();
     }
 
+    /**
+     * Builds config of a read replica database from database.replica.* keys.
+     * Keys that are not set in database.replica.* are inherited from database.*.
+     * Returns absent if no database.replica.* keys are set.
+     */
+    static Optional<DatabaseConfig> convertReplicaFrom(Config config)
+    {
+        String replicaKeyPrefix = "database.replica.";
+        if (config.getKeys().stream().noneMatch(key -> key.startsWith(replicaKeyPrefix))) {
+            return Optional.absent();
+        }
+
+        Config merged = config.getFactory().create();
+        for (String key : config.getKeys()) {
+            if (key.startsWith("database.") && !key.startsWith(replicaKeyPrefix)) {
+                merged.set(key, config.get(key, JsonNode.class));
+            }
+        }
+        for (String key : config.getKeys()) {
+            if (key.startsWith(replicaKeyPrefix)) {
+                merged.set("database." + key.substring(replicaKeyPrefix.length()), config.get(key, JsonNode.class));
+            }
+        }
+        merged.setOptional("server.jmx.port", config.getOptional("server.jmx.port", Integer.class));
+        // schema of a replica is migrated through the primary database
+        merged.set("database.migrate", false);
+
+        DatabaseConfig replica = convertFrom(merged);
+        if (!isPostgres(replica.getType()) || !isPostgres(config.get("database.type", String.class, "memory"))) {
+            throw new ConfigException("database.replica.* is supported only if database.type is postgresql");
+        }
+        return Optional.of(replica);
+    }
+
     /**
      * If server.jmx.port exists, then JMX is enable
      * TODO this method should move to proper class?
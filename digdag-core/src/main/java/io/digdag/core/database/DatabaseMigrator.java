@@ -1,11 +1,13 @@
 package io.digdag.core.database;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Optional;
 import com.google.inject.Inject;
 import org.skife.jdbi.v2.DBI;
 import org.skife.jdbi.v2.Handle;
 import org.skife.jdbi.v2.exceptions.StatementException;
 
+import java.nio.file.Paths;
 import java.util.*;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -42,23 +44,37 @@ public class DatabaseMigrator
         new Migration_20191105105927_AddIndexToSessions(),
         new Migration_20200716114008_AddLastAttemptIdIndexToSessions(),
         new Migration_20200803184355_ReplacePartialIndexOnSessionAttempts(),
+        new Migration_20261019103000_AddArchivePathToTaskArchives(),
+        new Migration_20261019120000_CreateNotificationQueue(),
     })
     .sorted(Comparator.comparing(m -> m.getVersion()))
     .collect(Collectors.toList());
 
     private final DBI dbi;
     private final String databaseType;
+    private final Optional<H2SchemaSnapshot> schemaSnapshot;
 
     @Inject
     public DatabaseMigrator(DBI dbi, DatabaseConfig config)
     {
-        this(dbi, config.getType());
+        this.dbi = dbi;
+        this.databaseType = config.getType();
+        if (config.getType().equals("h2") && !config.getPath().isPresent() && config.getSchemaSnapshotDir().isPresent()) {
+            // only in-memory databases use snapshots because SCRIPT output depends on the storage type
+            this.schemaSnapshot = Optional.of(new H2SchemaSnapshot(
+                        Paths.get(config.getSchemaSnapshotDir().get()),
+                        migrations.stream().map(m -> m.getVersion()).collect(Collectors.toList())));
+        }
+        else {
+            this.schemaSnapshot = Optional.absent();
+        }
     }
 
     DatabaseMigrator(DBI dbi, String databaseType)
     {
         this.dbi = dbi;
         this.databaseType = databaseType;
+        this.schemaSnapshot = Optional.absent();
     }
 
     public static String getDriverClassName(String type)
@@ -87,8 +103,13 @@ public class DatabaseMigrator
         int numApplied = 0;
         MigrationContext context = new MigrationContext(databaseType);
         Set<String> appliedSet;
+        boolean isInitial;
         try (Handle handle = dbi.open()) {
-            boolean isInitial = !existsSchemaMigrationsTable(handle);
+            isInitial = !existsSchemaMigrationsTable(handle);
+            if (isInitial && schemaSnapshot.isPresent() && schemaSnapshot.get().restore(handle)) {
+                logger.debug("Restored database schema from a snapshot.");
+                return migrations.size();
+            }
             if (isInitial) {
                 createSchemaMigrationsTable(handle, context);
             }
@@ -101,6 +122,11 @@ public class DatabaseMigrator
                 }
             }
         }
+        if (isInitial && schemaSnapshot.isPresent()) {
+            try (Handle handle = dbi.open()) {
+                schemaSnapshot.get().store(handle);
+            }
+        }
         if (numApplied > 0) {
             if (context.isPostgres()) {
                 logger.info("{} migrations applied.", numApplied);
@@ -7,6 +7,7 @@ import com.google.inject.Scopes;
 import com.google.inject.Provider;
 import javax.sql.DataSource;
 import javax.annotation.PostConstruct;
+import io.digdag.core.notification.NotificationQueueStore;
 import io.digdag.core.queue.QueueSettingStoreManager;
 import io.digdag.core.repository.ProjectStoreManager;
 import io.digdag.core.schedule.ScheduleStoreManager;
@@ -28,6 +29,7 @@ public class DatabaseModule
     {
         binder.bind(DatabaseConfig.class).toProvider(DatabaseConfigProvider.class).in(Scopes.SINGLETON);
         binder.bind(DataSource.class).toProvider(DataSourceProvider.class).in(Scopes.SINGLETON);
+        binder.bind(ReplicaDataSourceProvider.class).in(Scopes.SINGLETON);
         binder.bind(AutoMigrator.class);
         binder.bind(DBI.class).toProvider(DbiProvider.class);  // don't make this singleton because DBI.registerMapper is called for each StoreManager
         binder.bind(TransactionManager.class).to(ThreadLocalTransactionManager.class).in(Scopes.SINGLETON);
@@ -37,6 +39,8 @@ public class DatabaseModule
         binder.bind(QueueSettingStoreManager.class).to(DatabaseQueueSettingStoreManager.class).in(Scopes.SINGLETON);
         binder.bind(SessionStoreManager.class).to(DatabaseSessionStoreManager.class).in(Scopes.SINGLETON);
         binder.bind(ScheduleStoreManager.class).to(DatabaseScheduleStoreManager.class).in(Scopes.SINGLETON);
+        binder.bind(NotificationQueueStore.class).to(DatabaseNotificationQueueStore.class).in(Scopes.SINGLETON);
+        binder.bind(DatabaseSecretCache.class).in(Scopes.SINGLETON);
         if (withTaskQueueServer) {
             binder.bind(DatabaseTaskQueueConfig.class).in(Scopes.SINGLETON);
             binder.bind(DatabaseTaskQueueServer.class).in(Scopes.SINGLETON);
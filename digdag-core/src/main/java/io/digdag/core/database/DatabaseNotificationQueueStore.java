@@ -0,0 +1,116 @@
+package io.digdag.core.database;
+
+import com.google.inject.Inject;
+import io.digdag.core.notification.ImmutableQueuedNotification;
+import io.digdag.core.notification.NotificationQueueStore;
+import io.digdag.core.notification.QueuedNotification;
+import org.skife.jdbi.v2.StatementContext;
+import org.skife.jdbi.v2.sqlobject.Bind;
+import org.skife.jdbi.v2.sqlobject.SqlQuery;
+import org.skife.jdbi.v2.sqlobject.SqlUpdate;
+import org.skife.jdbi.v2.tweak.ResultSetMapper;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class DatabaseNotificationQueueStore
+        extends BasicDatabaseStoreManager<DatabaseNotificationQueueStore.Dao>
+        implements NotificationQueueStore
+{
+    @Inject
+    public DatabaseNotificationQueueStore(DatabaseConfig config, TransactionManager tm, ConfigMapper cfm)
+    {
+        super(config.getType(), Dao.class, tm, cfm);
+    }
+
+    @Override
+    public void enqueue(String notification, Instant nextRunAt)
+    {
+        autoCommit((handle, dao) -> dao.insertNotification(notification, Timestamp.from(nextRunAt)));
+    }
+
+    @Override
+    public List<QueuedNotification> lockDueNotifications(Instant now, Instant leaseExpireAt, int limit)
+    {
+        return transaction((handle, dao) -> {
+            String lockMode = databaseType.equals("postgresql") ? "for update skip locked" : "for update";
+            List<QueuedNotification> notifications = handle.createQuery(
+                    "select * from notification_queue" +
+                    " where next_run_at <= :now" +
+                    " order by next_run_at asc" +
+                    " limit :limit " +
+                    lockMode)
+                .bind("now", Timestamp.from(now))
+                .bind("limit", limit)
+                .map(new QueuedNotificationMapper())
+                .list();
+            if (!notifications.isEmpty()) {
+                handle.createStatement(
+                        "update notification_queue" +
+                        " set next_run_at = :leaseExpireAt" +
+                        " where id " + inLargeIdListExpression(
+                            notifications.stream().map(QueuedNotification::getId).collect(Collectors.toList())))
+                    .bind("leaseExpireAt", Timestamp.from(leaseExpireAt))
+                    .execute();
+            }
+            return notifications;
+        });
+    }
+
+    @Override
+    public void delete(long id)
+    {
+        autoCommit((handle, dao) -> dao.deleteNotification(id));
+    }
+
+    @Override
+    public void retryLater(long id, int retryCount, Instant nextRunAt)
+    {
+        autoCommit((handle, dao) -> dao.updateRetry(id, retryCount, Timestamp.from(nextRunAt)));
+    }
+
+    @Override
+    public long count()
+    {
+        return autoCommit((handle, dao) -> dao.count());
+    }
+
+    public interface Dao
+    {
+        @SqlUpdate("insert into notification_queue" +
+                " (notification, retry_count, next_run_at, created_at)" +
+                " values (:notification, 0, :nextRunAt, now())")
+        int insertNotification(@Bind("notification") String notification, @Bind("nextRunAt") Timestamp nextRunAt);
+
+        @SqlUpdate("delete from notification_queue where id = :id")
+        int deleteNotification(@Bind("id") long id);
+
+        @SqlUpdate("update notification_queue" +
+                " set retry_count = :retryCount, next_run_at = :nextRunAt" +
+                " where id = :id")
+        int updateRetry(@Bind("id") long id, @Bind("retryCount") int retryCount, @Bind("nextRunAt") Timestamp nextRunAt);
+
+        @SqlQuery("select count(*) from notification_queue")
+        long count();
+    }
+
+    static class QueuedNotificationMapper
+            implements ResultSetMapper<QueuedNotification>
+    {
+        @Override
+        public QueuedNotification map(int index, ResultSet r, StatementContext ctx)
+                throws SQLException
+        {
+            return ImmutableQueuedNotification.builder()
+                .id(r.getLong("id"))
+                .notification(r.getString("notification"))
+                .retryCount(r.getInt("retry_count"))
+                .createdAt(getTimestampInstant(r, "created_at"))
+                .build();
+        }
+    }
+}
@@ -1,7 +1,11 @@
 package io.digdag.core.database;
 
 import com.google.common.base.Optional;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Maps;
 import com.google.inject.Inject;
 import io.digdag.client.config.Config;
 import io.digdag.core.repository.ArchiveType;
@@ -36,13 +40,16 @@ import org.skife.jdbi.v2.StatementContext;
 import org.skife.jdbi.v2.sqlobject.Bind;
 import org.skife.jdbi.v2.sqlobject.GetGeneratedKeys;
 import org.skife.jdbi.v2.sqlobject.SqlQuery;
+import org.skife.jdbi.v2.sqlobject.SqlBatch;
 import org.skife.jdbi.v2.sqlobject.SqlUpdate;
+import org.skife.jdbi.v2.sqlobject.customizers.BatchChunkSize;
 import org.skife.jdbi.v2.sqlobject.customizers.Define;
 import org.skife.jdbi.v2.sqlobject.stringtemplate.UseStringTemplate3StatementLocator;
 import org.skife.jdbi.v2.tweak.ResultSetMapper;
 
 import javax.activation.DataSource;
 
+import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
@@ -50,7 +57,9 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.time.Instant;
 import java.time.ZoneId;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -62,10 +71,13 @@ public class DatabaseProjectStoreManager
         extends BasicDatabaseStoreManager<DatabaseProjectStoreManager.Dao>
         implements ProjectStoreManager
 {
+    private final DatabaseSecretCache secretCache;
+
     @Inject
-    public DatabaseProjectStoreManager(TransactionManager tm, ConfigMapper cfm, DatabaseConfig config)
+    public DatabaseProjectStoreManager(TransactionManager tm, ConfigMapper cfm, DatabaseConfig config, DatabaseSecretCache secretCache)
     {
         super(config.getType(), dao(config.getType()), tm, cfm);
+        this.secretCache = secretCache;
     }
 
     private static Class<? extends Dao> dao(String type)
@@ -106,6 +118,54 @@ public class DatabaseProjectStoreManager
                 "project id=%s", projId);
     }
 
+    @DigdagTimed(value = "dpsm_", category = "db", appendMethodName = true)
+    @Override
+    public List<StoredWorkflowDefinitionWithProject> getWorkflowDetailsByIdList(List<Long> wfIdList)
+    {
+        if (wfIdList.isEmpty()) {
+            return ImmutableList.of();
+        }
+
+        return autoCommit((handle, dao) ->
+                handle.createQuery(
+                    "select wd.*, wc.config, wc.timezone," +
+                    " proj.id as proj_id, proj.name as proj_name, proj.deleted_name as proj_deleted_name, proj.deleted_at as proj_deleted_at, proj.site_id, proj.created_at as proj_created_at," +
+                    " rev.name as rev_name, rev.default_params as rev_default_params" +
+                    " from workflow_definitions wd" +
+                    " join revisions rev on rev.id = wd.revision_id" +
+                    " join projects proj on proj.id = rev.project_id" +
+                    " join workflow_configs wc on wc.id = wd.config_id" +
+                    " where wd.id " + inLargeIdListExpression(wfIdList)
+                )
+                .map(new StoredWorkflowDefinitionWithProjectMapper(configMapper))
+                .list()
+            );
+    }
+
+    @DigdagTimed(value = "dpsm_", category = "db", appendMethodName = true)
+    @Override
+    public ProjectMap getProjectsByIdListInternal(List<Integer> projIdList)
+    {
+        if (projIdList.isEmpty()) {
+            return ProjectMap.empty();
+        }
+
+        List<StoredProject> projs = autoCommit((handle, dao) ->
+                handle.createQuery(
+                    "select * from projects" +
+                    " where id " + inLargeIdListExpression(projIdList)
+                )
+                .map(new StoredProjectMapper(configMapper))
+                .list()
+            );
+
+        ImmutableMap.Builder<Integer, StoredProject> builder = ImmutableMap.builder();
+        for (StoredProject proj : projs) {
+            builder.put(proj.getId(), proj);
+        }
+        return new ProjectMap(builder.build());
+    }
+
     @DigdagTimed(value = "dpsm_", category = "db", appendMethodName = true)
     @Override
     public StoredRevision getRevisionOfWorkflowDefinition(long wfId)
@@ -235,6 +295,9 @@ public class DatabaseProjectStoreManager
 
                 dao.deleteProject(proj.getId());
 
+                // secrets of a deleted project must not be served from the cache
+                afterCommit(() -> secretCache.invalidateProject(siteId, proj.getId()));
+
                 return res;
             }, ResourceNotFoundException.class);
         }
@@ -449,6 +512,25 @@ public class DatabaseProjectStoreManager
                 "revision archive=%d", revId);
         }
 
+        @DigdagTimed(value = "dpcst_", category = "db", appendMethodName = true)
+        @Override
+        public void insertRevisionArchiveData(int revId, InputStream data, int size)
+            throws ResourceConflictException
+        {
+            // bind as a stream so that JDBC driver sends the data without
+            // loading the whole archive in memory
+            catchConflict(() -> {
+                    handle.createStatement("insert into revision_archives" +
+                            " (id, archive_data)" +
+                            " values (:revId, :data)")
+                        .bind("revId", revId)
+                        .bindBinaryStream("data", data, size)
+                        .execute();
+                    return true;
+                },
+                "revision archive=%d", revId);
+        }
+
         /**
          * Create a revision.
          *
@@ -488,6 +570,90 @@ public class DatabaseProjectStoreManager
             }
         }
 
+        /**
+         * Create workflow definitions of a revision at once.
+         *
+         * Same with calling insertWorkflowDefinition for each definition
+         * but issues a constant number of queries except inserting new
+         * workflow configs.
+         */
+        @DigdagTimed(value = "dpcst_", category = "db", appendMethodName = true)
+        @Override
+        public List<StoredWorkflowDefinition> insertWorkflowDefinitions(int projId, int revId, List<WorkflowDefinition> defs)
+            throws ResourceConflictException
+        {
+            if (defs.isEmpty()) {
+                return ImmutableList.of();
+            }
+
+            List<String> configTexts = new ArrayList<>(defs.size());
+            List<Long> configDigests = new ArrayList<>(defs.size());
+            for (WorkflowDefinition def : defs) {
+                String configText = configMapper.toText(def.getConfig());
+                configTexts.add(configText);
+                configDigests.add(WorkflowConfig.digest(configText, def.getTimeZone().getId()));
+            }
+
+            // find existing configs by digest at once
+            ListMultimap<Long, WorkflowConfig> configs = ArrayListMultimap.create();
+            List<WorkflowConfig> foundConfigs = handle.createQuery(
+                    "select id, config, timezone from workflow_configs" +
+                    " where project_id = :projId" +
+                    " and config_digest " + inLargeIdListExpression(new HashSet<>(configDigests))
+                )
+                .bind("projId", projId)
+                .map(new WorkflowConfigMapper())
+                .list();
+            for (WorkflowConfig found : foundConfigs) {
+                configs.put(WorkflowConfig.digest(found.getConfigText(), found.getTimeZone()), found);
+            }
+
+            List<Integer> configIds = new ArrayList<>(defs.size());
+            for (int i = 0; i < defs.size(); i++) {
+                String configText = configTexts.get(i);
+                String zoneId = defs.get(i).getTimeZone().getId();
+                long configDigest = configDigests.get(i);
+
+                Integer configId = null;
+                for (WorkflowConfig found : configs.get(configDigest)) {
+                    if (WorkflowConfig.isEquivalent(found, configText, zoneId)) {
+                        configId = found.getId();
+                        break;
+                    }
+                }
+                if (configId == null) {
+                    configId = dao.insertWorkflowConfig(projId, configText, zoneId, configDigest);
+                    configs.put(configDigest, ImmutableWorkflowConfig.builder()
+                            .id(configId)
+                            .configText(configText)
+                            .timeZone(zoneId)
+                            .build());
+                }
+                configIds.add(configId);
+            }
+
+            List<String> names = defs.stream().map(WorkflowDefinition::getName).collect(Collectors.toList());
+            catchConflict(() -> {
+                    dao.insertWorkflowDefinitions(revId, names, configIds);
+                    return true;
+                },
+                "workflows in revision id=%d", revId);
+
+            Map<String, StoredWorkflowDefinition> inserted = new HashMap<>();
+            for (StoredWorkflowDefinition def : dao.getWorkflowDefinitionsByRevisionId(siteId, revId)) {
+                inserted.put(def.getName(), def);
+            }
+            return names.stream()
+                .map(name -> {
+                    StoredWorkflowDefinition def = inserted.get(name);
+                    if (def == null) {
+                        throw new IllegalStateException("Database state error: workflow " + name + " in revision id=" + revId + " is not found");
+                    }
+                    return def;
+                })
+                .collect(Collectors.toList());
+        }
+
         @DigdagTimed(value = "dpcst_", category = "db", appendMethodName = true)
         @Override
         public <T extends Schedule> void updateSchedules(int projId, List<T> schedules,
@@ -504,33 +670,68 @@ public class DatabaseProjectStoreManager
             // concurrent update of schedules, here needs to lock schedules
             // before UPDATE.
 
+            // lock all of existing schedules at once
+            List<Integer> matchedSchedIds = schedules.stream()
+                .map(schedule -> oldScheduleNames.get(schedule.getWorkflowName()))
+                .filter(id -> id != null)
+                .collect(Collectors.toList());
+            Map<Integer, ScheduleStatus> lockedStatus = new HashMap<>();
+            if (!matchedSchedIds.isEmpty()) {
+                ScheduleStatusMapper statusMapper = new ScheduleStatusMapper();
+                List<Map.Entry<Integer, ScheduleStatus>> locked = handle.createQuery(
+                        "select id, next_run_time, next_schedule_time, last_session_time from schedules" +
+                        " where id " + inLargeIdListExpression(matchedSchedIds) +
+                        " for update"
+                    )
+                    .map((index, r, ctx) -> Maps.immutableEntry(r.getInt("id"), statusMapper.map(index, r, ctx)))
+                    .list();
+                for (Map.Entry<Integer, ScheduleStatus> entry : locked) {
+                    lockedStatus.put(entry.getKey(), entry.getValue());
+                }
+            }
+
+            List<Integer> updateIds = new ArrayList<>();
+            List<Long> updateWorkflowDefinitionIds = new ArrayList<>();
+            List<Long> updateNextRunTimes = new ArrayList<>();
+            List<Long> updateNextScheduleTimes = new ArrayList<>();
+            List<T> newSchedules = new ArrayList<>();
+
             for (T schedule : schedules) {
                 Integer matchedSchedId = oldScheduleNames.get(schedule.getWorkflowName());
                 if (matchedSchedId != null) {
-                    // found the same name. lock it and update
-                    ScheduleStatus status = dao.lockScheduleById(matchedSchedId);
+                    // found the same name. update the locked entry
+                    ScheduleStatus status = lockedStatus.get(matchedSchedId);
                     if (status != null) {
                         ScheduleTime newSchedule = func.apply(status, schedule);
-                        dao.updateScheduleById(
-                                matchedSchedId,
-                                schedule.getWorkflowDefinitionId(),
-                                newSchedule.getRunTime().getEpochSecond(),
-                                newSchedule.getTime().getEpochSecond());
+                        updateIds.add(matchedSchedId);
+                        updateWorkflowDefinitionIds.add(schedule.getWorkflowDefinitionId());
+                        updateNextRunTimes.add(newSchedule.getRunTime().getEpochSecond());
+                        updateNextScheduleTimes.add(newSchedule.getTime().getEpochSecond());
                         oldScheduleNames.remove(schedule.getWorkflowName());
                     }
                 }
                 else {
                     // not found this name. inserting a new entry.
-                    catchConflict(() ->
-                        dao.insertSchedule(
-                                projId,
-                                schedule.getWorkflowDefinitionId(),
-                                schedule.getNextRunTime().getEpochSecond(),
-                                schedule.getNextScheduleTime().getEpochSecond()),
-                        "workflow_definition_id=%d", schedule.getWorkflowDefinitionId());
+                    newSchedules.add(schedule);
                 }
             }
 
+            if (!updateIds.isEmpty()) {
+                dao.updateSchedulesById(updateIds, updateWorkflowDefinitionIds, updateNextRunTimes, updateNextScheduleTimes);
+            }
+
+            if (!newSchedules.isEmpty()) {
+                catchConflict(() -> {
+                        dao.insertSchedules(
+                                projId,
+                                newSchedules.stream().map(Schedule::getWorkflowDefinitionId).collect(Collectors.toList()),
+                                newSchedules.stream().map(it -> it.getNextRunTime().getEpochSecond()).collect(Collectors.toList()),
+                                newSchedules.stream().map(it -> it.getNextScheduleTime().getEpochSecond()).collect(Collectors.toList()));
+                        return true;
+                    },
+                    "schedules of project id=%d", projId);
+            }
+
             // delete unused schedules
             if (!oldScheduleNames.isEmpty()) {
                 // those names don exist any more.
@@ -863,6 +1064,20 @@ public class DatabaseProjectStoreManager
         @GetGeneratedKeys
         long insertWorkflowDefinition(@Bind("revId") int revId, @Bind("name") String name, @Bind("configId") int configId);
 
+        @SqlBatch("insert into workflow_definitions" +
+                " (revision_id, name, config_id)" +
+                " values (:revId, :name, :configId)")
+        @BatchChunkSize(1000)
+        void insertWorkflowDefinitions(@Bind("revId") int revId, @Bind("name") List<String> names, @Bind("configId") List<Integer> configIds);
+
+        @SqlQuery("select wd.*, wc.config, wc.timezone from workflow_definitions wd" +
+                " join revisions rev on rev.id = wd.revision_id" +
+                " join projects proj on proj.id = rev.project_id" +
+                " join workflow_configs wc on wc.id = wd.config_id" +
+                " where wd.revision_id = :revId" +
+                " and proj.site_id = :siteId")
+        List<StoredWorkflowDefinition> getWorkflowDefinitionsByRevisionId(@Bind("siteId") int siteId, @Bind("revId") int revId);
+
         @SqlQuery("select wd.name, schedules.id from schedules" +
                 " join workflow_definitions wd on wd.id = schedules.workflow_definition_id" +
                 " where schedules.project_id = :projId")
@@ -872,21 +1087,17 @@ public class DatabaseProjectStoreManager
                 " where project_id = :projId")
         int deleteSchedules(@Bind("projId") int projId);
 
-        @SqlQuery("select next_run_time, next_schedule_time, last_session_time from schedules" +
-                " where id = :id" +
-                " for update")
-        ScheduleStatus lockScheduleById(@Bind("id") int schedId);
-
-        @SqlUpdate("update schedules" +
+        @SqlBatch("update schedules" +
                 " set workflow_definition_id = :workflowDefinitionId, next_run_time = :nextRunTime, next_schedule_time = :nextScheduleTime, updated_at = now()" +
                 " where id = :id")
-        int updateScheduleById(@Bind("id") int schedId, @Bind("workflowDefinitionId") long workflowDefinitionId, @Bind("nextRunTime") long nextRunTime, @Bind("nextScheduleTime") long nextScheduleTime);
+        @BatchChunkSize(1000)
+        void updateSchedulesById(@Bind("id") List<Integer> schedIds, @Bind("workflowDefinitionId") List<Long> workflowDefinitionIds, @Bind("nextRunTime") List<Long> nextRunTimes, @Bind("nextScheduleTime") List<Long> nextScheduleTimes);
 
-        @SqlUpdate("insert into schedules" +
+        @SqlBatch("insert into schedules" +
                     " (project_id, workflow_definition_id, next_run_time, next_schedule_time, last_session_time, created_at, updated_at)" +
                     " values (:projId, :workflowDefinitionId, :nextRunTime, :nextScheduleTime, NULL, now(), now())")
-        @GetGeneratedKeys
-        int insertSchedule(@Bind("projId") int projid, @Bind("workflowDefinitionId") long workflowDefinitionId, @Bind("nextRunTime") long nextRunTime, @Bind("nextScheduleTime") long nextScheduleTime);
+        @BatchChunkSize(1000)
+        void insertSchedules(@Bind("projId") int projid, @Bind("workflowDefinitionId") List<Long> workflowDefinitionIds, @Bind("nextRunTime") List<Long> nextRunTimes, @Bind("nextScheduleTime") List<Long> nextScheduleTimes);
     }
 
     @Value.Immutable
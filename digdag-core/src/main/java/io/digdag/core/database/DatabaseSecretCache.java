@@ -0,0 +1,124 @@
+package io.digdag.core.database;
+
+import com.google.common.base.Optional;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.inject.Inject;
+import io.digdag.client.config.Config;
+import io.digdag.core.database.DatabaseSecretStore.EncryptedSecret;
+import io.digdag.metrics.StdDigdagMetrics;
+import io.digdag.spi.metrics.DigdagMetrics;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static io.digdag.spi.metrics.DigdagMetrics.Category;
+
+/**
+ * Agent-wide cache of secrets read from the secrets table.
+ *
+ * Operators resolve secrets of the same project many times in a short period. This
+ * cache keeps the result of lookups, including absence of a secret, for
+ * database.secretCacheTtl seconds so that most of lookups don't issue a query.
+ * Values are cached in the encrypted form and decrypted by the caller for each use.
+ *
+ * Changes made through DatabaseSecretControlStore of this process invalidate the
+ * entries when the transaction commits, and deleting a project invalidates all
+ * entries of the project. Changes made by other servers are visible after TTL expires.
+ * The cache is disabled if TTL is 0 (default).
+ */
+public class DatabaseSecretCache
+{
+    private final Optional<Cache<Key, Optional<EncryptedSecret>>> cache;
+
+    @Inject(optional = true)
+    private DigdagMetrics metrics = StdDigdagMetrics.empty();
+
+    @Inject
+    public DatabaseSecretCache(Config systemConfig)
+    {
+        long ttlSeconds = systemConfig.get("database.secretCacheTtl", long.class, 0L);
+        if (ttlSeconds > 0) {
+            this.cache = Optional.of(CacheBuilder.newBuilder()
+                    .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+                    .maximumSize(systemConfig.get("database.secretCacheSize", long.class, 10000L))
+                    .build());
+        }
+        else {
+            this.cache = Optional.absent();
+        }
+    }
+
+    Optional<EncryptedSecret> get(int siteId, int projectId, String scope, String key,
+            Supplier<Optional<EncryptedSecret>> loader)
+    {
+        if (!cache.isPresent()) {
+            return loader.get();
+        }
+
+        Key k = new Key(siteId, projectId, scope, key);
+        Optional<EncryptedSecret> cached = cache.get().getIfPresent(k);
+        if (cached != null) {
+            metrics.increment(Category.DB, "secretCacheHit");
+            return cached;
+        }
+        metrics.increment(Category.DB, "secretCacheMiss");
+
+        Optional<EncryptedSecret> loaded = loader.get();
+        cache.get().put(k, loaded);
+        return loaded;
+    }
+
+    void invalidate(int siteId, int projectId, String scope, String key)
+    {
+        if (cache.isPresent()) {
+            cache.get().invalidate(new Key(siteId, projectId, scope, key));
+        }
+    }
+
+    void invalidateProject(int siteId, int projectId)
+    {
+        if (cache.isPresent()) {
+            cache.get().asMap().keySet().removeIf(k -> k.siteId == siteId && k.projectId == projectId);
+        }
+    }
+
+    private static class Key
+    {
+        private final int siteId;
+        private final int projectId;
+        private final String scope;
+        private final String key;
+
+        Key(int siteId, int projectId, String scope, String key)
+        {
+            this.siteId = siteId;
+            this.projectId = projectId;
+            this.scope = scope;
+            this.key = key;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Key other = (Key) o;
+            return siteId == other.siteId &&
+                projectId == other.projectId &&
+                scope.equals(other.scope) &&
+                key.equals(other.key);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(siteId, projectId, scope, key);
+        }
+    }
+}
@@ -19,12 +19,14 @@ class DatabaseSecretControlStore
 {
     private final int siteId;
     private final SecretCrypto crypto;
+    private final DatabaseSecretCache cache;
 
-    DatabaseSecretControlStore(DatabaseConfig config, TransactionManager transactionManager, ConfigMapper cfm, int siteId, SecretCrypto crypto)
+    DatabaseSecretControlStore(DatabaseConfig config, TransactionManager transactionManager, ConfigMapper cfm, int siteId, SecretCrypto crypto, DatabaseSecretCache cache)
     {
         super(config.getType(), dao(config.getType()), transactionManager, cfm);
         this.siteId = siteId;
         this.crypto = crypto;
+        this.cache = cache;
     }
 
     private static Class<? extends Dao> dao(String type)
@@ -84,12 +86,23 @@ class DatabaseSecretControlStore
             String engine = crypto.getName();
 
             dao.upsertProjectSecret(siteId, projectId, scope, key, engine, encrypted);
+            invalidateCache(projectId, scope, key);
         }
 
         @Override
         public void deleteProjectSecret(int projectId, String scope, String key)
         {
             dao.deleteProjectSecret(siteId, projectId, scope, key);
+            invalidateCache(projectId, scope, key);
+        }
+
+        private void invalidateCache(int projectId, String scope, String key)
+        {
+            // Another thread may read the old value and cache it again until this
+            // transaction commits. Invalidating the entry again after commit
+            // guarantees that the cache doesn't keep the old value.
+            cache.invalidate(siteId, projectId, scope, key);
+            afterCommit(() -> cache.invalidate(siteId, projectId, scope, key));
         }
 
         @Override
@@ -14,19 +14,21 @@ public class DatabaseSecretControlStoreManager
     private final TransactionManager tm;
     private final ConfigMapper cfm;
     private final SecretCrypto crypto;
+    private final DatabaseSecretCache cache;
 
     @Inject
-    public DatabaseSecretControlStoreManager(DatabaseConfig config, TransactionManager tm, ConfigMapper cfm, SecretCrypto crypto)
+    public DatabaseSecretControlStoreManager(DatabaseConfig config, TransactionManager tm, ConfigMapper cfm, SecretCrypto crypto, DatabaseSecretCache cache)
     {
         this.config = config;
         this.tm = tm;
         this.cfm = cfm;
         this.crypto = crypto;
+        this.cache = cache;
     }
 
     @Override
     public SecretControlStore getSecretControlStore(int siteId)
     {
-        return new DatabaseSecretControlStore(config, tm, cfm, siteId, crypto);
+        return new DatabaseSecretControlStore(config, tm, cfm, siteId, crypto, cache);
     }
 }
@@ -20,24 +20,27 @@ class DatabaseSecretStore
     private final int siteId;
     private final TransactionManager tm;
     private final SecretCrypto crypto;
+    private final DatabaseSecretCache cache;
 
-    DatabaseSecretStore(DatabaseConfig config, TransactionManager tm, ConfigMapper cfm, int siteId, SecretCrypto crypto)
+    DatabaseSecretStore(DatabaseConfig config, TransactionManager tm, ConfigMapper cfm, int siteId, SecretCrypto crypto, DatabaseSecretCache cache)
     {
         super(config.getType(), Dao.class, tm, cfm);
         this.siteId = siteId;
         this.tm = tm;
         this.crypto = crypto;
+        this.cache = cache;
     }
 
     @Override
     public Optional<String> getSecret(int projectId, String scope, String key)
     {
-        EncryptedSecret secret =
-                tm.begin(() -> autoCommit((handle, dao) -> dao.getProjectSecret(siteId, projectId, scope, key)));
+        Optional<EncryptedSecret> cached = cache.get(siteId, projectId, scope, key, () ->
+                Optional.fromNullable(tm.begin(() -> autoCommit((handle, dao) -> dao.getProjectSecret(siteId, projectId, scope, key)))));
 
-        if (secret == null) {
+        if (!cached.isPresent()) {
             return Optional.absent();
         }
+        EncryptedSecret secret = cached.get();
 
         // TODO: look up crypto engine using name
         if (!crypto.getName().equals(secret.engine)) {
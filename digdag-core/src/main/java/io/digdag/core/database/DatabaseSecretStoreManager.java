@@ -13,19 +13,21 @@ public class DatabaseSecretStoreManager
     private final TransactionManager tm;
     private final ConfigMapper cfm;
     private final SecretCrypto crypto;
+    private final DatabaseSecretCache cache;
 
     @Inject
-    public DatabaseSecretStoreManager(DatabaseConfig config, TransactionManager tm, ConfigMapper cfm, SecretCrypto crypto)
+    public DatabaseSecretStoreManager(DatabaseConfig config, TransactionManager tm, ConfigMapper cfm, SecretCrypto crypto, DatabaseSecretCache cache)
     {
         this.config = config;
         this.tm = tm;
         this.cfm = cfm;
         this.crypto = crypto;
+        this.cache = cache;
     }
 
     @Override
     public SecretStore getSecretStore(int siteId)
     {
-        return new DatabaseSecretStore(config, tm, cfm, siteId, crypto);
+        return new DatabaseSecretStore(config, tm, cfm, siteId, crypto, cache);
     }
 }
@@ -4,7 +4,11 @@ import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Optional;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ListMultimap;
 import com.google.inject.Inject;
 import io.digdag.client.config.Config;
 import io.digdag.client.config.ConfigFactory;
@@ -13,6 +17,7 @@ import io.digdag.core.repository.ResourceConflictException;
 import io.digdag.core.repository.ResourceLimitExceededException;
 import io.digdag.core.repository.ResourceNotFoundException;
 import io.digdag.core.session.ArchivedTask;
+import io.digdag.core.session.AttemptFilter;
 import io.digdag.core.session.AttemptStateFlags;
 import io.digdag.core.session.DelayedAttemptControlStore;
 import io.digdag.core.session.ImmutableArchivedTask;
@@ -29,6 +34,7 @@ import io.digdag.core.session.ImmutableStoredTask;
 import io.digdag.core.session.ImmutableTaskAttemptSummary;
 import io.digdag.core.session.ImmutableTaskRelation;
 import io.digdag.core.session.ImmutableTaskStateSummary;
+import io.digdag.core.session.ImmutableTaskSummary;
 import io.digdag.core.session.ParameterUpdate;
 import io.digdag.core.session.ResumingTask;
 import io.digdag.core.session.Session;
@@ -54,18 +60,23 @@ import io.digdag.core.session.TaskRelation;
 import io.digdag.core.session.TaskStateCode;
 import io.digdag.core.session.TaskStateFlags;
 import io.digdag.core.session.TaskStateSummary;
+import io.digdag.core.session.TaskSummary;
 import io.digdag.core.session.TaskType;
+import io.digdag.core.storage.TaskArchiveStorage;
 import io.digdag.core.workflow.TaskConfig;
 import io.digdag.metrics.DigdagTimed;
 import io.digdag.spi.TaskReport;
 import io.digdag.spi.TaskResult;
 import io.digdag.spi.ac.AccessController;
 import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.Query;
 import org.skife.jdbi.v2.StatementContext;
 import org.skife.jdbi.v2.sqlobject.Bind;
 import org.skife.jdbi.v2.sqlobject.GetGeneratedKeys;
+import org.skife.jdbi.v2.sqlobject.SqlBatch;
 import org.skife.jdbi.v2.sqlobject.SqlQuery;
 import org.skife.jdbi.v2.sqlobject.SqlUpdate;
+import org.skife.jdbi.v2.sqlobject.customizers.BatchChunkSize;
 import org.skife.jdbi.v2.sqlobject.customizers.Define;
 import org.skife.jdbi.v2.sqlobject.stringtemplate.UseStringTemplate3StatementLocator;
 import org.skife.jdbi.v2.tweak.ResultSetMapper;
@@ -76,9 +87,12 @@ import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.time.Instant;
 import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -133,6 +147,8 @@ public class DatabaseSessionStoreManager
     private final ArchivedTaskMapper atm;
     private final TaskAttemptSummaryMapper tasm;
 
+    private TaskArchiveStorage taskArchiveStorage = null;
+
     @Inject
     public DatabaseSessionStoreManager(ConfigFactory cf, TransactionManager transactionManager, ConfigMapper cfm, ObjectMapper mapper, DatabaseConfig config)
     {
@@ -147,6 +163,12 @@ public class DatabaseSessionStoreManager
         this.tasm = new TaskAttemptSummaryMapper();
     }
 
+    @Inject(optional = true)
+    void setTaskArchiveStorage(TaskArchiveStorage taskArchiveStorage)
+    {
+        this.taskArchiveStorage = taskArchiveStorage;
+    }
+
     private static Class<? extends Dao> dao(String type)
     {
         switch (type) {
@@ -206,6 +228,21 @@ public class DatabaseSessionStoreManager
         }
     }
 
+    private String nextTaskIdsQuery()
+    {
+        switch (databaseType) {
+        case "h2":
+            // h2 creates a system sequence with a generated name for an AUTO_INCREMENT column
+            return "select nextval((" +
+                        "select sequence_name from information_schema.columns" +
+                        " where table_schema = schema() and table_name = 'TASKS' and column_name = 'ID'" +
+                    ")) from system_range(1, :count)";
+        default:
+            // postgresql
+            return "select nextval(pg_get_serial_sequence('tasks', 'id')) from generate_series(1, :count)";
+        }
+    }
+
     private String selectTaskDetailsQuery()
     {
         return "select t.*, td.full_name, td.local_config, td.export_config, " +
@@ -327,6 +364,59 @@ public class DatabaseSessionStoreManager
         );
     }
 
+    @DigdagTimed(value = "dssm_", category = "db", appendMethodName = true)
+    @Override
+    public Optional<Instant> getOldestActiveAttemptCreationTime()
+    {
+        return Optional.fromNullable(autoCommit((handle, dao) ->
+                handle.createQuery(
+                    "select min(created_at) as date" +
+                    " from session_attempts" +
+                    " where state_flags = 0"
+                )
+                    .map(new InstantMapper())
+                    .first()
+        ));
+    }
+
+    @DigdagTimed(value = "dssm_", category = "db", appendMethodName = true)
+    @Override
+    public Optional<Instant> getOldestTaskStartTimeWithState(TaskStateCode[] states)
+    {
+        return Optional.fromNullable(autoCommit((handle, dao) ->
+                handle.createQuery(
+                    "select min(started_at) as date" +
+                    " from tasks" +
+                    " where state in (" +
+                    Stream.of(states)
+                            .map(it -> Short.toString(it.get())).collect(Collectors.joining(", ")) + ")" +
+                    " and " + bitAnd("state_flags", Integer.toString(TaskStateFlags.CANCEL_REQUESTED)) + " = 0" +
+                    " and started_at is not null"
+                )
+                    .map(new InstantMapper())
+                    .first()
+        ));
+    }
+
+    @DigdagTimed(value = "dssm_", category = "db", appendMethodName = true)
+    @Override
+    public List<StoredSessionAttemptWithSession> getAttemptsWithSessionByIdList(List<Long> attemptIdList)
+    {
+        if (attemptIdList.isEmpty()) {
+            return ImmutableList.of();
+        }
+        return autoCommit((handle, dao) ->
+                handle.createQuery(
+                    "select sa.*, s.session_uuid, s.workflow_name, s.session_time" +
+                    " from session_attempts sa" +
+                    " join sessions s on s.id = sa.session_id" +
+                    " where sa.id " + inLargeIdListExpression(attemptIdList)
+                )
+                    .map(new StoredSessionAttemptWithSessionMapper(configMapper))
+                    .list()
+        );
+    }
+
 
     @DigdagTimed(value = "dssm_", category = "db", appendMethodName = true)
     @Override
@@ -514,10 +604,70 @@ public class DatabaseSessionStoreManager
 
     @DigdagTimed(value = "dssm_", category = "db", appendMethodName = true)
     @Override
-    public void lockReadySessionMonitors(Instant currentTime, SessionMonitorAction func)
+    public <T> Optional<T> lockTaskSummaryIfExists(long taskId, TaskLockActionWithSummary<T> func)
+    {
+        return lockTaskSummary(taskId, func, false);
+    }
+
+    @DigdagTimed(value = "dssm_", category = "db", appendMethodName = true)
+    @Override
+    public <T> Optional<T> lockTaskSummaryIfNotLocked(long taskId, TaskLockActionWithSummary<T> func)
+    {
+        return lockTaskSummary(taskId, func, true);
+    }
+
+    private <T> Optional<T> lockTaskSummary(long taskId, TaskLockActionWithSummary<T> func, boolean ifNotLocked)
+    {
+        return transaction((handle, dao) -> {
+            // Unlike lockTaskWithDetails, this selects only columns of tasks table.
+            // Configs in task_details and task_state_details are selected only if
+            // func needs them.
+            String lockMode = (ifNotLocked && databaseType.equals("postgresql")) ? "for update skip locked" : "for update";
+            TaskSummary summary = handle.createQuery(
+                    "select id, attempt_id, parent_id, task_type, state, state_flags, retry_count" +
+                    " from tasks" +
+                    " where id = :id " +
+                    lockMode)
+                .bind("id", taskId)
+                .map(new TaskSummaryMapper())
+                .first();
+            if (summary != null) {
+                Supplier<StoredTask> details = Suppliers.memoize(() -> {
+                    try {
+                        return getTaskById(handle, taskId);
+                    }
+                    catch (ResourceNotFoundException ex) {
+                        throw new IllegalStateException("Database state error", ex);
+                    }
+                });
+                T result = func.call(new DatabaseTaskControlStore(handle), summary, details);
+                return Optional.of(result);
+            }
+            return Optional.<T>absent();
+        });
+    }
+
+    @DigdagTimed(value = "dssm_", category = "db", appendMethodName = true)
+    @Override
+    public int lockReadySessionMonitors(Instant currentTime, int limit, SessionMonitorAction func)
     {
+        AtomicInteger count = new AtomicInteger(0);
         List<RuntimeException> exceptions = transaction((handle, dao) -> {
-            return dao.lockReadySessionMonitors(currentTime.getEpochSecond(), 10)  // TODO 10 should be configurable?
+            // skip monitors locked by other servers so that servers don't wait for each other
+            String lockMode = databaseType.equals("postgresql") ? "for update skip locked" : "for update";
+            List<StoredSessionMonitor> monitors = handle.createQuery(
+                    "select * from session_monitors" +
+                    " where next_run_time <= :currentTime" +
+                    " order by next_run_time asc" +
+                    " limit :limit " +
+                    lockMode
+                )
+                .bind("currentTime", currentTime.getEpochSecond())
+                .bind("limit", limit)
+                .map(new StoredSessionMonitorMapper(configMapper))
+                .list();
+            count.set(monitors.size());
+            return monitors
                 .stream()
                 .map(monitor -> {
                     try {
@@ -545,6 +695,7 @@ public class DatabaseSessionStoreManager
             }
             throw first;
         }
+        return count.get();
     }
 
     @DigdagTimed(value = "dssm_", category = "db", appendMethodName = true)
@@ -721,6 +872,29 @@ public class DatabaseSessionStoreManager
         }
     }
 
+    @DigdagTimed(value = "dssm_", category = "db", appendMethodName = true)
+    @Override
+    public List<Long> findInlineTaskArchivesCreatedBefore(Instant createdBefore, long lastId, int limit)
+    {
+        return autoCommit((handle, dao) -> dao.findInlineTaskArchivesCreatedBefore(sqlTimestampOf(createdBefore), lastId, limit));
+    }
+
+    @DigdagTimed(value = "dssm_", category = "db", appendMethodName = true)
+    @Override
+    public Optional<String> getInlineTaskArchive(long attemptId)
+    {
+        return Optional.fromNullable(autoCommit((handle, dao) -> dao.getInlineTaskArchive(attemptId)));
+    }
+
+    @DigdagTimed(value = "dssm_", category = "db", appendMethodName = true)
+    @Override
+    public boolean setTaskArchivePath(long attemptId, String archivePath)
+    {
+        // archives are never updated once inserted. The condition on archive_path
+        // is enough to avoid double offloading without locking the row while uploading.
+        return transaction((handle, dao) -> dao.setTaskArchivePath(attemptId, archivePath) > 0);
+    }
+
     private StoredTask getTaskById(Handle handle, long taskId)
         throws ResourceNotFoundException
     {
@@ -852,6 +1026,45 @@ public class DatabaseSessionStoreManager
             return taskId;
         }
 
+        @DigdagTimed(value = "dtcst_", category = "db", appendMethodName = true)
+        @Override
+        public List<Long> allocateTaskIds(int count)
+        {
+            if (count == 0) {
+                return ImmutableList.of();
+            }
+            // sort ids so that ids of tasks increase in the order of tasks as if they're inserted one by one.
+            // copyInitialTasksForRetry depends on it.
+            return handle.createQuery(nextTaskIdsQuery())
+                .bind("count", count)
+                .mapTo(long.class)
+                .list()
+                .stream()
+                .sorted()
+                .collect(Collectors.toList());
+        }
+
+        @DigdagTimed(value = "dtcst_", category = "db", appendMethodName = true)
+        @Override
+        public void addSubtasks(long attemptId, Map<Long, Task> tasks)
+        {
+            if (tasks.isEmpty()) {
+                return;
+            }
+            List<Long> ids = ImmutableList.copyOf(tasks.keySet());
+            List<Task> values = ImmutableList.copyOf(tasks.values());
+            dao.insertTasksWithIds(ids, attemptId,
+                    values.stream().map(task -> task.getParentId().orNull()).collect(Collectors.toList()),
+                    values.stream().map(task -> task.getTaskType().get()).collect(Collectors.toList()),
+                    values.stream().map(task -> task.getState().get()).collect(Collectors.toList()),
+                    values.stream().map(task -> task.getStateFlags().get()).collect(Collectors.toList()));
+            dao.insertTaskDetailsBatch(ids,
+                    values.stream().map(task -> task.getFullName()).collect(Collectors.toList()),
+                    values.stream().map(task -> task.getConfig().getLocal()).collect(Collectors.toList()),
+                    values.stream().map(task -> task.getConfig().getExport()).collect(Collectors.toList()));
+            dao.insertEmptyTaskStateDetailsBatch(ids);
+        }
+
         @DigdagTimed(value = "dtcst_", category = "db", appendMethodName = true)
         @Override
         public long addResumedSubtask(long attemptId, long parentId,
@@ -983,6 +1196,22 @@ public class DatabaseSessionStoreManager
             }
         }
 
+        @DigdagTimed(value = "dtcst_", category = "db", appendMethodName = true)
+        @Override
+        public void addDependencies(ListMultimap<Long, Long> upstreamsOfDownstreams)
+        {
+            if (upstreamsOfDownstreams.isEmpty()) {
+                return;
+            }
+            List<Long> downstreams = new ArrayList<>();
+            List<Long> upstreams = new ArrayList<>();
+            for (Map.Entry<Long, Long> pair : upstreamsOfDownstreams.entries()) {
+                downstreams.add(pair.getKey());
+                upstreams.add(pair.getValue());
+            }
+            dao.insertTaskDependencies(downstreams, upstreams);
+        }
+
         @DigdagTimed(value = "dtcst_", category = "db", appendMethodName = true)
         @Override
         public boolean isAnyProgressibleChild(long taskId)
@@ -1349,6 +1578,140 @@ public class DatabaseSessionStoreManager
             }
         }
 
+        @DigdagTimed(value = "dsst_", category = "db", appendMethodName = true)
+        @Override
+        public List<StoredSessionAttemptWithSession> getAttemptsByIdList(List<Long> attemptIdList, AccessController.ListFilter acFilter)
+        {
+            if (attemptIdList.isEmpty()) {
+                return ImmutableList.of();
+            }
+            return autoCommit((handle, dao) ->
+                    handle.createQuery(
+                        "select sa.*, s.session_uuid, s.workflow_name, s.session_time" +
+                        " from session_attempts sa" +
+                        " join sessions s on s.id = sa.session_id" +
+                        " join projects proj on proj.id = sa.project_id" +
+                        " where sa.id " + inLargeIdListExpression(attemptIdList) +
+                        " and sa.site_id = :siteId" +
+                        " and " + acFilter.getSql() +
+                        " order by sa.id desc"
+                    )
+                    .bind("siteId", siteId)
+                    .map(new StoredSessionAttemptWithSessionMapper(configMapper))
+                    .list()
+            );
+        }
+
+        @DigdagTimed(value = "dsst_", category = "db", appendMethodName = true)
+        @Override
+        public List<StoredSessionAttemptWithSession> findAttempts(
+                AttemptFilter filter,
+                boolean withRetriedAttempts,
+                int pageSize,
+                Optional<Long> lastId,
+                AccessController.ListFilter acFilter)
+        {
+            StringBuilder sql = new StringBuilder();
+            sql.append("select sa.*, s.session_uuid, s.workflow_name, s.session_time" +
+                    " from session_attempts sa");
+            if (withRetriedAttempts) {
+                sql.append(" join sessions s on s.id = sa.session_id");
+            }
+            else {
+                sql.append(" join sessions s on s.last_attempt_id = sa.id");
+            }
+            sql.append(" join projects proj on proj.id = sa.project_id" +
+                    " where sa.site_id = :siteId" +
+                    " and sa.id < :lastId");
+            if (withRetriedAttempts) {
+                sql.append(" and s.last_attempt_id is not null");
+            }
+            if (filter.getProjectId().isPresent()) {
+                sql.append(" and s.project_id = :projectId");
+            }
+            if (filter.getWorkflowName().isPresent()) {
+                sql.append(" and s.workflow_name = :workflowName");
+            }
+            if (filter.getSessionTimeFrom().isPresent()) {
+                sql.append(" and s.session_time >= :sessionTimeFrom");
+            }
+            if (filter.getSessionTimeTo().isPresent()) {
+                sql.append(" and s.session_time < :sessionTimeTo");
+            }
+            if (filter.getStatus().isPresent()) {
+                sql.append(" and ").append(attemptStatusCondition(filter.getStatus().get()));
+            }
+            sql.append(" and ").append(acFilter.getSql());
+            sql.append(" order by sa.id desc" +
+                    " limit :limit");
+
+            return autoCommit((handle, dao) -> {
+                Query<Map<String, Object>> query = handle.createQuery(sql.toString())
+                    .bind("siteId", siteId)
+                    .bind("lastId", lastId.or(Long.MAX_VALUE))
+                    .bind("limit", pageSize);
+                if (filter.getProjectId().isPresent()) {
+                    query.bind("projectId", filter.getProjectId().get());
+                }
+                if (filter.getWorkflowName().isPresent()) {
+                    query.bind("workflowName", filter.getWorkflowName().get());
+                }
+                if (filter.getSessionTimeFrom().isPresent()) {
+                    query.bind("sessionTimeFrom", filter.getSessionTimeFrom().get().getEpochSecond());
+                }
+                if (filter.getSessionTimeTo().isPresent()) {
+                    query.bind("sessionTimeTo", filter.getSessionTimeTo().get().getEpochSecond());
+                }
+                return query
+                    .map(new StoredSessionAttemptWithSessionMapper(configMapper))
+                    .list();
+            });
+        }
+
+        private String attemptStatusCondition(AttemptFilter.Status status)
+        {
+            int mask = AttemptStateFlags.DONE_CODE | AttemptStateFlags.SUCCESS_CODE | AttemptStateFlags.CANCEL_REQUESTED_CODE;
+            switch (status) {
+            case RUNNING:
+                return bitAnd("sa.state_flags", Integer.toString(AttemptStateFlags.DONE_CODE)) + " = 0";
+            case SUCCESS:
+                return bitAnd("sa.state_flags", Integer.toString(AttemptStateFlags.SUCCESS_CODE)) + " != 0";
+            case ERROR:
+                return bitAnd("sa.state_flags", Integer.toString(mask)) + " = " + AttemptStateFlags.DONE_CODE;
+            case KILLED:
+                return bitAnd("sa.state_flags", Integer.toString(mask)) + " = " + (AttemptStateFlags.DONE_CODE | AttemptStateFlags.CANCEL_REQUESTED_CODE);
+            default:
+                throw new IllegalArgumentException("Unknown attempt status: " + status);
+            }
+        }
+
+        @DigdagTimed(value = "dsst_", category = "db", appendMethodName = true)
+        @Override
+        public Map<Long, Map<TaskStateCode, Long>> getTaskStateCountsOfAttempts(List<Long> attemptIdList)
+        {
+            if (attemptIdList.isEmpty()) {
+                return ImmutableMap.of();
+            }
+            // attempt ids are already filtered by site id by the caller
+            List<AttemptTaskStateCount> rows = autoCommit((handle, dao) ->
+                    handle.createQuery(
+                        "select attempt_id, state, count(*) as task_count" +
+                        " from tasks" +
+                        " where attempt_id " + inLargeIdListExpression(attemptIdList) +
+                        " group by attempt_id, state"
+                    )
+                    .map((index, r, ctx) -> new AttemptTaskStateCount(
+                                r.getLong("attempt_id"), TaskStateCode.of(r.getInt("state")), r.getLong("task_count")))
+                    .list()
+            );
+            Map<Long, Map<TaskStateCode, Long>> counts = new HashMap<>();
+            for (AttemptTaskStateCount row : rows) {
+                counts.computeIfAbsent(row.attemptId, id -> new EnumMap<>(TaskStateCode.class))
+                    .put(row.state, row.count);
+            }
+            return counts;
+        }
+
         @DigdagTimed(value = "dsst_", category = "db", appendMethodName = true)
         @Override
         public List<StoredSessionAttemptWithSession> getActiveAttemptsOfWorkflow(int projectId, String workflowName, int pageSize, Optional<Long> lastId)
@@ -1446,9 +1809,27 @@ public class DatabaseSessionStoreManager
                     .list()
                 );
             if (tasks.isEmpty()) {
-                String archive = autoCommit((handle, dao) -> dao.getTaskArchiveById(siteId, attemptId));
+                TaskArchive archive = autoCommit((handle, dao) ->
+                        handle.createQuery(
+                            "select ta.tasks, ta.archive_path" +
+                            " from task_archives ta" +
+                            " join session_attempts sa on sa.id = ta.id" +
+                            " where sa.id = :attemptId" +
+                            " and sa.site_id = :siteId"
+                            )
+                        .bind("siteId", siteId)
+                        .bind("attemptId", attemptId)
+                        .map(new TaskArchiveMapper())
+                        .first()
+                    );
                 if (archive != null) {
-                    return loadTaskArchive(archive);
+                    if (archive.archivePath.isPresent()) {
+                        if (taskArchiveStorage == null) {
+                            throw new IllegalStateException("Task archive of attempt id=" + attemptId + " is stored in a secondary storage but TaskArchiveStorage is not available");
+                        }
+                        return loadTaskArchive(taskArchiveStorage.get(archive.archivePath.get()));
+                    }
+                    return loadTaskArchive(archive.tasks);
                 }
             }
             return tasks;
@@ -2070,6 +2451,30 @@ public class DatabaseSessionStoreManager
                 " values (:upstreamId, :downstreamId)")
         void insertTaskDependency(@Bind("downstreamId") long downstreamId, @Bind("upstreamId") long upstreamId);
 
+        // batch versions of insertTask, insertTaskDetails, insertEmptyTaskStateDetails and insertTaskDependency.
+        // ids of tasks are allocated in advance (see nextTaskIdsQuery) so that parent_id of a task can refer to
+        // a task inserted in the same batch.
+        @SqlBatch("insert into tasks (id, attempt_id, parent_id, task_type, state, state_flags, updated_at)" +
+                " values (:id, :attemptId, :parentId, :taskType, :state, :stateFlags, now())")
+        @BatchChunkSize(1000)
+        void insertTasksWithIds(@Bind("id") List<Long> ids, @Bind("attemptId") long attemptId, @Bind("parentId") List<Long> parentIds,
+                @Bind("taskType") List<Integer> taskTypes, @Bind("state") List<Short> states, @Bind("stateFlags") List<Integer> stateFlags);
+
+        @SqlBatch("insert into task_details (id, full_name, local_config, export_config)" +
+                " values (:id, :fullName, :localConfig, :exportConfig)")
+        @BatchChunkSize(1000)
+        void insertTaskDetailsBatch(@Bind("id") List<Long> ids, @Bind("fullName") List<String> fullNames, @Bind("localConfig") List<Config> localConfigs, @Bind("exportConfig") List<Config> exportConfigs);
+
+        @SqlBatch("insert into task_state_details (id)" +
+                " values (:id)")
+        @BatchChunkSize(1000)
+        void insertEmptyTaskStateDetailsBatch(@Bind("id") List<Long> ids);
+
+        @SqlBatch("insert into task_dependencies (upstream_id, downstream_id)" +
+                " values (:upstreamId, :downstreamId)")
+        @BatchChunkSize(1000)
+        void insertTaskDependencies(@Bind("downstreamId") List<Long> downstreamIds, @Bind("upstreamId") List<Long> upstreamIds);
+
         @SqlUpdate("insert into tasks (attempt_id, parent_id, task_type, state, state_flags, updated_at)" +
                 " values (:attemptId, :parentId, :taskType, :state, :stateFlags, :updatedAt)")
         @GetGeneratedKeys
@@ -2174,12 +2579,6 @@ public class DatabaseSessionStoreManager
                 " and retry_at \\<= now()")
         int trySetRetryWaitingToReady();
 
-        @SqlQuery("select * from session_monitors" +
-                " where next_run_time \\<= :currentTime" +
-                " limit :limit" +
-                " for update")
-        List<StoredSessionMonitor> lockReadySessionMonitors(@Bind("currentTime") long currentTime, @Bind("limit") int limit);
-
         @SqlUpdate("update session_monitors" +
                 " set next_run_time = :nextRunTime, updated_at = now()" +
                 " where id = :id")
@@ -2190,18 +2589,30 @@ public class DatabaseSessionStoreManager
                 " where id = :attemptId")
         void updateNextDelayedAttemptRunTime(@Bind("attemptId") long attemptId, @Bind("nextRunTime") long nextRunTime);
 
-        @SqlQuery("select tasks" +
-                " from task_archives ta" +
-                " join session_attempts sa on sa.id = ta.id" +
-                " where sa.id = :attemptId" +
-                " and sa.site_id = :siteId")
-        String getTaskArchiveById(@Bind("siteId") int siteId, @Bind("attemptId") long attemptId);
-
         @SqlUpdate("insert into task_archives" +
                 " (id, tasks, created_at)" +
                 " values (:attemptId, :tasks, now())")
         void insertTaskArchive(@Bind("attemptId") long attemptId, @Bind("tasks") String tasks);
 
+        @SqlQuery("select id from task_archives" +
+                " where archive_path is null" +
+                " and created_at \\< :createdBefore" +
+                " and id \\> :lastId" +
+                " order by id asc" +
+                " limit :limit")
+        List<Long> findInlineTaskArchivesCreatedBefore(@Bind("createdBefore") Timestamp createdBefore, @Bind("lastId") long lastId, @Bind("limit") int limit);
+
+        @SqlQuery("select tasks from task_archives" +
+                " where id = :attemptId" +
+                " and archive_path is null")
+        String getInlineTaskArchive(@Bind("attemptId") long attemptId);
+
+        @SqlUpdate("update task_archives" +
+                " set tasks = '', archive_path = :archivePath" +
+                " where id = :attemptId" +
+                " and archive_path is null")
+        int setTaskArchivePath(@Bind("attemptId") long attemptId, @Bind("archivePath") String archivePath);
+
         @SqlUpdate("delete from session_monitors" +
                 " where id = :id")
         void deleteSessionMonitor(@Bind("id") long id);
@@ -2515,6 +2926,20 @@ public class DatabaseSessionStoreManager
         }
     }
 
+    private static class AttemptTaskStateCount
+    {
+        private final long attemptId;
+        private final TaskStateCode state;
+        private final long count;
+
+        AttemptTaskStateCount(long attemptId, TaskStateCode state, long count)
+        {
+            this.attemptId = attemptId;
+            this.state = state;
+            this.count = count;
+        }
+    }
+
     static class TaskStateSummaryMapper
             implements ResultSetMapper<TaskStateSummary>
     {
@@ -2531,6 +2956,25 @@ public class DatabaseSessionStoreManager
         }
     }
 
+    static class TaskSummaryMapper
+            implements ResultSetMapper<TaskSummary>
+    {
+        @Override
+        public TaskSummary map(int index, ResultSet r, StatementContext ctx)
+                throws SQLException
+        {
+            return ImmutableTaskSummary.builder()
+                .id(r.getLong("id"))
+                .attemptId(r.getLong("attempt_id"))
+                .parentId(getOptionalLong(r, "parent_id"))
+                .taskType(TaskType.of(r.getInt("task_type")))
+                .state(TaskStateCode.of(r.getInt("state")))
+                .stateFlags(TaskStateFlags.of(r.getInt("state_flags")))
+                .retryCount(r.getInt("retry_count"))
+                .build();
+        }
+    }
+
     static class TaskAttemptSummaryMapper
             implements ResultSetMapper<TaskAttemptSummary>
     {
@@ -2603,6 +3047,29 @@ public class DatabaseSessionStoreManager
         }
     }
 
+    private static class TaskArchive
+    {
+        private final String tasks;
+        private final Optional<String> archivePath;
+
+        public TaskArchive(String tasks, Optional<String> archivePath)
+        {
+            this.tasks = tasks;
+            this.archivePath = archivePath;
+        }
+    }
+
+    static class TaskArchiveMapper
+            implements ResultSetMapper<TaskArchive>
+    {
+        @Override
+        public TaskArchive map(int index, ResultSet r, StatementContext ctx)
+                throws SQLException
+        {
+            return new TaskArchive(r.getString("tasks"), getOptionalString(r, "archive_path"));
+        }
+    }
+
     private static class IdConfig
     {
         protected final long id;
@@ -0,0 +1,110 @@
+package io.digdag.core.database;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.hash.Hashing;
+import org.skife.jdbi.v2.Handle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * File cache of the schema of a fully migrated in-memory H2 database.
+ *
+ * digdag run and digdag check create a new in-memory database every time
+ * and apply all migrations one by one. This class stores the result of
+ * H2's SCRIPT command after the first migration, and the following runs
+ * restore the schema by running the statements instead of migrating.
+ *
+ * The file name includes a digest of the migration versions and digdag
+ * version so that a snapshot is never used for a different set of
+ * migrations. Failures of reading or writing the file are ignored and the
+ * caller falls back to migrations.
+ */
+class H2SchemaSnapshot
+{
+    private static final Logger logger = LoggerFactory.getLogger(H2SchemaSnapshot.class);
+
+    private final Path file;
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    H2SchemaSnapshot(Path dir, List<String> migrationVersions)
+    {
+        String version = H2SchemaSnapshot.class.getPackage().getImplementationVersion();
+        String key = String.join("\n", migrationVersions) + "\n\n" + (version == null ? "dev" : version);
+        this.file = dir.resolve("h2-schema-" + Hashing.sha256().hashString(key, UTF_8).toString() + ".json");
+    }
+
+    /**
+     * Restores the schema into an empty database. Returns false if the
+     * snapshot doesn't exist or is broken. The database is left empty in that
+     * case.
+     */
+    boolean restore(Handle handle)
+    {
+        List<String> statements;
+        try {
+            statements = mapper.readValue(Files.readAllBytes(file), new TypeReference<List<String>>() {});
+        }
+        catch (NoSuchFileException ex) {
+            return false;
+        }
+        catch (IOException ex) {
+            logger.warn("Ignoring broken database schema snapshot {}", file, ex);
+            return false;
+        }
+
+        try {
+            for (String statement : statements) {
+                handle.execute(statement);
+            }
+            return true;
+        }
+        catch (RuntimeException ex) {
+            logger.warn("Failed to restore database schema snapshot {}. Applying migrations instead.", file, ex);
+            handle.execute("DROP ALL OBJECTS");
+            try {
+                Files.deleteIfExists(file);
+            }
+            catch (IOException ignored) {
+            }
+            return false;
+        }
+    }
+
+    void store(Handle handle)
+    {
+        List<String> statements = handle.createQuery("SCRIPT")
+            .mapTo(String.class)
+            .list()
+            .stream()
+            // skip comments and CREATE USER statement including password hash of the database
+            .filter(statement -> !statement.startsWith("--") && !statement.startsWith("CREATE USER"))
+            .collect(Collectors.toList());
+
+        try {
+            Files.createDirectories(file.getParent());
+            Path temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+            try {
+                Files.write(temp, mapper.writeValueAsBytes(statements));
+                Files.move(temp, file, ATOMIC_MOVE, REPLACE_EXISTING);
+            }
+            finally {
+                Files.deleteIfExists(temp);
+            }
+        }
+        catch (IOException ex) {
+            logger.warn("Failed to write database schema snapshot {}", file, ex);
+        }
+    }
+}
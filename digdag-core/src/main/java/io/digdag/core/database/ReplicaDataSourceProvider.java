@@ -0,0 +1,43 @@
+package io.digdag.core.database;
+
+import javax.annotation.PreDestroy;
+import javax.sql.DataSource;
+import com.google.common.base.Optional;
+import com.google.inject.Inject;
+import io.digdag.client.config.Config;
+
+/**
+ * Holds an optional connection pool of a read replica database configured
+ * by database.replica.* keys. The pool is created when it's used first.
+ */
+public class ReplicaDataSourceProvider
+        implements AutoCloseable
+{
+    private final Optional<DataSourceProvider> provider;
+
+    @Inject
+    public ReplicaDataSourceProvider(Config systemConfig)
+    {
+        this.provider = DatabaseConfig.convertReplicaFrom(systemConfig)
+            .transform(config -> new DataSourceProvider(config));
+    }
+
+    public boolean isEnabled()
+    {
+        return provider.isPresent();
+    }
+
+    public Optional<DataSource> get()
+    {
+        return provider.transform(DataSourceProvider::get);
+    }
+
+    @PreDestroy
+    @Override
+    public void close()
+    {
+        if (provider.isPresent()) {
+            provider.get().close();
+        }
+    }
+}
@@ -1,7 +1,12 @@
 package io.digdag.core.database;
 
+import com.google.common.base.Optional;
 import com.google.common.base.Throwables;
 import com.google.inject.Inject;
+import io.digdag.core.repository.ResourceNotFoundException;
+import io.digdag.metrics.StdDigdagMetrics;
+import io.digdag.spi.metrics.DigdagMetrics;
+import io.micrometer.core.instrument.Tags;
 import org.skife.jdbi.v2.DBI;
 import org.skife.jdbi.v2.Handle;
 import org.skife.jdbi.v2.exceptions.TransactionFailedException;
@@ -9,12 +14,16 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import javax.sql.DataSource;
 
 import static com.google.common.base.Preconditions.checkNotNull;
+import static io.digdag.spi.metrics.DigdagMetrics.Category;
 import static java.util.Locale.ENGLISH;
 
 public class ThreadLocalTransactionManager
@@ -22,9 +31,17 @@ public class ThreadLocalTransactionManager
 {
     private static final Logger logger = LoggerFactory.getLogger(TransactionManager.class);
 
-    private final ThreadLocal<Transaction> threadLocalTransaction = new ThreadLocal<>();
-    private final ThreadLocal<Transaction> threadLocalAutoCommitTransaction = new ThreadLocal<>();
+    private final ThreadLocal<LazyTransaction> threadLocalTransaction = new ThreadLocal<>();
+    private final ThreadLocal<LazyTransaction> threadLocalAutoCommitTransaction = new ThreadLocal<>();
     private final DataSource ds;
+    private final Optional<ReplicaDataSourceProvider> replica;
+
+    @Inject(optional = true)
+    private DigdagMetrics metrics = StdDigdagMetrics.empty();
+
+    // Transactions look up metrics when they open a connection because a
+    // transaction created in the constructor exists before the field is injected.
+    private final Supplier<DigdagMetrics> metricsSupplier = () -> metrics;
 
     private static class LazyTransaction
             implements Transaction
@@ -38,19 +55,31 @@ public class ThreadLocalTransactionManager
 
         private final DataSource ds;
         private final boolean autoAutoCommit;
+        private final boolean readOnly;
+        private final String poolName;
+        private final Supplier<DigdagMetrics> metrics;
         private Handle handle;
         private State state = State.ACTIVE;
         private final StackTraceElement[] stackTrace;
+        private final List<Runnable> afterCommitCallbacks = new ArrayList<>();
+
+        LazyTransaction(DataSource ds, Supplier<DigdagMetrics> metrics)
+        {
+            this(ds, false, metrics);
+        }
 
-        LazyTransaction(DataSource ds)
+        LazyTransaction(DataSource ds, boolean autoAutoCommit, Supplier<DigdagMetrics> metrics)
         {
-            this(ds, false);
+            this(ds, autoAutoCommit, false, "primary", metrics);
         }
 
-        LazyTransaction(DataSource ds, boolean autoAutoCommit)
+        LazyTransaction(DataSource ds, boolean autoAutoCommit, boolean readOnly, String poolName, Supplier<DigdagMetrics> metrics)
         {
             this.ds = checkNotNull(ds);
             this.autoAutoCommit = autoAutoCommit;
+            this.readOnly = readOnly;
+            this.poolName = poolName;
+            this.metrics = metrics;
             this.stackTrace = Thread.currentThread().getStackTrace();
         }
 
@@ -92,7 +121,9 @@ public class ThreadLocalTransactionManager
                 dbi.registerMapper(new DatabaseTaskQueueServer.ImmutableTaskQueueLockMapper());
 
                 dbi.registerArgumentFactory(configMapper.getArgumentFactory());
+                long startTime = System.currentTimeMillis();
                 handle = dbi.open();
+                metrics.get().summary(Category.DB, "connectionAcquireMsec", Tags.of("pool", poolName), System.currentTimeMillis() - startTime);
 
                 try {
                     handle.getConnection().setAutoCommit(autoAutoCommit);
@@ -100,6 +131,15 @@ public class ThreadLocalTransactionManager
                 catch (SQLException ex) {
                     throw new TransactionFailedException("Failed to set auto commit: " + autoAutoCommit, ex);
                 }
+                if (readOnly) {
+                    // Connection pool resets this flag when the connection is returned
+                    try {
+                        handle.getConnection().setReadOnly(true);
+                    }
+                    catch (SQLException ex) {
+                        throw new TransactionFailedException("Failed to set read only", ex);
+                    }
+                }
                 if (!autoAutoCommit) {
                     handle.begin();
                 }
@@ -145,6 +185,30 @@ public class ThreadLocalTransactionManager
             state = State.COMMITTED;
         }
 
+        void afterCommit(Runnable callback)
+        {
+            if (autoAutoCommit) {
+                // every statement is already committed
+                callback.run();
+            }
+            else {
+                afterCommitCallbacks.add(callback);
+            }
+        }
+
+        void runAfterCommitCallbacks()
+        {
+            for (Runnable callback : afterCommitCallbacks) {
+                try {
+                    callback.run();
+                }
+                catch (RuntimeException ex) {
+                    logger.warn("Callback after commit failed", ex);
+                }
+            }
+            afterCommitCallbacks.clear();
+        }
+
         @Override
         public void abort()
         {
@@ -157,6 +221,7 @@ public class ThreadLocalTransactionManager
             if (!autoAutoCommit) {
                 handle.rollback();
             }
+            afterCommitCallbacks.clear();
             state = State.ABORTED;
         }
 
@@ -179,6 +244,8 @@ public class ThreadLocalTransactionManager
         {
             return "LazyTransaction{" +
                     "autoAutoCommit=" + autoAutoCommit +
+                    ", readOnly=" + readOnly +
+                    ", pool=" + poolName +
                     ", handle=" + handle +
                     ", state=" + state +
                     ", stackTrace=[\n" + Arrays.stream(stackTrace)
@@ -189,6 +256,12 @@ public class ThreadLocalTransactionManager
     }
 
     @Inject
+    public ThreadLocalTransactionManager(DataSource ds, ReplicaDataSourceProvider replica)
+    {
+        this.ds = checkNotNull(ds);
+        this.replica = replica.isEnabled() ? Optional.of(replica) : Optional.absent();
+    }
+
     public ThreadLocalTransactionManager(DataSource ds)
     {
         this(ds, false);
@@ -197,8 +270,9 @@ public class ThreadLocalTransactionManager
     ThreadLocalTransactionManager(DataSource ds, boolean autoAutoCommit)
     {
         this.ds = checkNotNull(ds);
+        this.replica = Optional.absent();
         if (autoAutoCommit) {
-            LazyTransaction transaction = new LazyTransaction(ds, true);
+            LazyTransaction transaction = new LazyTransaction(ds, true, metricsSupplier);
             threadLocalTransaction.set(transaction);
         }
     }
@@ -206,7 +280,7 @@ public class ThreadLocalTransactionManager
     @Override
     public Handle getHandle(ConfigMapper configMapper)
     {
-        Transaction transaction = threadLocalTransaction.get();
+        LazyTransaction transaction = threadLocalTransaction.get();
         if (transaction == null) {
             transaction = threadLocalAutoCommitTransaction.get();
             if (transaction == null) {
@@ -251,18 +325,81 @@ public class ThreadLocalTransactionManager
     public <T, E1 extends Exception, E2 extends Exception, E3 extends Exception, E4 extends Exception>
     T begin(SupplierInTransaction<T, E1, E2, E3, E4> func, Class<E1> e1, Class<E2> e2, Class<E3> e3, Class<E4> e4)
             throws E1, E2, E3, E4
+    {
+        return run(new LazyTransaction(ds, metricsSupplier), func, e1, e2, e3, e4);
+    }
+
+    @Override
+    public <T> T beginReadOnly(SupplierInTransaction<T, RuntimeException, RuntimeException, RuntimeException, RuntimeException> func)
+    {
+        return beginReadOnly(func, RuntimeException.class, RuntimeException.class, RuntimeException.class, RuntimeException.class);
+    }
+
+    @Override
+    public <T, E1 extends Exception> T beginReadOnly(SupplierInTransaction<T, E1, RuntimeException, RuntimeException, RuntimeException> func, Class<E1> e1)
+            throws E1
+    {
+        return beginReadOnly(func, e1, RuntimeException.class, RuntimeException.class, RuntimeException.class);
+    }
+
+    @Override
+    public <T, E1 extends Exception, E2 extends Exception>
+    T beginReadOnly(SupplierInTransaction<T, E1, E2, RuntimeException, RuntimeException> func, Class<E1> e1, Class<E2> e2)
+            throws E1, E2
+    {
+        return beginReadOnly(func, e1, e2, RuntimeException.class, RuntimeException.class);
+    }
+
+    @Override
+    public <T, E1 extends Exception, E2 extends Exception, E3 extends Exception>
+    T beginReadOnly(SupplierInTransaction<T, E1, E2, E3, RuntimeException> func, Class<E1> e1, Class<E2> e2, Class<E3> e3)
+            throws E1, E2, E3
+    {
+        return beginReadOnly(func, e1, e2, e3, RuntimeException.class);
+    }
+
+    @Override
+    public <T, E1 extends Exception, E2 extends Exception, E3 extends Exception, E4 extends Exception>
+    T beginReadOnly(SupplierInTransaction<T, E1, E2, E3, E4> func, Class<E1> e1, Class<E2> e2, Class<E3> e3, Class<E4> e4)
+            throws E1, E2, E3, E4
+    {
+        if (replica.isPresent()) {
+            Optional<DataSource> replicaDs = replica.get().get();
+            try {
+                metrics.increment(Category.DB, "readOnlyTransactionOnReplica");
+                return run(new LazyTransaction(replicaDs.get(), false, true, "replica", metricsSupplier), func, e1, e2, e3, e4);
+            }
+            catch (Exception ex) {
+                if (!(ex instanceof ResourceNotFoundException)) {
+                    Throwables.propagateIfInstanceOf(ex, e1);
+                    Throwables.propagateIfInstanceOf(ex, e2);
+                    Throwables.propagateIfInstanceOf(ex, e3);
+                    Throwables.propagateIfInstanceOf(ex, e4);
+                    throw Throwables.propagate(ex);
+                }
+                // The resource may be created recently and not replicated yet. Retry using the primary database.
+                logger.debug("Resource is not found on the replica database. Retrying on the primary database: {}", ex.getMessage());
+                metrics.increment(Category.DB, "readOnlyTransactionReplicaFallback");
+            }
+        }
+        return run(new LazyTransaction(ds, false, true, "primary", metricsSupplier), func, e1, e2, e3, e4);
+    }
+
+    private <T, E1 extends Exception, E2 extends Exception, E3 extends Exception, E4 extends Exception>
+    T run(LazyTransaction transaction, SupplierInTransaction<T, E1, E2, E3, E4> func, Class<E1> e1, Class<E2> e2, Class<E3> e3, Class<E4> e4)
+            throws E1, E2, E3, E4
     {
         if (threadLocalTransaction.get() != null) {
             throw new IllegalStateException("Nested transaction is not allowed: " + threadLocalTransaction.get());
         }
 
         boolean committed = false;
-        LazyTransaction transaction = new LazyTransaction(ds);
         try {
             threadLocalTransaction.set(transaction);
             T result = func.get();
             transaction.commit();
             committed = true;
+            transaction.runAfterCommitCallbacks();
             return result;
         }
         catch (Exception e) {
@@ -316,7 +453,7 @@ public class ThreadLocalTransactionManager
                 return func.get();
             }
             else {
-                LazyTransaction transaction = new LazyTransaction(ds, true);
+                LazyTransaction transaction = new LazyTransaction(ds, true, metricsSupplier);
                 threadLocalAutoCommitTransaction.set(transaction);
                 try {
                     return func.get();
@@ -335,6 +472,19 @@ public class ThreadLocalTransactionManager
         }
     }
 
+    @Override
+    public void afterCommit(Runnable callback)
+    {
+        LazyTransaction transaction = threadLocalTransaction.get();
+        if (transaction == null) {
+            // not in a transaction. Changes are already committed by auto-commit mode.
+            callback.run();
+        }
+        else {
+            transaction.afterCommit(callback);
+        }
+    }
+
     @Override
     public void reset()
     {
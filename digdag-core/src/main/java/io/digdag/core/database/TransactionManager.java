@@ -42,6 +42,40 @@ public interface TransactionManager
             SupplierInTransaction<T, E1, E2, E3, E4> func, Class<E1> e1, Class<E2> e2, Class<E3> e3, Class<E4> e4)
             throws E1, E2, E3, E4;
 
+    /**
+     * Create a new read-only transaction and set it as the current transaction object.
+     * The transaction uses the read replica database if database.replica.* is configured.
+     */
+    <T> T beginReadOnly(SupplierInTransaction<T, RuntimeException, RuntimeException, RuntimeException, RuntimeException> func);
+
+    /**
+     * Create a new read-only transaction and set it as the current transaction object.
+     */
+    <T, E1 extends Exception> T beginReadOnly(
+            SupplierInTransaction<T, E1, RuntimeException, RuntimeException, RuntimeException> func, Class<E1> e1)
+        throws E1;
+
+    /**
+     * Create a new read-only transaction and set it as the current transaction object.
+     */
+    <T, E1 extends Exception, E2 extends Exception> T beginReadOnly(
+            SupplierInTransaction<T, E1, E2, RuntimeException, RuntimeException> func, Class<E1> e1, Class<E2> e2)
+        throws E1, E2;
+
+    /**
+     * Create a new read-only transaction and set it as the current transaction object.
+     */
+    <T, E1 extends Exception, E2 extends Exception, E3 extends Exception> T beginReadOnly(
+            SupplierInTransaction<T, E1, E2, E3, RuntimeException> func, Class<E1> e1, Class<E2> e2, Class<E3> e3)
+        throws E1, E2, E3;
+
+    /**
+     * Create a new read-only transaction and set it as the current transaction object.
+     */
+    <T, E1 extends Exception, E2 extends Exception, E3 extends Exception, E4 extends Exception> T beginReadOnly(
+            SupplierInTransaction<T, E1, E2, E3, E4> func, Class<E1> e1, Class<E2> e2, Class<E3> e3, Class<E4> e4)
+            throws E1, E2, E3, E4;
+
     /**
      * Get the current transaction object if exists, otherwise uses a temporary transaction object with auto-commit mode.
      */
@@ -73,6 +107,13 @@ public interface TransactionManager
      */
     void reset();
 
+    /**
+     * Run the callback after the current transaction is committed. The callback is
+     * discarded if the transaction is aborted. If there're no current transaction,
+     * the callback runs immediately.
+     */
+    void afterCommit(Runnable callback);
+
     @FunctionalInterface
     interface SupplierInTransaction<T, E1 extends Exception, E2 extends Exception, E3 extends Exception, E4 extends Exception>
     {
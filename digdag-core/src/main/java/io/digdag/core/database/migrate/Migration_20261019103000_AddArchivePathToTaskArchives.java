@@ -0,0 +1,16 @@
+package io.digdag.core.database.migrate;
+
+import org.skife.jdbi.v2.Handle;
+
+public class Migration_20261019103000_AddArchivePathToTaskArchives
+        implements Migration
+{
+    @Override
+    public void migrate(Handle handle, MigrationContext context)
+    {
+        // archive_path is set when the archive is moved to TaskArchiveStorage.
+        // tasks column becomes an empty string in that case.
+        handle.update("alter table task_archives" +
+                " add column archive_path text");
+    }
+}
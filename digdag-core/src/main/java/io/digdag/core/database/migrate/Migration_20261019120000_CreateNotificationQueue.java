@@ -0,0 +1,21 @@
+package io.digdag.core.database.migrate;
+
+import org.skife.jdbi.v2.Handle;
+
+public class Migration_20261019120000_CreateNotificationQueue
+        implements Migration
+{
+    @Override
+    public void migrate(Handle handle, MigrationContext context)
+    {
+        handle.update(
+                context.newCreateTableBuilder("notification_queue")
+                .addLongId("id")
+                .addLongText("notification", "not null")
+                .addInt("retry_count", "not null")
+                .addTimestamp("next_run_at", "not null")
+                .addTimestamp("created_at", "not null")
+                .build());
+        handle.update("create index notification_queue_on_next_run_at on notification_queue (next_run_at)");
+    }
+}
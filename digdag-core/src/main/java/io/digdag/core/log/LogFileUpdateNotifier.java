@@ -0,0 +1,48 @@
+package io.digdag.core.log;
+
+import io.digdag.spi.LogFilePrefix;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Tells listeners that a log file of an attempt is uploaded by this process.
+ *
+ * Log files uploaded by other servers or uploaded directly to a storage are
+ * not notified. Listeners need to check the log server periodically as well.
+ */
+public class LogFileUpdateNotifier
+{
+    private static final Logger logger = LoggerFactory.getLogger(LogFileUpdateNotifier.class);
+
+    public interface Listener
+    {
+        void logFileUpdated(LogFilePrefix prefix);
+    }
+
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    public void addListener(Listener listener)
+    {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener)
+    {
+        listeners.remove(listener);
+    }
+
+    public void notifyUpdated(LogFilePrefix prefix)
+    {
+        for (Listener listener : listeners) {
+            try {
+                listener.logFileUpdated(prefix);
+            }
+            catch (RuntimeException ex) {
+                logger.warn("Log file update listener failed. Ignoring.", ex);
+            }
+        }
+    }
+}
@@ -14,6 +14,7 @@ public class LogModule
     public void configure(Binder binder)
     {
         binder.bind(LogServerManager.class).in(Scopes.SINGLETON);
+        binder.bind(LogFileUpdateNotifier.class).in(Scopes.SINGLETON);
 
         Multibinder<LogServerFactory> logServerBinder = Multibinder.newSetBinder(binder, LogServerFactory.class);
         logServerBinder.addBinding().to(NullLogServerFactory.class).in(Scopes.SINGLETON);
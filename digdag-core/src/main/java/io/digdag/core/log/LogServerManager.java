@@ -27,10 +27,11 @@ public class LogServerManager
 
     private final LogServer logServer;
     private final TempFileManager tempFiles;
+    private final LogFileUpdateNotifier updateNotifier;
 
     @Inject
     public LogServerManager(Set<LogServerFactory> factories, Config systemConfig, TempFileManager tempFiles,
-            StorageManager storageManager)
+            StorageManager storageManager, LogFileUpdateNotifier updateNotifier)
     {
         String type = systemConfig.get("log-server.type", String.class, "null");
         LogServerFactory factory = findLogServer(factories, type);
@@ -41,6 +42,7 @@ public class LogServerManager
             this.logServer = factory.getLogServer();
         }
         this.tempFiles = tempFiles;
+        this.updateNotifier = updateNotifier;
     }
 
     private static LogServerFactory findLogServer(Set<LogServerFactory> factories, String type)
@@ -75,6 +77,11 @@ public class LogServerManager
         return logServer;
     }
 
+    public LogFileUpdateNotifier getUpdateNotifier()
+    {
+        return updateNotifier;
+    }
+
     // this is called when server == agent (server runs a local agent).
     public TaskLogger newInProcessTaskLogger(AgentId agentId, LogFilePrefix prefix, String taskName)
     {
@@ -94,6 +101,7 @@ public class LogServerManager
             return new BufferedRemoteTaskLogger(tempFiles, tempFilePrefix,
                     (firstLogTime, gzData) -> {
                         logServer.putFile(prefix, taskName, firstLogTime, agentId.toString(), gzData);
+                        updateNotifier.notifyUpdated(prefix);
                     });
         }
     }
@@ -0,0 +1,282 @@
+package io.digdag.core.notification;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Optional;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.inject.Inject;
+import com.google.inject.Injector;
+import io.digdag.client.config.Config;
+import io.digdag.core.database.TransactionManager;
+import io.digdag.metrics.StdDigdagMetrics;
+import io.digdag.spi.Notification;
+import io.digdag.spi.NotificationException;
+import io.digdag.spi.NotificationSender;
+import io.digdag.spi.metrics.DigdagMetrics;
+import io.micrometer.core.instrument.Tags;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static io.digdag.core.notification.DefaultNotifier.NOTIFICATION_MAX_RETRY_WAIT;
+import static io.digdag.core.notification.DefaultNotifier.NOTIFICATION_MAX_RETRY_WAIT_DEFAULT;
+import static io.digdag.core.notification.DefaultNotifier.NOTIFICATION_MIN_RETRY_WAIT;
+import static io.digdag.core.notification.DefaultNotifier.NOTIFICATION_MIN_RETRY_WAIT_DEFAULT;
+import static io.digdag.core.notification.DefaultNotifier.NOTIFICATION_RETRIES;
+import static io.digdag.core.notification.DefaultNotifier.NOTIFICATION_RETRIES_DEFAULT;
+import static io.digdag.spi.metrics.DigdagMetrics.Category;
+
+/**
+ * Delivers notifications in background threads if notification.async is true.
+ *
+ * Notifier stores notifications in notification_queue table and returns
+ * immediately so that a slow or failing destination doesn't block executor
+ * and agent threads. This dispatcher polls the table and sends notifications
+ * using up to notification.async.threads threads. A failed notification is
+ * retried with exponential backoff between notification.min_retry_wait and
+ * notification.max_retry_wait up to notification.retries times. Because the
+ * queue is stored in the database, pending notifications are delivered after
+ * restart, possibly by another server.
+ */
+public class AsyncNotificationDispatcher
+{
+    private static final Logger logger = LoggerFactory.getLogger(AsyncNotificationDispatcher.class);
+
+    private static final Duration LEASE_DURATION = Duration.ofMinutes(5);
+    private static final long BACKLOG_SAMPLE_INTERVAL_NANOS = Duration.ofMinutes(1).toNanos();
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 10000;
+
+    private final boolean enabled;
+    private final Optional<NotificationSender> sender;
+    private final NotificationQueueStore store;
+    private final TransactionManager tm;
+    private final ObjectMapper mapper;
+    private final int threads;
+    private final int pollInterval;
+    private final int retries;
+    private final int minRetryWait;
+    private final int maxRetryWait;
+
+    private final AtomicInteger inFlight = new AtomicInteger(0);
+    private final Object wakeUpLock = new Object();
+    private ExecutorService senders;
+    private Thread dispatcherThread;
+    private volatile boolean stop = false;
+    private long lastBacklogSampleNanos = 0;
+    private boolean backlogSampled = false;
+
+    @Inject(optional = true)
+    private DigdagMetrics metrics = StdDigdagMetrics.empty();
+
+    @Inject
+    public AsyncNotificationDispatcher(Config systemConfig, Injector injector,
+            NotificationQueueStore store, TransactionManager tm, ObjectMapper mapper)
+    {
+        this.sender = DefaultNotifier.getSender(systemConfig, injector);
+        this.enabled = sender.isPresent() && systemConfig.get("notification.async", boolean.class, false);
+        this.store = store;
+        this.tm = tm;
+        this.mapper = mapper;
+        this.threads = systemConfig.get("notification.async.threads", int.class, 4);
+        this.pollInterval = systemConfig.get("notification.async.poll_interval", int.class, 1000);
+        this.retries = systemConfig.get(NOTIFICATION_RETRIES, int.class, NOTIFICATION_RETRIES_DEFAULT);
+        this.minRetryWait = systemConfig.get(NOTIFICATION_MIN_RETRY_WAIT, int.class, NOTIFICATION_MIN_RETRY_WAIT_DEFAULT);
+        this.maxRetryWait = systemConfig.get(NOTIFICATION_MAX_RETRY_WAIT, int.class, NOTIFICATION_MAX_RETRY_WAIT_DEFAULT);
+    }
+
+    public boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    public void enqueue(Notification notification)
+            throws NotificationException
+    {
+        try {
+            String json = mapper.writeValueAsString(notification);
+            tm.begin(() -> {
+                store.enqueue(json, Instant.now());
+                return null;
+            });
+        }
+        catch (IOException | RuntimeException ex) {
+            throw new NotificationException("Failed to enqueue notification", ex);
+        }
+        wakeUp();
+    }
+
+    @PostConstruct
+    public void start()
+    {
+        if (!enabled) {
+            return;
+        }
+        this.senders = Executors.newFixedThreadPool(threads,
+                new ThreadFactoryBuilder()
+                .setDaemon(true)
+                .setNameFormat("notification-sender-%d")
+                .build());
+        this.dispatcherThread = new ThreadFactoryBuilder()
+            .setDaemon(true)
+            .setNameFormat("notification-dispatcher")
+            .build()
+            .newThread(this::run);
+        dispatcherThread.start();
+    }
+
+    @PreDestroy
+    public void shutdown()
+    {
+        if (!enabled) {
+            return;
+        }
+        stop = true;
+        wakeUp();
+        // wait for the dispatcher thread so that it doesn't submit notifications to stopped senders
+        try {
+            dispatcherThread.join(SHUTDOWN_TIMEOUT_MILLIS);
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        if (dispatcherThread.isAlive()) {
+            logger.warn("Notification dispatcher thread didn't stop in {} ms", SHUTDOWN_TIMEOUT_MILLIS);
+        }
+        // notifications being sent are retried by another server or after restart when lease expires
+        senders.shutdown();
+    }
+
+    private void wakeUp()
+    {
+        synchronized (wakeUpLock) {
+            wakeUpLock.notifyAll();
+        }
+    }
+
+    private void run()
+    {
+        while (!stop) {
+            try {
+                dispatchDueNotifications();
+                sampleBacklog();
+            }
+            catch (RuntimeException ex) {
+                logger.error("Failed to dispatch notifications", ex);
+            }
+
+            synchronized (wakeUpLock) {
+                try {
+                    wakeUpLock.wait(pollInterval);
+                }
+                catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void sampleBacklog()
+    {
+        // count(*) scans the queue. sample it less often than polling.
+        long now = System.nanoTime();
+        if (backlogSampled && now - lastBacklogSampleNanos < BACKLOG_SAMPLE_INTERVAL_NANOS) {
+            return;
+        }
+        backlogSampled = true;
+        lastBacklogSampleNanos = now;
+        metrics.gauge(Category.DEFAULT, "notificationBacklog", Tags.empty(), tm.begin(() -> store.count()));
+    }
+
+    private void dispatchDueNotifications()
+    {
+        while (!stop) {
+            int available = threads - inFlight.get();
+            if (available <= 0) {
+                return;
+            }
+            Instant now = Instant.now();
+            List<QueuedNotification> due = tm.begin(() ->
+                    store.lockDueNotifications(now, now.plus(LEASE_DURATION), available));
+            if (due.isEmpty()) {
+                return;
+            }
+            for (QueuedNotification queued : due) {
+                inFlight.incrementAndGet();
+                senders.execute(() -> {
+                    try {
+                        deliver(queued);
+                    }
+                    finally {
+                        inFlight.decrementAndGet();
+                        wakeUp();
+                    }
+                });
+            }
+        }
+    }
+
+    @VisibleForTesting
+    void deliver(QueuedNotification queued)
+    {
+        Notification notification;
+        try {
+            notification = mapper.readValue(queued.getNotification(), Notification.class);
+        }
+        catch (IOException ex) {
+            logger.error("Discarding broken notification id={}: {}", queued.getId(), queued.getNotification(), ex);
+            delete(queued);
+            return;
+        }
+
+        try {
+            sender.get().sendNotification(notification);
+        }
+        catch (NotificationException | RuntimeException ex) {
+            int retryCount = queued.getRetryCount() + 1;
+            if (retryCount > retries) {
+                logger.error("Sending notification failed. Giving up after {} retries: {}", retries, notification, ex);
+                metrics.increment(Category.DEFAULT, "notificationGiveUp");
+                delete(queued);
+            }
+            else {
+                long waitMillis = retryWaitMillis(queued.getRetryCount(), minRetryWait, maxRetryWait);
+                logger.warn("Sending notification failed: retry {} of {} in {} ms", retryCount, retries, waitMillis, ex);
+                metrics.increment(Category.DEFAULT, "notificationRetry");
+                tm.begin(() -> {
+                    store.retryLater(queued.getId(), retryCount, Instant.now().plusMillis(waitMillis));
+                    return null;
+                });
+            }
+            return;
+        }
+
+        metrics.summary(Category.DEFAULT, "notificationDeliveryMsec",
+                Duration.between(queued.getCreatedAt(), Instant.now()).toMillis());
+        delete(queued);
+    }
+
+    @VisibleForTesting
+    static long retryWaitMillis(int retryCount, int minRetryWait, int maxRetryWait)
+    {
+        return Math.min((long) minRetryWait << Math.min(retryCount, 30), maxRetryWait);
+    }
+
+    private void delete(QueuedNotification queued)
+    {
+        tm.begin(() -> {
+            store.delete(queued.getId());
+            return null;
+        });
+    }
+}
@@ -22,35 +22,38 @@ public class DefaultNotifier
 {
     private static final String NOTIFICATION_TYPE = "notification.type";
 
-    private static final String NOTIFICATION_RETRIES = "notification.retries";
-    private static final String NOTIFICATION_MIN_RETRY_WAIT = "notification.min_retry_wait";
-    private static final String NOTIFICATION_MAX_RETRY_WAIT = "notification.max_retry_wait";
-    private static final int NOTIFICATION_RETRIES_DEFAULT = 10;
-    private static final int NOTIFICATION_MIN_RETRY_WAIT_DEFAULT = 1000;
-    private static final int NOTIFICATION_MAX_RETRY_WAIT_DEFAULT = 30000;
+    static final String NOTIFICATION_RETRIES = "notification.retries";
+    static final String NOTIFICATION_MIN_RETRY_WAIT = "notification.min_retry_wait";
+    static final String NOTIFICATION_MAX_RETRY_WAIT = "notification.max_retry_wait";
+    static final int NOTIFICATION_RETRIES_DEFAULT = 10;
+    static final int NOTIFICATION_MIN_RETRY_WAIT_DEFAULT = 1000;
+    static final int NOTIFICATION_MAX_RETRY_WAIT_DEFAULT = 30000;
 
     private static Logger logger = LoggerFactory.getLogger(DefaultNotifier.class);
 
-    private Injector injector;
     private final NotificationSender sender;
+    private final AsyncNotificationDispatcher dispatcher;
     private final int retries;
     private final int minRetryWait;
     private final int maxRetryWait;
 
     @Inject
-    public DefaultNotifier(Config systemConfig, Injector injector)
+    public DefaultNotifier(Config systemConfig, Injector injector, AsyncNotificationDispatcher dispatcher)
     {
-        this.injector = injector;
-        Optional<String> type = systemConfig.getOptional(NOTIFICATION_TYPE, String.class);
-        this.sender = type.isPresent() ? sender(type.get()) : null;
+        this.sender = getSender(systemConfig, injector).orNull();
+        this.dispatcher = dispatcher;
         this.retries = systemConfig.get(NOTIFICATION_RETRIES, int.class, NOTIFICATION_RETRIES_DEFAULT);
         this.minRetryWait = systemConfig.get(NOTIFICATION_MIN_RETRY_WAIT, int.class, NOTIFICATION_MIN_RETRY_WAIT_DEFAULT);
         this.maxRetryWait = systemConfig.get(NOTIFICATION_MAX_RETRY_WAIT, int.class, NOTIFICATION_MAX_RETRY_WAIT_DEFAULT);
     }
 
-    private NotificationSender sender(String type)
+    static Optional<NotificationSender> getSender(Config systemConfig, Injector injector)
     {
-        return injector.getInstance(Key.get(NotificationSender.class, Names.named(type)));
+        Optional<String> type = systemConfig.getOptional(NOTIFICATION_TYPE, String.class);
+        if (!type.isPresent()) {
+            return Optional.absent();
+        }
+        return Optional.of(injector.getInstance(Key.get(NotificationSender.class, Names.named(type.get()))));
     }
 
     @Override
@@ -63,6 +66,12 @@ public class DefaultNotifier
             return;
         }
 
+        if (dispatcher.isEnabled()) {
+            // delivered and retried by background threads
+            dispatcher.enqueue(notification);
+            return;
+        }
+
         RetryExecutor retryExecutor = retryExecutor()
                 .retryIf(exception -> true)
                 .withInitialRetryWait(minRetryWait)
@@ -16,6 +16,7 @@ public class NotificationModule
         binder.bind(NotificationSender.class).annotatedWith(Names.named("http")).to(HttpNotificationSender.class);
         binder.bind(NotificationSender.class).annotatedWith(Names.named("mail")).to(MailNotificationSender.class);
         binder.bind(NotificationSender.class).annotatedWith(Names.named("shell")).to(ShellNotificationSender.class);
+        binder.bind(AsyncNotificationDispatcher.class).asEagerSingleton();
         binder.bind(Notifier.class).to(DefaultNotifier.class).in(Scopes.SINGLETON);
     }
 }
@@ -0,0 +1,26 @@
+package io.digdag.core.notification;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Persistent queue of notifications waiting for delivery or retry.
+ */
+public interface NotificationQueueStore
+{
+    void enqueue(String notification, Instant nextRunAt);
+
+    /**
+     * Returns notifications of which next_run_at is before now and postpones
+     * them to leaseExpireAt so that other servers don't deliver them
+     * concurrently. If the server dies before calling delete or retryLater,
+     * the notifications are delivered again after the lease expires.
+     */
+    List<QueuedNotification> lockDueNotifications(Instant now, Instant leaseExpireAt, int limit);
+
+    void delete(long id);
+
+    void retryLater(long id, int retryCount, Instant nextRunAt);
+
+    long count();
+}
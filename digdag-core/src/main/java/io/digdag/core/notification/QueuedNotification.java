@@ -0,0 +1,16 @@
+package io.digdag.core.notification;
+
+import java.time.Instant;
+import org.immutables.value.Value;
+
+@Value.Immutable
+public interface QueuedNotification
+{
+    long getId();
+
+    String getNotification();
+
+    int getRetryCount();
+
+    Instant getCreatedAt();
+}
@@ -49,6 +49,21 @@ public class DynamicPluginLoader<R>
     }
 
     public R load(Spec spec)
+    {
+        R loaded = get(spec);
+        loader.recordUsage(spec);
+        return loaded;
+    }
+
+    /**
+     * Loads plugins into the cache without recording usage of the spec.
+     */
+    public void preload(Spec spec)
+    {
+        get(spec);
+    }
+
+    private R get(Spec spec)
     {
         try {
             return cache.get(spec, () -> loadCache(spec));
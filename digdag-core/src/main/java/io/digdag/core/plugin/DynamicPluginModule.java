@@ -29,7 +29,8 @@ public class DynamicPluginModule
             boolean enabled = systemConfig.get("plugin.enabled", boolean.class, true);
             if (enabled) {
                 String localRepositoryPath = systemConfig.get("plugin.local-path", String.class, ".digdag/plugins");  // TODO use ~/.config/digdag/plugins by default
-                this.pluginLoader = new RemotePluginLoader(Paths.get(localRepositoryPath));
+                boolean offline = systemConfig.get("plugin.offline", boolean.class, false);
+                this.pluginLoader = new RemotePluginLoader(Paths.get(localRepositoryPath), offline);
             }
             else {
                 this.pluginLoader = new NullPluginLoader();
@@ -1,6 +1,27 @@
 package io.digdag.core.plugin;
 
+import java.time.Duration;
+import java.util.List;
+import com.google.common.collect.ImmutableList;
+
 public interface PluginLoader
 {
     PluginSet load(Spec spec);
+
+    /**
+     * Returns specs loaded within the period including the ones loaded
+     * before restart, if this loader remembers them. Used to load plugins
+     * in advance.
+     */
+    default List<Spec> getSpecsLoadedWithin(Duration period)
+    {
+        return ImmutableList.of();
+    }
+
+    /**
+     * Tells that a spec loaded before is used again, so that plugins used
+     * recently are loaded in advance even if they are always cached.
+     */
+    default void recordUsage(Spec spec)
+    { }
 }
@@ -0,0 +1,187 @@
+package io.digdag.core.plugin;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.Hashing;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static com.google.common.collect.Maps.immutableEntry;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * On-disk index of resolved plugin dependencies.
+ *
+ * Resolving a dependency graph using Aether takes seconds even if all
+ * artifacts are in the local repository because it reads POM files of
+ * all dependencies and may check remote repositories. This index stores
+ * the list of resolved artifact files for each (repositories, dependency)
+ * pair so that a plugin class loader can be built without resolving the
+ * graph again after restart.
+ *
+ * This index also records specs that were loaded recently so that the
+ * plugins can be loaded in advance when an agent starts.
+ *
+ * Files of the index are written atomically. Broken or stale entries are
+ * ignored.
+ */
+class PluginResolutionIndex
+{
+    private static final Logger logger = LoggerFactory.getLogger(PluginResolutionIndex.class);
+
+    private final Path artifactsDir;
+    private final Path specsDir;
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    PluginResolutionIndex(Path indexDir)
+    {
+        this.artifactsDir = indexDir.resolve("artifacts");
+        this.specsDir = indexDir.resolve("specs");
+    }
+
+    /**
+     * Returns resolved artifact files of a dependency. Returns absent if the
+     * dependency is not resolved yet or some of the files don't exist any more.
+     */
+    Optional<List<Path>> getArtifacts(List<String> repositories, String dependency)
+    {
+        Path file = artifactsDir.resolve(digest(repositories, dependency) + ".json");
+        ResolvedArtifacts entry;
+        try {
+            entry = mapper.readValue(Files.readAllBytes(file), ResolvedArtifacts.class);
+        }
+        catch (NoSuchFileException ex) {
+            return Optional.absent();
+        }
+        catch (IOException ex) {
+            logger.warn("Ignoring broken plugin resolution index {}", file, ex);
+            return Optional.absent();
+        }
+
+        if (!entry.repositories.equals(repositories) || !entry.dependency.equals(dependency)) {
+            return Optional.absent();
+        }
+        List<Path> paths = entry.files.stream().map(Paths::get).collect(Collectors.toList());
+        if (!paths.stream().allMatch(Files::isRegularFile)) {
+            return Optional.absent();
+        }
+        return Optional.of(paths);
+    }
+
+    void putArtifacts(List<String> repositories, String dependency, List<Path> files)
+    {
+        ResolvedArtifacts entry = new ResolvedArtifacts(repositories, dependency,
+                files.stream().map(path -> path.toAbsolutePath().toString()).collect(Collectors.toList()));
+        write(artifactsDir.resolve(digest(repositories, dependency) + ".json"), entry);
+    }
+
+    /**
+     * Records that the spec is loaded or used. Last modified time of the file
+     * is the last used time.
+     */
+    void recordSpec(Spec spec)
+    {
+        write(specsDir.resolve(digest(spec.getRepositories(), String.join(",", spec.getDependencies())) + ".json"), spec);
+    }
+
+    /**
+     * Returns specs used within the period. The most recently used one comes first.
+     */
+    List<Spec> getSpecsLoadedWithin(Duration period)
+    {
+        if (!Files.isDirectory(specsDir)) {
+            return ImmutableList.of();
+        }
+
+        FileTime threshold = FileTime.from(Instant.now().minus(period));
+        List<Map.Entry<FileTime, Spec>> entries = new ArrayList<>();
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(specsDir, "*.json")) {
+            for (Path file : ds) {
+                try {
+                    FileTime lastModifiedTime = Files.getLastModifiedTime(file);
+                    if (lastModifiedTime.compareTo(threshold) >= 0) {
+                        entries.add(immutableEntry(lastModifiedTime, mapper.readValue(file.toFile(), Spec.class)));
+                    }
+                }
+                catch (IOException ex) {
+                    logger.warn("Ignoring broken plugin spec index {}", file, ex);
+                }
+            }
+        }
+        catch (IOException ex) {
+            logger.warn("Failed to list plugin specs in {}", specsDir, ex);
+        }
+        return entries.stream()
+            .sorted(Comparator.comparing((Map.Entry<FileTime, Spec> entry) -> entry.getKey()).reversed())
+            .map(Map.Entry::getValue)
+            .collect(Collectors.toList());
+    }
+
+    private void write(Path file, Object value)
+    {
+        try {
+            Files.createDirectories(file.getParent());
+            Path temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+            try {
+                Files.write(temp, mapper.writeValueAsBytes(value));
+                Files.move(temp, file, ATOMIC_MOVE, REPLACE_EXISTING);
+            }
+            finally {
+                Files.deleteIfExists(temp);
+            }
+        }
+        catch (IOException ex) {
+            // the index is only a cache. failing to write it doesn't fail loading plugins.
+            logger.warn("Failed to write plugin resolution index {}", file, ex);
+        }
+    }
+
+    private static String digest(List<String> repositories, String dependency)
+    {
+        String key = String.join("\n", repositories) + "\n\n" + dependency;
+        return Hashing.sha256().hashString(key, UTF_8).toString();
+    }
+
+    private static class ResolvedArtifacts
+    {
+        @JsonProperty("repositories")
+        private final List<String> repositories;
+
+        @JsonProperty("dependency")
+        private final String dependency;
+
+        @JsonProperty("files")
+        private final List<String> files;
+
+        @JsonCreator
+        ResolvedArtifacts(
+                @JsonProperty("repositories") List<String> repositories,
+                @JsonProperty("dependency") String dependency,
+                @JsonProperty("files") List<String> files)
+        {
+            this.repositories = repositories;
+            this.dependency = dependency;
+            this.files = files;
+        }
+    }
+}
@@ -7,7 +7,12 @@ import java.io.File;
 import java.net.URL;
 import java.net.MalformedURLException;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import com.google.common.base.Optional;
 import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableList;
 
 import org.apache.maven.repository.internal.MavenRepositorySystemUtils;
@@ -80,7 +85,7 @@ public class RemotePluginLoader
         return locator.getService(RepositorySystem.class);
     }
 
-    private static RepositorySystemSession newRepositorySystemSession(RepositorySystem system, Path localRepositoryPath)
+    private static DefaultRepositorySystemSession newRepositorySystemSession(RepositorySystem system, Path localRepositoryPath)
     {
         DefaultRepositorySystemSession session = MavenRepositorySystemUtils.newSession();
 
@@ -95,11 +100,29 @@ public class RemotePluginLoader
 
     private final RepositorySystem system;
     private final RepositorySystemSession session;
+    private final PluginResolutionIndex index;
+    private final boolean offline;
+    private final Cache<Spec, Boolean> recentlyRecordedSpecs = CacheBuilder.newBuilder()
+        .expireAfterWrite(1, TimeUnit.HOURS)
+        .build();
 
     public RemotePluginLoader(Path localRepositoryPath)
+    {
+        this(localRepositoryPath, false);
+    }
+
+    /**
+     * If offline is true, plugins are loaded only from the resolution index and
+     * the local repository without accessing remote repositories.
+     */
+    public RemotePluginLoader(Path localRepositoryPath, boolean offline)
     {
         this.system = newRepositorySystem();
-        this.session = newRepositorySystemSession(system, localRepositoryPath);
+        DefaultRepositorySystemSession session = newRepositorySystemSession(system, localRepositoryPath);
+        session.setOffline(offline);
+        this.session = session;
+        this.index = new PluginResolutionIndex(localRepositoryPath.resolve(".digdag-index"));
+        this.offline = offline;
     }
 
     @Override
@@ -114,15 +137,14 @@ public class RemotePluginLoader
         List<RemoteRepository> repositories = getRepositories(spec);
 
         for (String dep : spec.getDependencies()) {
-            // download artifacts, and/or resolve local-repository references to them
             logger.debug("Loading plugin {}", dep);
-            List<ArtifactResult> artifactResults = resolveArtifacts(repositories, dep);
+            List<Path> artifactFiles = getArtifactFiles(spec, repositories, dep);
 
             logger.debug("Classpath of plugin {}: {}", dep,
-                    artifactResults.stream().map(a -> a.getArtifact().getFile().toString())
+                    artifactFiles.stream().map(Path::toString)
                     .collect(Collectors.joining(File.pathSeparator)));
 
-            ClassLoader pluginClassLoader = buildPluginClassLoader(artifactResults);
+            ClassLoader pluginClassLoader = buildPluginClassLoader(artifactFiles);
             try {
                 List<Plugin> plugins = lookupPlugins(pluginClassLoader);
                 if (plugins.isEmpty()) {
@@ -140,13 +162,64 @@ public class RemotePluginLoader
         return new PluginSet(builder.build());
     }
 
-    private ClassLoader buildPluginClassLoader(List<ArtifactResult> artifactResults)
+    /**
+     * Returns the list of files on the classpath of a plugin.
+     *
+     * A dependency with a fixed version is resolved once and the result is
+     * stored in the index. SNAPSHOT versions and version ranges are resolved
+     * every time unless offline mode is enabled because the result may change.
+     */
+    private List<Path> getArtifactFiles(Spec spec, List<RemoteRepository> repositories, String dep)
+    {
+        if (offline || !isDynamicVersion(dep)) {
+            Optional<List<Path>> indexed = index.getArtifacts(spec.getRepositories(), dep);
+            if (indexed.isPresent()) {
+                return indexed.get();
+            }
+        }
+
+        // download artifacts, and/or resolve local-repository references to them
+        List<Path> files = resolveArtifacts(repositories, dep).stream()
+            .map(artifactResult -> artifactResult.getArtifact().getFile().toPath())
+            .collect(Collectors.toList());
+        index.putArtifacts(spec.getRepositories(), dep, files);
+        return files;
+    }
+
+    @Override
+    public List<Spec> getSpecsLoadedWithin(Duration period)
+    {
+        return index.getSpecsLoadedWithin(period);
+    }
+
+    @Override
+    public void recordUsage(Spec spec)
+    {
+        if (spec.getDependencies().isEmpty()) {
+            return;
+        }
+        // writing the index for every task is too much. once an hour is enough
+        // to find plugins used within days.
+        if (recentlyRecordedSpecs.asMap().putIfAbsent(spec, true) == null) {
+            index.recordSpec(spec);
+        }
+    }
+
+    private static boolean isDynamicVersion(String dep)
+    {
+        String version = new DefaultArtifact(dep).getVersion();
+        return version.endsWith("SNAPSHOT") ||
+            version.startsWith("[") || version.startsWith("(") ||
+            version.equals("LATEST") || version.equals("RELEASE");
+    }
+
+    private ClassLoader buildPluginClassLoader(List<Path> artifactFiles)
     {
         ImmutableList.Builder<URL> urls = ImmutableList.builder();
-        for (ArtifactResult artifactResult : artifactResults) {
+        for (Path artifactFile : artifactFiles) {
             URL url;
             try {
-                url = artifactResult.getArtifact().getFile().toPath().toUri().toURL();
+                url = artifactFile.toUri().toURL();
             }
             catch (MalformedURLException ex) {
                 throw Throwables.propagate(ex);
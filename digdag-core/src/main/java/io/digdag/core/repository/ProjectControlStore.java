@@ -1,5 +1,6 @@
 package io.digdag.core.repository;
 
+import java.io.InputStream;
 import java.util.List;
 import java.time.ZoneId;
 import java.time.Instant;
@@ -16,9 +17,15 @@ public interface ProjectControlStore
     void insertRevisionArchiveData(int revId, byte[] data)
             throws ResourceConflictException;
 
+    void insertRevisionArchiveData(int revId, InputStream data, int size)
+            throws ResourceConflictException;
+
     StoredWorkflowDefinition insertWorkflowDefinition(int projId, int revId, WorkflowDefinition workflow, ZoneId workflowTimeZone)
         throws ResourceConflictException;
 
+    List<StoredWorkflowDefinition> insertWorkflowDefinitions(int projId, int revId, List<WorkflowDefinition> workflows)
+        throws ResourceConflictException;
+
     interface ScheduleUpdateAction <T extends Schedule>
     {
         ScheduleTime apply(ScheduleStatus oldStatus, T newSchedule);
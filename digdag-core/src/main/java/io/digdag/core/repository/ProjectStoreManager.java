@@ -1,5 +1,7 @@
 package io.digdag.core.repository;
 
+import java.util.List;
+
 public interface ProjectStoreManager
 {
     ProjectStore getProjectStore(int siteId);
@@ -11,6 +13,11 @@ public interface ProjectStoreManager
     StoredProject getProjectByIdInternal(int projId)
         throws ResourceNotFoundException;
 
+    // used by WorkflowExecutionTimeoutEnforcer to build notifications in bulk
+    List<StoredWorkflowDefinitionWithProject> getWorkflowDetailsByIdList(List<Long> wfIdList);
+
+    ProjectMap getProjectsByIdListInternal(List<Integer> projIdList);
+
     StoredRevision getRevisionOfWorkflowDefinition(long wfId)
         throws ResourceNotFoundException;
 }
@@ -0,0 +1,58 @@
+package io.digdag.core.session;
+
+import java.time.Instant;
+import com.google.common.base.Optional;
+import org.immutables.value.Value;
+
+@Value.Immutable
+public abstract class AttemptFilter
+{
+    public enum Status
+    {
+        RUNNING,
+        SUCCESS,
+        ERROR,
+        KILLED;
+
+        public static Status fromString(String name)
+        {
+            switch (name) {
+            case "running":
+                return RUNNING;
+            case "success":
+                return SUCCESS;
+            case "error":
+                return ERROR;
+            case "killed":
+                return KILLED;
+            default:
+                throw new IllegalArgumentException("Unknown attempt status: " + name);
+            }
+        }
+    }
+
+    public abstract Optional<Integer> getProjectId();
+
+    public abstract Optional<String> getWorkflowName();
+
+    // inclusive
+    public abstract Optional<Instant> getSessionTimeFrom();
+
+    // exclusive
+    public abstract Optional<Instant> getSessionTimeTo();
+
+    public abstract Optional<Status> getStatus();
+
+    public static ImmutableAttemptFilter.Builder builder()
+    {
+        return ImmutableAttemptFilter.builder();
+    }
+
+    @Value.Check
+    protected void check()
+    {
+        if (getWorkflowName().isPresent() && !getProjectId().isPresent()) {
+            throw new IllegalArgumentException("Workflow name filter requires project id");
+        }
+    }
+}
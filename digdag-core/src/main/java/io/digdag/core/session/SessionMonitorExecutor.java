@@ -1,5 +1,6 @@
 package io.digdag.core.session;
 
+import java.time.Duration;
 import java.time.Instant;
 import javax.annotation.PostConstruct;
 import java.util.concurrent.Executors;
@@ -9,6 +10,7 @@ import javax.annotation.PreDestroy;
 import com.google.inject.Inject;
 import com.google.common.base.*;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.digdag.client.config.Config;
 import io.digdag.client.config.ConfigException;
 import io.digdag.core.Limits;
 import io.digdag.core.database.TransactionManager;
@@ -25,17 +27,23 @@ import io.digdag.core.workflow.Tasks;
 import io.digdag.core.workflow.WorkflowExecutor;
 import io.digdag.core.repository.ResourceNotFoundException;
 import io.digdag.client.config.ConfigFactory;
+import io.digdag.util.DurationParam;
 
 public class SessionMonitorExecutor
         implements BackgroundExecutor
 {
     private static final Logger logger = LoggerFactory.getLogger(SessionMonitorExecutor.class);
 
+    private static final Duration DEFAULT_INTERVAL = Duration.ofSeconds(1);
+    private static final int DEFAULT_BATCH_SIZE = 10;
+
     private final ConfigFactory cf;
     private final SessionStoreManager sm;
     private final WorkflowExecutor exec;
     private final TransactionManager tm;
     private final Limits limits;
+    private final Duration interval;
+    private final int batchSize;
     private ScheduledExecutorService executor;
 
     @Inject(optional = true)
@@ -50,13 +58,18 @@ public class SessionMonitorExecutor
             SessionStoreManager sm,
             TransactionManager tm,
             WorkflowExecutor exec,
-            Limits limits)
+            Limits limits,
+            Config systemConfig)
     {
         this.cf = cf;
         this.sm = sm;
         this.tm = tm;
         this.exec = exec;
         this.limits = limits;
+        this.interval = systemConfig.getOptional("executor.session_monitor_interval", DurationParam.class)
+            .transform(DurationParam::getDuration)
+            .or(DEFAULT_INTERVAL);
+        this.batchSize = systemConfig.get("executor.session_monitor_batch_size", int.class, DEFAULT_BATCH_SIZE);
     }
 
     @PostConstruct
@@ -70,9 +83,8 @@ public class SessionMonitorExecutor
                     .build()
                     );
         }
-        // TODO make interval configurable?
         executor.scheduleWithFixedDelay(() -> run(),
-                1, 1, TimeUnit.SECONDS);
+                interval.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
     }
 
     @PreDestroy
@@ -94,8 +106,27 @@ public class SessionMonitorExecutor
     public void run()
     {
         try {
-            tm.begin(() -> {
-                sm.lockReadySessionMonitors(Instant.now(), (storedMonitor) -> {
+            // repeat until all ready monitors are handled so that a burst of monitors
+            // doesn't wait for batchSize monitors per interval
+            int count;
+            do {
+                count = runBatch();
+            }
+            while (count >= batchSize);
+        }
+        catch (Throwable t) {
+            logger.error(
+                    LogMarkers.UNEXPECTED_SERVER_ERROR,
+                    "An uncaught exception is ignored. This session monitor scheduling will be retried.", t);
+            errorReporter.reportUncaughtError(t);
+            metrics.increment(Category.DEFAULT, "uncaughtErrors");
+        }
+    }
+
+    private int runBatch()
+    {
+        return tm.begin(() ->
+                sm.lockReadySessionMonitors(Instant.now(), batchSize, (storedMonitor) -> {
                     try {
                         // runMonitor needs to return next runtime if this monitor should run again later
                         return runMonitor(storedMonitor);
@@ -105,17 +136,7 @@ public class SessionMonitorExecutor
                                 "Failed to schedule a session monitor task due to deterministic error. This won't be retried.", e);
                         return Optional.absent();
                     }
-                });
-                return null;
-            });
-        }
-        catch (Throwable t) {
-            logger.error(
-                    LogMarkers.UNEXPECTED_SERVER_ERROR,
-                    "An uncaught exception is ignored. This session monitor scheduling will be retried.", t);
-            errorReporter.reportUncaughtError(t);
-            metrics.increment(Category.DEFAULT, "uncaughtErrors");
-        }
+                }));
     }
 
     public Optional<Instant> runMonitor(StoredSessionMonitor storedMonitor)
@@ -1,6 +1,7 @@
 package io.digdag.core.session;
 
 import java.util.List;
+import java.util.Map;
 import java.time.Instant;
 import com.google.common.base.Optional;
 import io.digdag.core.repository.ResourceNotFoundException;
@@ -24,6 +25,14 @@ public interface SessionStore
 
     List<StoredSessionAttemptWithSession> getAttemptsOfWorkflow(boolean withRetriedAttempts, int projectId, String workflowName, int pageSize, Optional<Long> lastId, AccessController.ListFilter acFilter);
 
+    List<StoredSessionAttemptWithSession> getAttemptsByIdList(List<Long> attemptIdList, AccessController.ListFilter acFilter);
+
+    List<StoredSessionAttemptWithSession> findAttempts(AttemptFilter filter, boolean withRetriedAttempts, int pageSize, Optional<Long> lastId, AccessController.ListFilter acFilter);
+
+    // returns number of tasks by state for each attempt. Attempts whose tasks are
+    // already archived are not included.
+    Map<Long, Map<TaskStateCode, Long>> getTaskStateCountsOfAttempts(List<Long> attemptIdList);
+
     List<StoredSessionAttemptWithSession> getActiveAttemptsOfWorkflow(int projectId, String workflowName, int pageSize, Optional<Long> lastId);
 
     List<StoredSessionAttempt> getAttemptsOfSession(long sessionId, int pageSize, Optional<Long> lastId);
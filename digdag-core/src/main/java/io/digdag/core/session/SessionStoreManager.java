@@ -44,6 +44,15 @@ public interface SessionStoreManager
     // for AttemptTimeoutEnforcer.enforceTaskTTLs
     List<TaskAttemptSummary> findTasksStartedBeforeWithState(TaskStateCode[] states, Instant startedBefore, long lastId, int limit);
 
+    // for WorkflowExecutionTimeoutEnforcer to know the earliest time when an attempt exceeds the TTL
+    Optional<Instant> getOldestActiveAttemptCreationTime();
+
+    // for WorkflowExecutionTimeoutEnforcer to know the earliest time when a task exceeds the TTL
+    Optional<Instant> getOldestTaskStartTimeWithState(TaskStateCode[] states);
+
+    // for WorkflowExecutionTimeoutEnforcer to build notifications in bulk
+    List<StoredSessionAttemptWithSession> getAttemptsWithSessionByIdList(List<Long> attemptIdList);
+
     interface AttemptLockAction <T>
     {
         T call(SessionAttemptControlStore store, SessionAttemptSummary summary);
@@ -86,13 +95,25 @@ public interface SessionStoreManager
 
     <T> Optional<T> lockTaskIfNotLocked(long taskId, TaskLockActionWithDetails<T> func);
 
+    interface TaskLockActionWithSummary <T>
+    {
+        // details are selected when details.get() is called first time
+        T call(TaskControlStore lockedTask, TaskSummary summary, Supplier<StoredTask> details);
+    }
+
+    // lock and peek the task without selecting configs of the task
+    <T> Optional<T> lockTaskSummaryIfExists(long taskId, TaskLockActionWithSummary<T> func);
+
+    <T> Optional<T> lockTaskSummaryIfNotLocked(long taskId, TaskLockActionWithSummary<T> func);
+
     interface SessionMonitorAction
     {
         // returns next run time
         Optional<Instant> schedule(StoredSessionMonitor monitor);
     }
 
-    void lockReadySessionMonitors(Instant currentTime, SessionMonitorAction func);
+    // returns number of locked monitors
+    int lockReadySessionMonitors(Instant currentTime, int limit, SessionMonitorAction func);
 
     List<TaskRelation> getTaskRelations(long attemptId);
 
@@ -108,4 +129,15 @@ public interface SessionStoreManager
     }
 
     void lockReadyDelayedAttempts(Instant currentTime, DelayedAttemptAction func);
+
+    // for TaskArchiveOffloader.offloadTaskArchives
+    List<Long> findInlineTaskArchivesCreatedBefore(Instant createdBefore, long lastId, int limit);
+
+    // for TaskArchiveOffloader.offloadTaskArchives
+    // absent if the archive is already moved to TaskArchiveStorage
+    Optional<String> getInlineTaskArchive(long attemptId);
+
+    // for TaskArchiveOffloader.offloadTaskArchives
+    // returns false if the archive is already moved by another server
+    boolean setTaskArchivePath(long attemptId, String archivePath);
 }
@@ -3,6 +3,7 @@ package io.digdag.core.session;
 import java.util.List;
 import java.util.Map;
 import com.google.common.base.Optional;
+import com.google.common.collect.ListMultimap;
 import io.digdag.spi.TaskResult;
 import io.digdag.client.config.Config;
 import io.digdag.core.repository.ResourceNotFoundException;
@@ -13,6 +14,13 @@ public interface TaskControlStore
 
     long addSubtask(long attemptId, Task task);
 
+    // returns new task ids that can be used with addSubtasks
+    List<Long> allocateTaskIds(int count);
+
+    // stores tasks in batch. A map key is an id returned by allocateTaskIds.
+    // A parent task must come before its children in the iteration order.
+    void addSubtasks(long attemptId, Map<Long, Task> tasks);
+
     long addResumedSubtask(long attemptId, long parentId,
             TaskType taskType, TaskStateCode state, TaskStateFlags flags,
             ResumingTask resumingTask);
@@ -31,6 +39,9 @@ public interface TaskControlStore
 
     void addDependencies(long downstream, List<Long> upstreams);
 
+    // stores dependencies in batch. Keys are downstream task ids and values are their upstream task ids.
+    void addDependencies(ListMultimap<Long, Long> upstreamsOfDownstreams);
+
     // return true if one or more child task is progressible.
     boolean isAnyProgressibleChild(long taskId);
 
@@ -0,0 +1,40 @@
+package io.digdag.core.session;
+
+import com.google.common.base.Optional;
+import org.immutables.value.Value;
+
+/**
+ * Columns of the tasks table that are necessary to decide state transitions
+ * of a task. Unlike StoredTask, this doesn't include configs stored in
+ * task_details and task_state_details.
+ */
+@Value.Immutable
+public abstract class TaskSummary
+{
+    public abstract long getId();
+
+    public abstract long getAttemptId();
+
+    public abstract Optional<Long> getParentId();
+
+    public abstract TaskType getTaskType();
+
+    public abstract TaskStateCode getState();
+
+    public abstract TaskStateFlags getStateFlags();
+
+    public abstract int getRetryCount();
+
+    public static TaskSummary of(StoredTask task)
+    {
+        return ImmutableTaskSummary.builder()
+            .id(task.getId())
+            .attemptId(task.getAttemptId())
+            .parentId(task.getParentId())
+            .taskType(task.getTaskType())
+            .state(task.getState())
+            .stateFlags(task.getStateFlags())
+            .retryCount(task.getRetryCount())
+            .build();
+    }
+}
@@ -0,0 +1,144 @@
+package io.digdag.core.storage;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Optional;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.io.ByteStreams;
+import com.google.inject.Inject;
+import io.digdag.client.config.Config;
+import io.digdag.spi.Storage;
+import io.digdag.spi.StorageFileNotFoundException;
+import io.digdag.spi.StorageObject;
+import io.digdag.util.DurationParam;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Locale.ENGLISH;
+
+/**
+ * Secondary storage of task archives (task_archives.tasks) of finished attempts.
+ *
+ * Archives older than archive.tiering.older_than are moved to the storage
+ * configured by archive.tiering.type and the database keeps only the path.
+ * Archives read back from the storage are cached in memory because the
+ * same attempt is usually viewed several times in a row. The cache is
+ * bounded by total size of the archives because an archive of a large
+ * attempt can be several megabytes.
+ */
+public class TaskArchiveStorage
+{
+    private static final long DEFAULT_CACHE_MAX_BYTES = 64L * 1024 * 1024;
+    private static final Duration DEFAULT_CACHE_EXPIRE = Duration.ofMinutes(10);
+
+    private final Optional<Storage> storage;
+    private final String pathPrefix;
+    private final Cache<String, String> cache;
+
+    @Inject
+    public TaskArchiveStorage(StorageManager storageManager, Config systemConfig)
+    {
+        Optional<String> type = systemConfig.getOptional("archive.tiering.type", String.class);
+        if (type.isPresent()) {
+            this.storage = Optional.of(storageManager.create(type.get(), systemConfig, "archive.tiering."));
+            this.pathPrefix = getPathPrefix(systemConfig, type.get());
+        }
+        else {
+            this.storage = Optional.absent();
+            this.pathPrefix = "";
+        }
+        Duration cacheExpire = systemConfig.getOptional("archive.tiering.cache_expire", DurationParam.class)
+            .transform(DurationParam::getDuration)
+            .or(DEFAULT_CACHE_EXPIRE);
+        this.cache = CacheBuilder.newBuilder()
+            .maximumWeight(systemConfig.get("archive.tiering.cache_max_bytes", long.class, DEFAULT_CACHE_MAX_BYTES))
+            .weigher((String path, String archive) -> weigh(archive))
+            .expireAfterAccess(cacheExpire.toMillis(), TimeUnit.MILLISECONDS)
+            .build();
+    }
+
+    @VisibleForTesting
+    static int weigh(String archive)
+    {
+        // 2 bytes per char. Overhead of the String object is negligible
+        return (int) Math.min(Integer.MAX_VALUE, archive.length() * 2L);
+    }
+
+    private static String getPathPrefix(Config systemConfig, String type)
+    {
+        String pathPrefix = systemConfig.get("archive.tiering." + type + ".path", String.class, "");
+        if (pathPrefix.startsWith("/")) {
+            pathPrefix = pathPrefix.substring(1);
+        }
+        if (!pathPrefix.endsWith("/") && !pathPrefix.isEmpty()) {
+            pathPrefix = pathPrefix + "/";
+        }
+        return pathPrefix;
+    }
+
+    public boolean isEnabled()
+    {
+        return storage.isPresent();
+    }
+
+    /**
+     * Uploads a task archive and returns the path to be stored in
+     * task_archives.archive_path.
+     */
+    public String put(long attemptId, String archive)
+        throws IOException
+    {
+        byte[] data = compress(archive);
+        // path is derived from attempt id so that retrying a failed offload overwrites the same object
+        String path = String.format(ENGLISH, "%stask_archives/%d.json.gz", pathPrefix, attemptId);
+        getStorage().put(path, data.length, () -> new ByteArrayInputStream(data));
+        return path;
+    }
+
+    public String get(String path)
+    {
+        try {
+            return cache.get(path, () -> download(path));
+        }
+        catch (ExecutionException ex) {
+            throw new RuntimeException("Failed to load task archive from " + path, ex.getCause());
+        }
+    }
+
+    private String download(String path)
+        throws IOException, StorageFileNotFoundException
+    {
+        StorageObject obj = getStorage().open(path);
+        try (InputStream in = new GZIPInputStream(obj.getContentInputStream())) {
+            return new String(ByteStreams.toByteArray(in), UTF_8);
+        }
+    }
+
+    private Storage getStorage()
+    {
+        if (!storage.isPresent()) {
+            throw new IllegalStateException("Task archive is stored in a secondary storage but archive.tiering.type is not set");
+        }
+        return storage.get();
+    }
+
+    private static byte[] compress(String archive)
+        throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = new GZIPOutputStream(bytes)) {
+            out.write(archive.getBytes(UTF_8));
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,64 @@
+package io.digdag.core.workflow;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.inject.Inject;
+import io.digdag.client.config.Config;
+import io.digdag.core.repository.StoredWorkflowDefinition;
+import io.digdag.core.repository.WorkflowDefinition;
+import io.digdag.spi.metrics.DigdagMetrics;
+import io.micrometer.core.instrument.Tags;
+
+import static io.digdag.spi.metrics.DigdagMetrics.Category;
+
+/**
+ * WorkflowCompiler that caches compiled workflows of stored definitions.
+ *
+ * Scheduler, REST API and backfill submit many sessions of the same workflow definition.
+ * A stored workflow definition never changes its name and config, so compiled workflows
+ * are cached using id of the definition as the key. Definitions that are not stored yet
+ * (e.g. workflows of a pushed project under validation) are compiled every time.
+ * Compiled workflows can be shared because task configs are copied when tasks are
+ * stored (TaskConfig.validate).
+ */
+public class CachedWorkflowCompiler
+        extends WorkflowCompiler
+{
+    private final Cache<Long, Workflow> cache;
+    private final DigdagMetrics metrics;
+
+    @Inject
+    public CachedWorkflowCompiler(Config systemConfig, DigdagMetrics metrics)
+    {
+        long cacheSize = systemConfig.get("executor.compiled_workflow_cache_size", long.class, 1000L);
+        this.cache = CacheBuilder.newBuilder()
+            .maximumSize(cacheSize)
+            .build();
+        this.metrics = metrics;
+    }
+
+    @Override
+    public Workflow compile(WorkflowDefinition def)
+    {
+        if (!(def instanceof StoredWorkflowDefinition)) {
+            return super.compile(def);
+        }
+        long id = ((StoredWorkflowDefinition) def).getId();
+
+        Workflow cached = cache.getIfPresent(id);
+        if (cached != null) {
+            metrics.increment(Category.EXECUTOR, "compiledWorkflowCacheHit");
+            return cached;
+        }
+        metrics.increment(Category.EXECUTOR, "compiledWorkflowCacheMiss");
+
+        // Failures are not cached so that an invalid workflow reports the error every time
+        long startTime = System.currentTimeMillis();
+        Workflow workflow = super.compile(def);
+        metrics.summary(Category.EXECUTOR, "workflowCompileMsec", System.currentTimeMillis() - startTime);
+
+        cache.put(id, workflow);
+        metrics.gauge(Category.EXECUTOR, "compiledWorkflowCacheSize", Tags.empty(), cache.size());
+        return workflow;
+    }
+}
@@ -1,5 +1,6 @@
 package io.digdag.core.workflow;
 
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -8,6 +9,7 @@ import java.util.ArrayList;
 import java.util.stream.Collectors;
 import com.google.common.base.Optional;
 import com.google.common.base.Strings;
+import com.google.common.base.Supplier;
 import com.google.common.collect.*;
 import com.google.inject.Inject;
 import io.digdag.core.Limits;
@@ -20,32 +22,46 @@ import io.digdag.core.session.Task;
 import io.digdag.core.session.TaskControlStore;
 import io.digdag.core.session.TaskStateCode;
 import io.digdag.core.session.TaskStateFlags;
+import io.digdag.core.session.TaskSummary;
 import io.digdag.spi.TaskResult;
 import io.digdag.client.config.Config;
 
 public class TaskControl
 {
     private final TaskControlStore store;
-    private final StoredTask task;
+    private final TaskSummary summary;
+    private final Supplier<StoredTask> details;
     private TaskStateCode state;
     private final Limits limits;
 
     public TaskControl(TaskControlStore store, StoredTask task, Limits limits)
+    {
+        this(store, TaskSummary.of(task), () -> task, limits);
+    }
+
+    // details are used only when a transition needs configs of the task
+    public TaskControl(TaskControlStore store, TaskSummary summary, Supplier<StoredTask> details, Limits limits)
     {
         this.store = store;
-        this.task = task;
-        this.state = task.getState();
+        this.summary = summary;
+        this.details = details;
+        this.state = summary.getState();
         this.limits = limits;
     }
 
     public StoredTask get()
     {
-        return task;
+        return details.get();
+    }
+
+    public TaskSummary getSummary()
+    {
+        return summary;
     }
 
     public long getId()
     {
-        return task.getId();
+        return summary.getId();
     }
 
     public TaskStateCode getState()
@@ -71,11 +87,11 @@ public class TaskControl
                                      List<Long> rootUpstreamIds, boolean cancelSiblings, boolean isInitialTask)
             throws TaskLimitExceededException
     {
-        checkTaskLimit(store, task.getAttemptId(), tasks, limits);
-        return addTasks(store, task.getAttemptId(), task.getId(),
+        checkTaskLimit(store, summary.getAttemptId(), tasks, limits);
+        return addTasks(store, summary.getAttemptId(), summary.getId(),
                 tasks, rootUpstreamIds,
                 cancelSiblings, false, isInitialTask,
-                collectResumingTasks(task.getAttemptId(), tasks));
+                collectResumingTasks(summary.getAttemptId(), tasks));
     }
 
     public long addGeneratedSubtasks(WorkflowTaskList tasks,
@@ -88,10 +104,10 @@ public class TaskControl
     public long addGeneratedSubtasksWithoutLimit(WorkflowTaskList tasks,
             List<Long> rootUpstreamIds, boolean cancelSiblings)
     {
-        return addTasks(store, task.getAttemptId(), task.getId(),
+        return addTasks(store, summary.getAttemptId(), summary.getId(),
                 tasks, rootUpstreamIds,
                 cancelSiblings, false, false,
-                collectResumingTasks(task.getAttemptId(), tasks));
+                collectResumingTasks(summary.getAttemptId(), tasks));
     }
 
     private static void checkTaskLimit(TaskControlStore store, long attemptId,
@@ -126,6 +142,11 @@ public class TaskControl
             .stream()
             .collect(Collectors.toMap(t -> t.getFullName(), t -> t));
 
+        if (!tasks.isEmpty() && tasks.stream().noneMatch(wt -> resumingTaskMap.containsKey(wt.getFullName()))) {
+            return addTasksInBatch(store, attemptId, parentTaskId, tasks, rootUpstreamIds,
+                    firstTaskIsRootStoredParentTask, isInitialTask);
+        }
+
         boolean firstTask = true;
         for (WorkflowTask wt : tasks) {
 
@@ -185,6 +206,56 @@ public class TaskControl
         return rootTaskId;
     }
 
+    // Same as addTasks but stores tasks and dependencies using a few batch statements instead of
+    // inserting rows one by one. A for_each> task can generate thousands of tasks at once.
+    // Resumed tasks are not supported.
+    private static long addTasksInBatch(TaskControlStore store,
+            long attemptId, long parentTaskId, WorkflowTaskList tasks, List<Long> rootUpstreamIds,
+            boolean firstTaskIsRootStoredParentTask, boolean isInitialTask)
+    {
+        // tasks.get(0) == parentTask == root task if firstTaskIsRootStoredParentTask
+        int firstNewTaskIndex = firstTaskIsRootStoredParentTask ? 1 : 0;
+
+        List<Long> indexToId = new ArrayList<>();
+        if (firstTaskIsRootStoredParentTask) {
+            indexToId.add(parentTaskId);
+        }
+        indexToId.addAll(store.allocateTaskIds(tasks.size() - firstNewTaskIndex));
+
+        Map<Long, Task> newTasks = new LinkedHashMap<>();
+        ListMultimap<Long, Long> dependencies = ArrayListMultimap.create();
+        for (int i = firstNewTaskIndex; i < tasks.size(); i++) {
+            WorkflowTask wt = tasks.get(i);
+            long id = indexToId.get(i);
+
+            long parentId = wt.getParentIndex()
+                .transform(index -> indexToId.get(index))
+                .or(parentTaskId);
+            Task task = Task.taskBuilder()
+                .parentId(Optional.of(parentId))
+                .fullName(wt.getFullName())
+                .config(TaskConfig.validate(wt.getConfig()))
+                .taskType(wt.getTaskType())
+                .state(TaskStateCode.BLOCKED)
+                .stateFlags(isInitialTask ? TaskStateFlags.empty().withInitialTask() : TaskStateFlags.empty())
+                .build();
+            newTasks.put(id, task);
+
+            for (int index : wt.getUpstreamIndexes()) {
+                dependencies.put(id, indexToId.get(index));
+            }
+            if (i == 0) {
+                // the root task is stored in this batch
+                dependencies.putAll(id, rootUpstreamIds);
+            }
+        }
+
+        store.addSubtasks(attemptId, newTasks);
+        store.addDependencies(dependencies);
+
+        return indexToId.get(0);
+    }
+
     private static void addResumingTasks(TaskControlStore store, long attemptId, List<ResumingTask> resumingTasks)
     {
         // store only dynamically-generated tasks
@@ -333,7 +404,7 @@ public class TaskControl
 
     public boolean setGroupRetryReadyToPlanned()
     {
-        if (store.setPlannedStateSuccessful(getId(), TaskStateCode.READY, TaskStateCode.PLANNED, TaskResult.empty(task.getStateParams().getFactory()))) {
+        if (store.setPlannedStateSuccessful(getId(), TaskStateCode.READY, TaskStateCode.PLANNED, TaskResult.empty(get().getStateParams().getFactory()))) {
             state = TaskStateCode.PLANNED;
             return true;
         }
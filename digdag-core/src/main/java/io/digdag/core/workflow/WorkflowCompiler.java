@@ -14,6 +14,7 @@ import io.digdag.core.session.TaskType;
 import io.digdag.client.config.Config;
 import io.digdag.client.config.ConfigException;
 import io.digdag.core.repository.ModelValidator;
+import io.digdag.core.repository.WorkflowDefinition;
 import io.digdag.core.agent.EditDistance;
 import io.digdag.util.ParallelControl;
 
@@ -39,6 +40,11 @@ public class WorkflowCompiler
     public WorkflowCompiler()
     { }
 
+    public Workflow compile(WorkflowDefinition def)
+    {
+        return compile(def.getName(), def.getConfig());
+    }
+
     public Workflow compile(String name, Config config)
     {
         return Workflow.builder()
@@ -5,6 +5,7 @@ import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Optional;
 import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.inject.Inject;
 import io.digdag.client.config.Config;
@@ -35,6 +36,7 @@ import io.digdag.core.session.Task;
 import io.digdag.core.session.TaskAttemptSummary;
 import io.digdag.core.session.TaskStateCode;
 import io.digdag.core.session.TaskStateFlags;
+import io.digdag.core.session.TaskSummary;
 import io.digdag.metrics.DigdagTimed;
 import io.digdag.spi.TaskQueueLock;
 import io.digdag.spi.TaskRequest;
@@ -43,6 +45,7 @@ import io.digdag.spi.TaskQueueRequest;
 import io.digdag.spi.TaskConflictException;
 import io.digdag.spi.TaskNotFoundException;
 import io.digdag.spi.metrics.DigdagMetrics;
+import io.micrometer.core.instrument.Tags;
 import static io.digdag.spi.metrics.DigdagMetrics.Category;
 import io.digdag.util.RetryControl;
 import org.slf4j.Logger;
@@ -64,6 +67,7 @@ import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.BooleanSupplier;
 import java.util.function.Function;
+import java.util.function.LongSupplier;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import static io.digdag.spi.TaskExecutionException.buildExceptionErrorConfig;
@@ -180,6 +184,10 @@ public class WorkflowExecutor
     private volatile boolean propagatorNotice = false;
     private final boolean enqueueRandomFetch;
     private final Integer enqueueFetchSize;
+    private final int loopInitialInterval;
+    private final int loopMaxInterval;
+    private final Map<String, Long> phaseIntervals;
+    private final Map<String, Long> phaseMaxIntervals;
 
     @Inject
     public WorkflowExecutor(
@@ -206,6 +214,19 @@ public class WorkflowExecutor
         this.metrics = metrics;
         this.enqueueRandomFetch = systemConfig.get("executor.enqueue_random_fetch", Boolean.class, false);
         this.enqueueFetchSize = systemConfig.get("executor.enqueue_fetch_size", Integer.class, 100);
+        this.loopInitialInterval = systemConfig.get("executor.loop_initial_interval", int.class, DEFAULT_INITIAL_INTERVAL);
+        this.loopMaxInterval = Math.max(loopInitialInterval,
+                systemConfig.get("executor.loop_max_interval", int.class, DEFAULT_MAX_INTERVAL));
+        ImmutableMap.Builder<String, Long> intervals = ImmutableMap.builder();
+        ImmutableMap.Builder<String, Long> maxIntervals = ImmutableMap.builder();
+        for (String phase : PHASES) {
+            long interval = systemConfig.get("executor." + phase + "_interval", long.class, 0L);
+            intervals.put(phase, interval);
+            maxIntervals.put(phase, Math.max(interval,
+                        systemConfig.get("executor." + phase + "_max_interval", long.class, interval)));
+        }
+        this.phaseIntervals = intervals.build();
+        this.phaseMaxIntervals = maxIntervals.build();
     }
 
     public StoredSessionAttemptWithSession submitWorkflow(int siteId,
@@ -213,7 +234,7 @@ public class WorkflowExecutor
             WorkflowDefinition def)
         throws ResourceNotFoundException, AttemptLimitExceededException, TaskLimitExceededException, SessionAttemptConflictException
     {
-        Workflow workflow = compiler.compile(def.getName(), def.getConfig());  // TODO cache (CachedWorkflowCompiler which takes def id as the cache key)
+        Workflow workflow = compiler.compile(def);
         WorkflowTaskList tasks = workflow.getTasks();
 
         return submitTasks(siteId, ar, tasks);
@@ -352,7 +373,7 @@ public class WorkflowExecutor
             List<SessionMonitor> sessionMonitors)
         throws TaskLimitExceededException
     {
-        Workflow workflow = compiler.compile(def.getName(), def.getConfig());
+        Workflow workflow = compiler.compile(def);
         WorkflowTaskList tasks = workflow.getTasks();
 
         storeTasks(store, storedAttempt, tasks, resumingTasks, sessionMonitors);
@@ -491,20 +512,130 @@ public class WorkflowExecutor
         runWhile(() -> sm.isAnyNotDoneAttempts());
     }
 
-    private static final int INITIAL_INTERVAL = 100;
-    private static final int MAX_INTERVAL = 5000;
+    private static final int DEFAULT_INITIAL_INTERVAL = 100;
+    private static final int DEFAULT_MAX_INTERVAL = 5000;
+
+    private static final String PROPAGATE_BLOCKED_PHASE = "propagate_blocked";
+    private static final String RETRY_WAITING_PHASE = "retry_waiting";
+    private static final String ENQUEUE_PHASE = "enqueue";
+    private static final String PROPAGATE_PLANNED_PHASE = "propagate_planned";
+    private static final String SESSION_ARCHIVE_PHASE = "session_archive";
+
+    private static final List<String> PHASES = ImmutableList.of(
+            PROPAGATE_BLOCKED_PHASE, RETRY_WAITING_PHASE, ENQUEUE_PHASE,
+            PROPAGATE_PLANNED_PHASE, SESSION_ARCHIVE_PHASE);
+
+    /**
+     * A step of the executor loop. A phase runs at most once in
+     * executor.<name>_interval milliseconds so that less urgent phases
+     * such as session archiving don't run on every iteration. Interval 0
+     * (default) runs the phase in every iteration.
+     *
+     * While a phase changes nothing, its interval doubles up to
+     * executor.<name>_max_interval, starting from executor.loop_initial_interval
+     * if the interval is 0. The max interval is same with the interval by
+     * default, which disables the backoff. A change resets the interval.
+     */
+    @VisibleForTesting
+    static class LoopPhase
+    {
+        private final DigdagMetrics metrics;
+        private final LongSupplier nanoTime;
+        private final Tags tags;
+        private final long minIntervalNanos;
+        private final long maxIntervalNanos;
+        private final long initialBackoffNanos;
+        private long intervalNanos;
+        private long lastRunAt;
+        private boolean ran = false;
+        private boolean skipped = false;
+
+        LoopPhase(String name, long intervalMillis, long maxIntervalMillis, long initialBackoffMillis,
+                DigdagMetrics metrics, LongSupplier nanoTime)
+        {
+            this.metrics = metrics;
+            this.nanoTime = nanoTime;
+            this.tags = Tags.of("phase", name);
+            this.minIntervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+            this.maxIntervalNanos = Math.max(minIntervalNanos, TimeUnit.MILLISECONDS.toNanos(maxIntervalMillis));
+            this.initialBackoffNanos = TimeUnit.MILLISECONDS.toNanos(initialBackoffMillis);
+            this.intervalNanos = minIntervalNanos;
+        }
+
+        /**
+         * Runs body unless the interval has not passed since the last run.
+         * Returns false if the phase is skipped.
+         */
+        boolean run(BooleanSupplier body)
+        {
+            long now = nanoTime.getAsLong();
+            if (ran && now - lastRunAt < intervalNanos) {
+                skipped = true;
+                metrics.increment(Category.EXECUTOR, "loopPhaseSkipped", tags);
+                return false;
+            }
+            skipped = false;
+            ran = true;
+            lastRunAt = now;
+            boolean changed = body.getAsBoolean();
+            metrics.summary(Category.EXECUTOR, "loopPhaseMsec", tags, TimeUnit.NANOSECONDS.toMillis(nanoTime.getAsLong() - now));
+            if (changed) {
+                metrics.increment(Category.EXECUTOR, "loopPhaseChanged", tags);
+                intervalNanos = minIntervalNanos;
+            }
+            else {
+                intervalNanos = Math.min(Math.max(intervalNanos * 2, initialBackoffNanos), maxIntervalNanos);
+            }
+            return changed;
+        }
+
+        boolean isSkipped()
+        {
+            return skipped;
+        }
+
+        long getMillisUntilNextRun()
+        {
+            if (!ran) {
+                return 0;
+            }
+            long remaining = lastRunAt + intervalNanos - nanoTime.getAsLong();
+            // round up so that the loop doesn't wake up before the phase is due
+            return remaining <= 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(remaining + TimeUnit.MILLISECONDS.toNanos(1) - 1);
+        }
+
+        void resetBackoff()
+        {
+            intervalNanos = minIntervalNanos;
+        }
+    }
+
+    private LoopPhase newLoopPhase(String name)
+    {
+        return new LoopPhase(name, phaseIntervals.get(name), phaseMaxIntervals.get(name), loopInitialInterval,
+                metrics, System::nanoTime);
+    }
 
     public void runWhile(BooleanSupplier cond)
             throws InterruptedException
     {
         try (TaskQueuer queuer = new TaskQueuer()) {
-            propagateBlockedChildrenToReady();
-            retryRetryWaitingTasks();
-            enqueueReadyTasks(queuer);  // TODO enqueue all (not only first 100)
-            propagateAllPlannedToDone();
-            propagateSessionArchive();
-
-            final AtomicInteger waitMsec = new AtomicInteger(INITIAL_INTERVAL);
+            LoopPhase propagateBlockedPhase = newLoopPhase(PROPAGATE_BLOCKED_PHASE);
+            LoopPhase retryWaitingPhase = newLoopPhase(RETRY_WAITING_PHASE);
+            LoopPhase enqueuePhase = newLoopPhase(ENQUEUE_PHASE);
+            LoopPhase propagatePlannedPhase = newLoopPhase(PROPAGATE_PLANNED_PHASE);
+            LoopPhase sessionArchivePhase = newLoopPhase(SESSION_ARCHIVE_PHASE);
+            List<LoopPhase> phases = ImmutableList.of(
+                    propagateBlockedPhase, retryWaitingPhase, enqueuePhase,
+                    propagatePlannedPhase, sessionArchivePhase);
+
+            propagateBlockedPhase.run(this::propagateBlockedChildrenToReady);
+            retryWaitingPhase.run(this::retryRetryWaitingTasks);
+            enqueuePhase.run(() -> enqueueReadyTasks(queuer));  // TODO enqueue all (not only first 100)
+            propagatePlannedPhase.run(this::propagateAllPlannedToDone);
+            sessionArchivePhase.run(this::propagateSessionArchive);
+
+            final AtomicInteger waitMsec = new AtomicInteger(loopInitialInterval);
             while (true) {
                 if (tm.<Boolean>begin(() -> !cond.getAsBoolean())) {
                     break;
@@ -517,9 +648,9 @@ public class WorkflowExecutor
                 //    propagatorNotice = true;
                 //}
 
-                propagateBlockedChildrenToReady();
-                retryRetryWaitingTasks();
-                enqueueReadyTasks(queuer);
+                propagateBlockedPhase.run(this::propagateBlockedChildrenToReady);
+                retryWaitingPhase.run(this::retryRetryWaitingTasks);
+                enqueuePhase.run(() -> enqueueReadyTasks(queuer));
 
                 /**
                  *  propagateSessionArchive() should be always called.
@@ -529,8 +660,8 @@ public class WorkflowExecutor
                  *  If there is only the session, never archived.
                  *  Checked by WorkflowExecutorCatchingTest.testPropagateSessionArchive()
                  */
-                boolean hasModification = propagateAllPlannedToDone();
-                propagateSessionArchive();
+                boolean hasModification = propagatePlannedPhase.run(this::propagateAllPlannedToDone);
+                sessionArchivePhase.run(this::propagateSessionArchive);
                 if (hasModification) {
                     //propagateSessionArchive();
                 }
@@ -539,17 +670,25 @@ public class WorkflowExecutor
                     try {
                         if (propagatorNotice) {
                             propagatorNotice = false;
-                            waitMsec.set(INITIAL_INTERVAL);
+                            waitMsec.set(loopInitialInterval);
+                            phases.forEach(LoopPhase::resetBackoff);
                         }
                         else {
-                            metrics.summary(Category.EXECUTOR, "loopWaitMsec", waitMsec.get());
-                            boolean noticed = propagatorCondition.await(waitMsec.get(), TimeUnit.MILLISECONDS);
+                            // A skipped phase doesn't mean that nothing changed. Wait only
+                            // until the phase runs again and don't grow the wait time.
+                            boolean plannedSkipped = propagatePlannedPhase.isSkipped();
+                            long wait = plannedSkipped
+                                ? Math.min(waitMsec.get(), propagatePlannedPhase.getMillisUntilNextRun())
+                                : waitMsec.get();
+                            metrics.summary(Category.EXECUTOR, "loopWaitMsec", wait);
+                            boolean noticed = propagatorCondition.await(wait, TimeUnit.MILLISECONDS);
                             if (noticed && propagatorNotice) {
                                 propagatorNotice = false;
-                                waitMsec.set(INITIAL_INTERVAL);
+                                waitMsec.set(loopInitialInterval);
+                                phases.forEach(LoopPhase::resetBackoff);
                             }
-                            else {
-                                waitMsec.set(Math.min(waitMsec.get() * 2, MAX_INTERVAL));
+                            else if (!plannedSkipped) {
+                                waitMsec.set(Math.min(waitMsec.get() * 2, loopMaxInterval));
                             }
                         }
                     }
@@ -634,8 +773,8 @@ public class WorkflowExecutor
     {
         return (tId) ->
                 tm.begin(() ->
-                        sm.lockTaskIfNotLocked(tId, (store, storedTask) ->
-                                setDoneFromDoneChildren(new TaskControl(store, storedTask, limits))));
+                        sm.lockTaskSummaryIfNotLocked(tId, (store, summary, details) ->
+                                setDoneFromDoneChildren(new TaskControl(store, summary, details, limits))));
     }
 
     @DigdagTimed(category = "executor", appendMethodName = true)
@@ -674,9 +813,9 @@ public class WorkflowExecutor
             return false;
         }
 
-        logger.trace("setDoneFromDoneChildren {}", lockedTask.get());
+        logger.trace("setDoneFromDoneChildren {}", lockedTask.getSummary());
 
-        StoredTask task = lockedTask.get();
+        TaskSummary task = lockedTask.getSummary();
         // this parent task must not be "SUCCESS" when a child is canceled.
         // here assumes that CANCEL_REQUESTED flag is set to all tasks of a session
         // transactionally. If CANCEL_REQUESTED flag is set to a child,
@@ -713,7 +852,7 @@ public class WorkflowExecutor
             // group error
             boolean updated;
 
-            Optional<RetryControl> retryControlOpt = checkRetry(task);
+            Optional<RetryControl> retryControlOpt = checkRetry(lockedTask.get());
             if (retryControlOpt.isPresent()) {
                 RetryControl retryControl = retryControlOpt.get();
                 updated = lockedTask.setPlannedToGroupRetryWaiting(
@@ -724,7 +863,7 @@ public class WorkflowExecutor
                 List<Long> errorTaskIds = new ArrayList<>();
 
                 // root task is always group-only task
-                boolean isRootTask = !lockedTask.get().getParentId().isPresent();
+                boolean isRootTask = !task.getParentId().isPresent();
                 if (isRootTask) {
                     errorTaskIds.add(addAttemptFailureAlertTask(lockedTask));
                 }
@@ -939,7 +1078,7 @@ public class WorkflowExecutor
     }
 
     @DigdagTimed(category = "executor", appendMethodName = true)
-    protected void enqueueReadyTasks(TaskQueuer queuer)
+    protected boolean enqueueReadyTasks(TaskQueuer queuer)
     {
         List<Long> readyTaskIds = tm.begin(() -> sm.findAllReadyTaskIds(enqueueFetchSize, enqueueRandomFetch));
         logger.trace("readyTaskIds:{}", readyTaskIds);
@@ -947,13 +1086,14 @@ public class WorkflowExecutor
             catching(()->funcEnqueueTask().apply(taskId), true, "Failed to call enqueueTask. taskId:" + taskId);
             //queuer.asyncEnqueueTask(taskId);  // TODO async queuing is probably unnecessary but not sure
         }
+        return !readyTaskIds.isEmpty();
     }
 
     @DigdagTimed(category="executor", appendMethodName = true)
     protected void enqueueTask(final TaskQueueDispatcher dispatcher, final long taskId)
     {
-        sm.lockTaskIfNotLocked(taskId, (store, task) -> {
-            TaskControl lockedTask = new TaskControl(store, task, limits);
+        sm.lockTaskSummaryIfNotLocked(taskId, (store, task, details) -> {
+            TaskControl lockedTask = new TaskControl(store, task, details, limits);
             if (lockedTask.getState() != TaskStateCode.READY) {
                 return false;
             }
@@ -981,7 +1121,7 @@ public class WorkflowExecutor
                 //      CLI ccommands to create/delete/manage queues.
                 Optional<String> queueName = Optional.absent();
 
-                String encodedUnique = encodeUniqueQueuedTaskName(lockedTask.get());
+                String encodedUnique = encodeUniqueQueuedTaskName(task);
 
                 TaskQueueRequest request = TaskQueueRequest.builder()
                     .priority(0)  // TODO make this configurable
@@ -989,7 +1129,9 @@ public class WorkflowExecutor
                     .data(Optional.absent())
                     .build();
 
-                logger.debug("Queuing task of attempt_id={}: id={} {}", task.getAttemptId(), task.getId(), task.getFullName());
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Queuing task of attempt_id={}: id={} {}", task.getAttemptId(), task.getId(), details.get().getFullName());
+                }
                 try {
                     dispatcher.dispatch(siteId, queueName, request);
                 }
@@ -1025,7 +1167,7 @@ public class WorkflowExecutor
         }).or(false);
     }
 
-    private static String encodeUniqueQueuedTaskName(StoredTask task)
+    private static String encodeUniqueQueuedTaskName(TaskSummary task)
     {
         int retryCount = task.getRetryCount();
         if (retryCount == 0) {
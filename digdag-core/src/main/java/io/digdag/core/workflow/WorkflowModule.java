@@ -11,6 +11,7 @@ public class WorkflowModule
     @Override
     public void configure(Binder binder)
     {
-        binder.bind(WorkflowCompiler.class).in(Scopes.SINGLETON);
+        binder.bind(WorkflowCompiler.class).to(CachedWorkflowCompiler.class);
+        binder.bind(CachedWorkflowCompiler.class).in(Scopes.SINGLETON);
     }
 }
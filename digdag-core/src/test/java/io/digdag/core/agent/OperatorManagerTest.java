@@ -1,5 +1,6 @@
 package io.digdag.core.agent;
 
+import com.google.common.base.Optional;
 import com.google.common.io.Resources;
 import io.digdag.client.DigdagClient;
 import io.digdag.client.config.Config;
@@ -21,6 +22,10 @@ import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.junit.Assert.assertEquals;
@@ -28,6 +33,7 @@ import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
@@ -176,4 +182,53 @@ public class OperatorManagerTest
         verify(callback, times(1)).taskFailed(eq(taskRequest), any(), any());
         verify(callback, times(0)).retryTask(any(), any(), anyInt(), any(), any());
     }
+
+    @Test
+    public void testMaxTasksPerOperator()
+            throws Exception
+    {
+        OperatorManager om = new OperatorManager(
+                AgentConfig.defaultBuilder().putMaxTasksPerOperator("echo", 2).build(),
+                agentId, callback, new LocalWorkspaceManager(), cf,
+                new ConfigEvalEngine(ConfigUtils.newConfig()), registry, secretStoreManager, limits);
+
+        CountDownLatch started = new CountDownLatch(2);
+        CountDownLatch finish = new CountDownLatch(1);
+        AtomicInteger running = new AtomicInteger(0);
+        AtomicInteger maxRunning = new AtomicInteger(0);
+        Operator op = mock(Operator.class);
+        OperatorFactory of = mock(OperatorFactory.class);
+        doReturn(of).when(registry).get(any(), any());
+        doReturn(op).when(of).newOperator(any());
+        doAnswer(invocation -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            started.countDown();
+            finish.await();
+            running.decrementAndGet();
+            return TaskResult.empty(cf);
+        }).when(op).run();
+
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            Thread thread = new Thread(() -> om.runWithHeartbeat(OperatorTestingUtils.newTaskRequest(simpleConfig)));
+            thread.start();
+            threads.add(thread);
+        }
+        started.await();
+
+        // tasks over the limit don't wait for a slot but are retried later
+        om.runWithHeartbeat(OperatorTestingUtils.newTaskRequest(simpleConfig));
+        verify(callback, times(1)).retryTask(any(), any(), anyInt(), any(), eq(Optional.absent()));
+
+        finish.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(2, maxRunning.get());
+        verify(callback, times(2)).taskSucceeded(any(), any(), any());
+
+        // slots are released
+        om.runWithHeartbeat(OperatorTestingUtils.newTaskRequest(simpleConfig));
+        verify(callback, times(3)).taskSucceeded(any(), any(), any());
+    }
 }
@@ -98,4 +98,31 @@ public class ProjectArchiveLoaderTest
 
         assertThat(workflowNames, is(ImmutableSet.of()));
     }
+
+    @Test
+    public void loadsWorkflowsInParallel()
+        throws IOException
+    {
+        for (int i = 0; i < 20; i++) {
+            Files.write(path("wf" + i + ".dig"), ("+a: {echo>: " + i + "}").getBytes(UTF_8));
+        }
+
+        ProjectArchiveLoader loader = new ProjectArchiveLoader(
+                new ConfigLoaderManager(configFactory, new YamlConfigLoader()));
+        ArchiveWorkerPool pool = new ArchiveWorkerPool(newConfig().set("api.project_push_parallelism", 4));
+        try {
+            ProjectArchive archive = loader.load(
+                    path(),
+                    WorkflowResourceMatcher.defaultMatcher(),
+                    newConfig(),
+                    pool);
+
+            assertThat(archive.getArchiveMetadata().getWorkflowList().get(),
+                    is(loadProject().getArchiveMetadata().getWorkflowList().get()));
+            assertThat(archive.getArchiveMetadata().getWorkflowList().get().size(), is(20));
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
 }
@@ -0,0 +1,60 @@
+package io.digdag.core.database;
+
+import com.google.common.base.Optional;
+import io.digdag.client.config.Config;
+import io.digdag.client.config.ConfigException;
+import org.junit.Test;
+
+import static io.digdag.client.config.ConfigUtils.newConfig;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class DatabaseConfigTest
+{
+    private static Config postgresqlConfig()
+    {
+        return newConfig()
+            .set("database.type", "postgresql")
+            .set("database.host", "primary.example.com")
+            .set("database.user", "digdag")
+            .set("database.password", "secret")
+            .set("database.database", "digdag")
+            .set("database.maximumPoolSize", 16);
+    }
+
+    @Test
+    public void replicaIsDisabledByDefault()
+    {
+        assertThat(DatabaseConfig.convertReplicaFrom(postgresqlConfig()).isPresent(), is(false));
+    }
+
+    @Test
+    public void replicaInheritsPrimaryConfig()
+    {
+        Config config = postgresqlConfig()
+            .set("database.replica.host", "replica.example.com")
+            .set("database.replica.maximumPoolSize", 8);
+
+        DatabaseConfig replica = DatabaseConfig.convertReplicaFrom(config).get();
+        RemoteDatabaseConfig remote = replica.getRemoteDatabaseConfig().get();
+        assertThat(remote.getHost(), is("replica.example.com"));
+        assertThat(remote.getUser(), is("digdag"));
+        assertThat(remote.getPassword(), is("secret"));
+        assertThat(remote.getPort(), is(Optional.absent()));
+        assertThat(replica.getMaximumPoolSize(), is(8));
+        assertThat(replica.getAutoMigrate(), is(false));
+
+        // primary is not changed
+        DatabaseConfig primary = DatabaseConfig.convertFrom(config);
+        assertThat(primary.getRemoteDatabaseConfig().get().getHost(), is("primary.example.com"));
+        assertThat(primary.getMaximumPoolSize(), is(16));
+    }
+
+    @Test(expected = ConfigException.class)
+    public void replicaRequiresPostgresql()
+    {
+        DatabaseConfig.convertReplicaFrom(newConfig()
+                .set("database.type", "memory")
+                .set("database.replica.host", "replica.example.com"));
+    }
+}
@@ -1,6 +1,5 @@
 package io.digdag.core.database;
 
-import com.google.common.base.Throwables;
 import com.google.common.base.Optional;
 import com.google.inject.Provider;
 import io.digdag.client.config.Config;
@@ -8,11 +7,13 @@ import io.digdag.client.config.ConfigFactory;
 import io.digdag.core.Limits;
 import io.digdag.core.agent.AgentId;
 import io.digdag.core.workflow.TaskQueueDispatcher;
-import io.digdag.core.workflow.WorkflowCompiler;
+import io.digdag.core.workflow.CachedWorkflowCompiler;
 import io.digdag.core.workflow.WorkflowExecutor;
 import io.digdag.metrics.StdDigdagMetrics;
 import io.digdag.spi.TaskQueueRequest;
 
+import javax.sql.DataSource;
+
 import static io.digdag.client.DigdagClient.objectMapper;
 import static io.digdag.core.database.DatabaseTestingUtils.createConfigFactory;
 import static io.digdag.core.database.DatabaseTestingUtils.createConfigMapper;
@@ -21,13 +22,13 @@ public class DatabaseFactory
         implements AutoCloseable, Provider<TransactionManager>
 {
     private final TransactionManager tm;
-    private final AutoCloseable closeable;
+    private final DataSourceProvider dsp;
     private final DatabaseConfig config;
 
-    public DatabaseFactory(TransactionManager tm, AutoCloseable closeable, DatabaseConfig config)
+    public DatabaseFactory(TransactionManager tm, DataSourceProvider dsp, DatabaseConfig config)
     {
         this.tm = tm;
-        this.closeable = closeable;
+        this.dsp = dsp;
         this.config = config;
     }
 
@@ -78,9 +79,19 @@ public class DatabaseFactory
         return config;
     }
 
+    public DataSource getDataSource()
+    {
+        return dsp.get();
+    }
+
     public DatabaseProjectStoreManager getProjectStoreManager()
     {
-        return new DatabaseProjectStoreManager(tm, createConfigMapper(), config);
+        return getProjectStoreManager(new DatabaseSecretCache(createConfigFactory().create()));
+    }
+
+    public DatabaseProjectStoreManager getProjectStoreManager(DatabaseSecretCache secretCache)
+    {
+        return new DatabaseProjectStoreManager(tm, createConfigMapper(), config, secretCache);
     }
 
     public DatabaseScheduleStoreManager getScheduleStoreManager()
@@ -102,7 +113,7 @@ public class DatabaseFactory
                 getSessionStoreManager(),
                 tm,
                 new NullTaskQueueDispatcher(),
-                new WorkflowCompiler(),
+                new CachedWorkflowCompiler(systemConfig, StdDigdagMetrics.empty()),
                 configFactory,
                 objectMapper(),
                 systemConfig,
@@ -113,12 +124,22 @@ public class DatabaseFactory
 
     public DatabaseSecretControlStoreManager getSecretControlStoreManager(String secret)
     {
-        return new DatabaseSecretControlStoreManager(config, tm, createConfigMapper(), new AESGCMSecretCrypto(secret));
+        return getSecretControlStoreManager(secret, new DatabaseSecretCache(createConfigFactory().create()));
+    }
+
+    public DatabaseSecretControlStoreManager getSecretControlStoreManager(String secret, DatabaseSecretCache cache)
+    {
+        return new DatabaseSecretControlStoreManager(config, tm, createConfigMapper(), new AESGCMSecretCrypto(secret), cache);
     }
 
     public DatabaseSecretStoreManager getSecretStoreManager(String secret)
     {
-        return new DatabaseSecretStoreManager(config, tm, createConfigMapper(), new AESGCMSecretCrypto(secret));
+        return getSecretStoreManager(secret, new DatabaseSecretCache(createConfigFactory().create()));
+    }
+
+    public DatabaseSecretStoreManager getSecretStoreManager(String secret, DatabaseSecretCache cache)
+    {
+        return new DatabaseSecretStoreManager(config, tm, createConfigMapper(), new AESGCMSecretCrypto(secret), cache);
     }
 
     public static class NullTaskQueueDispatcher
@@ -141,11 +162,6 @@ public class DatabaseFactory
 
     public void close()
     {
-        try {
-            closeable.close();
-        }
-        catch (Exception ex) {
-            throw Throwables.propagate(ex);
-        }
+        dsp.close();
     }
 }
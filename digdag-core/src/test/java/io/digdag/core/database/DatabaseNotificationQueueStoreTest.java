@@ -0,0 +1,68 @@
+package io.digdag.core.database;
+
+import io.digdag.core.notification.QueuedNotification;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Instant;
+import java.util.List;
+
+import static io.digdag.core.database.DatabaseTestingUtils.createConfigMapper;
+import static io.digdag.core.database.DatabaseTestingUtils.setupDatabase;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class DatabaseNotificationQueueStoreTest
+{
+    private DatabaseFactory factory;
+    private DatabaseNotificationQueueStore store;
+
+    @Before
+    public void setUp()
+    {
+        factory = setupDatabase();
+        store = new DatabaseNotificationQueueStore(factory.getConfig(), factory.get(), createConfigMapper());
+    }
+
+    @After
+    public void destroy()
+    {
+        factory.close();
+    }
+
+    @Test
+    public void lockAndRetry()
+            throws Exception
+    {
+        Instant now = Instant.now();
+        Instant lease = now.plusSeconds(300);
+
+        factory.begin(() -> store.enqueue("{\"message\":\"m1\"}", now));
+        factory.begin(() -> store.enqueue("{\"message\":\"m2\"}", now.plusSeconds(60)));
+        assertThat(factory.begin(() -> store.count()), is(2L));
+
+        // only notifications due are locked
+        List<QueuedNotification> due = factory.begin(() -> store.lockDueNotifications(now, lease, 10));
+        assertThat(due.size(), is(1));
+        QueuedNotification n1 = due.get(0);
+        assertThat(n1.getNotification(), is("{\"message\":\"m1\"}"));
+        assertThat(n1.getRetryCount(), is(0));
+
+        // locked notification is not returned again until the lease expires
+        assertThat(factory.begin(() -> store.lockDueNotifications(now, lease, 10)), is(empty()));
+
+        factory.begin(() -> store.retryLater(n1.getId(), 1, now.plusSeconds(10)));
+        List<QueuedNotification> retried = factory.begin(() -> store.lockDueNotifications(now.plusSeconds(30), lease, 10));
+        assertThat(retried.size(), is(1));
+        assertThat(retried.get(0).getId(), is(n1.getId()));
+        assertThat(retried.get(0).getRetryCount(), is(1));
+
+        // limit
+        assertThat(factory.begin(() -> store.lockDueNotifications(now.plusSeconds(600), lease.plusSeconds(600), 1)).size(), is(1));
+
+        factory.begin(() -> store.delete(n1.getId()));
+        assertThat(factory.begin(() -> store.count()), is(1L));
+    }
+}
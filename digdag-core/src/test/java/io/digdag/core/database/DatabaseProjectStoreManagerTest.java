@@ -1,14 +1,21 @@
 package io.digdag.core.database;
 
+import java.io.ByteArrayInputStream;
 import java.util.*;
 import java.time.Instant;
+import java.time.ZoneId;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
 import org.skife.jdbi.v2.IDBI;
 import org.junit.*;
 import com.google.common.base.Optional;
 import com.google.common.collect.*;
 import io.digdag.core.repository.*;
 import io.digdag.core.schedule.*;
+import io.digdag.spi.ScheduleTime;
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static io.digdag.core.database.DatabaseTestingUtils.*;
 import static org.junit.Assert.*;
@@ -305,6 +312,28 @@ public class DatabaseProjectStoreManagerTest
         });
     }
 
+    @Test
+    public void testRevisionArchiveDataStream()
+        throws Exception
+    {
+        factory.begin(() -> {
+            byte[] data = "archive data".getBytes(UTF_8);
+
+            StoredRevision rev = store.putAndLockProject(
+                    Project.of("proj1"),
+                    (store, stored) -> {
+                        ProjectControl lock = new ProjectControl(store, stored);
+
+                        StoredRevision storedRev = lock.insertRevision(createRevision("rev1"));
+                        lock.insertRevisionArchiveData(storedRev.getId(), new ByteArrayInputStream(data), data.length);
+
+                        return storedRev;
+                    });
+
+            assertArrayEquals(data, store.getRevisionArchiveData(rev.getId()));
+        });
+    }
+
     @Test
     public void testDeleteProject()
         throws Exception
@@ -362,4 +391,194 @@ public class DatabaseProjectStoreManagerTest
             assertNotEquals(sameName.getId(), deletingProject.getId());
         });
     }
+
+    @Test
+    public void testInsertWorkflowDefinitionsSharesConfigs()
+        throws Exception
+    {
+        WorkflowDefinition srcWfA = createWorkflow("a");
+        WorkflowDefinition srcWfB = WorkflowDefinition.of("b", srcWfA.getConfig(), srcWfA.getTimeZone());
+        WorkflowDefinition srcWfC = WorkflowDefinition.of("c", srcWfA.getConfig(), ZoneId.of("Asia/Tokyo"));
+        WorkflowDefinition srcWfD = createWorkflow("d");
+
+        factory.begin(() -> {
+            StoredRevision rev2 = store.putAndLockProject(
+                    Project.of("proj1"),
+                    (store, stored) -> {
+                        ProjectControl lock = new ProjectControl(store, stored);
+
+                        StoredRevision rev1 = lock.insertRevision(createRevision("rev1"));
+                        List<StoredWorkflowDefinition> defs1 = lock.insertWorkflowDefinitionsWithoutSchedules(rev1,
+                                ImmutableList.of(srcWfA, srcWfB, srcWfC, srcWfD));
+                        assertEquals(ImmutableList.of(srcWfA, srcWfB, srcWfC, srcWfD), copyDefinitions(defs1));
+
+                        // configs stored by the previous revision are reused
+                        StoredRevision rev = lock.insertRevision(createRevision("rev2"));
+                        List<StoredWorkflowDefinition> defs2 = lock.insertWorkflowDefinitionsWithoutSchedules(rev,
+                                ImmutableList.of(srcWfD, srcWfA));
+                        assertEquals(ImmutableList.of(srcWfD, srcWfA), copyDefinitions(defs2));
+                        return rev;
+                    });
+
+            // same config and time zone share a row. Different time zone doesn't.
+            assertEquals(3L, countRows("select count(*) from workflow_configs"));
+            assertEquals(1L, countRows("select count(distinct config_id) from workflow_definitions where name in ('a', 'b')"));
+            assertEquals(3L, countRows("select count(distinct config_id) from workflow_definitions where name in ('a', 'c', 'd')"));
+            assertEquals(ImmutableList.of(srcWfD, srcWfA),
+                    copyDefinitions(store.getWorkflowDefinitions(rev2.getId(), 100, Optional.absent(), () -> "true")).stream()
+                    .sorted(Comparator.comparing(WorkflowDefinition::getName).reversed())
+                    .collect(Collectors.toList()));
+        });
+    }
+
+    @Test
+    public void testUpdateSchedules()
+        throws Exception
+    {
+        Instant t1 = Instant.ofEpochSecond(1500000000L);
+        Instant t2 = t1.plusSeconds(3600);
+
+        factory.begin(() -> {
+            int projId = store.putAndLockProject(
+                    Project.of("proj1"),
+                    (store, stored) -> {
+                        ProjectControl lock = new ProjectControl(store, stored);
+                        StoredRevision rev = lock.insertRevision(createRevision("rev1"));
+                        List<StoredWorkflowDefinition> defs = lock.insertWorkflowDefinitionsWithoutSchedules(rev,
+                                ImmutableList.of(createWorkflow("a"), createWorkflow("b"), createWorkflow("c")));
+
+                        // inserts all at once
+                        store.updateSchedules(stored.getId(),
+                                ImmutableList.of(
+                                    Schedule.of("a", defs.get(0).getId(), t1, t1),
+                                    Schedule.of("b", defs.get(1).getId(), t1, t1)),
+                                (oldStatus, newSched) -> {
+                                    throw new AssertionError("no schedules to update");
+                                });
+                        return stored.getId();
+                    });
+
+            ScheduleStore scheduleStore = factory.getScheduleStoreManager().getScheduleStore(0);
+            StoredSchedule oldB = scheduleStore.getScheduleByProjectIdAndWorkflowName(projId, "b");
+            assertEquals(t1, oldB.getNextRunTime());
+
+            List<StoredWorkflowDefinition> defs2 = new ArrayList<>();
+            store.putAndLockProject(
+                    Project.of("proj1"),
+                    (store, stored) -> {
+                        ProjectControl lock = new ProjectControl(store, stored);
+                        StoredRevision rev = lock.insertRevision(createRevision("rev2"));
+                        defs2.addAll(lock.insertWorkflowDefinitionsWithoutSchedules(rev,
+                                ImmutableList.of(createWorkflow("a"), createWorkflow("b"), createWorkflow("c"))));
+
+                        // updates b, inserts c and deletes a in one call
+                        List<ScheduleStatus> oldStatuses = new ArrayList<>();
+                        store.updateSchedules(projId,
+                                ImmutableList.of(
+                                    Schedule.of("b", defs2.get(1).getId(), t2, t2),
+                                    Schedule.of("c", defs2.get(2).getId(), t2, t2)),
+                                (oldStatus, newSched) -> {
+                                    oldStatuses.add(oldStatus);
+                                    return ScheduleTime.of(newSched.getNextScheduleTime(), newSched.getNextRunTime().plusSeconds(1));
+                                });
+                        assertEquals(ImmutableList.of(ScheduleStatus.of(ScheduleTime.of(t1, t1), Optional.absent())), oldStatuses);
+                        return stored;
+                    });
+
+            List<StoredSchedule> schedules = scheduleStore.getSchedulesByProjectId(projId, 100, Optional.absent(), () -> "true");
+            assertEquals(ImmutableList.of("b", "c"), schedules.stream()
+                    .map(StoredSchedule::getWorkflowName)
+                    .sorted()
+                    .collect(Collectors.toList()));
+
+            StoredSchedule newB = scheduleStore.getScheduleByProjectIdAndWorkflowName(projId, "b");
+            assertEquals(oldB.getId(), newB.getId());
+            assertEquals(defs2.get(1).getId(), newB.getWorkflowDefinitionId());
+            assertEquals(t2.plusSeconds(1), newB.getNextRunTime());
+            assertEquals(t2, newB.getNextScheduleTime());
+
+            StoredSchedule newC = scheduleStore.getScheduleByProjectIdAndWorkflowName(projId, "c");
+            assertEquals(defs2.get(2).getId(), newC.getWorkflowDefinitionId());
+            assertEquals(t2, newC.getNextRunTime());
+
+            assertNotFound(() -> scheduleStore.getScheduleByProjectIdAndWorkflowName(projId, "a"));
+        });
+    }
+
+    @Test
+    public void testConcurrentUpdateSchedules()
+        throws Exception
+    {
+        Instant t1 = Instant.ofEpochSecond(1500000000L);
+
+        factory.begin(() -> {
+            store.putAndLockProject(Project.of("proj1"), (store, stored) -> stored);
+        });
+
+        ExecutorService threads = Executors.newCachedThreadPool();
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                String revName = "rev" + i;
+                List<String> names = (i % 2 == 0) ? ImmutableList.of("a", "b") : ImmutableList.of("b", "c");
+                futures.add(threads.submit(() -> {
+                    factory.begin(() -> {
+                        store.putAndLockProject(
+                                Project.of("proj1"),
+                                (store, stored) -> {
+                                    ProjectControl lock = new ProjectControl(store, stored);
+                                    StoredRevision rev = lock.insertRevision(createRevision(revName));
+                                    List<StoredWorkflowDefinition> defs = lock.insertWorkflowDefinitionsWithoutSchedules(rev,
+                                            names.stream().map(name -> createWorkflow(name)).collect(Collectors.toList()));
+                                    store.updateSchedules(stored.getId(),
+                                            defs.stream()
+                                                .map(def -> Schedule.of(def.getName(), def.getId(), t1, t1))
+                                                .collect(Collectors.toList()),
+                                            (oldStatus, newSched) -> oldStatus.getNextScheduleTime());
+                                    return rev;
+                                });
+                    });
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+        finally {
+            threads.shutdown();
+        }
+
+        factory.begin(() -> {
+            StoredProject proj = store.getProjectByName("proj1");
+            StoredRevision lastRev = store.getLatestRevision(proj.getId());
+
+            // schedules match the workflows of the last revision
+            List<StoredSchedule> schedules = factory.getScheduleStoreManager().getScheduleStore(0)
+                .getSchedulesByProjectId(proj.getId(), 100, Optional.absent(), () -> "true");
+            Map<String, Long> lastDefIds = new HashMap<>();
+            for (StoredWorkflowDefinition def : store.getWorkflowDefinitions(lastRev.getId(), 100, Optional.absent(), () -> "true")) {
+                lastDefIds.put(def.getName(), def.getId());
+            }
+            assertEquals(lastDefIds.size(), schedules.size());
+            for (StoredSchedule schedule : schedules) {
+                assertEquals(lastDefIds.get(schedule.getWorkflowName()), (Long) schedule.getWorkflowDefinitionId());
+            }
+        });
+    }
+
+    private static List<WorkflowDefinition> copyDefinitions(List<StoredWorkflowDefinition> defs)
+    {
+        return defs.stream()
+            .map(def -> ImmutableWorkflowDefinition.builder().from(def).build())
+            .collect(Collectors.toList());
+    }
+
+    private long countRows(String sql)
+    {
+        return factory.get().getHandle(createConfigMapper())
+            .createQuery(sql)
+            .mapTo(Long.class)
+            .first();
+    }
 }
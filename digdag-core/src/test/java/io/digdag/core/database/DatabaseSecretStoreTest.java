@@ -4,6 +4,7 @@ import com.google.common.base.Optional;
 import com.google.common.base.Strings;
 import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
+import io.digdag.client.config.ConfigUtils;
 import io.digdag.core.repository.Project;
 import io.digdag.core.repository.ProjectStore;
 import io.digdag.core.repository.StoredProject;
@@ -201,6 +202,71 @@ public class DatabaseSecretStoreTest
         }
     }
 
+    @Test
+    public void cachedSecret()
+            throws Exception
+    {
+        DatabaseSecretCache cache = new DatabaseSecretCache(ConfigUtils.newConfig().set("database.secretCacheTtl", 60));
+        SecretControlStore cachedControlStore = factory.getSecretControlStoreManager(SECRET, cache).getSecretControlStore(SITE_ID);
+        SecretStore cachedStore = factory.getSecretStoreManager(SECRET, cache).getSecretStore(SITE_ID);
+
+        assertThat(cachedStore.getSecret(projectId, SecretScopes.PROJECT, KEY1), is(Optional.absent()));
+
+        // changes through the control store sharing the cache invalidate cached entries
+        factory.autoCommit(() -> cachedControlStore.setProjectSecret(projectId, SecretScopes.PROJECT, KEY1, VALUE1));
+        assertThat(cachedStore.getSecret(projectId, SecretScopes.PROJECT, KEY1), is(Optional.of(VALUE1)));
+
+        // changes made by others are not visible until TTL expires
+        factory.autoCommit(() -> secretControlStore.setProjectSecret(projectId, SecretScopes.PROJECT, KEY1, VALUE2));
+        assertThat(cachedStore.getSecret(projectId, SecretScopes.PROJECT, KEY1), is(Optional.of(VALUE1)));
+        assertThat(secretStore.getSecret(projectId, SecretScopes.PROJECT, KEY1), is(Optional.of(VALUE2)));
+
+        factory.autoCommit(() -> cachedControlStore.deleteProjectSecret(projectId, SecretScopes.PROJECT, KEY1));
+        assertThat(cachedStore.getSecret(projectId, SecretScopes.PROJECT, KEY1), is(Optional.absent()));
+    }
+
+    @Test
+    public void cachedSecretIsInvalidatedAfterCommit()
+            throws Exception
+    {
+        DatabaseSecretCache cache = new DatabaseSecretCache(ConfigUtils.newConfig().set("database.secretCacheTtl", 60));
+        SecretControlStore cachedControlStore = factory.getSecretControlStoreManager(SECRET, cache).getSecretControlStore(SITE_ID);
+        SecretStore cachedStore = factory.getSecretStoreManager(SECRET, cache).getSecretStore(SITE_ID);
+
+        factory.begin(() -> {
+            cachedControlStore.setProjectSecret(projectId, SecretScopes.PROJECT, KEY1, VALUE1);
+
+            // another thread reads the committed state (no secret) before this
+            // transaction commits and caches it
+            cache.get(SITE_ID, projectId, SecretScopes.PROJECT, KEY1, () -> Optional.absent());
+            return null;
+        });
+
+        assertThat(cachedStore.getSecret(projectId, SecretScopes.PROJECT, KEY1), is(Optional.of(VALUE1)));
+    }
+
+    @Test
+    public void cachedSecretIsInvalidatedWhenProjectIsDeleted()
+            throws Exception
+    {
+        DatabaseSecretCache cache = new DatabaseSecretCache(ConfigUtils.newConfig().set("database.secretCacheTtl", 60));
+        SecretStore cachedStore = factory.getSecretStoreManager(SECRET, cache).getSecretStore(SITE_ID);
+
+        factory.autoCommit(() -> secretControlStore.setProjectSecret(projectId, SecretScopes.PROJECT, KEY1, VALUE1));
+        assertThat(cachedStore.getSecret(projectId, SecretScopes.PROJECT, KEY1), is(Optional.of(VALUE1)));
+
+        // changed by another server. cached value is still used.
+        factory.autoCommit(() -> secretControlStore.setProjectSecret(projectId, SecretScopes.PROJECT, KEY1, VALUE2));
+        assertThat(cachedStore.getSecret(projectId, SecretScopes.PROJECT, KEY1), is(Optional.of(VALUE1)));
+
+        factory.begin(() -> {
+            factory.getProjectStoreManager(cache).getProjectStore(SITE_ID).deleteProject(projectId, (store, proj) -> null);
+            return null;
+        });
+
+        // project deletion doesn't delete secrets. Next read goes to the database.
+        assertThat(cachedStore.getSecret(projectId, SecretScopes.PROJECT, KEY1), is(Optional.of(VALUE2)));
+    }
 
     @Test
     public void concurrentPutShouldNotThrowExceptions()
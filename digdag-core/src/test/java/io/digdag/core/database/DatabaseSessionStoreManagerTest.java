@@ -2,6 +2,7 @@ package io.digdag.core.database;
 
 import java.util.*;
 import java.time.Instant;
+import java.util.stream.Collectors;
 import java.time.ZoneId;
 
 import org.hamcrest.Matchers;
@@ -11,6 +12,9 @@ import com.google.common.collect.*;
 import io.digdag.core.repository.*;
 import io.digdag.core.schedule.*;
 import io.digdag.core.session.*;
+import io.digdag.core.storage.StorageManager;
+import io.digdag.core.storage.TaskArchiveStorage;
+import io.digdag.core.storage.TaskArchiveStorageTest;
 import io.digdag.core.workflow.*;
 import io.digdag.spi.ScheduleTime;
 import io.digdag.spi.TaskReport;
@@ -22,6 +26,10 @@ import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 public class DatabaseSessionStoreManagerTest
 {
@@ -450,6 +458,60 @@ public class DatabaseSessionStoreManagerTest
         });
     }
 
+    @Test
+    public void offloadTaskArchive()
+        throws Exception
+    {
+        StorageManager storageManager = mock(StorageManager.class);
+        when(storageManager.create(eq("s3"), any(Config.class), eq("archive.tiering."))).thenReturn(new TaskArchiveStorageTest.MemoryStorage());
+        TaskArchiveStorage archiveStorage = new TaskArchiveStorage(storageManager, createConfig().set("archive.tiering.type", "s3"));
+        DatabaseSessionStoreManager tieredManager = factory.getSessionStoreManager();
+        tieredManager.setTaskArchiveStorage(archiveStorage);
+
+        long attemptId = otherProjAttempt1.getId();
+        List<ArchivedTask> activeArchive = factory.begin(() -> {
+            List<ArchivedTask> tasks = store.getTasksOfAttempt(attemptId);
+            manager.lockAttemptIfExists(attemptId, (store, summary) -> {
+                store.aggregateAndInsertTaskArchive(attemptId);
+                store.deleteAllTasksOfAttempt(attemptId);
+                return summary;
+            });
+            return tasks;
+        });
+
+        factory.begin(() -> {
+            Instant now = manager.getStoreTime();
+            assertThat(manager.findInlineTaskArchivesCreatedBefore(now.plusSeconds(3600), 0, 10), contains(attemptId));
+            assertEmpty(manager.findInlineTaskArchivesCreatedBefore(now.minusSeconds(3600), 0, 10));
+            assertEmpty(manager.findInlineTaskArchivesCreatedBefore(now.plusSeconds(3600), attemptId, 10));
+
+            Optional<String> archive = manager.getInlineTaskArchive(attemptId);
+            assertTrue(archive.isPresent());
+
+            String path = archiveStorage.put(attemptId, archive.get());
+            assertTrue(manager.setTaskArchivePath(attemptId, path));
+            // already offloaded
+            assertFalse(manager.setTaskArchivePath(attemptId, path));
+
+            assertFalse(manager.getInlineTaskArchive(attemptId).isPresent());
+            assertEmpty(manager.findInlineTaskArchivesCreatedBefore(now.plusSeconds(3600), 0, 10));
+        });
+
+        factory.begin(() -> {
+            // read back through archive_path
+            assertThat(tieredManager.getSessionStore(0).getTasksOfAttempt(attemptId), is(activeArchive));
+
+            // without TaskArchiveStorage, offloaded archive can't be read
+            try {
+                store.getTasksOfAttempt(attemptId);
+                fail();
+            }
+            catch (IllegalStateException ex) {
+                // expected
+            }
+        });
+    }
+
     private void assertSessionAndLastAttemptEquals(StoredSessionWithLastAttempt session, StoredSessionAttemptWithSession attempt)
     {
         assertThat(session.getId(), is(attempt.getSessionId()));
@@ -458,6 +520,163 @@ public class DatabaseSessionStoreManagerTest
         assertThat(session.getLastAttempt(), is(StoredSessionAttempt.copyOf(attempt)));
     }
 
+    @Test
+    public void lockTaskSummary()
+        throws Exception
+    {
+        factory.begin(() -> {
+            ArchivedTask rootTask = store.getTasksOfAttempt(otherProjAttempt1.getId()).get(0);
+
+            TaskSummary summary = manager.lockTaskSummaryIfExists(rootTask.getId(), (store, s, details) -> s).get();
+            assertThat(summary, is(TaskSummary.of(rootTask)));
+
+            // details are same with lockTaskIfExists
+            StoredTask details = manager.lockTaskSummaryIfExists(rootTask.getId(), (store, s, d) -> d.get()).get();
+            StoredTask expected = manager.lockTaskIfExists(rootTask.getId(), (store, task) -> task).get();
+            assertThat(details, is(expected));
+
+            assertThat(manager.lockTaskSummaryIfExists(rootTask.getId() + 1000, (store, s, details) -> s), is(Optional.absent()));
+        });
+    }
+
+    @Test
+    public void lookupsForTimeoutEnforcer()
+        throws Exception
+    {
+        factory.begin(() -> {
+            Instant oldest = manager.getOldestActiveAttemptCreationTime().get();
+            assertThat(oldest.isAfter(manager.getStoreTime()), is(false));
+
+            long attemptId = otherProjAttempt1.getId();
+            assertThat(manager.getAttemptsWithSessionByIdList(ImmutableList.of(attemptId)),
+                    contains(manager.getAttemptWithSessionById(attemptId)));
+            assertThat(manager.getAttemptsWithSessionByIdList(ImmutableList.of()), is(Matchers.empty()));
+
+            assertThat(projectStoreManager.getWorkflowDetailsByIdList(ImmutableList.of(otherProjWf1.getId())),
+                    contains(projectStoreManager.getWorkflowDetailsById(otherProjWf1.getId())));
+            assertThat(projectStoreManager.getProjectsByIdListInternal(ImmutableList.of(otherProj.getId())).get(otherProj.getId()),
+                    is(projectStoreManager.getProjectByIdInternal(otherProj.getId())));
+        });
+    }
+
+    @Test
+    public void findAttemptsWithFilter()
+        throws Exception
+    {
+        Instant sessionTime = otherProjAttempt1.getSession().getSessionTime();
+
+        factory.begin(() -> {
+            long attemptId = otherProjAttempt1.getId();
+            StoredSessionAttemptWithSession attempt = store.getAttemptById(attemptId);
+
+            assertThat(store.getAttemptsByIdList(ImmutableList.of(attemptId), () -> "true"), contains(attempt));
+            assertThat(store.getAttemptsByIdList(ImmutableList.of(attemptId), () -> "false"), is(Matchers.empty()));
+            assertThat(manager.getSessionStore(1).getAttemptsByIdList(ImmutableList.of(attemptId), () -> "true"), is(Matchers.empty()));
+
+            AttemptFilter projectFilter = AttemptFilter.builder()
+                .projectId(otherProj.getId())
+                .workflowName("otherProjWf1")
+                .build();
+            assertThat(store.findAttempts(projectFilter, false, 100, Optional.absent(), () -> "true"), contains(attempt));
+            assertThat(store.findAttempts(projectFilter, false, 100, Optional.of(attemptId), () -> "true"), is(Matchers.empty()));
+
+            AttemptFilter timeFilter = AttemptFilter.builder()
+                .sessionTimeFrom(sessionTime)
+                .sessionTimeTo(sessionTime.plusSeconds(1))
+                .status(AttemptFilter.Status.RUNNING)
+                .build();
+            assertThat(store.findAttempts(timeFilter, true, 100, Optional.absent(), () -> "true"), contains(attempt));
+
+            AttemptFilter doneFilter = AttemptFilter.builder()
+                .status(AttemptFilter.Status.SUCCESS)
+                .build();
+            assertThat(store.findAttempts(doneFilter, false, 100, Optional.absent(), () -> "true"), is(Matchers.empty()));
+
+            Map<Long, Map<TaskStateCode, Long>> counts = store.getTaskStateCountsOfAttempts(ImmutableList.of(attemptId));
+            assertThat(counts.get(attemptId).values().stream().mapToLong(Long::longValue).sum(), is(1L));
+            assertThat(store.getTaskStateCountsOfAttempts(ImmutableList.of()).isEmpty(), is(true));
+        });
+    }
+
+    @Test
+    public void addSubtasksInBatch()
+        throws Exception
+    {
+        long attemptId = otherProjAttempt1.getId();
+
+        factory.begin(() -> {
+            long rootId = store.getTasksOfAttempt(attemptId).get(0).getId();
+
+            List<Long> ids = manager.lockTaskIfExists(rootId, (TaskControlStore control) -> {
+                // row by row: +a > (+a1 -> +a2)
+                long a = control.addSubtask(attemptId, newTask(rootId, "+a", TaskType.of(TaskType.GROUPING_ONLY)));
+                long a1 = control.addSubtask(attemptId, newTask(a, "+a+1", TaskType.of(0)));
+                long a2 = control.addSubtask(attemptId, newTask(a, "+a+2", TaskType.of(0)));
+                control.addDependencies(a2, ImmutableList.of(a1));
+
+                // batch: +b > (+b1 -> +b2)
+                List<Long> batchIds = control.allocateTaskIds(3);
+                Map<Long, Task> tasks = new LinkedHashMap<>();
+                tasks.put(batchIds.get(0), newTask(rootId, "+b", TaskType.of(TaskType.GROUPING_ONLY)));
+                tasks.put(batchIds.get(1), newTask(batchIds.get(0), "+b+1", TaskType.of(0)));
+                tasks.put(batchIds.get(2), newTask(batchIds.get(0), "+b+2", TaskType.of(0)));
+                control.addSubtasks(attemptId, tasks);
+                control.addDependencies(ImmutableListMultimap.of(batchIds.get(2), batchIds.get(1)));
+
+                // row by row again after the batch
+                long c = control.addSubtask(attemptId, newTask(rootId, "+c", TaskType.of(0)));
+
+                return ImmutableList.<Long>builder()
+                    .add(a, a1, a2)
+                    .addAll(batchIds)
+                    .add(c)
+                    .build();
+            }).get();
+
+            // ids are unique and contiguous with single-row inserts before and after the batch
+            for (int i = 1; i < ids.size(); i++) {
+                assertThat(ids.get(i), is(ids.get(i - 1) + 1));
+            }
+
+            Map<Long, ArchivedTask> stored = new HashMap<>();
+            for (ArchivedTask task : store.getTasksOfAttempt(attemptId)) {
+                stored.put(task.getId(), task);
+            }
+            assertThat(stored.size(), is(8));
+
+            // batch rows are same with row-by-row rows except ids
+            for (int i = 0; i < 3; i++) {
+                ArchivedTask rowByRow = stored.get(ids.get(i));
+                ArchivedTask batch = stored.get(ids.get(i + 3));
+                assertThat(batch.getFullName(), is(rowByRow.getFullName().replace("+a", "+b")));
+                assertThat(batch.getParentId().transform(id -> id - (id == rootId ? 0 : 3)), is(rowByRow.getParentId()));
+                assertThat(batch.getUpstreams().stream().map(id -> id - 3).collect(Collectors.toList()), is(rowByRow.getUpstreams()));
+                assertThat(batch.getConfig().getLocal(), is(rowByRow.getConfig().getLocal()));
+                assertThat(batch.getConfig().getExport(), is(rowByRow.getConfig().getExport()));
+                assertThat(batch.getTaskType(), is(rowByRow.getTaskType()));
+                assertThat(batch.getState(), is(rowByRow.getState()));
+                assertThat(batch.getStateFlags(), is(rowByRow.getStateFlags()));
+                assertThat(batch.getStateParams(), is(rowByRow.getStateParams()));
+                assertThat(batch.getRetryCount(), is(rowByRow.getRetryCount()));
+            }
+        });
+    }
+
+    private static Task newTask(long parentId, String name, TaskType taskType)
+    {
+        Config config = newConfig()
+            .set("echo>", name)
+            .set("_export", newConfig().set("name", name));
+        return Task.taskBuilder()
+            .parentId(Optional.of(parentId))
+            .fullName(name)
+            .config(TaskConfig.validate(config))
+            .taskType(taskType)
+            .state(TaskStateCode.BLOCKED)
+            .stateFlags(TaskStateFlags.empty())
+            .build();
+    }
+
     @Test
     public void verifyStoredArchiveTaskBackwardCompatibility()
     {
@@ -101,6 +101,7 @@ public class DatabaseTestingUtils
         "queues",
         "queued_tasks",
         "queued_task_locks",
+        "notification_queue",
     };
 
     public static void cleanDatabase(DigdagEmbed embed)
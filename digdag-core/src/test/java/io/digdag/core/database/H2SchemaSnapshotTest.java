@@ -0,0 +1,64 @@
+package io.digdag.core.database;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableMap;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.skife.jdbi.v2.DBI;
+import org.skife.jdbi.v2.Handle;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class H2SchemaSnapshotTest
+{
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void restoreMigratedSchema()
+            throws Exception
+    {
+        File dir = folder.newFolder("cache");
+        DatabaseConfig config = DatabaseConfig.builder()
+            .from(DatabaseTestingUtils.getEnvironmentDatabaseConfig())
+            .type("h2")
+            .path(Optional.absent())
+            .remoteDatabaseConfig(Optional.absent())
+            .options(ImmutableMap.of())
+            .schemaSnapshotDir(dir.toString())
+            .build();
+
+        // first database applies migrations and stores a snapshot
+        List<String> migrated = migrateAndDump(config);
+        assertThat(Files.list(dir.toPath()).count(), is(1L));
+
+        // second database restores the snapshot
+        List<String> restored = migrateAndDump(config);
+        assertThat(restored, is(migrated));
+    }
+
+    private static List<String> migrateAndDump(DatabaseConfig config)
+    {
+        DataSourceProvider dsp = new DataSourceProvider(config);
+        try {
+            DBI dbi = new DBI(dsp.get());
+            DatabaseMigrator migrator = new DatabaseMigrator(dbi, config);
+            migrator.migrate();
+            assertThat(migrator.getApplicableMigration().isEmpty(), is(true));
+            try (Handle handle = dbi.open()) {
+                return handle.createQuery("select name from schema_migrations order by name")
+                    .mapTo(String.class)
+                    .list();
+            }
+        }
+        finally {
+            dsp.close();
+        }
+    }
+}
@@ -1,22 +1,39 @@
 package io.digdag.core.database;
 
+import com.google.common.base.Optional;
+import com.google.inject.Guice;
 import io.digdag.core.repository.Project;
 import io.digdag.core.repository.ProjectStore;
 import io.digdag.core.repository.ResourceConflictException;
 import io.digdag.core.repository.ResourceNotFoundException;
 import io.digdag.core.repository.StoredProject;
+import io.digdag.spi.metrics.DigdagMetrics;
+import io.micrometer.core.instrument.Tags;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.sql.DataSource;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
+import static io.digdag.core.database.DatabaseTestingUtils.createConfig;
+import static io.digdag.core.database.DatabaseTestingUtils.createConfigMapper;
+import static io.digdag.spi.metrics.DigdagMetrics.Category;
 import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.notNullValue;
 import static org.hamcrest.Matchers.nullValue;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.fail;
+import static org.mockito.Matchers.anyDouble;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 public class ThreadLocalTransactionManagerTest
 {
@@ -46,6 +63,29 @@ public class ThreadLocalTransactionManagerTest
         });
     }
 
+    @Test
+    public void readOnlyTransaction()
+            throws Exception
+    {
+        factory.get().begin(() -> {
+            factory.getProjectStoreManager().getProjectStore(0)
+                .putAndLockProject(Project.of("proj1"), (store, stored) -> stored);
+            return null;
+        }, ResourceConflictException.class);
+
+        StoredProject proj = factory.get().beginReadOnly(() -> {
+            return factory.getProjectStoreManager().getProjectStore(0)
+                .getProjectByName("proj1");
+        }, ResourceNotFoundException.class);
+        assertThat(proj.getName(), is("proj1"));
+
+        exception.expect(ResourceNotFoundException.class);
+        factory.get().beginReadOnly(() -> {
+            return factory.getProjectStoreManager().getProjectStore(0)
+                .getProjectByName("proj2");
+        }, ResourceNotFoundException.class);
+    }
+
     @Test
     public void reuseTransaction()
             throws Exception
@@ -105,4 +145,135 @@ public class ThreadLocalTransactionManagerTest
             assertThat(ex, is(nullValue()));
         }
     }
+
+    @Test
+    public void readOnlyTransactionOnReplica()
+            throws Exception
+    {
+        putProject("proj1");
+
+        DataSource primary = spy(factory.getDataSource());
+        DataSource replica = spy(factory.getDataSource());
+        TransactionManager tm = new ThreadLocalTransactionManager(primary, replicaProvider(replica));
+
+        StoredProject proj = tm.beginReadOnly(() -> {
+            return projectStore(tm).getProjectByName("proj1");
+        }, ResourceNotFoundException.class);
+        assertThat(proj.getName(), is("proj1"));
+
+        verify(replica, times(1)).getConnection();
+        verify(primary, never()).getConnection();
+
+        // read-write transactions always use the primary database
+        tm.begin(() -> {
+            return projectStore(tm).getProjectByName("proj1");
+        }, ResourceNotFoundException.class);
+        verify(replica, times(1)).getConnection();
+        verify(primary, times(1)).getConnection();
+    }
+
+    @Test
+    public void readOnlyTransactionFallsBackToPrimaryIfNotFound()
+            throws Exception
+    {
+        putProject("proj1");
+
+        DataSource primary = spy(factory.getDataSource());
+        DataSource replica = spy(factory.getDataSource());
+        TransactionManager tm = new ThreadLocalTransactionManager(primary, replicaProvider(replica));
+
+        // the first call runs on the replica, which doesn't have proj1 yet
+        AtomicInteger calls = new AtomicInteger(0);
+        StoredProject proj = tm.beginReadOnly(() -> {
+            String name = calls.incrementAndGet() == 1 ? "not-replicated-yet" : "proj1";
+            return projectStore(tm).getProjectByName(name);
+        }, ResourceNotFoundException.class);
+        assertThat(proj.getName(), is("proj1"));
+        assertThat(calls.get(), is(2));
+
+        verify(replica, times(1)).getConnection();
+        verify(primary, times(1)).getConnection();
+    }
+
+    @Test
+    public void readOnlyTransactionDoesNotRetryOtherErrors()
+            throws Exception
+    {
+        putProject("proj1");
+
+        DataSource primary = spy(factory.getDataSource());
+        DataSource replica = spy(factory.getDataSource());
+        TransactionManager tm = new ThreadLocalTransactionManager(primary, replicaProvider(replica));
+
+        try {
+            tm.beginReadOnly(() -> {
+                projectStore(tm).getProjectByName("proj1");
+                throw new IllegalStateException("test");
+            }, ResourceNotFoundException.class);
+            fail();
+        }
+        catch (IllegalStateException ex) {
+            assertThat(ex.getMessage(), is("test"));
+        }
+
+        verify(replica, times(1)).getConnection();
+        verify(primary, never()).getConnection();
+    }
+
+    @Test
+    public void readOnlyTransactionOnPrimaryIfReplicaIsDisabled()
+            throws Exception
+    {
+        putProject("proj1");
+
+        DataSource primary = spy(factory.getDataSource());
+        ReplicaDataSourceProvider disabled = mock(ReplicaDataSourceProvider.class);
+        when(disabled.isEnabled()).thenReturn(false);
+        TransactionManager tm = new ThreadLocalTransactionManager(primary, disabled);
+
+        StoredProject proj = tm.beginReadOnly(() -> {
+            return projectStore(tm).getProjectByName("proj1");
+        }, ResourceNotFoundException.class);
+        assertThat(proj.getName(), is("proj1"));
+
+        verify(primary, times(1)).getConnection();
+        verify(disabled, never()).get();
+    }
+
+    @Test
+    public void autoAutoCommitTransactionUsesInjectedMetrics()
+            throws Exception
+    {
+        // the transaction is created by the constructor before metrics is injected
+        ThreadLocalTransactionManager tm = new ThreadLocalTransactionManager(factory.getDataSource(), true);
+        DigdagMetrics metrics = mock(DigdagMetrics.class);
+        Guice.createInjector(binder -> binder.bind(DigdagMetrics.class).toInstance(metrics))
+            .injectMembers(tm);
+
+        tm.getHandle(createConfigMapper());
+        verify(metrics, times(1)).summary(eq(Category.DB), eq("connectionAcquireMsec"), eq(Tags.of("pool", "primary")), anyDouble());
+    }
+
+    private void putProject(String name)
+            throws Exception
+    {
+        factory.begin(() -> {
+            factory.getProjectStoreManager().getProjectStore(0)
+                .putAndLockProject(Project.of(name), (store, stored) -> stored);
+        });
+    }
+
+    private ProjectStore projectStore(TransactionManager tm)
+    {
+        return new DatabaseProjectStoreManager(tm, createConfigMapper(), factory.getConfig(), new DatabaseSecretCache(createConfig()))
+            .getProjectStore(0);
+    }
+
+    private static ReplicaDataSourceProvider replicaProvider(DataSource replica)
+    {
+        ReplicaDataSourceProvider provider = mock(ReplicaDataSourceProvider.class);
+        when(provider.isEnabled()).thenReturn(true);
+        when(provider.get()).thenReturn(Optional.of(replica));
+        return provider;
+    }
 }
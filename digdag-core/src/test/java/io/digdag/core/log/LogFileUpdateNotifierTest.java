@@ -0,0 +1,61 @@
+package io.digdag.core.log;
+
+import com.google.common.base.Optional;
+import io.digdag.spi.LogFilePrefix;
+import org.junit.Test;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class LogFileUpdateNotifierTest
+{
+    private final LogFileUpdateNotifier notifier = new LogFileUpdateNotifier();
+
+    @Test
+    public void notifyListeners()
+    {
+        List<LogFilePrefix> notified = new ArrayList<>();
+        LogFileUpdateNotifier.Listener listener = notified::add;
+        notifier.addListener(listener);
+
+        notifier.notifyUpdated(prefix("wf1"));
+        notifier.notifyUpdated(prefix("wf2"));
+        assertThat(notified, contains(prefix("wf1"), prefix("wf2")));
+
+        notifier.removeListener(listener);
+        notifier.notifyUpdated(prefix("wf3"));
+        assertThat(notified.size(), is(2));
+    }
+
+    @Test
+    public void failingListenerDoesNotAffectOthers()
+    {
+        List<LogFilePrefix> notified = new ArrayList<>();
+        notifier.addListener(prefix -> {
+            throw new IllegalStateException("test");
+        });
+        notifier.addListener(notified::add);
+
+        notifier.notifyUpdated(prefix("wf1"));
+        assertThat(notified, contains(prefix("wf1")));
+    }
+
+    private static LogFilePrefix prefix(String workflowName)
+    {
+        return LogFilePrefix.builder()
+            .createdAt(Instant.ofEpochSecond(1))
+            .retryAttemptName(Optional.absent())
+            .projectId(1)
+            .sessionTime(Instant.ofEpochSecond(1))
+            .siteId(1)
+            .timeZone(ZoneId.of("UTC"))
+            .workflowName(workflowName)
+            .build();
+    }
+}
@@ -0,0 +1,140 @@
+package io.digdag.core.notification;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.inject.Injector;
+import com.google.inject.Key;
+import io.digdag.client.DigdagClient;
+import io.digdag.client.config.Config;
+import io.digdag.core.database.TransactionManager;
+import io.digdag.spi.Notification;
+import io.digdag.spi.NotificationException;
+import io.digdag.spi.NotificationSender;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.time.Instant;
+
+import static io.digdag.client.config.ConfigUtils.newConfig;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class AsyncNotificationDispatcherTest
+{
+    @Mock Injector injector;
+    @Mock NotificationSender sender;
+    @Mock NotificationQueueStore store;
+    @Mock TransactionManager tm;
+
+    private final ObjectMapper mapper = DigdagClient.objectMapper();
+    private AsyncNotificationDispatcher dispatcher;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp()
+    {
+        when(injector.getInstance(any(Key.class))).thenReturn(sender);
+        when(tm.begin(any(TransactionManager.SupplierInTransaction.class))).thenAnswer(invocation ->
+                ((TransactionManager.SupplierInTransaction) invocation.getArguments()[0]).get());
+
+        Config systemConfig = newConfig()
+            .set("notification.type", "test")
+            .set("notification.async", true)
+            .set("notification.retries", 3)
+            .set("notification.min_retry_wait", 1000)
+            .set("notification.max_retry_wait", 5000);
+        dispatcher = new AsyncNotificationDispatcher(systemConfig, injector, store, tm, mapper);
+    }
+
+    @Test
+    public void deleteDeliveredNotification()
+            throws Exception
+    {
+        dispatcher.deliver(queued(1, 0));
+
+        verify(sender).sendNotification(any(Notification.class));
+        verify(store).delete(1);
+        verify(store, never()).retryLater(anyLong(), anyInt(), any());
+    }
+
+    @Test
+    public void retryFailedNotificationWithBackoff()
+            throws Exception
+    {
+        doThrow(new NotificationException("test")).when(sender).sendNotification(any());
+
+        Instant before = Instant.now();
+        dispatcher.deliver(queued(1, 2));
+        Instant after = Instant.now();
+
+        ArgumentCaptor<Instant> nextRunAt = ArgumentCaptor.forClass(Instant.class);
+        verify(store).retryLater(eq(1L), eq(3), nextRunAt.capture());
+        verify(store, never()).delete(anyLong());
+        // 1000ms << 2
+        assertThat(nextRunAt.getValue(), is(greaterThanOrEqualTo(before.plusMillis(4000))));
+        assertThat(nextRunAt.getValue(), is(lessThanOrEqualTo(after.plusMillis(4000))));
+    }
+
+    @Test
+    public void giveUpAfterRetries()
+            throws Exception
+    {
+        doThrow(new RuntimeException("test")).when(sender).sendNotification(any());
+
+        dispatcher.deliver(queued(1, 3));
+
+        verify(store).delete(1);
+        verify(store, never()).retryLater(anyLong(), anyInt(), any());
+    }
+
+    @Test
+    public void discardBrokenNotification()
+            throws Exception
+    {
+        dispatcher.deliver(ImmutableQueuedNotification.builder()
+                .id(1)
+                .notification("{broken")
+                .retryCount(0)
+                .createdAt(Instant.now())
+                .build());
+
+        verify(sender, never()).sendNotification(any());
+        verify(store).delete(1);
+    }
+
+    @Test
+    public void retryWaitIsExponentialUpToMax()
+    {
+        assertThat(AsyncNotificationDispatcher.retryWaitMillis(0, 1000, 5000), is(1000L));
+        assertThat(AsyncNotificationDispatcher.retryWaitMillis(1, 1000, 5000), is(2000L));
+        assertThat(AsyncNotificationDispatcher.retryWaitMillis(2, 1000, 5000), is(4000L));
+        assertThat(AsyncNotificationDispatcher.retryWaitMillis(3, 1000, 5000), is(5000L));
+        assertThat(AsyncNotificationDispatcher.retryWaitMillis(100, 1000, 5000), is(5000L));
+    }
+
+    private QueuedNotification queued(long id, int retryCount)
+            throws Exception
+    {
+        Notification notification = Notification.builder(Instant.now(), "test").build();
+        return ImmutableQueuedNotification.builder()
+            .id(id)
+            .notification(mapper.writeValueAsString(notification))
+            .retryCount(retryCount)
+            .createdAt(Instant.now())
+            .build();
+    }
+}
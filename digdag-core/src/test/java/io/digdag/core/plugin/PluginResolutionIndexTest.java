@@ -0,0 +1,121 @@
+package io.digdag.core.plugin;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class PluginResolutionIndexTest
+{
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private static final List<String> REPOSITORIES = ImmutableList.of("https://example.com/maven");
+    private static final String DEPENDENCY = "com.example:plugin:0.1.0";
+
+    @Test
+    public void storeResolvedArtifacts()
+            throws Exception
+    {
+        PluginResolutionIndex index = new PluginResolutionIndex(folder.newFolder("index").toPath());
+        Path jar1 = folder.newFile("plugin-0.1.0.jar").toPath();
+        Path jar2 = folder.newFile("lib-1.0.jar").toPath();
+
+        assertThat(index.getArtifacts(REPOSITORIES, DEPENDENCY), is(Optional.absent()));
+
+        index.putArtifacts(REPOSITORIES, DEPENDENCY, ImmutableList.of(jar1, jar2));
+        assertThat(index.getArtifacts(REPOSITORIES, DEPENDENCY), is(Optional.of(ImmutableList.of(jar1, jar2))));
+
+        // keyed by repositories and dependency
+        assertThat(index.getArtifacts(ImmutableList.of(), DEPENDENCY), is(Optional.absent()));
+        assertThat(index.getArtifacts(REPOSITORIES, "com.example:plugin:0.2.0"), is(Optional.absent()));
+
+        // an entry is ignored if some of the files are removed
+        Files.delete(jar2);
+        assertThat(index.getArtifacts(REPOSITORIES, DEPENDENCY), is(Optional.absent()));
+    }
+
+    @Test
+    public void recordLoadedSpecs()
+            throws Exception
+    {
+        PluginResolutionIndex index = new PluginResolutionIndex(folder.newFolder("index").toPath());
+        assertThat(index.getSpecsLoadedWithin(Duration.ofDays(1)), is(empty()));
+
+        Spec spec = Spec.of(REPOSITORIES, ImmutableList.of(DEPENDENCY));
+        index.recordSpec(spec);
+        index.recordSpec(spec);
+        assertThat(index.getSpecsLoadedWithin(Duration.ofDays(1)), contains(spec));
+    }
+
+    @Test
+    public void mostRecentlyUsedSpecsComeFirst()
+            throws Exception
+    {
+        Path indexDir = folder.newFolder("index").toPath();
+        PluginResolutionIndex index = new PluginResolutionIndex(indexDir);
+
+        Spec spec1 = Spec.of(REPOSITORIES, ImmutableList.of("com.example:plugin1:0.1.0"));
+        Spec spec2 = Spec.of(REPOSITORIES, ImmutableList.of("com.example:plugin2:0.1.0"));
+        Spec spec3 = Spec.of(REPOSITORIES, ImmutableList.of("com.example:plugin3:0.1.0"));
+        index.recordSpec(spec1);
+        index.recordSpec(spec2);
+        index.recordSpec(spec3);
+        setLastUsedTime(indexDir, spec1, Instant.now().minus(Duration.ofHours(1)));
+        setLastUsedTime(indexDir, spec2, Instant.now().minus(Duration.ofHours(3)));
+        setLastUsedTime(indexDir, spec3, Instant.now().minus(Duration.ofHours(2)));
+
+        assertThat(index.getSpecsLoadedWithin(Duration.ofDays(1)), contains(spec1, spec3, spec2));
+        assertThat(index.getSpecsLoadedWithin(Duration.ofMinutes(150)), contains(spec1, spec3));
+    }
+
+    @Test
+    public void recordUsageOncePerInterval()
+            throws Exception
+    {
+        Path localRepository = folder.newFolder("repository").toPath();
+        RemotePluginLoader loader = new RemotePluginLoader(localRepository, true);
+        Path indexDir = localRepository.resolve(".digdag-index");
+
+        Spec spec = Spec.of(REPOSITORIES, ImmutableList.of(DEPENDENCY));
+        loader.recordUsage(spec);
+        assertThat(loader.getSpecsLoadedWithin(Duration.ofDays(1)), contains(spec));
+
+        // the second call within the interval doesn't update the time
+        setLastUsedTime(indexDir, spec, Instant.now().minus(Duration.ofDays(2)));
+        loader.recordUsage(spec);
+        assertThat(loader.getSpecsLoadedWithin(Duration.ofDays(1)), is(empty()));
+
+        // specs without dependencies are not recorded
+        loader.recordUsage(Spec.of(REPOSITORIES, ImmutableList.of()));
+        assertThat(loader.getSpecsLoadedWithin(Duration.ofDays(3)), contains(spec));
+    }
+
+    private static void setLastUsedTime(Path indexDir, Spec spec, Instant time)
+            throws Exception
+    {
+        // the index has only one file for each spec
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(indexDir.resolve("specs"), "*.json")) {
+            for (Path file : ds) {
+                if (new String(Files.readAllBytes(file), UTF_8).contains(spec.getDependencies().get(0))) {
+                    Files.setLastModifiedTime(file, FileTime.from(time));
+                }
+            }
+        }
+    }
+}
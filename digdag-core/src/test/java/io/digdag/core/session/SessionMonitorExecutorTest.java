@@ -1,8 +1,10 @@
 package io.digdag.core.session;
 
 import com.google.inject.Guice;
+import io.digdag.client.config.Config;
 import io.digdag.client.config.ConfigException;
 import io.digdag.client.config.ConfigFactory;
+import io.digdag.client.config.ConfigUtils;
 import io.digdag.core.ErrorReporter;
 import io.digdag.core.Limits;
 import io.digdag.core.database.TransactionManager;
@@ -16,7 +18,10 @@ import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
@@ -48,22 +53,22 @@ public class SessionMonitorExecutorTest
     {
         // Make io.digdag.core.database.TransactionManager#begin execute a passed function
         doAnswer(answer -> {
-            TransactionManager.SupplierInTransaction<Void, RuntimeException, RuntimeException, RuntimeException, RuntimeException> func =
-                    (TransactionManager.SupplierInTransaction<Void, RuntimeException, RuntimeException, RuntimeException, RuntimeException>) answer.getArguments()[0];
-            func.get();
-            return null;
+            TransactionManager.SupplierInTransaction<Object, RuntimeException, RuntimeException, RuntimeException, RuntimeException> func =
+                    (TransactionManager.SupplierInTransaction<Object, RuntimeException, RuntimeException, RuntimeException, RuntimeException>) answer.getArguments()[0];
+            return func.get();
         }).when(transactionManager).begin(any());
 
         // Make io.digdag.core.session.SessionStoreManager#lockReadySessionMonitors execute a passed function
         StoredSessionMonitor sessionMonitor = mock(StoredSessionMonitor.class);
         doAnswer(answer -> {
-            SessionStoreManager.SessionMonitorAction action = (SessionStoreManager.SessionMonitorAction) answer.getArguments()[1];
+            SessionStoreManager.SessionMonitorAction action = (SessionStoreManager.SessionMonitorAction) answer.getArguments()[2];
             action.schedule(sessionMonitor);
-            return null;
-        }).when(sessionStoreManager).lockReadySessionMonitors(any(), any());
+            return 1;
+        }).when(sessionStoreManager).lockReadySessionMonitors(any(), anyInt(), any());
 
         sessionMonitorExecutor = spy(Guice.createInjector(binder -> {
             binder.bind(ConfigFactory.class).toInstance(configFactory);
+            binder.bind(Config.class).toInstance(ConfigUtils.newConfig());
             binder.bind(SessionStoreManager.class).toInstance(sessionStoreManager);
             binder.bind(TransactionManager.class).toInstance(transactionManager);
             binder.bind(WorkflowExecutor.class).toInstance(workflowExecutor);
@@ -74,6 +79,30 @@ public class SessionMonitorExecutorTest
 
     }
 
+    @Test
+    public void runUntilAllReadyMonitorsAreHandled()
+    {
+        // default batch size is 10
+        doReturn(10).doReturn(10).doReturn(3).doReturn(0)
+            .when(sessionStoreManager).lockReadySessionMonitors(any(), anyInt(), any());
+
+        sessionMonitorExecutor.run();
+
+        verify(sessionStoreManager, times(3)).lockReadySessionMonitors(any(), eq(10), any());
+    }
+
+    @Test
+    public void stopDrainingOnError()
+    {
+        doReturn(10).doThrow(RuntimeException.class).doReturn(0)
+            .when(sessionStoreManager).lockReadySessionMonitors(any(), anyInt(), any());
+
+        sessionMonitorExecutor.run();
+
+        verify(sessionStoreManager, times(2)).lockReadySessionMonitors(any(), anyInt(), any());
+        verify(errorReporter, times(1)).reportUncaughtError(any(RuntimeException.class));
+    }
+
     @Test
     public void handleUnexpectedExceptionInRun()
     {
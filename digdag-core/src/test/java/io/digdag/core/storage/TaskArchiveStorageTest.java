@@ -0,0 +1,131 @@
+package io.digdag.core.storage;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.io.ByteStreams;
+import io.digdag.client.DigdagClient;
+import io.digdag.client.config.Config;
+import io.digdag.spi.Storage;
+import io.digdag.spi.StorageFileNotFoundException;
+import io.digdag.spi.StorageObject;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TaskArchiveStorageTest
+{
+    private ObjectMapper objectMapper;
+    private StorageManager storageManager;
+    private Storage storage;
+
+    @Before
+    public void setUp()
+    {
+        objectMapper = DigdagClient.objectMapper();
+        storageManager = mock(StorageManager.class);
+        storage = spy(new MemoryStorage());
+        when(storageManager.create(eq("s3"), any(Config.class), eq("archive.tiering."))).thenReturn(storage);
+    }
+
+    @Test
+    public void disabledByDefault()
+            throws IOException
+    {
+        TaskArchiveStorage archiveStorage = new TaskArchiveStorage(storageManager, config("{}"));
+        assertFalse(archiveStorage.isEnabled());
+    }
+
+    @Test
+    public void putAndGet()
+            throws Exception
+    {
+        TaskArchiveStorage archiveStorage = new TaskArchiveStorage(storageManager,
+                config("{\"archive.tiering.type\":\"s3\",\"archive.tiering.s3.path\":\"/archives\"}"));
+        assertTrue(archiveStorage.isEnabled());
+
+        String path = archiveStorage.put(42L, "[{\"id\":1}]");
+        assertThat(path, is("archives/task_archives/42.json.gz"));
+
+        assertThat(archiveStorage.get(path), is("[{\"id\":1}]"));
+        assertThat(archiveStorage.get(path), is("[{\"id\":1}]"));
+
+        // second get is served from cache
+        verify(storage, times(1)).open(path);
+    }
+
+    @Test
+    public void cacheIsBoundedByBytes()
+            throws Exception
+    {
+        TaskArchiveStorage archiveStorage = new TaskArchiveStorage(storageManager,
+                config("{\"archive.tiering.type\":\"s3\",\"archive.tiering.cache_max_bytes\":100,\"archive.tiering.cache_expire\":\"1h\"}"));
+
+        StringBuilder large = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            large.append('x');
+        }
+        String path = archiveStorage.put(42L, large.toString());
+
+        // an archive larger than the cache is not kept
+        assertThat(archiveStorage.get(path), is(large.toString()));
+        assertThat(archiveStorage.get(path), is(large.toString()));
+        verify(storage, times(2)).open(path);
+
+        assertThat(TaskArchiveStorage.weigh(large.toString()), is(200));
+    }
+
+    private Config config(String json)
+            throws IOException
+    {
+        return Config.deserializeFromJackson(objectMapper, objectMapper.readTree(json));
+    }
+
+    public static class MemoryStorage
+            implements Storage
+    {
+        private final Map<String, byte[]> objects = new HashMap<>();
+
+        @Override
+        public StorageObject open(String key)
+                throws StorageFileNotFoundException
+        {
+            byte[] data = objects.get(key);
+            if (data == null) {
+                throw new StorageFileNotFoundException(key);
+            }
+            return new StorageObject(new ByteArrayInputStream(data), data.length);
+        }
+
+        @Override
+        public String put(String key, long contentLength, UploadStreamProvider payload)
+                throws IOException
+        {
+            try (InputStream in = payload.open()) {
+                objects.put(key, ByteStreams.toByteArray(in));
+            }
+            return "";
+        }
+
+        @Override
+        public void list(String keyPrefix, FileListing callback)
+        {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package io.digdag.core.workflow;
+
+import io.digdag.client.config.Config;
+import io.digdag.client.config.ConfigException;
+import io.digdag.core.repository.ImmutableStoredWorkflowDefinition;
+import io.digdag.core.repository.StoredWorkflowDefinition;
+import io.digdag.core.repository.WorkflowDefinition;
+import io.digdag.metrics.StdDigdagMetrics;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.ZoneId;
+
+import static io.digdag.client.config.ConfigUtils.newConfig;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class CachedWorkflowCompilerTest
+{
+    private static final ZoneId UTC = ZoneId.of("UTC");
+
+    private CachedWorkflowCompiler compiler;
+
+    @Before
+    public void setUp()
+    {
+        compiler = new CachedWorkflowCompiler(newConfig(), StdDigdagMetrics.empty());
+    }
+
+    @Test
+    public void reuseCompiledWorkflowOfSameDefinition()
+    {
+        Workflow wf1 = compiler.compile(stored(1, "wf", workflowConfig("echo>")));
+        Workflow wf2 = compiler.compile(stored(1, "wf", workflowConfig("echo>")));
+        assertThat(wf2, is(sameInstance(wf1)));
+    }
+
+    @Test
+    public void compileDifferentDefinitions()
+    {
+        Workflow wf1 = compiler.compile(stored(1, "wf", workflowConfig("echo>")));
+        Workflow wf2 = compiler.compile(stored(2, "wf", workflowConfig("sh>")));
+        Workflow wf3 = compiler.compile(stored(3, "wf2", workflowConfig("echo>")));
+        assertThat(wf2, is(not(sameInstance(wf1))));
+        assertThat(wf3, is(not(sameInstance(wf1))));
+        assertThat(wf3.getTasks().get(0).getFullName(), is("+wf2"));
+    }
+
+    @Test
+    public void definitionsNotStoredAreNotCached()
+    {
+        Workflow wf1 = compiler.compile(WorkflowDefinition.of("wf", workflowConfig("echo>"), UTC));
+        Workflow wf2 = compiler.compile(WorkflowDefinition.of("wf", workflowConfig("echo>"), UTC));
+        assertThat(wf2, is(not(sameInstance(wf1))));
+        assertThat(wf2.getTasks().get(0).getFullName(), is("+wf"));
+    }
+
+    @Test
+    public void failuresAreNotCached()
+    {
+        Config invalid = newConfig().set("+a", newConfig().set("echo>", "a").set("sh>", "a"));
+        for (int i = 0; i < 2; i++) {
+            try {
+                compiler.compile(stored(1, "wf", invalid));
+                fail();
+            }
+            catch (ConfigException ex) {
+            }
+        }
+    }
+
+    private static StoredWorkflowDefinition stored(long id, String name, Config config)
+    {
+        return ImmutableStoredWorkflowDefinition.builder()
+            .from(WorkflowDefinition.of(name, config, UTC))
+            .id(id)
+            .revisionId(1)
+            .build();
+    }
+
+    private static Config workflowConfig(String operator)
+    {
+        return newConfig()
+            .set("+a", newConfig().set(operator, "a"))
+            .set("+b", newConfig().set(operator, "b"));
+    }
+}
@@ -7,6 +7,10 @@ import java.util.Arrays;
 import java.util.List;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.Optional;
@@ -27,6 +31,7 @@ import io.digdag.core.session.StoredTask;
 import io.digdag.metrics.StdDigdagMetrics;
 import io.digdag.spi.metrics.DigdagMetrics;
 import io.digdag.util.RetryControl;
+import io.micrometer.core.instrument.Tags;
 import org.junit.AfterClass;
 import org.junit.Before;
 import org.junit.BeforeClass;
@@ -38,6 +43,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import static io.digdag.client.config.ConfigUtils.configFactory;
+import static io.digdag.spi.metrics.DigdagMetrics.Category;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static io.digdag.client.config.ConfigUtils.newConfig;
 import static io.digdag.core.workflow.WorkflowTestingUtils.loadYamlResource;
@@ -48,6 +55,8 @@ import static org.hamcrest.Matchers.not;
 import static org.junit.Assert.*;
 import static org.hamcrest.Matchers.is;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class WorkflowExecutorTest
@@ -434,6 +443,110 @@ public class WorkflowExecutorTest
         }
     }
 
+    @Test
+    public void loopPhaseSkipsUntilInterval()
+    {
+        AtomicLong now = new AtomicLong(0);
+        DigdagMetrics metrics = mock(DigdagMetrics.class);
+        WorkflowExecutor.LoopPhase phase = new WorkflowExecutor.LoopPhase("test", 1000, 1000, 100, metrics, now::get);
+        AtomicInteger runs = new AtomicInteger(0);
+        BooleanSupplier changed = () -> {
+            runs.incrementAndGet();
+            return true;
+        };
+
+        // the first run never skips
+        assertThat(phase.run(changed), is(true));
+        assertThat(phase.isSkipped(), is(false));
+
+        now.set(MILLISECONDS.toNanos(999));
+        assertThat(phase.run(changed), is(false));
+        assertThat(phase.isSkipped(), is(true));
+        assertThat(phase.getMillisUntilNextRun(), is(1L));
+        assertThat(runs.get(), is(1));
+
+        now.set(MILLISECONDS.toNanos(1000));
+        assertThat(phase.run(changed), is(true));
+        assertThat(phase.isSkipped(), is(false));
+        assertThat(runs.get(), is(2));
+
+        verify(metrics, times(1)).increment(Category.EXECUTOR, "loopPhaseSkipped", Tags.of("phase", "test"));
+        verify(metrics, times(2)).increment(Category.EXECUTOR, "loopPhaseChanged", Tags.of("phase", "test"));
+    }
+
+    @Test
+    public void loopPhaseBacksOffWhileNothingChanges()
+    {
+        AtomicLong now = new AtomicLong(0);
+        WorkflowExecutor.LoopPhase phase = new WorkflowExecutor.LoopPhase("test", 0, 500, 100, mock(DigdagMetrics.class), now::get);
+        AtomicBoolean result = new AtomicBoolean(false);
+
+        // interval 0 starts backoff from the initial interval and doubles up to the max interval
+        phase.run(result::get);
+        assertThat(phase.getMillisUntilNextRun(), is(100L));
+        now.addAndGet(MILLISECONDS.toNanos(100));
+        phase.run(result::get);
+        assertThat(phase.getMillisUntilNextRun(), is(200L));
+        now.addAndGet(MILLISECONDS.toNanos(200));
+        phase.run(result::get);
+        assertThat(phase.getMillisUntilNextRun(), is(400L));
+        now.addAndGet(MILLISECONDS.toNanos(400));
+        phase.run(result::get);
+        assertThat(phase.getMillisUntilNextRun(), is(500L));
+
+        // a change resets the interval
+        now.addAndGet(MILLISECONDS.toNanos(500));
+        result.set(true);
+        assertThat(phase.run(result::get), is(true));
+        assertThat(phase.getMillisUntilNextRun(), is(0L));
+        assertThat(phase.run(result::get), is(true));
+        assertThat(phase.isSkipped(), is(false));
+
+        // resetBackoff resets the interval too
+        result.set(false);
+        phase.run(result::get);
+        assertThat(phase.getMillisUntilNextRun(), is(100L));
+        phase.resetBackoff();
+        assertThat(phase.getMillisUntilNextRun(), is(0L));
+    }
+
+    @Test
+    public void loopPhaseWithoutBackoffByDefault()
+    {
+        AtomicLong now = new AtomicLong(0);
+        WorkflowExecutor.LoopPhase phase = new WorkflowExecutor.LoopPhase("test", 0, 0, 100, mock(DigdagMetrics.class), now::get);
+        AtomicInteger runs = new AtomicInteger(0);
+        for (int i = 0; i < 3; i++) {
+            phase.run(() -> {
+                runs.incrementAndGet();
+                return false;
+            });
+        }
+        assertThat(runs.get(), is(3));
+        assertThat(phase.isSkipped(), is(false));
+    }
+
+    @Test
+    public void runWithPhaseIntervals()
+            throws Exception
+    {
+        Config sysConfig = configFactory.create();
+
+        // skipped propagation of planned tasks must not make the loop sleep long
+        sysConfig.set("executor.propagate_planned_interval", 200);
+        sysConfig.set("executor.session_archive_interval", 500);
+        sysConfig.set("executor.enqueue_max_interval", 1000);
+        DigdagEmbed embed2 = WorkflowTestingUtils.setupEmbed(b -> {
+            return b.setSystemConfig(ConfigElement.copyOf(sysConfig));
+        });
+        try {
+            runWorkflow(embed2, "basic", loadYamlResource("/io/digdag/core/workflow/basic.dig"));
+        }
+        finally {
+            embed2.close();
+        }
+    }
+
     private Optional<String> getResult(String fileName, TemporaryFolder folder)
     {
         try {
@@ -0,0 +1,90 @@
+package io.digdag.server;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Splitter;
+import com.google.common.hash.Hashing;
+import com.google.inject.Inject;
+
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.ext.Provider;
+
+import java.io.IOException;
+import java.util.Map;
+
+import static javax.ws.rs.core.HttpHeaders.ETAG;
+import static javax.ws.rs.core.HttpHeaders.IF_NONE_MATCH;
+
+/**
+ * Adds ETag header to JSON responses of GET requests and returns
+ * 304 Not Modified if the request has a matching If-None-Match header.
+ *
+ * ETag is a hash of the serialized response body. The body is still built
+ * for every request, but clients polling the same resource don't have to
+ * receive and parse it again if nothing changed.
+ */
+@Provider
+public class EntityTagFilter
+        implements ContainerResponseFilter
+{
+    private final ObjectMapper mapper;
+
+    @Inject
+    public EntityTagFilter(ObjectMapper mapper)
+    {
+        this.mapper = mapper;
+    }
+
+    @Override
+    public void filter(ContainerRequestContext request, ContainerResponseContext response)
+            throws IOException
+    {
+        if (!request.getMethod().equals("GET") || response.getStatus() != Response.Status.OK.getStatusCode()) {
+            return;
+        }
+
+        Object entity = response.getEntity();
+        if (entity == null || !isJsonModel(entity, response.getMediaType())) {
+            return;
+        }
+
+        // serialize here so that the body is serialized only once
+        byte[] body = mapper.writeValueAsBytes(entity);
+        String entityTag = "\"" + Hashing.murmur3_128().hashBytes(body).toString() + "\"";
+        response.getHeaders().putSingle(ETAG, entityTag);
+
+        if (matches(request.getHeaderString(IF_NONE_MATCH), entityTag)) {
+            response.setStatus(Response.Status.NOT_MODIFIED.getStatusCode());
+            response.setEntity(null);
+        }
+        else {
+            response.setEntity(body, response.getEntityAnnotations(), MediaType.APPLICATION_JSON_TYPE);
+        }
+    }
+
+    private static boolean isJsonModel(Object entity, MediaType mediaType)
+    {
+        // only REST models built by digdag. Others such as swagger documents
+        // are serialized by their own providers.
+        if (!entity.getClass().getName().startsWith("io.digdag.") && !(entity instanceof Map)) {
+            return false;
+        }
+        return mediaType == null || MediaType.APPLICATION_JSON_TYPE.isCompatible(mediaType);
+    }
+
+    static boolean matches(String ifNoneMatch, String entityTag)
+    {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String tag : Splitter.on(',').trimResults().omitEmptyStrings().split(ifNoneMatch)) {
+            if (tag.equals("*") || tag.equals(entityTag) || tag.equals("W/" + entityTag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
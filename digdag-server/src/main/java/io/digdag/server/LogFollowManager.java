@@ -0,0 +1,368 @@
+package io.digdag.server;
+
+import com.google.common.base.Optional;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.inject.Inject;
+import io.digdag.client.config.Config;
+import io.digdag.core.database.TransactionManager;
+import io.digdag.core.log.LogFileUpdateNotifier;
+import io.digdag.core.log.LogMarkers;
+import io.digdag.core.log.LogServerManager;
+import io.digdag.core.repository.ResourceNotFoundException;
+import io.digdag.core.session.SessionStoreManager;
+import io.digdag.spi.LogFileHandle;
+import io.digdag.spi.LogFilePrefix;
+import io.digdag.spi.LogServer;
+import io.digdag.util.DurationParam;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.stream.Collectors;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Holds requests of GET /api/logs/{attempt_id}/follow until log files of the
+ * attempt are updated, without blocking request threads.
+ *
+ * Followers of the same attempt share one listing of the log server. A single
+ * thread lists log files of attempts that have followers at most once per
+ * log-server.follow.poll_interval, and within a second when this server
+ * uploads a log file of the attempt.
+ */
+public class LogFollowManager
+{
+    private static final Logger logger = LoggerFactory.getLogger(LogFollowManager.class);
+
+    private static final Duration DEFAULT_POLL_INTERVAL = Duration.ofSeconds(5);
+    private static final long TICK_INTERVAL_MILLIS = 1000;
+
+    public interface Callback
+    {
+        void resume(List<LogFileHandle> handles);
+
+        void cancel();
+    }
+
+    interface AttemptStateChecker
+    {
+        boolean isDone(int siteId, long attemptId);
+    }
+
+    private final LogServer logServer;
+    private final LogFileUpdateNotifier updateNotifier;
+    private final AttemptStateChecker attemptStateChecker;
+    private final long pollIntervalMillis;
+    private final LogFileUpdateNotifier.Listener listener = this::logFileUpdated;
+    private final Map<WatchKey, AttemptWatch> watches = new HashMap<>();
+    private ScheduledExecutorService executor = null;
+
+    @Inject
+    public LogFollowManager(LogServerManager lm, TransactionManager tm, SessionStoreManager sm, Config systemConfig)
+    {
+        this(lm.getLogServer(), lm.getUpdateNotifier(),
+                (siteId, attemptId) -> {
+                    try {
+                        return tm.beginReadOnly(() ->
+                                sm.getSessionStore(siteId).getAttemptById(attemptId).getStateFlags().isDone(),
+                                ResourceNotFoundException.class);
+                    }
+                    catch (ResourceNotFoundException ex) {
+                        // deleted
+                        return true;
+                    }
+                },
+                systemConfig.getOptional("log-server.follow.poll_interval", DurationParam.class)
+                    .transform(DurationParam::getDuration)
+                    .or(DEFAULT_POLL_INTERVAL));
+    }
+
+    LogFollowManager(LogServer logServer, LogFileUpdateNotifier updateNotifier,
+            AttemptStateChecker attemptStateChecker, Duration pollInterval)
+    {
+        this.logServer = logServer;
+        this.updateNotifier = updateNotifier;
+        this.attemptStateChecker = attemptStateChecker;
+        this.pollIntervalMillis = pollInterval.toMillis();
+    }
+
+    @PostConstruct
+    public synchronized void start()
+    {
+        if (executor == null) {
+            updateNotifier.addListener(listener);
+            executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                    .setDaemon(true)
+                    .setNameFormat("log-follow-%d")
+                    .build());
+            executor.scheduleWithFixedDelay(this::run, TICK_INTERVAL_MILLIS, TICK_INTERVAL_MILLIS, MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown()
+    {
+        synchronized (this) {
+            if (executor != null) {
+                updateNotifier.removeListener(listener);
+                executor.shutdownNow();
+                executor = null;
+            }
+        }
+        List<Follower> cancelled = new ArrayList<>();
+        synchronized (watches) {
+            for (AttemptWatch watch : watches.values()) {
+                cancelled.addAll(watch.followers);
+            }
+            watches.clear();
+        }
+        for (Follower follower : cancelled) {
+            follower.cancel();
+        }
+    }
+
+    /**
+     * Calls callback with log files of the attempt when number or total size of
+     * them becomes larger than knownFiles or knownSize, the attempt finishes, or
+     * timeout expires. This method doesn't block.
+     */
+    public void follow(int siteId, long attemptId, LogFilePrefix prefix, Optional<String> taskName,
+            boolean enableDirectDownload, int knownFiles, long knownSize, long timeoutMillis,
+            Callback callback)
+    {
+        Follower follower = new Follower(taskName, knownFiles, knownSize,
+                System.currentTimeMillis() + timeoutMillis, callback);
+        WatchKey key = new WatchKey(prefix, enableDirectDownload);
+        synchronized (watches) {
+            AttemptWatch watch = watches.get(key);
+            if (watch == null) {
+                // first check happens at the next tick
+                watch = new AttemptWatch(key, siteId, attemptId);
+                watches.put(key, watch);
+            }
+            watch.followers.add(follower);
+        }
+    }
+
+    void logFileUpdated(LogFilePrefix prefix)
+    {
+        synchronized (watches) {
+            for (AttemptWatch watch : watches.values()) {
+                if (watch.key.prefix.equals(prefix)) {
+                    watch.dirty = true;
+                }
+            }
+        }
+    }
+
+    private void run()
+    {
+        try {
+            tick();
+        }
+        catch (Throwable t) {
+            logger.error(
+                    LogMarkers.UNEXPECTED_SERVER_ERROR,
+                    "Uncaught exception when checking log files for followers. Ignoring. Loop will be retried.", t);
+        }
+    }
+
+    void tick()
+    {
+        long now = System.currentTimeMillis();
+
+        List<AttemptWatch> targets;
+        synchronized (watches) {
+            targets = watches.values().stream()
+                .filter(watch -> watch.dirty || now - watch.checkedAt >= pollIntervalMillis)
+                .collect(Collectors.toList());
+            for (AttemptWatch watch : targets) {
+                // uploads notified during listing make the next tick check again
+                watch.dirty = false;
+            }
+        }
+
+        // list files out of the lock so that follow() doesn't wait for the log server
+        for (AttemptWatch watch : targets) {
+            try {
+                // check state before listing so that the list includes all files if it's done
+                boolean done = attemptStateChecker.isDone(watch.siteId, watch.attemptId);
+                List<LogFileHandle> handles = logServer.getFileHandles(watch.key.prefix, Optional.absent(), watch.key.enableDirectDownload);
+                synchronized (watches) {
+                    watch.done = done;
+                    watch.handles = handles;
+                    watch.checkedAt = now;
+                }
+            }
+            catch (RuntimeException ex) {
+                logger.warn("Failed to list log files of attempt {}. Retrying later.", watch.attemptId, ex);
+                synchronized (watches) {
+                    watch.checkedAt = now;
+                }
+            }
+        }
+
+        List<Runnable> resumes = new ArrayList<>();
+        synchronized (watches) {
+            Iterator<AttemptWatch> ite = watches.values().iterator();
+            while (ite.hasNext()) {
+                AttemptWatch watch = ite.next();
+                watch.collectResumes(now, resumes);
+                if (watch.followers.isEmpty()) {
+                    ite.remove();
+                }
+            }
+        }
+        for (Runnable resume : resumes) {
+            resume.run();
+        }
+    }
+
+    int getWatchCount()
+    {
+        synchronized (watches) {
+            return watches.size();
+        }
+    }
+
+    private static class WatchKey
+    {
+        private final LogFilePrefix prefix;
+        private final boolean enableDirectDownload;
+
+        WatchKey(LogFilePrefix prefix, boolean enableDirectDownload)
+        {
+            this.prefix = prefix;
+            this.enableDirectDownload = enableDirectDownload;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            WatchKey other = (WatchKey) o;
+            return enableDirectDownload == other.enableDirectDownload &&
+                prefix.equals(other.prefix);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(prefix, enableDirectDownload);
+        }
+    }
+
+    private static class AttemptWatch
+    {
+        private final WatchKey key;
+        private final int siteId;
+        private final long attemptId;
+        private final List<Follower> followers = new ArrayList<>();
+
+        // null until the first check
+        private List<LogFileHandle> handles = null;
+        private boolean done = false;
+        private boolean dirty = false;
+        private long checkedAt = 0;
+
+        AttemptWatch(WatchKey key, int siteId, long attemptId)
+        {
+            this.key = key;
+            this.siteId = siteId;
+            this.attemptId = attemptId;
+        }
+
+        void collectResumes(long now, List<Runnable> resumes)
+        {
+            Iterator<Follower> ite = followers.iterator();
+            while (ite.hasNext()) {
+                Follower follower = ite.next();
+                if (handles == null) {
+                    if (follower.deadline <= now) {
+                        // log server has been failing since the follower came
+                        resumes.add(follower::cancel);
+                        ite.remove();
+                    }
+                    continue;
+                }
+                List<LogFileHandle> filtered = follower.filter(handles);
+                if (done || follower.isUpdated(filtered) || follower.deadline <= now) {
+                    resumes.add(() -> follower.resume(filtered));
+                    ite.remove();
+                }
+            }
+        }
+    }
+
+    private static class Follower
+    {
+        private final Optional<String> taskName;
+        private final int knownFiles;
+        private final long knownSize;
+        private final long deadline;
+        private final Callback callback;
+
+        Follower(Optional<String> taskName, int knownFiles, long knownSize, long deadline, Callback callback)
+        {
+            this.taskName = taskName;
+            this.knownFiles = knownFiles;
+            this.knownSize = knownSize;
+            this.deadline = deadline;
+            this.callback = callback;
+        }
+
+        List<LogFileHandle> filter(List<LogFileHandle> handles)
+        {
+            if (!taskName.isPresent()) {
+                return handles;
+            }
+            // same with the filter of LogServer.getFileHandles
+            return handles.stream()
+                .filter(handle -> handle.getFileName().startsWith(taskName.get()))
+                .collect(Collectors.toList());
+        }
+
+        boolean isUpdated(List<LogFileHandle> handles)
+        {
+            long totalSize = handles.stream().mapToLong(LogFileHandle::getFileSize).sum();
+            return handles.size() > knownFiles || totalSize > knownSize;
+        }
+
+        void resume(List<LogFileHandle> handles)
+        {
+            try {
+                callback.resume(handles);
+            }
+            catch (RuntimeException ex) {
+                logger.debug("Failed to resume a log follow request", ex);
+            }
+        }
+
+        void cancel()
+        {
+            try {
+                callback.cancel();
+            }
+            catch (RuntimeException ex) {
+                logger.debug("Failed to cancel a log follow request", ex);
+            }
+        }
+    }
+}
@@ -70,6 +70,7 @@ public class ServerBootstrap
                 binder.bind(ServerConfig.class).toInstance(serverConfig);
                 binder.bind(WorkflowExecutorLoop.class).asEagerSingleton();
                 binder.bind(WorkflowExecutionTimeoutEnforcer.class).asEagerSingleton();
+                binder.bind(TaskArchiveOffloader.class).asEagerSingleton();
                 binder.bind(ClientVersionChecker.class).toProvider(ClientVersionCheckerProvider.class);
 
                 binder.bind(ErrorReporter.class).to(JmxErrorReporter.class).in(Scopes.SINGLETON);
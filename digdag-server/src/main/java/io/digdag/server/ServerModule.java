@@ -9,6 +9,7 @@ import com.google.inject.multibindings.Multibinder;
 import io.digdag.client.DigdagVersion;
 import io.digdag.client.config.Config;
 import io.digdag.client.config.ConfigException;
+import io.digdag.core.archive.ArchiveWorkerPool;
 import io.digdag.core.crypto.SecretCrypto;
 import io.digdag.core.crypto.SecretCryptoProvider;
 import io.digdag.core.database.DatabaseSecretControlStoreManager;
@@ -79,6 +80,7 @@ public class ServerModule
             .addProvider(AuthRequestFilter.class)
             .addProvider(CustomHeaderFilter.class)
             .addProvider(AdminRestrictedFilter.class)
+            .addProvider(EntityTagFilter.class)
             ;
         bindResources(builder);
         bindAuthorization();
@@ -111,6 +113,8 @@ public class ServerModule
                 VersionResource.class,
                 AdminResource.class
             );
+        binder().bind(ArchiveWorkerPool.class).in(Scopes.SINGLETON);
+        binder().bind(LogFollowManager.class).in(Scopes.SINGLETON);
     }
 
     protected void bindAuthenticator()
@@ -0,0 +1,159 @@
+package io.digdag.server;
+
+import com.google.common.base.Optional;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.inject.Inject;
+import io.digdag.client.config.Config;
+import io.digdag.core.database.TransactionManager;
+import io.digdag.core.log.LogMarkers;
+import io.digdag.core.session.SessionStoreManager;
+import io.digdag.core.storage.TaskArchiveStorage;
+import io.digdag.spi.metrics.DigdagMetrics;
+import io.digdag.util.DurationParam;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static io.digdag.spi.metrics.DigdagMetrics.Category;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Moves task archives of old attempts from task_archives table to TaskArchiveStorage
+ * so that the database keeps only recent archives.
+ */
+public class TaskArchiveOffloader
+{
+    private static final Logger logger = LoggerFactory.getLogger(TaskArchiveOffloader.class);
+
+    private static final Duration DEFAULT_OLDER_THAN = Duration.ofDays(30);
+    private static final Duration DEFAULT_INTERVAL = Duration.ofMinutes(10);
+    private static final int DEFAULT_BATCH_SIZE = 100;
+
+    private final ScheduledExecutorService scheduledExecutorService;
+    private final SessionStoreManager ssm;
+    private final TransactionManager tm;
+    private final TaskArchiveStorage storage;
+    private final DigdagMetrics metrics;
+
+    private final Duration olderThan;
+    private final Duration interval;
+    private final int batchSize;
+
+    @Inject
+    public TaskArchiveOffloader(
+            ServerConfig serverConfig,
+            SessionStoreManager ssm,
+            TransactionManager tm,
+            TaskArchiveStorage storage,
+            Config systemConfig,
+            DigdagMetrics metrics)
+    {
+        this.olderThan = systemConfig.getOptional("archive.tiering.older_than", DurationParam.class)
+                .transform(DurationParam::getDuration)
+                .or(DEFAULT_OLDER_THAN);
+
+        this.interval = systemConfig.getOptional("archive.tiering.interval", DurationParam.class)
+                .transform(DurationParam::getDuration)
+                .or(DEFAULT_INTERVAL);
+
+        this.batchSize = systemConfig.get("archive.tiering.batch_size", int.class, DEFAULT_BATCH_SIZE);
+
+        this.ssm = ssm;
+        this.tm = tm;
+        this.storage = storage;
+        this.metrics = metrics;
+
+        if (serverConfig.getExecutorEnabled() && storage.isEnabled()) {
+            this.scheduledExecutorService = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                    .setDaemon(true)
+                    .setNameFormat("task-archive-offloader-%d")
+                    .build());
+        }
+        else {
+            this.scheduledExecutorService = null;
+        }
+    }
+
+    private void run()
+    {
+        try {
+            offloadTaskArchives();
+        }
+        catch (Throwable t) {
+            logger.error(
+                    LogMarkers.UNEXPECTED_SERVER_ERROR,
+                    "Uncaught exception when offloading task archives. Ignoring. Loop will be retried.", t);
+        }
+    }
+
+    private void offloadTaskArchives()
+    {
+        long lastId = 0;
+        while (true) {
+            long currentLastId = lastId;
+            List<Long> attemptIds = tm.begin(() -> {
+                Instant createdBefore = ssm.getStoreTime().minus(olderThan);
+                return ssm.findInlineTaskArchivesCreatedBefore(createdBefore, currentLastId, batchSize);
+            });
+            if (attemptIds.isEmpty()) {
+                return;
+            }
+
+            for (long attemptId : attemptIds) {
+                try {
+                    if (offloadTaskArchive(attemptId)) {
+                        logger.debug("Offloaded task archive of attempt {}", attemptId);
+                        metrics.increment(Category.DB, "taskArchiveOffloaded");
+                    }
+                }
+                catch (Throwable t) {
+                    logger.error(
+                            LogMarkers.UNEXPECTED_SERVER_ERROR,
+                            "Failed to offload task archive of attempt {}. Ignoring. Loop continues.", attemptId, t);
+                    metrics.increment(Category.DB, "taskArchiveOffloadErrors");
+                }
+            }
+            lastId = attemptIds.get(attemptIds.size() - 1);
+        }
+    }
+
+    private boolean offloadTaskArchive(long attemptId)
+        throws IOException
+    {
+        Optional<String> archive = tm.begin(() -> ssm.getInlineTaskArchive(attemptId));
+        if (!archive.isPresent()) {
+            // already offloaded by another server
+            return false;
+        }
+        // Upload out of transactions so that a slow storage doesn't hold a database
+        // connection. If another server offloads the same archive concurrently, both
+        // upload the same contents to the same path and only one of them updates the row.
+        String path = storage.put(attemptId, archive.get());
+        return tm.begin(() -> ssm.setTaskArchivePath(attemptId, path));
+    }
+
+    @PostConstruct
+    public void start()
+    {
+        if (scheduledExecutorService != null) {
+            scheduledExecutorService.scheduleWithFixedDelay(this::run, interval.toNanos(), interval.toNanos(), NANOSECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown()
+    {
+        if (scheduledExecutorService != null) {
+            scheduledExecutorService.shutdownNow();
+        }
+    }
+}
@@ -1,11 +1,13 @@
 package io.digdag.server;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Optional;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.inject.Inject;
 import io.digdag.client.config.Config;
 import io.digdag.core.database.TransactionManager;
 import io.digdag.core.log.LogMarkers;
+import io.digdag.core.repository.ProjectMap;
 import io.digdag.core.repository.ProjectStoreManager;
 import io.digdag.core.repository.ResourceNotFoundException;
 import io.digdag.core.repository.StoredProject;
@@ -28,14 +30,17 @@ import javax.annotation.PreDestroy;
 
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 
 import static java.util.concurrent.TimeUnit.NANOSECONDS;
-import static java.util.stream.Collectors.groupingBy;
 import static java.util.stream.Collectors.joining;
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toMap;
 
 public class WorkflowExecutionTimeoutEnforcer
 {
@@ -44,6 +49,8 @@ public class WorkflowExecutionTimeoutEnforcer
     private static final Duration DEFAULT_ATTEMPT_TTL = Duration.ofDays(7);
     private static final Duration DEFAULT_TASK_TTL = Duration.ofDays(1);
     private static final Duration DEFAULT_REAPING_INTERVAL = Duration.ofSeconds(5);
+    private static final Duration DEFAULT_TASK_DEADLINE_REFRESH_INTERVAL = Duration.ofMinutes(1);
+    private static final int PAGE_SIZE = 100;
 
     // This is similar to TaskStateCode.notDoneStates() but BLOCKED, PLANNED, and READY are excluded.
     // BLOCKED and PLANNED are excluded because there're other running tasks that should be enforced instead.
@@ -63,6 +70,13 @@ public class WorkflowExecutionTimeoutEnforcer
     private final Duration attemptTTL;
     private final Duration reapingInterval;
     private final Duration taskTTL;
+    private final Duration taskDeadlineRefreshInterval;
+
+    // Earliest time when an attempt or a task can exceed the TTL. Scanning of attempts or
+    // tasks is skipped until then. These are accessed only by the single scheduler thread.
+    private Instant nextAttemptDeadline = null;
+    private Instant nextTaskDeadline = null;
+    private Instant taskDeadlineRefreshTime = null;
 
     @Inject
     public WorkflowExecutionTimeoutEnforcer(
@@ -81,6 +95,10 @@ public class WorkflowExecutionTimeoutEnforcer
                 .transform(DurationParam::getDuration)
                 .or(DEFAULT_TASK_TTL);
 
+        this.taskDeadlineRefreshInterval = systemConfig.getOptional("executor.task_ttl_deadline_refresh_interval", DurationParam.class)
+                .transform(DurationParam::getDuration)
+                .or(DEFAULT_TASK_DEADLINE_REFRESH_INTERVAL);
+
         this.reapingInterval = systemConfig.getOptional("executor.ttl_reaping_interval", DurationParam.class)
                 .transform(DurationParam::getDuration)
                 .or(DEFAULT_REAPING_INTERVAL);
@@ -101,7 +119,8 @@ public class WorkflowExecutionTimeoutEnforcer
         }
     }
 
-    private void run()
+    @VisibleForTesting
+    void run()
     {
         try {
             enforceAttemptTTLs();
@@ -124,54 +143,94 @@ public class WorkflowExecutionTimeoutEnforcer
 
     private void enforceAttemptTTLs()
     {
-        List<StoredSessionAttempt> expiredAttempts = tm.begin(() -> {
-            Instant creationDeadline = ssm.getStoreTime().minus(attemptTTL);
-            return ssm.findActiveAttemptsCreatedBefore(creationDeadline, (long) 0, 100);
-        });
-
-        for (StoredSessionAttempt attempt : expiredAttempts) {
-            try {
-                boolean canceled = tm.begin(() -> {
-                    AttemptStateFlags stateFlags;
-                    try {
-                        stateFlags = ssm.getAttemptStateFlags(attempt.getId());
-                    }
-                    catch (ResourceNotFoundException e) {
-                        logger.debug("Session Attempt not found, ignoring: {}", attempt, e);
-                        return null;
-                    }
+        Instant now = tm.begin(() -> ssm.getStoreTime());
+        if (nextAttemptDeadline != null && now.isBefore(nextAttemptDeadline)) {
+            // no attempts can be expired yet
+            return;
+        }
 
-                    if (stateFlags.isCancelRequested()) {
-                        logger.debug("Session Attempt already canceled, ignoring: {}", attempt);
-                        return null;
+        Instant creationDeadline = now.minus(attemptTTL);
+        List<Long> canceledAttemptIds = new ArrayList<>();
+        long lastId = 0;
+        while (true) {
+            long pageLastId = lastId;
+            List<StoredSessionAttempt> expiredAttempts = tm.begin(() ->
+                    ssm.findActiveAttemptsCreatedBefore(creationDeadline, pageLastId, PAGE_SIZE));
+
+            for (StoredSessionAttempt attempt : expiredAttempts) {
+                try {
+                    boolean canceled = tm.begin(() -> {
+                        AttemptStateFlags stateFlags;
+                        try {
+                            stateFlags = ssm.getAttemptStateFlags(attempt.getId());
+                        }
+                        catch (ResourceNotFoundException e) {
+                            logger.debug("Session Attempt not found, ignoring: {}", attempt, e);
+                            return false;
+                        }
+
+                        if (stateFlags.isCancelRequested()) {
+                            logger.debug("Session Attempt already canceled, ignoring: {}", attempt);
+                            return false;
+                        }
+
+                        logger.info("Session Attempt timed out, canceling: {}", attempt);
+                        return ssm.requestCancelAttempt(attempt.getId());
+                    });
+
+                    if (canceled) {
+                        canceledAttemptIds.add(attempt.getId());
                     }
-
-                    logger.info("Session Attempt timed out, canceling: {}", attempt);
-                    return ssm.requestCancelAttempt(attempt.getId());
-                });
-
-                if (canceled) {
-                    sendTimeoutNotification("Workflow execution timeout", attempt.getId());
+                }
+                catch (Throwable t) {
+                    logger.error(
+                            LogMarkers.UNEXPECTED_SERVER_ERROR,
+                            "Uncaught exception when enforcing attempt TTLs of attempt {}. Ignoring. Loop continues.", attempt.getId(), t);
                 }
             }
-            catch (Throwable t) {
-                logger.error(
-                        LogMarkers.UNEXPECTED_SERVER_ERROR,
-                        "Uncaught exception when enforcing attempt TTLs of attempt {}. Ignoring. Loop continues.", attempt.getId(), t);
+
+            if (expiredAttempts.size() < PAGE_SIZE) {
+                break;
             }
+            lastId = expiredAttempts.get(expiredAttempts.size() - 1).getId();
         }
+
+        sendTimeoutNotifications(canceledAttemptIds.stream()
+                .collect(toMap(id -> id, id -> "Workflow execution timeout", (a, b) -> a, LinkedHashMap::new)));
+
+        // Attempts created later than now never exceed the TTL before the oldest active attempt
+        // does. If an attempt failed to be canceled above, the deadline is already passed and
+        // it's retried at next interval.
+        this.nextAttemptDeadline = tm.begin(() -> ssm.getOldestActiveAttemptCreationTime())
+            .or(now)
+            .plus(attemptTTL);
     }
 
     private void enforceTaskTTLs()
     {
-        List<TaskAttemptSummary> expiredTasks = tm.begin(() -> {
-            Instant startDeadline = ssm.getStoreTime().minus(taskTTL);
-            return ssm.findTasksStartedBeforeWithState(TASK_TTL_ENFORCED_STATE_CODES, startDeadline, (long) 0, 100);
-        });
+        Instant now = tm.begin(() -> ssm.getStoreTime());
+        if (nextTaskDeadline != null && now.isBefore(nextTaskDeadline) && now.isBefore(taskDeadlineRefreshTime)) {
+            // no tasks can be expired yet
+            return;
+        }
 
-        Map<Long, List<TaskAttemptSummary>> attempts = expiredTasks.stream()
-                .collect(groupingBy(TaskAttemptSummary::getAttemptId));
+        Instant startDeadline = now.minus(taskTTL);
+        Map<Long, List<TaskAttemptSummary>> attempts = new LinkedHashMap<>();
+        long lastId = 0;
+        while (true) {
+            long pageLastId = lastId;
+            List<TaskAttemptSummary> expiredTasks = tm.begin(() ->
+                    ssm.findTasksStartedBeforeWithState(TASK_TTL_ENFORCED_STATE_CODES, startDeadline, pageLastId, PAGE_SIZE));
+            for (TaskAttemptSummary task : expiredTasks) {
+                attempts.computeIfAbsent(task.getAttemptId(), id -> new ArrayList<>()).add(task);
+            }
+            if (expiredTasks.size() < PAGE_SIZE) {
+                break;
+            }
+            lastId = expiredTasks.get(expiredTasks.size() - 1).getId();
+        }
 
+        Map<Long, String> messages = new LinkedHashMap<>();
         for (Map.Entry<Long, List<TaskAttemptSummary>> entry : attempts.entrySet()) {
             long attemptId = entry.getKey();
             try {
@@ -182,7 +241,7 @@ public class WorkflowExecutionTimeoutEnforcer
 
                 if (canceled) {
                     String taskIds = entry.getValue().stream().mapToLong(TaskAttemptSummary::getId).mapToObj(Long::toString).collect(joining(","));
-                    sendTimeoutNotification("Task execution timeout: " + taskIds, attemptId);
+                    messages.put(attemptId, "Task execution timeout: " + taskIds);
                 }
             }
             catch (Throwable t) {
@@ -191,59 +250,87 @@ public class WorkflowExecutionTimeoutEnforcer
                         "Uncaught exception when enforcing task TTLs of attempt {}. Ignoring. Loop continues.", entry.getKey(), t);
             }
         }
+
+        sendTimeoutNotifications(messages);
+
+        // Unlike attempts, a task can go back to an enforced state (e.g. PLANNED -> GROUP_RETRY_WAITING)
+        // keeping its old started_at. Thus the deadline is trusted only until taskDeadlineRefreshTime.
+        this.nextTaskDeadline = tm.begin(() -> ssm.getOldestTaskStartTimeWithState(TASK_TTL_ENFORCED_STATE_CODES))
+            .or(now)
+            .plus(taskTTL);
+        this.taskDeadlineRefreshTime = now.plus(taskDeadlineRefreshInterval);
     }
 
-    private void sendTimeoutNotification(String message, long attemptId)
+    private void sendTimeoutNotifications(Map<Long, String> messages)
     {
-        StoredSessionAttemptWithSession attempt;
-        try {
-            attempt = tm.begin(() -> ssm.getAttemptWithSessionById(attemptId), ResourceNotFoundException.class);
-        }
-        catch (ResourceNotFoundException e) {
-            logger.error("Session attempt not found, ignoring: {}", attemptId);
+        if (messages.isEmpty()) {
             return;
         }
 
-        int projectId = attempt.getSession().getProjectId();
-        StoredProject project;
-        try {
-            project = tm.begin(() -> psm.getProjectByIdInternal(projectId), ResourceNotFoundException.class);
-        }
-        catch (ResourceNotFoundException e) {
-            logger.error("Project not found, ignoring: {}", attemptId);
-            return;
-        }
-
-        Optional<Long> wfId = attempt.getWorkflowDefinitionId();
+        // Load attempts, workflows and projects using a few queries instead of querying them for each attempt
+        List<StoredSessionAttemptWithSession> attempts = tm.begin(() ->
+                ssm.getAttemptsWithSessionByIdList(new ArrayList<>(messages.keySet())));
+
+        List<Long> wfIds = attempts.stream()
+                .map(StoredSessionAttemptWithSession::getWorkflowDefinitionId)
+                .filter(Optional::isPresent)
+                .map(Optional::get)
+                .distinct()
+                .collect(toList());
+        Map<Long, StoredWorkflowDefinitionWithProject> workflows = tm.begin(() -> psm.getWorkflowDetailsByIdList(wfIds))
+                .stream()
+                .collect(toMap(StoredWorkflowDefinitionWithProject::getId, wf -> wf));
+
+        List<Integer> projectIds = attempts.stream()
+                .map(attempt -> attempt.getSession().getProjectId())
+                .distinct()
+                .collect(toList());
+        ProjectMap projects = tm.begin(() -> psm.getProjectsByIdListInternal(projectIds));
+
+        Map<Long, StoredSessionAttemptWithSession> attemptMap = attempts.stream()
+                .collect(toMap(StoredSessionAttemptWithSession::getId, attempt -> attempt));
+
+        for (Map.Entry<Long, String> entry : messages.entrySet()) {
+            long attemptId = entry.getKey();
+            StoredSessionAttemptWithSession attempt = attemptMap.get(attemptId);
+            if (attempt == null) {
+                logger.error("Session attempt not found, ignoring: {}", attemptId);
+                continue;
+            }
 
-        Optional<StoredWorkflowDefinitionWithProject> workflow = Optional.absent();
-        if (wfId.isPresent()) {
+            int projectId = attempt.getSession().getProjectId();
+            StoredProject project;
             try {
-                workflow = Optional.of(tm.begin(() -> psm.getWorkflowDetailsById(wfId.get()), ResourceNotFoundException.class));
+                project = projects.get(projectId);
             }
             catch (ResourceNotFoundException e) {
-                workflow = Optional.absent();
+                logger.error("Project not found, ignoring: {}", attemptId);
+                continue;
             }
-        }
 
-        Notification notification = Notification.builder(Instant.now(), message)
-                .attemptId(attempt.getId())
-                .projectId(projectId)
-                .projectName(project.getName())
-                .revision(workflow.transform(wf -> wf.getRevisionName()))
-                .sessionId(attempt.getSessionId())
-                .siteId(attempt.getSiteId())
-                .workflowName(workflow.transform(wf -> wf.getName()))
-                .workflowDefinitionId(wfId)
-                .build();
+            Optional<Long> wfId = attempt.getWorkflowDefinitionId();
+            Optional<StoredWorkflowDefinitionWithProject> workflow = Optional.fromNullable(
+                    wfId.isPresent() ? workflows.get(wfId.get()) : null);
+
+            Notification notification = Notification.builder(Instant.now(), entry.getValue())
+                    .attemptId(attempt.getId())
+                    .projectId(projectId)
+                    .projectName(project.getName())
+                    .revision(workflow.transform(wf -> wf.getRevisionName()))
+                    .sessionId(attempt.getSessionId())
+                    .siteId(attempt.getSiteId())
+                    .workflowName(workflow.transform(wf -> wf.getName()))
+                    .workflowDefinitionId(wfId)
+                    .build();
 
-        try {
-            // Assuming this method creates a new database transaction if needed. So this method call
-            // is in outside of tm.begin block.
-            notifier.sendNotification(notification);
-        }
-        catch (NotificationException e) {
-            logger.error("Failed to send execution timeout notification for attempt: {}", attemptId, e);
+            try {
+                // Assuming this method creates a new database transaction if needed. So this method call
+                // is in outside of tm.begin block.
+                notifier.sendNotification(notification);
+            }
+            catch (NotificationException e) {
+                logger.error("Failed to send execution timeout notification for attempt: {}", attemptId, e);
+            }
         }
     }
 
@@ -1,6 +1,9 @@
 package io.digdag.server.rs;
 
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.HashSet;
 import java.util.stream.Collectors;
@@ -20,6 +23,8 @@ import com.google.common.collect.ImmutableList;
 import io.digdag.client.config.Config;
 import io.digdag.core.database.TransactionManager;
 import io.digdag.core.session.ArchivedTask;
+import io.digdag.core.session.AttemptFilter;
+import io.digdag.core.session.ImmutableAttemptFilter;
 import io.digdag.core.session.SessionStore;
 import io.digdag.core.session.SessionStoreManager;
 import io.digdag.core.session.StoredSessionAttemptWithSession;
@@ -53,6 +58,8 @@ public class AttemptResource
     // GET  /api/attempts?include_retried=1                  # list attempts from recent to old
     // GET  /api/attempts?project=<name>                     # list attempts that belong to a particular project
     // GET  /api/attempts?project=<name>&workflow=<name>     # list attempts that belong to a particular workflow
+    // GET  /api/attempts/status?attempt_id=<id>&attempt_id=<id>  # show status of attempts
+    // GET  /api/attempts/status?project=<name>&workflow=<name>&from_time=<time>&to_time=<time>&status=<status>  # show status of attempts with filters
     // GET  /api/attempts/{id}                               # show a session
     // GET  /api/attempts/{id}/tasks                         # list tasks of a session
     // GET  /api/attempts/{id}/retries                       # list retried attempts of this session
@@ -115,7 +122,7 @@ public class AttemptResource
             throws ResourceNotFoundException, AccessControlException
     {
         int validPageSize = QueryParamValidator.validatePageSize(Optional.fromNullable(pageSize), MAX_ATTEMPTS_PAGE_SIZE, DEFAULT_ATTEMPTS_PAGE_SIZE);
-        return tm.<RestSessionAttemptCollection, ResourceNotFoundException, AccessControlException>begin(() -> {
+        return tm.<RestSessionAttemptCollection, ResourceNotFoundException, AccessControlException>beginReadOnly(() -> {
             List<StoredSessionAttemptWithSession> attempts;
 
             ProjectStore rs = rm.getProjectStore(getSiteId());
@@ -159,6 +166,104 @@ public class AttemptResource
         }, ResourceNotFoundException.class, AccessControlException.class);
     }
 
+    @DigdagTimed(category = "api", appendMethodName = true)
+    @GET
+    @Path("/api/attempts/status")
+    @ApiOperation("Get status of attempts in bulk by ids or with filters")
+    public RestAttemptStatusCollection getAttemptStatuses(
+            @ApiParam(value="attempt ids. If set, other filters are ignored", required=false)
+            @QueryParam("attempt_id") List<Long> attemptIds,
+            @ApiParam(value="exact matching filter on project name", required=false)
+            @QueryParam("project") String projName,
+            @ApiParam(value="exact matching filter on workflow name", required=false)
+            @QueryParam("workflow") String wfName,
+            @ApiParam(value="list attempts whose session time is equal to or later than this time", required=false)
+            @QueryParam("from_time") String fromTime,
+            @ApiParam(value="list attempts whose session time is earlier than this time", required=false)
+            @QueryParam("to_time") String toTime,
+            @ApiParam(value="filter on status: running, success, error or killed", required=false)
+            @QueryParam("status") String status,
+            @ApiParam(value="list more than 1 attempts per session", required=false)
+            @QueryParam("include_retried") boolean includeRetried,
+            @ApiParam(value="list attempts whose id is smaller than this id for pagination", required=false)
+            @QueryParam("last_id") Long lastId,
+            @ApiParam(value="number of attempts to return", required=false)
+            @QueryParam("page_size") Integer pageSize)
+            throws ResourceNotFoundException, AccessControlException
+    {
+        int validPageSize = QueryParamValidator.validatePageSize(Optional.fromNullable(pageSize), MAX_ATTEMPTS_PAGE_SIZE, DEFAULT_ATTEMPTS_PAGE_SIZE);
+        if (attemptIds != null && attemptIds.size() > MAX_ATTEMPTS_PAGE_SIZE) {
+            throw new IllegalArgumentException("Number of attempt_id must not be larger than " + MAX_ATTEMPTS_PAGE_SIZE);
+        }
+        Optional<AttemptFilter.Status> statusFilter = Optional.fromNullable(status).transform(AttemptFilter.Status::fromString);
+        Optional<Instant> from = parseTimeParam("from_time", fromTime);
+        Optional<Instant> to = parseTimeParam("to_time", toTime);
+
+        return tm.<RestAttemptStatusCollection, ResourceNotFoundException, AccessControlException>beginReadOnly(() -> {
+            List<StoredSessionAttemptWithSession> attempts;
+
+            ProjectStore rs = rm.getProjectStore(getSiteId());
+            SessionStore ss = sm.getSessionStore(getSiteId());
+
+            if (attemptIds != null && !attemptIds.isEmpty()) {
+                final SiteTarget siteTarget = SiteTarget.of(getSiteId());
+                ac.checkListSessionsOfSite(siteTarget, getAuthenticatedUser()); // AccessControl
+                attempts = ss.getAttemptsByIdList(attemptIds,
+                        ac.getListSessionsFilterOfSite(
+                                siteTarget,
+                                getAuthenticatedUser()));
+            }
+            else {
+                ImmutableAttemptFilter.Builder filter = AttemptFilter.builder()
+                    .sessionTimeFrom(from)
+                    .sessionTimeTo(to)
+                    .status(statusFilter);
+                AccessController.ListFilter acFilter;
+
+                if (projName != null) {
+                    final StoredProject proj = rs.getProjectByName(projName); // check NotFound first
+                    filter.projectId(proj.getId());
+                    if (wfName != null) {
+                        final WorkflowTarget wfTarget = WorkflowTarget.of(getSiteId(), wfName, proj.getName());
+                        ac.checkListSessionsOfWorkflow(wfTarget, getAuthenticatedUser()); // AccessControl
+                        filter.workflowName(wfName);
+                        acFilter = ac.getListSessionsFilterOfWorkflow(wfTarget, getAuthenticatedUser());
+                    }
+                    else {
+                        final ProjectTarget projTarget = ProjectTarget.of(getSiteId(), projName, proj.getId());
+                        ac.checkListSessionsOfProject(projTarget, getAuthenticatedUser()); // AccessControl
+                        acFilter = ac.getListSessionsFilterOfProject(projTarget, getAuthenticatedUser());
+                    }
+                }
+                else {
+                    final SiteTarget siteTarget = SiteTarget.of(getSiteId());
+                    ac.checkListSessionsOfSite(siteTarget, getAuthenticatedUser()); // AccessControl
+                    acFilter = ac.getListSessionsFilterOfSite(siteTarget, getAuthenticatedUser());
+                }
+
+                attempts = ss.findAttempts(filter.build(), includeRetried, validPageSize, Optional.fromNullable(lastId), acFilter);
+            }
+
+            Map<Long, Map<TaskStateCode, Long>> taskStateCounts = ss.getTaskStateCountsOfAttempts(
+                    attempts.stream().map(StoredSessionAttemptWithSession::getId).collect(Collectors.toList()));
+
+            return RestModels.attemptStatusCollection(rs, attempts, taskStateCounts);
+        }, ResourceNotFoundException.class, AccessControlException.class);
+    }
+
+    private static Optional<Instant> parseTimeParam(String name, String value)
+    {
+        if (value == null || value.isEmpty()) {
+            return Optional.absent();
+        }
+        try {
+            return Optional.of(Instant.parse(value));
+        }
+        catch (DateTimeParseException ex) {
+            throw new IllegalArgumentException("Invalid " + name + "= parameter format. Expected yyyy-MM-dd'T'HH:mm:ss'Z' format", ex);
+        }
+    }
+
     @DigdagTimed(category="api", appendMethodName = true)
     @GET
     @Path("/api/attempts/{id}")
@@ -168,7 +273,7 @@ public class AttemptResource
             @PathParam("id") long id)
             throws ResourceNotFoundException, AccessControlException
     {
-        return tm.<RestSessionAttempt, ResourceNotFoundException, AccessControlException >begin(() -> {
+        return tm.<RestSessionAttempt, ResourceNotFoundException, AccessControlException >beginReadOnly(() -> {
             final StoredSessionAttemptWithSession attempt = sm.getSessionStore(getSiteId())
                     .getAttemptById(id); // check NotFound first
             final StoredProject proj = rm.getProjectStore(getSiteId())
@@ -191,7 +296,7 @@ public class AttemptResource
             @PathParam("id") long id)
             throws ResourceNotFoundException, AccessControlException
     {
-        return tm.<RestSessionAttemptCollection, ResourceNotFoundException, AccessControlException>begin(() -> {
+        return tm.<RestSessionAttemptCollection, ResourceNotFoundException, AccessControlException>beginReadOnly(() -> {
             final StoredSessionAttemptWithSession attempt = sm.getSessionStore(getSiteId())
                     .getAttemptById(id); // check NotFound first
             final StoredProject proj = rm.getProjectStore(getSiteId())
@@ -217,7 +322,7 @@ public class AttemptResource
             @PathParam("id") long id)
             throws ResourceNotFoundException, AccessControlException
     {
-        return tm.<RestTaskCollection, ResourceNotFoundException, AccessControlException>begin(() -> {
+        return tm.<RestTaskCollection, ResourceNotFoundException, AccessControlException>beginReadOnly(() -> {
             final StoredSessionAttemptWithSession attempt = sm.getSessionStore(getSiteId())
                     .getAttemptById(id); // NotFound
             final StoredProject proj = rm.getProjectStore(getSiteId())
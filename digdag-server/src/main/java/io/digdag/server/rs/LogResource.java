@@ -6,7 +6,10 @@ import javax.ws.rs.Produces;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.QueryParam;
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
 import com.google.inject.Inject;
 import com.google.common.base.Optional;
 import io.digdag.core.database.TransactionManager;
@@ -16,6 +19,7 @@ import io.digdag.core.repository.*;
 import io.digdag.core.log.LogServerManager;
 import io.digdag.client.api.*;
 import io.digdag.metrics.DigdagTimed;
+import io.digdag.server.LogFollowManager;
 import io.digdag.spi.*;
 import io.digdag.spi.ac.AccessControlException;
 import io.digdag.spi.ac.AccessController;
@@ -35,12 +39,16 @@ public class LogResource
 {
     // GET  /api/logs/{attempt_id}/files[?task=<name>]
     // GET  /api/logs/{attempt_id}/files/{file_name}
+    // GET  /api/logs/{attempt_id}/follow[?task=<name>&known_files=<count>&known_size=<bytes>&timeout=<seconds>]
+
+    private static final int MAX_FOLLOW_TIMEOUT_SECONDS = 60;
 
     private final ProjectStoreManager rm;
     private final SessionStoreManager sm;
     private final TransactionManager tm;
     private final AccessController ac;
     private final LogServer logServer;
+    private final LogFollowManager logFollowManager;
     private final DigdagMetrics metrics;
 
 
@@ -51,6 +59,7 @@ public class LogResource
             TransactionManager tm,
             AccessController ac,
             LogServerManager lm,
+            LogFollowManager logFollowManager,
             DigdagMetrics metrics)
     {
         this.rm = rm;
@@ -58,6 +67,7 @@ public class LogResource
         this.tm = tm;
         this.ac = ac;
         this.logServer = lm.getLogServer();
+        this.logFollowManager = logFollowManager;
         this.metrics = metrics;
     }
 
@@ -78,7 +88,7 @@ public class LogResource
         // some clients including digdag-client package use the link automatically when
         // it's set) if ?direct_download=false is given.
         boolean enableDirectDownload = (directDownloadAllowed == null) || (boolean) directDownloadAllowed;
-        return tm.<RestLogFileHandleCollection, ResourceNotFoundException, AccessControlException>begin(() -> {
+        return tm.<RestLogFileHandleCollection, ResourceNotFoundException, AccessControlException>beginReadOnly(() -> {
             final LogFilePrefix prefix = getPrefix(attemptId, // NotFound, AccessControl
                     (p, a) -> ac.checkGetLogFiles(
                             WorkflowTarget.of(getSiteId(), a.getSession().getWorkflowName(), p.getName()),
@@ -88,6 +98,57 @@ public class LogResource
         }, ResourceNotFoundException.class, AccessControlException.class);
     }
 
+    @GET
+    @Path("/api/logs/{attempt_id}/follow")
+    @ApiOperation("Wait until new log files of an attempt are uploaded and list them")
+    public void followFileHandles(
+            @ApiParam(value="attempt id", required=true)
+            @PathParam("attempt_id") long attemptId,
+            @ApiParam(value="partial prefix match filter on task name", required=false)
+            @QueryParam("task") String taskName,
+            @ApiParam(value="number of log files the client already has", required=false)
+            @QueryParam("known_files") @DefaultValue("0") int knownFiles,
+            @ApiParam(value="total size of log files the client already has", required=false)
+            @QueryParam("known_size") @DefaultValue("0") long knownSize,
+            @ApiParam(value="max seconds to wait", required=false)
+            @QueryParam("timeout") @DefaultValue("30") int timeout,
+            @ApiParam(value="enable returning direct download handle", required=false)
+            @QueryParam("direct_download") Boolean directDownloadAllowed,
+            @Suspended AsyncResponse asyncResponse)
+            throws ResourceNotFoundException, AccessControlException
+    {
+        // Returns all log files as soon as number or total size of them becomes larger than
+        // the client knows, or the attempt finishes. The request is suspended without
+        // holding a request thread. LogFollowManager checks the log server for all
+        // followers of the attempt at once.
+        boolean enableDirectDownload = (directDownloadAllowed == null) || (boolean) directDownloadAllowed;
+        long timeoutMillis = Math.min(Math.max(timeout, 0), MAX_FOLLOW_TIMEOUT_SECONDS) * 1000L;
+
+        final LogFilePrefix prefix = tm.<LogFilePrefix, ResourceNotFoundException, AccessControlException>beginReadOnly(() ->
+                getPrefix(attemptId, // NotFound, AccessControl
+                    (p, a) -> ac.checkGetLogFiles(
+                            WorkflowTarget.of(getSiteId(), a.getSession().getWorkflowName(), p.getName()),
+                            getAuthenticatedUser())),
+                ResourceNotFoundException.class, AccessControlException.class);
+
+        logFollowManager.follow(getSiteId(), attemptId, prefix, Optional.fromNullable(taskName),
+                enableDirectDownload, knownFiles, knownSize, timeoutMillis,
+                new LogFollowManager.Callback()
+                {
+                    @Override
+                    public void resume(List<LogFileHandle> handles)
+                    {
+                        asyncResponse.resume(RestModels.logFileHandleCollection(handles));
+                    }
+
+                    @Override
+                    public void cancel()
+                    {
+                        asyncResponse.cancel();
+                    }
+                });
+    }
+
     @DigdagTimed(category = "api", appendMethodName = true)
     @GET
     @Produces("application/gzip")
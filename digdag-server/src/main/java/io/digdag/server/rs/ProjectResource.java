@@ -49,6 +49,7 @@ import io.digdag.core.TempFileManager;
 import io.digdag.core.TempFileManager.TempDir;
 import io.digdag.core.TempFileManager.TempFile;
 import io.digdag.core.archive.ArchiveMetadata;
+import io.digdag.core.archive.ArchiveWorkerPool;
 import io.digdag.core.archive.ProjectArchive;
 import io.digdag.core.archive.ProjectArchiveLoader;
 import io.digdag.core.archive.WorkflowResourceMatcher;
@@ -107,6 +108,7 @@ import org.slf4j.LoggerFactory;
 
 import java.util.Map;
 
+import static io.digdag.spi.metrics.DigdagMetrics.Category;
 import static java.util.Locale.ENGLISH;
 
 @Api("Project")
@@ -162,6 +164,7 @@ public class ProjectResource
     private final SecretControlStoreManager scsp;
     private final TransactionManager tm;
     private final ProjectArchiveLoader projectArchiveLoader;
+    private final ArchiveWorkerPool archiveWorkerPool;
     private final DigdagMetrics metrics;
 
     @Inject
@@ -179,6 +182,7 @@ public class ProjectResource
             SecretControlStoreManager scsp,
             TransactionManager tm,
             ProjectArchiveLoader projectArchiveLoader,
+            ArchiveWorkerPool archiveWorkerPool,
             Config systemConfig,
             DigdagMetrics metrics)
     {
@@ -195,6 +199,7 @@ public class ProjectResource
         this.tm = tm;
         this.scsp = scsp;
         this.projectArchiveLoader = projectArchiveLoader;
+        this.archiveWorkerPool = archiveWorkerPool;
         this.metrics = metrics;
 
         MAX_SESSIONS_PAGE_SIZE = systemConfig.get("api.max_sessions_page_size", Integer.class, DEFAULT_SESSIONS_PAGE_SIZE);
@@ -222,7 +227,7 @@ public class ProjectResource
     public RestProject getProject(@QueryParam("name") String name)
             throws ResourceNotFoundException, AccessControlException
     {
-        return tm.<RestProject, ResourceNotFoundException, AccessControlException>begin(() -> {
+        return tm.<RestProject, ResourceNotFoundException, AccessControlException>beginReadOnly(() -> {
             Preconditions.checkArgument(name != null, "name= is required");
 
             ProjectStore ps = rm.getProjectStore(getSiteId());
@@ -245,7 +250,7 @@ public class ProjectResource
             @ApiParam(value="exact matching filter on project name", required=false)
             @QueryParam("name") String name)
     {
-        return tm.begin(() -> {
+        return tm.beginReadOnly(() -> {
             ProjectStore ps = rm.getProjectStore(getSiteId());
 
             List<RestProject> collection;
@@ -302,7 +307,7 @@ public class ProjectResource
             @PathParam("id") int projId)
             throws ResourceNotFoundException, AccessControlException
     {
-        return tm.<RestProject, ResourceNotFoundException, AccessControlException>begin(() -> {
+        return tm.<RestProject, ResourceNotFoundException, AccessControlException>beginReadOnly(() -> {
             ProjectStore ps = rm.getProjectStore(getSiteId());
             StoredProject proj = ensureNotDeletedProject(ps.getProjectById(projId)); // check NotFound first
             StoredRevision rev = ps.getLatestRevision(proj.getId()); // check NotFound first
@@ -330,7 +335,7 @@ public class ProjectResource
             @QueryParam("name") String revName)
             throws ResourceNotFoundException, AccessControlException
     {
-        return tm.<RestRevisionCollection, ResourceNotFoundException, AccessControlException>begin(() -> {
+        return tm.<RestRevisionCollection, ResourceNotFoundException, AccessControlException>beginReadOnly(() -> {
             ProjectStore ps = rm.getProjectStore(getSiteId());
             StoredProject proj = ensureNotDeletedProject(ps.getProjectById(projId)); // check NotFound first
             List<StoredRevision> revs;
@@ -364,7 +369,7 @@ public class ProjectResource
     public RestWorkflowDefinition getWorkflow(@PathParam("id") int projId, @QueryParam("name") String name, @QueryParam("revision") String revName)
             throws ResourceNotFoundException, AccessControlException
     {
-        return tm.<RestWorkflowDefinition, ResourceNotFoundException, AccessControlException>begin(() -> {
+        return tm.<RestWorkflowDefinition, ResourceNotFoundException, AccessControlException>beginReadOnly(() -> {
             Preconditions.checkArgument(name != null, "name= is required");
 
             ProjectStore ps = rm.getProjectStore(getSiteId());
@@ -409,7 +414,7 @@ public class ProjectResource
             @QueryParam("name") String name)
             throws ResourceNotFoundException
     {
-        return tm.<RestWorkflowDefinitionCollection, ResourceNotFoundException>begin(() -> {
+        return tm.<RestWorkflowDefinitionCollection, ResourceNotFoundException>beginReadOnly(() -> {
             ProjectStore ps = rm.getProjectStore(getSiteId());
             StoredProject proj = ensureNotDeletedProject(ps.getProjectById(projId)); // check NotFound first
 
@@ -476,7 +481,7 @@ public class ProjectResource
             @QueryParam("last_id") Integer lastId)
             throws ResourceNotFoundException, AccessControlException
     {
-        return tm.<RestScheduleCollection, ResourceNotFoundException, AccessControlException>begin(() -> {
+        return tm.<RestScheduleCollection, ResourceNotFoundException, AccessControlException>beginReadOnly(() -> {
             ProjectStore projectStore = rm.getProjectStore(getSiteId());
             ScheduleStore scheduleStore = sm.getScheduleStore(getSiteId());
 
@@ -536,7 +541,7 @@ public class ProjectResource
     {
         int validPageSize = QueryParamValidator.validatePageSize(Optional.fromNullable(pageSize), MAX_SESSIONS_PAGE_SIZE, DEFAULT_SESSIONS_PAGE_SIZE);
 
-        return tm.<RestSessionCollection, ResourceNotFoundException, AccessControlException>begin(() -> {
+        return tm.<RestSessionCollection, ResourceNotFoundException, AccessControlException>beginReadOnly(() -> {
             ProjectStore ps = rm.getProjectStore(getSiteId());
             SessionStore ss = ssm.getSessionStore(getSiteId());
 
@@ -592,7 +597,7 @@ public class ProjectResource
         // 303 See Other) if ?direct_download=false is given.
         boolean enableDirectDownload = (directDownloadAllowed == null) || (boolean) directDownloadAllowed;
 
-        return tm.<Response, ResourceNotFoundException, AccessControlException>begin(() -> {
+        return tm.<Response, ResourceNotFoundException, AccessControlException>beginReadOnly(() -> {
             ProjectStore ps = rm.getProjectStore(getSiteId());
             StoredProject proj = ensureNotDeletedProject(ps.getProjectById(projId)); // check NotFound first
 
@@ -723,14 +728,18 @@ public class ProjectResource
                 ArchiveMetadata meta;
                 byte[] md5;
                 try (OutputStream writeToTemp = Files.newOutputStream(tempFile.get())) {
+                    long startTime = System.currentTimeMillis();
                     Md5CountInputStream md5Count = new Md5CountInputStream(body);
                     meta = readArchiveMetadata(new DuplicateInputStream(md5Count, writeToTemp), name);
                     md5 = md5Count.getDigest();
                     if (md5Count.getCount() != contentLength) {
                         throw new IllegalArgumentException("Content-Length header doesn't match with uploaded data size");
                     }
+                    metrics.summary(Category.API, "projectPushReadMsec", System.currentTimeMillis() - startTime);
 
+                    startTime = System.currentTimeMillis();
                     validateWorkflowAndSchedule(meta);
+                    metrics.summary(Category.API, "projectPushValidateMsec", System.currentTimeMillis() - startTime);
                 }
 
                 ArchiveManager.Location location =
@@ -753,6 +762,7 @@ public class ProjectResource
                 // If getting the project secrets fails, the project will not be stored and the push can then be retried with the same revision.
                 Map<String, String> secrets = getSecrets().get();
 
+                long storeStartTime = System.currentTimeMillis();
                 RestProject restProject = rm.getProjectStore(getSiteId()).putAndLockProject(
                         Project.of(name),
                         (store, storedProject) -> {
@@ -760,13 +770,6 @@ public class ProjectResource
                             StoredRevision rev;
                             if (storeInDb) {
                                 // store data in db
-                                byte[] data = new byte[size];
-                                try (InputStream in = Files.newInputStream(tempFile.get())) {
-                                    ByteStreams.readFully(in, data);
-                                }
-                                catch (RuntimeException | IOException ex) {
-                                    throw new InternalServerErrorException("Failed to load archive data in memory", ex);
-                                }
                                 rev = lockedProj.insertRevision(
                                         Revision.builderFromArchive(revision, meta, getUserInfo())
                                                 .archiveType(ArchiveType.DB)
@@ -774,7 +777,13 @@ public class ProjectResource
                                                 .archiveMd5(Optional.of(md5))
                                                 .build()
                                 );
-                                lockedProj.insertRevisionArchiveData(rev.getId(), data);
+                                // stream the temp file to the database instead of loading the whole archive in memory
+                                try (InputStream in = new BufferedInputStream(Files.newInputStream(tempFile.get()), 32*1024)) {
+                                    lockedProj.insertRevisionArchiveData(rev.getId(), in, size);
+                                }
+                                catch (IOException ex) {
+                                    throw new InternalServerErrorException("Failed to read archive data", ex);
+                                }
                             }
                             else {
                                 // store location of the uploaded file in db
@@ -793,6 +802,7 @@ public class ProjectResource
                                             srm, scheduleFrom);
                             return RestModels.project(storedProject, rev);
                         });
+                metrics.summary(Category.API, "projectPushStoreMsec", System.currentTimeMillis() - storeStartTime);
 
                 SecretControlStore secretControlStore = scsp.getSecretControlStore(getSiteId());
                 secrets.forEach((k, v) -> secretControlStore.setProjectSecret(
@@ -820,7 +830,7 @@ public class ProjectResource
                             totalSize, MAX_ARCHIVE_TOTAL_SIZE_LIMIT));
             }
 
-            ProjectArchive archive = projectArchiveLoader.load(dir.get(), WorkflowResourceMatcher.defaultMatcher(), cf.create());
+            ProjectArchive archive = projectArchiveLoader.load(dir.get(), WorkflowResourceMatcher.defaultMatcher(), cf.create(), archiveWorkerPool);
 
             return archive.getArchiveMetadata();
         }
@@ -866,21 +876,22 @@ public class ProjectResource
     private void validateWorkflowAndSchedule(ArchiveMetadata meta)
     {
         WorkflowDefinitionList defs = meta.getWorkflowList();
-        for (WorkflowDefinition def : defs.get()) {
-            Workflow wf = compiler.compile(def.getName(), def.getConfig());
+        Revision rev = Revision.builderFromArchive("check", meta, getUserInfo())
+                .archiveType(ArchiveType.NONE)
+                .build();
+        // workflows are independent from each other. validate them in parallel.
+        archiveWorkerPool.map(defs.get(), def -> {
+            Workflow wf = compiler.compile(def);
 
             // validate workflow and schedule
             for (WorkflowTask task : wf.getTasks()) {
                 // raise an exception if task doesn't valid.
                 task.getConfig();
             }
-            Revision rev = Revision.builderFromArchive("check", meta, getUserInfo())
-                    .archiveType(ArchiveType.NONE)
-                    .build();
             // raise an exception if "schedule:" is invalid.
             srm.tryGetScheduler(rev, def);
-
-        }
+            return null;
+        });
     }
 
     @DigdagTimed(category = "api", appendMethodName = true)
@@ -959,7 +970,7 @@ public class ProjectResource
             @PathParam("id") int projectId)
             throws ResourceNotFoundException, AccessControlException
     {
-        return tm.<RestSecretList, ResourceNotFoundException, AccessControlException>begin(() -> {
+        return tm.<RestSecretList, ResourceNotFoundException, AccessControlException>beginReadOnly(() -> {
             // Verify that the project exists
             ProjectStore projectStore = rm.getProjectStore(getSiteId());
             StoredProject project = projectStore.getProjectById(projectId); // check NotFound first
@@ -2,8 +2,11 @@ package io.digdag.server.rs;
 
 import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import io.digdag.client.api.Id;
 import io.digdag.client.api.IdAndName;
+import io.digdag.client.api.RestAttemptStatus;
+import io.digdag.client.api.RestAttemptStatusCollection;
 import io.digdag.client.api.NameOptionalId;
 import io.digdag.client.api.RestLogFileHandle;
 import io.digdag.client.api.RestLogFileHandleCollection;
@@ -38,17 +41,20 @@ import io.digdag.core.repository.StoredWorkflowDefinitionWithProject;
 import io.digdag.core.repository.TimeZoneMap;
 import io.digdag.core.schedule.StoredSchedule;
 import io.digdag.core.session.ArchivedTask;
+import io.digdag.core.session.AttemptStateFlags;
 import io.digdag.core.session.Session;
 import io.digdag.core.session.StoredSession;
 import io.digdag.core.session.StoredSessionAttempt;
 import io.digdag.core.session.StoredSessionAttemptWithSession;
 import io.digdag.core.session.StoredSessionWithLastAttempt;
+import io.digdag.core.session.TaskStateCode;
 import io.digdag.spi.LogFileHandle;
 
 import java.time.Instant;
 import java.time.OffsetDateTime;
 import java.time.ZoneId;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import java.util.stream.Collectors;
 
@@ -414,6 +420,67 @@ public final class RestModels
             .build();
     }
 
+    static RestAttemptStatusCollection attemptStatusCollection(
+            ProjectStore ps, List<StoredSessionAttemptWithSession> attempts,
+            Map<Long, Map<TaskStateCode, Long>> taskStateCounts)
+    {
+        ProjectMap projs = ps
+            .getProjectsByIdList(
+                    attempts.stream()
+                    .map(attempt -> attempt.getSession().getProjectId())
+                    .collect(Collectors.toList()));
+
+        List<RestAttemptStatus> collection = attempts.stream()
+            .map(attempt -> {
+                try {
+                    return attemptStatus(attempt,
+                            projs.get(attempt.getSession().getProjectId()).getName(),
+                            taskStateCounts.getOrDefault(attempt.getId(), ImmutableMap.of()));
+                }
+                catch (ResourceNotFoundException ex) {
+                    throw new IllegalStateException(String.format(ENGLISH,
+                                "An attempt id=%d references a nonexistent project id=%d",
+                                attempt.getId(), attempt.getSession().getProjectId()));
+                }
+            })
+            .collect(Collectors.toList());
+
+        return RestAttemptStatusCollection.builder()
+            .attempts(collection)
+            .build();
+    }
+
+    static RestAttemptStatus attemptStatus(StoredSessionAttemptWithSession attempt, String projectName,
+            Map<TaskStateCode, Long> taskStateCounts)
+    {
+        Session session = attempt.getSession();
+        ImmutableMap.Builder<String, Long> taskCounts = ImmutableMap.builder();
+        taskStateCounts.forEach((state, count) -> taskCounts.put(state.toString(), count));
+        return RestAttemptStatus.builder()
+            .id(id(attempt.getId()))
+            .project(IdAndName.of(id(session.getProjectId()), projectName))
+            .workflow(NameOptionalId.of(session.getWorkflowName(), attempt.getWorkflowDefinitionId().transform(w -> id(w))))
+            .sessionTime(OffsetDateTime.ofInstant(session.getSessionTime(), attempt.getTimeZone()))
+            .retryAttemptName(attempt.getRetryAttemptName())
+            .status(attemptStatus(attempt.getStateFlags()))
+            .createdAt(attempt.getCreatedAt())
+            .finishedAt(attempt.getFinishedAt())
+            .taskCounts(taskCounts.build())
+            .build();
+    }
+
+    private static String attemptStatus(AttemptStateFlags flags)
+    {
+        // same as RestSessionAttempt.getStatus
+        if (flags.isSuccess()) {
+            return "success";
+        }
+        if (flags.isDone()) {
+            return flags.isCancelRequested() ? "killed" : "error";
+        }
+        return "running";
+    }
+
     static RestScheduleAttemptCollection attemptCollection(
             StoredSchedule sched, StoredProject prj, ProjectStore ps, List<StoredSessionAttemptWithSession> attempts)
     {
@@ -93,7 +93,7 @@ public class SessionResource
                 siteTarget,
                 getAuthenticatedUser());
 
-        return tm.begin(() -> {
+        return tm.beginReadOnly(() -> {
             ProjectStore rs = rm.getProjectStore(getSiteId());
             SessionStore ss = sm.getSessionStore(getSiteId());
 
@@ -116,7 +116,7 @@ public class SessionResource
             @PathParam("id") long id)
             throws ResourceNotFoundException, AccessControlException
     {
-        return tm.<RestSession, ResourceNotFoundException, AccessControlException>begin(() -> {
+        return tm.<RestSession, ResourceNotFoundException, AccessControlException>beginReadOnly(() -> {
             final StoredSessionWithLastAttempt session = sm.getSessionStore(getSiteId())
                     .getSessionById(id); // check NotFound first
             final StoredProject proj = rm.getProjectStore(getSiteId())
@@ -145,7 +145,7 @@ public class SessionResource
     {
         int validPageSize = QueryParamValidator.validatePageSize(Optional.fromNullable(pageSize), MAX_ATTEMPTS_PAGE_SIZE, DEFAULT_ATTEMPTS_PAGE_SIZE);
 
-        return tm.<RestSessionAttemptCollection, ResourceNotFoundException, AccessControlException>begin(() -> {
+        return tm.<RestSessionAttemptCollection, ResourceNotFoundException, AccessControlException>beginReadOnly(() -> {
             ProjectStore rs = rm.getProjectStore(getSiteId());
             SessionStore ss = sm.getSessionStore(getSiteId());
 
@@ -81,7 +81,7 @@ public class WorkflowResource
             @QueryParam("name") String wfName)
             throws ResourceNotFoundException, AccessControlException
     {
-        return tm.<RestWorkflowDefinition, ResourceNotFoundException, AccessControlException>begin(() -> {
+        return tm.<RestWorkflowDefinition, ResourceNotFoundException, AccessControlException>beginReadOnly(() -> {
             Preconditions.checkArgument(projName != null, "project= is required");
             Preconditions.checkArgument(wfName != null, "name= is required");
 
@@ -119,7 +119,7 @@ public class WorkflowResource
         final SiteTarget siteTarget = SiteTarget.of(getSiteId());
         ac.checkListWorkflowsOfSite(siteTarget, getAuthenticatedUser());  // AccessControl
 
-        return tm.<RestWorkflowDefinitionCollection, ResourceNotFoundException, AccessControlException>begin(() -> {
+        return tm.<RestWorkflowDefinitionCollection, ResourceNotFoundException, AccessControlException>beginReadOnly(() -> {
             List<StoredWorkflowDefinitionWithProject> defs =
                     rm.getProjectStore(getSiteId())
                             .getLatestActiveWorkflowDefinitions(Optional.fromNullable(count).or(100), Optional.fromNullable(lastId), // check NotFound first
@@ -140,7 +140,7 @@ public class WorkflowResource
             @PathParam("id") long id)
             throws ResourceNotFoundException, AccessControlException
     {
-        return tm.<RestWorkflowDefinition, ResourceNotFoundException, AccessControlException>begin(() -> {
+        return tm.<RestWorkflowDefinition, ResourceNotFoundException, AccessControlException>beginReadOnly(() -> {
             StoredWorkflowDefinitionWithProject def =
                     rm.getProjectStore(getSiteId())
                             .getWorkflowDefinitionById(id); // check NotFound first
@@ -166,7 +166,7 @@ public class WorkflowResource
             @QueryParam("mode") SessionTimeTruncate mode)
             throws ResourceNotFoundException, AccessControlException
     {
-        return tm.<RestWorkflowSessionTime, ResourceNotFoundException, AccessControlException>begin(() -> {
+        return tm.<RestWorkflowSessionTime, ResourceNotFoundException, AccessControlException>beginReadOnly(() -> {
             Preconditions.checkArgument(localTime != null, "session_time= is required");
 
             StoredWorkflowDefinitionWithProject def =
@@ -0,0 +1,97 @@
+package io.digdag.server;
+
+import com.google.common.collect.ImmutableMap;
+import io.digdag.client.DigdagClient;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.core.MultivaluedHashMap;
+import javax.ws.rs.core.MultivaluedMap;
+
+import java.io.ByteArrayInputStream;
+import java.lang.annotation.Annotation;
+
+import static javax.ws.rs.core.HttpHeaders.ETAG;
+import static javax.ws.rs.core.HttpHeaders.IF_NONE_MATCH;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class EntityTagFilterTest
+{
+    @Mock ContainerRequestContext request;
+    @Mock ContainerResponseContext response;
+
+    private final MultivaluedMap<String, Object> responseHeaders = new MultivaluedHashMap<>();
+    private EntityTagFilter filter;
+
+    @Before
+    public void setUp()
+    {
+        filter = new EntityTagFilter(DigdagClient.objectMapper());
+        when(request.getMethod()).thenReturn("GET");
+        when(response.getStatus()).thenReturn(200);
+        when(response.getHeaders()).thenReturn(responseHeaders);
+        when(response.getEntity()).thenReturn(ImmutableMap.of("version", "1.2.3"));
+        when(response.getEntityAnnotations()).thenReturn(new Annotation[0]);
+    }
+
+    @Test
+    public void addEntityTag()
+            throws Exception
+    {
+        filter.filter(request, response);
+
+        assertThat(responseHeaders.containsKey(ETAG), is(true));
+        verify(response).setEntity(any(byte[].class), any(Annotation[].class), any());
+        verify(response, never()).setStatus(anyInt());
+    }
+
+    @Test
+    public void notModifiedIfEntityTagMatches()
+            throws Exception
+    {
+        filter.filter(request, response);
+        String entityTag = (String) responseHeaders.getFirst(ETAG);
+
+        when(request.getHeaderString(IF_NONE_MATCH)).thenReturn("\"other\", " + entityTag);
+        filter.filter(request, response);
+
+        verify(response).setStatus(304);
+        verify(response).setEntity(null);
+    }
+
+    @Test
+    public void ignoreNonJsonEntities()
+            throws Exception
+    {
+        when(response.getEntity()).thenReturn(new ByteArrayInputStream(new byte[0]));
+        filter.filter(request, response);
+
+        when(request.getMethod()).thenReturn("PUT");
+        when(response.getEntity()).thenReturn(ImmutableMap.of("version", "1.2.3"));
+        filter.filter(request, response);
+
+        assertThat(responseHeaders.containsKey(ETAG), is(false));
+    }
+
+    @Test
+    public void matchEntityTags()
+    {
+        assertThat(EntityTagFilter.matches(null, "\"a\""), is(false));
+        assertThat(EntityTagFilter.matches("\"b\"", "\"a\""), is(false));
+        assertThat(EntityTagFilter.matches("\"b\", \"a\"", "\"a\""), is(true));
+        assertThat(EntityTagFilter.matches("W/\"a\"", "\"a\""), is(true));
+        assertThat(EntityTagFilter.matches("*", "\"a\""), is(true));
+    }
+}
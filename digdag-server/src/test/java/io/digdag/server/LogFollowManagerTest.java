@@ -0,0 +1,197 @@
+package io.digdag.server;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import io.digdag.core.log.LogFileUpdateNotifier;
+import io.digdag.spi.LogFileHandle;
+import io.digdag.spi.LogFilePrefix;
+import io.digdag.spi.LogServer;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.List;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class LogFollowManagerTest
+{
+    private static final long TIMEOUT = 60000;
+
+    @Mock LogServer logServer;
+
+    private final LogFilePrefix prefix = prefix("wf1");
+    private boolean attemptDone = false;
+    private LogFollowManager manager;
+
+    @Before
+    public void setUp()
+    {
+        // long poll interval so that only the first tick and notifications list files
+        manager = new LogFollowManager(logServer, new LogFileUpdateNotifier(),
+                (siteId, attemptId) -> attemptDone, Duration.ofHours(1));
+    }
+
+    @Test
+    public void resumeWhenFilesAreAdded()
+    {
+        LogFileHandle a1 = handle("+wf1+a", 10);
+        when(logServer.getFileHandles(eq(prefix), any(), anyBoolean())).thenReturn(ImmutableList.of(a1));
+
+        RecordingCallback callback = new RecordingCallback();
+        manager.follow(0, 1L, prefix, Optional.absent(), true, 0, 0, TIMEOUT, callback);
+        assertThat(callback.resumed, is(nullValue()));
+
+        manager.tick();
+        assertThat(callback.resumed, contains(a1));
+        assertThat(manager.getWatchCount(), is(0));
+    }
+
+    @Test
+    public void followersOfSameAttemptShareListing()
+    {
+        LogFileHandle a1 = handle("+wf1+a", 10);
+        LogFileHandle a2 = handle("+wf1+a", 20);
+        when(logServer.getFileHandles(eq(prefix), any(), anyBoolean())).thenReturn(ImmutableList.of(a1));
+
+        RecordingCallback callback1 = new RecordingCallback();
+        RecordingCallback callback2 = new RecordingCallback();
+        manager.follow(0, 1L, prefix, Optional.absent(), true, 1, 10, TIMEOUT, callback1);
+        manager.follow(0, 1L, prefix, Optional.absent(), true, 1, 10, TIMEOUT, callback2);
+
+        manager.tick();
+        manager.tick();
+        assertThat(callback1.resumed, is(nullValue()));
+        assertThat(callback2.resumed, is(nullValue()));
+        verify(logServer, times(1)).getFileHandles(eq(prefix), any(), anyBoolean());
+
+        // an upload through this server makes the next tick list files again
+        when(logServer.getFileHandles(eq(prefix), any(), anyBoolean())).thenReturn(ImmutableList.of(a1, a2));
+        manager.logFileUpdated(prefix);
+        manager.tick();
+        assertThat(callback1.resumed, contains(a1, a2));
+        assertThat(callback2.resumed, contains(a1, a2));
+        verify(logServer, times(2)).getFileHandles(eq(prefix), any(), anyBoolean());
+    }
+
+    @Test
+    public void filterByTaskName()
+    {
+        LogFileHandle a1 = handle("+wf1+a", 10);
+        LogFileHandle b1 = handle("+wf1+b", 10);
+        when(logServer.getFileHandles(eq(prefix), any(), anyBoolean())).thenReturn(ImmutableList.of(a1, b1));
+
+        RecordingCallback callbackA = new RecordingCallback();
+        RecordingCallback callbackB = new RecordingCallback();
+        manager.follow(0, 1L, prefix, Optional.of("+wf1+a"), true, 0, 0, TIMEOUT, callbackA);
+        // +b doesn't grow
+        manager.follow(0, 1L, prefix, Optional.of("+wf1+b"), true, 1, 10, TIMEOUT, callbackB);
+
+        manager.tick();
+        assertThat(callbackA.resumed, contains(a1));
+        assertThat(callbackB.resumed, is(nullValue()));
+    }
+
+    @Test
+    public void resumeAtTimeoutOrWhenAttemptIsDone()
+    {
+        LogFileHandle a1 = handle("+wf1+a", 10);
+        when(logServer.getFileHandles(eq(prefix), any(), anyBoolean())).thenReturn(ImmutableList.of(a1));
+
+        RecordingCallback timedOut = new RecordingCallback();
+        RecordingCallback waiting = new RecordingCallback();
+        manager.follow(0, 1L, prefix, Optional.absent(), true, 1, 10, 0, timedOut);
+        manager.follow(0, 1L, prefix, Optional.absent(), true, 1, 10, TIMEOUT, waiting);
+
+        manager.tick();
+        assertThat(timedOut.resumed, contains(a1));
+        assertThat(waiting.resumed, is(nullValue()));
+
+        attemptDone = true;
+        manager.logFileUpdated(prefix);
+        manager.tick();
+        assertThat(waiting.resumed, contains(a1));
+    }
+
+    @Test
+    public void cancelIfLogServerFailsUntilTimeout()
+    {
+        when(logServer.getFileHandles(eq(prefix), any(), anyBoolean())).thenThrow(new IllegalStateException("test"));
+
+        RecordingCallback callback = new RecordingCallback();
+        manager.follow(0, 1L, prefix, Optional.absent(), true, 0, 0, 0, callback);
+
+        manager.tick();
+        assertThat(callback.resumed, is(nullValue()));
+        assertThat(callback.cancelled, is(true));
+    }
+
+    @Test
+    public void cancelAtShutdown()
+    {
+        RecordingCallback callback = new RecordingCallback();
+        manager.follow(0, 1L, prefix, Optional.absent(), true, 0, 0, TIMEOUT, callback);
+
+        manager.shutdown();
+        assertThat(callback.cancelled, is(true));
+        assertThat(manager.getWatchCount(), is(0));
+    }
+
+    private static class RecordingCallback
+            implements LogFollowManager.Callback
+    {
+        private List<LogFileHandle> resumed = null;
+        private boolean cancelled = false;
+
+        @Override
+        public void resume(List<LogFileHandle> handles)
+        {
+            resumed = handles;
+        }
+
+        @Override
+        public void cancel()
+        {
+            cancelled = true;
+        }
+    }
+
+    private static LogFileHandle handle(String taskName, long size)
+    {
+        return LogFileHandle.builder()
+            .fileName(taskName + "@" + size + ".log.gz")
+            .fileSize(size)
+            .taskName(taskName)
+            .firstLogTime(Instant.ofEpochSecond(size))
+            .agentId("agent")
+            .build();
+    }
+
+    private static LogFilePrefix prefix(String workflowName)
+    {
+        return LogFilePrefix.builder()
+            .createdAt(Instant.ofEpochSecond(1))
+            .retryAttemptName(Optional.absent())
+            .projectId(1)
+            .sessionTime(Instant.ofEpochSecond(1))
+            .siteId(1)
+            .timeZone(ZoneId.of("UTC"))
+            .workflowName(workflowName)
+            .build();
+    }
+}
@@ -0,0 +1,109 @@
+package io.digdag.server;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import io.digdag.core.database.TransactionManager;
+import io.digdag.core.repository.ProjectStoreManager;
+import io.digdag.core.session.SessionStoreManager;
+import io.digdag.core.session.TaskStateCode;
+import io.digdag.spi.Notifier;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import static io.digdag.client.config.ConfigUtils.newConfig;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class WorkflowExecutionTimeoutEnforcerTest
+{
+    private static final Instant START = Instant.parse("2026-01-01T00:00:00Z");
+
+    @Mock ServerConfig serverConfig;
+    @Mock SessionStoreManager ssm;
+    @Mock TransactionManager tm;
+    @Mock Notifier notifier;
+    @Mock ProjectStoreManager psm;
+
+    private WorkflowExecutionTimeoutEnforcer enforcer;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp()
+    {
+        when(tm.begin(any(TransactionManager.SupplierInTransaction.class))).thenAnswer(invocation ->
+                ((TransactionManager.SupplierInTransaction) invocation.getArguments()[0]).get());
+        when(ssm.findActiveAttemptsCreatedBefore(any(), anyLong(), anyInt())).thenReturn(ImmutableList.of());
+        when(ssm.findTasksStartedBeforeWithState(any(TaskStateCode[].class), any(), anyLong(), anyInt())).thenReturn(ImmutableList.of());
+        when(ssm.getOldestActiveAttemptCreationTime()).thenReturn(Optional.absent());
+        when(ssm.getOldestTaskStartTimeWithState(any(TaskStateCode[].class))).thenReturn(Optional.absent());
+
+        // scheduler thread is not started because executor is disabled
+        enforcer = new WorkflowExecutionTimeoutEnforcer(serverConfig, ssm, tm,
+                newConfig()
+                    .set("executor.attempt_ttl", "7d")
+                    .set("executor.task_ttl", "1d")
+                    .set("executor.task_ttl_deadline_refresh_interval", "1m"),
+                notifier, psm);
+    }
+
+    @Test
+    public void skipScanningAttemptsUntilOldestAttemptExpires()
+    {
+        when(ssm.getOldestActiveAttemptCreationTime()).thenReturn(Optional.of(START.minus(Duration.ofDays(1))));
+
+        runAt(START);
+        verify(ssm, times(1)).findActiveAttemptsCreatedBefore(any(), anyLong(), anyInt());
+
+        // the oldest attempt expires at START + 6 days
+        runAt(START.plus(Duration.ofDays(6)).minusSeconds(1));
+        verify(ssm, times(1)).findActiveAttemptsCreatedBefore(any(), anyLong(), anyInt());
+
+        runAt(START.plus(Duration.ofDays(6)));
+        verify(ssm, times(2)).findActiveAttemptsCreatedBefore(any(), anyLong(), anyInt());
+    }
+
+    @Test
+    public void scanAttemptsAfterTtlIfNoActiveAttempts()
+    {
+        runAt(START);
+        runAt(START.plus(Duration.ofDays(7)).minusSeconds(1));
+        verify(ssm, times(1)).findActiveAttemptsCreatedBefore(any(), anyLong(), anyInt());
+
+        runAt(START.plus(Duration.ofDays(7)));
+        verify(ssm, times(2)).findActiveAttemptsCreatedBefore(any(), anyLong(), anyInt());
+    }
+
+    @Test
+    public void skipScanningTasksUntilDeadlineOrRefreshInterval()
+    {
+        when(ssm.getOldestTaskStartTimeWithState(any(TaskStateCode[].class))).thenReturn(Optional.of(START));
+
+        runAt(START);
+        verify(ssm, times(1)).findTasksStartedBeforeWithState(any(TaskStateCode[].class), any(), anyLong(), anyInt());
+
+        runAt(START.plusSeconds(59));
+        verify(ssm, times(1)).findTasksStartedBeforeWithState(any(TaskStateCode[].class), any(), anyLong(), anyInt());
+
+        // a task can go back to an enforced state keeping its old started_at.
+        // the deadline is refreshed even if it's not passed.
+        runAt(START.plusSeconds(60));
+        verify(ssm, times(2)).findTasksStartedBeforeWithState(any(TaskStateCode[].class), any(), anyLong(), anyInt());
+    }
+
+    private void runAt(Instant storeTime)
+    {
+        when(ssm.getStoreTime()).thenReturn(storeTime);
+        enforcer.run();
+    }
+}
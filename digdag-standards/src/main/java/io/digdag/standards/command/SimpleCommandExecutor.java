@@ -1,8 +1,11 @@
 package io.digdag.standards.command;
 
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.base.Optional;
 import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
 import com.google.inject.Inject;
+import io.digdag.client.config.Config;
 import io.digdag.spi.CommandExecutor;
 import io.digdag.spi.CommandContext;
 import io.digdag.spi.CommandRequest;
@@ -10,23 +13,65 @@ import io.digdag.spi.CommandLogger;
 import io.digdag.spi.CommandStatus;
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.List;
 
 public class SimpleCommandExecutor
         implements CommandExecutor
 {
+    private static final String SIMPLE_COMMAND_EXECUTOR_SYSTEM_CONFIG_PREFIX = "agent.command_executor.simple.";
+    private static final String CONFIG_CGROUP_MEMORY_MAX = SIMPLE_COMMAND_EXECUTOR_SYSTEM_CONFIG_PREFIX + "cgroup.memory_max";
+    private static final String CONFIG_CGROUP_CPU_QUOTA = SIMPLE_COMMAND_EXECUTOR_SYSTEM_CONFIG_PREFIX + "cgroup.cpu_quota";
+    private static final String CONFIG_CGROUP_USER_SCOPE = SIMPLE_COMMAND_EXECUTOR_SYSTEM_CONFIG_PREFIX + "cgroup.user_scope";
+
     private final CommandLogger clog;
+    private final List<String> commandPrefix;
 
     @Inject
-    public SimpleCommandExecutor(final CommandLogger clog)
+    public SimpleCommandExecutor(final Config systemConfig, final CommandLogger clog)
     {
         this.clog = clog;
+        this.commandPrefix = buildCgroupCommandPrefix(systemConfig);
+    }
+
+    /**
+     * Builds systemd-run command to run a process in a transient cgroup scope
+     * if resource limits are configured. Otherwise returns an empty list.
+     *
+     * DockerCommandExecutor uses this executor only for tasks without docker
+     * option. docker commands are not wrapped because containers don't run in
+     * the scope of the docker client process.
+     */
+    static List<String> buildCgroupCommandPrefix(final Config systemConfig)
+    {
+        final Optional<String> memoryMax = systemConfig.getOptional(CONFIG_CGROUP_MEMORY_MAX, String.class);
+        final Optional<String> cpuQuota = systemConfig.getOptional(CONFIG_CGROUP_CPU_QUOTA, String.class);
+        if (!memoryMax.isPresent() && !cpuQuota.isPresent()) {
+            return ImmutableList.of();
+        }
+
+        final ImmutableList.Builder<String> builder = ImmutableList.<String>builder()
+            .add("systemd-run");
+        if (systemConfig.get(CONFIG_CGROUP_USER_SCOPE, boolean.class, true)) {
+            builder.add("--user");
+        }
+        builder.add("--scope", "--quiet");
+        if (memoryMax.isPresent()) {
+            builder.add("-p", "MemoryMax=" + memoryMax.get());
+        }
+        if (cpuQuota.isPresent()) {
+            builder.add("-p", "CPUQuota=" + cpuQuota.get());
+        }
+        return builder.add("--").build();
     }
 
     @Override
     public CommandStatus run(final CommandContext context, final CommandRequest request)
             throws IOException
     {
-        final ProcessBuilder pb = new ProcessBuilder(request.getCommandLine());
+        final ProcessBuilder pb = new ProcessBuilder(ImmutableList.<String>builder()
+                .addAll(commandPrefix)
+                .addAll(request.getCommandLine())
+                .build());
         final Path workingDirectory = context.getLocalProjectPath().resolve(request.getWorkingDirectory()).normalize();
         pb.directory(workingDirectory.toFile());
         pb.redirectErrorStream(true);
@@ -28,7 +28,6 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Map;
 import javax.ws.rs.core.MediaType;
-import org.eclipse.jetty.client.HttpClient;
 import org.eclipse.jetty.client.api.ContentResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -51,9 +50,9 @@ public class HttpCallOperatorFactory
 
     @Inject
     public HttpCallOperatorFactory(ConfigFactory cf,
-            Config systemConfig, @Environment Map<String, String> env)
+            Config systemConfig, @Environment Map<String, String> env, HttpClientRegistry clients)
     {
-        super(systemConfig, env);
+        super(systemConfig, env, clients);
         this.cf = cf;
         this.mapper = new ObjectMapper();
         this.yaml = new YAMLFactory()
@@ -94,13 +93,8 @@ public class HttpCallOperatorFactory
             String mediaTypeOverride = params.getOptional("content_type_override", String.class).orNull();
 
             ContentResponse response;
-
-            HttpClient httpClient = client();
-            try {
-                response = runHttp(httpClient, uri, uriIsSecret);
-            }
-            finally {
-                stop(httpClient);
+            try (HttpClientRegistry.Lease client = client()) {
+                response = runHttp(client.getClient(), uri, uriIsSecret);
             }
 
             String content;
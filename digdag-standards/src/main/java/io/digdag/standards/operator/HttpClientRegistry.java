@@ -0,0 +1,227 @@
+package io.digdag.standards.operator;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.inject.Inject;
+import io.digdag.client.config.Config;
+import io.digdag.client.config.ConfigException;
+import io.digdag.metrics.StdDigdagMetrics;
+import io.digdag.spi.TaskExecutionException;
+import io.digdag.spi.metrics.DigdagMetrics;
+import io.digdag.util.DurationParam;
+import io.micrometer.core.instrument.Tags;
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.util.HttpCookieStore;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ScheduledExecutorScheduler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PreDestroy;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static io.digdag.spi.metrics.DigdagMetrics.Category;
+
+/**
+ * Agent-wide registry of Jetty HttpClient instances shared by http> and http_call> tasks.
+ *
+ * Starting a HttpClient creates a thread pool, a selector and a SSL context, and a
+ * stopped client can't keep connections alive. Tasks with the same client options
+ * (insecure, proxy and redirect policy) share one started client so that connections
+ * to the same destination are reused.
+ *
+ * Number of clients is limited by config.http.max_clients because user-defined proxies
+ * can make many distinct keys. When the limit is exceeded, the least recently used
+ * client is removed and stopped after tasks using it release it.
+ *
+ * Shared clients don't keep cookies or authentication results so that they don't
+ * leak from a task to another.
+ */
+public class HttpClientRegistry
+{
+    private static final Logger logger = LoggerFactory.getLogger(HttpClientRegistry.class);
+
+    private final int maxConnectionsPerDestination;
+    private final Duration idleTimeout;
+    private final int maxClients;
+    // access-ordered to remove the least recently used client first
+    private final LinkedHashMap<String, SharedClient> clients = new LinkedHashMap<>(16, 0.75f, true);
+    private int clientCount = 0;
+
+    @Inject(optional = true)
+    private DigdagMetrics metrics = StdDigdagMetrics.empty();
+
+    @Inject
+    public HttpClientRegistry(Config systemConfig)
+    {
+        this.maxConnectionsPerDestination = systemConfig.get("config.http.max_connections_per_destination", int.class, 64);
+        this.idleTimeout = systemConfig.getOptional("config.http.idle_timeout", DurationParam.class)
+            .transform(DurationParam::getDuration)
+            .or(Duration.ofSeconds(30));
+        this.maxClients = systemConfig.get("config.http.max_clients", int.class, 16);
+        if (maxClients < 1) {
+            throw new ConfigException("config.http.max_clients must be positive: " + maxClients);
+        }
+    }
+
+    /**
+     * Returns a lease of a started client for the key. If no client exists for the key,
+     * a new one is created using factory, configured and started. The client is not
+     * stopped until the lease is closed.
+     */
+    public Lease acquire(String key, Supplier<HttpClient> factory)
+    {
+        metrics.increment(Category.AGENT, "httpClientRequests");
+        synchronized (clients) {
+            SharedClient shared = clients.get(key);
+            if (shared != null) {
+                shared.users++;
+                return new Lease(shared);
+            }
+        }
+
+        // start a client out of the lock because it takes time to create a thread pool and a SSL context
+        SharedClient started = new SharedClient(key, start(key, factory.get()));
+
+        List<SharedClient> removed = new ArrayList<>();
+        SharedClient shared;
+        synchronized (clients) {
+            shared = clients.get(key);
+            if (shared == null) {
+                shared = started;
+                clients.put(key, shared);
+                Iterator<SharedClient> ite = clients.values().iterator();
+                while (clients.size() > maxClients && ite.hasNext()) {
+                    SharedClient eldest = ite.next();
+                    ite.remove();
+                    eldest.removed = true;
+                    if (eldest.users == 0) {
+                        removed.add(eldest);
+                    }
+                }
+                metrics.gauge(Category.AGENT, "httpClients", Tags.empty(), clients.size());
+            }
+            else {
+                // another thread started a client for the same key at the same time
+                removed.add(started);
+            }
+            shared.users++;
+        }
+        for (SharedClient client : removed) {
+            stop(client);
+        }
+        return new Lease(shared);
+    }
+
+    public class Lease
+            implements AutoCloseable
+    {
+        private final SharedClient shared;
+        private boolean closed = false;
+
+        private Lease(SharedClient shared)
+        {
+            this.shared = shared;
+        }
+
+        public HttpClient getClient()
+        {
+            return shared.client;
+        }
+
+        @Override
+        public void close()
+        {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            boolean stop;
+            synchronized (clients) {
+                shared.users--;
+                stop = shared.removed && shared.users == 0;
+            }
+            if (stop) {
+                stop(shared);
+            }
+        }
+    }
+
+    private static class SharedClient
+    {
+        private final String key;
+        private final HttpClient client;
+        // guarded by clients
+        private int users = 0;
+        private boolean removed = false;
+
+        SharedClient(String key, HttpClient client)
+        {
+            this.key = key;
+            this.client = client;
+        }
+    }
+
+    private HttpClient start(String key, HttpClient client)
+    {
+        QueuedThreadPool threadPool = new QueuedThreadPool();
+        synchronized (clients) {
+            threadPool.setName("http-operator-client-" + clientCount++);
+        }
+        threadPool.setDaemon(true);
+        client.setExecutor(threadPool);
+        client.setScheduler(new ScheduledExecutorScheduler(threadPool.getName() + "-scheduler", true));
+
+        client.setMaxConnectionsPerDestination(maxConnectionsPerDestination);
+        client.setIdleTimeout(idleTimeout.toMillis());
+        client.setCookieStore(new HttpCookieStore.Empty());
+
+        try {
+            client.start();
+        }
+        catch (Exception e) {
+            throw new TaskExecutionException(e);
+        }
+        logger.debug("Started a shared HTTP client: {}", key);
+
+        metrics.increment(Category.AGENT, "httpClientCreated");
+        return client;
+    }
+
+    private void stop(SharedClient shared)
+    {
+        try {
+            shared.client.stop();
+            logger.debug("Stopped a shared HTTP client: {}", shared.key);
+        }
+        catch (Exception e) {
+            logger.warn("Failed to stop http client", e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown()
+    {
+        List<SharedClient> all;
+        synchronized (clients) {
+            all = new ArrayList<>(clients.values());
+            clients.clear();
+        }
+        for (SharedClient shared : all) {
+            stop(shared);
+        }
+    }
+
+    @VisibleForTesting
+    int getClientCount()
+    {
+        synchronized (clients) {
+            return clients.size();
+        }
+    }
+}
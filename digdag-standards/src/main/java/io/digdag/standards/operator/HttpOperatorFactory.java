@@ -1,7 +1,12 @@
 package io.digdag.standards.operator;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonPointer;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.NullNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.fasterxml.jackson.databind.node.TextNode;
 import com.google.common.base.Throwables;
@@ -41,6 +46,7 @@ import org.eclipse.jetty.client.api.Request;
 import org.eclipse.jetty.client.api.Response;
 import org.eclipse.jetty.client.util.BasicAuthentication;
 import org.eclipse.jetty.client.util.FormContentProvider;
+import org.eclipse.jetty.client.util.InputStreamResponseListener;
 import org.eclipse.jetty.client.util.StringContentProvider;
 import org.eclipse.jetty.http.HttpField;
 import org.eclipse.jetty.http.HttpStatus;
@@ -49,8 +55,16 @@ import org.eclipse.jetty.util.ssl.SslContextFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -74,10 +88,13 @@ public class HttpOperatorFactory
     private final int maxRedirects;
     private final String userAgent;
     private final int maxStoredResponseContentSize;
+    private final HttpClientRegistry clients;
+    private final ObjectMapper contentMapper = new ObjectMapper();
 
     @Inject
-    public HttpOperatorFactory(Config systemConfig, @Environment Map<String, String> env)
+    public HttpOperatorFactory(Config systemConfig, @Environment Map<String, String> env, HttpClientRegistry clients)
     {
+        this.clients = clients;
         this.allowUserProxy = systemConfig.get("config.http.allow_user_proxy", boolean.class, true);
         this.systemProxy = systemProxy(systemConfig);
         this.maxRedirects = systemConfig.get("config.http.max_redirects", int.class, 8);
@@ -137,12 +154,8 @@ public class HttpOperatorFactory
         @Override
         public TaskResult runTask()
         {
-            HttpClient client = client();
-            try {
-                return run(client);
-            }
-            finally {
-                stop(client);
+            try (HttpClientRegistry.Lease client = client()) {
+                return run(client.getClient());
             }
         }
 
@@ -163,12 +176,43 @@ public class HttpOperatorFactory
             URI uri = URI.create(rawUri);
 
             boolean storeContent = params.get("store_content", boolean.class, false);
+            Optional<String> storeContentTo = params.getOptional("store_content_to", String.class);
+            Map<String, JsonPointer> extractContent = extractContentPointers();
+
+            if (storeContentTo.isPresent() || !extractContent.isEmpty()) {
+                if (storeContent) {
+                    throw new ConfigException("store_content can't be set with store_content_to or extract_content");
+                }
+                Path file = contentFile(storeContentTo);
+                Response response = runHttpToFile(httpClient, uri, uriIsSecret, file);
+                return streamedResult(response, storeContentTo, file, extractContent);
+            }
 
             ContentResponse response = runHttp(httpClient, uri, uriIsSecret);
             return result(response, storeContent);
         }
 
         ContentResponse runHttp(HttpClient httpClient, URI uri, boolean uriIsSecret)
+        {
+            Request request = newRequest(httpClient, uri);
+
+            ContentResponse response = PollingRetryExecutor.pollingRetryExecutor(state, "request")
+                    .withErrorMessage((ex) -> "HTTP request failed. " + ex.getMessage())
+                    .run(s -> execute(request, uriIsSecret));
+
+            return response;
+        }
+
+        private Response runHttpToFile(HttpClient httpClient, URI uri, boolean uriIsSecret, Path file)
+        {
+            Request request = newRequest(httpClient, uri);
+
+            return PollingRetryExecutor.pollingRetryExecutor(state, "request")
+                    .withErrorMessage((ex) -> "HTTP request failed. " + ex.getMessage())
+                    .run(s -> executeToFile(request, uriIsSecret, file));
+        }
+
+        private Request newRequest(HttpClient httpClient, URI uri)
         {
             Optional<String> user = httpSecrets.getSecretOptional("user");
             Optional<String> authorization = httpSecrets.getSecretOptional("authorization");
@@ -181,8 +225,10 @@ public class HttpOperatorFactory
                 request.header(AUTHORIZATION, authorization.get());
             }
             else if (user.isPresent()) {
+                // Set the header to this request instead of adding the result to the authentication
+                // store of the client because the client is shared with other tasks.
                 Optional<String> password = httpSecrets.getSecretOptional("password");
-                httpClient.getAuthenticationStore().addAuthenticationResult(new BasicAuthentication.BasicResult(uri, user.get(), password.or("")));
+                new BasicAuthentication.BasicResult(uri, user.get(), password.or("")).apply(request);
             }
 
             Optional<JsonNode> content = params.getOptional("content", JsonNode.class);
@@ -201,11 +247,7 @@ public class HttpOperatorFactory
 
             configureQueryParameters(request);
 
-            ContentResponse response = PollingRetryExecutor.pollingRetryExecutor(state, "request")
-                    .withErrorMessage((ex) -> "HTTP request failed. " + ex.getMessage())
-                    .run(s -> execute(request, uriIsSecret));
-
-            return response;
+            return request;
         }
 
         private void configureQueryParameters(Request request)
@@ -258,7 +300,7 @@ public class HttpOperatorFactory
             logger.info("Sending HTTP request: {} {}", req.getMethod(), safeUri);
             ContentResponse res;
             try {
-                res = send(req);
+                res = send(req, req::send);
             }
             catch (HttpResponseException e) {
                 throw error(req, uriIsSecret, e.getResponse());
@@ -288,6 +330,51 @@ public class HttpOperatorFactory
             }
         }
 
+        private Response executeToFile(Request req, boolean uriIsSecret, Path file)
+        {
+            String safeUri = safeUri(req, uriIsSecret);
+
+            logger.info("Sending HTTP request: {} {}", req.getMethod(), safeUri);
+            InputStreamResponseListener listener = new InputStreamResponseListener();
+            Response res;
+            try {
+                res = send(req, () -> {
+                    req.send(listener);
+                    return listener.get(timeout, SECONDS);
+                });
+            }
+            catch (HttpResponseException e) {
+                throw error(req, uriIsSecret, e.getResponse());
+            }
+            catch (RuntimeException e) {
+                logger.warn("Exception without response: {} {}", req.getMethod(), safeUri);
+                if (retry) {
+                    throw e;
+                }
+                else {
+                    throw new TaskExecutionException(e);
+                }
+            }
+
+            logger.info("Received HTTP response: {} {}: {}", req.getMethod(), safeUri, res);
+
+            // Closing the stream aborts the rest of the response if it's not read
+            try (InputStream in = listener.getInputStream()) {
+                if (!HttpStatus.isSuccess(res.getStatus()) && !HttpStatus.isRedirection(res.getStatus())) {
+                    throw error(req, uriIsSecret, res);
+                }
+                Files.createDirectories(file.toAbsolutePath().getParent());
+                long size = Files.copy(in, file, StandardCopyOption.REPLACE_EXISTING);
+                logger.info("Stored HTTP response content: {} bytes", size);
+            }
+            catch (IOException e) {
+                // The connection was closed or timed out while reading the body.
+                throw ephemeralError("Failed to read HTTP response content: " + req.getMethod() + " " + safeUri + ": " + e);
+            }
+
+            return res;
+        }
+
         private RuntimeException error(Request req, boolean uriIsSecret, Response res)
         {
             if (HttpStatus.isClientError(res.getStatus())) {
@@ -324,11 +411,11 @@ public class HttpOperatorFactory
             }
         }
 
-        private ContentResponse send(Request req)
+        private <T> T send(Request req, Sender<T> sender)
         {
-            ContentResponse res;
+            T res;
             try {
-                res = req.send();
+                res = sender.send();
             }
             catch (InterruptedException e) {
                 logger.debug("HTTP request interrupted: {}", req, e);
@@ -424,64 +511,232 @@ public class HttpOperatorFactory
                     .build();
         }
 
-        HttpClient client()
+        private Map<String, JsonPointer> extractContentPointers()
         {
-            boolean insecure = params.get("insecure", boolean.class, false);
+            Config extract = params.getNestedOrGetEmpty("extract_content");
+            Map<String, JsonPointer> pointers = new LinkedHashMap<>();
+            for (String name : extract.getKeys()) {
+                String expr = extract.get(name, String.class);
+                try {
+                    pointers.put(name, JsonPointer.compile(expr));
+                }
+                catch (IllegalArgumentException ex) {
+                    throw new ConfigException("Invalid JSON pointer of extract_content." + name + ": " + expr, ex);
+                }
+            }
+            return pointers;
+        }
 
-            HttpClient httpClient = new HttpClient(new SslContextFactory(insecure));
+        private Path contentFile(Optional<String> storeContentTo)
+        {
+            try {
+                if (storeContentTo.isPresent()) {
+                    return workspace.getPath(storeContentTo.get());
+                }
+                else {
+                    // Content is only used for extraction. The file is deleted by Workspace.close.
+                    return workspace.createTempFile("http-content-", ".json");
+                }
+            }
+            catch (IllegalArgumentException ex) {
+                throw new ConfigException(ex.getMessage(), ex);
+            }
+            catch (IOException ex) {
+                throw Throwables.propagate(ex);
+            }
+        }
 
-            configureProxy(httpClient);
+        private TaskResult streamedResult(Response response, Optional<String> storeContentTo, Path file, Map<String, JsonPointer> extractContent)
+        {
+            ConfigFactory cf = request.getConfig().getFactory();
+            Config result = cf.create();
+            Config http = result.getNestedOrSetEmpty("http");
+            http.set("last_status", response.getStatus());
 
-            boolean followRedirects = params.get("follow_redirects", boolean.class, true);
+            ImmutableTaskResult.Builder builder = TaskResult.defaultBuilder(request)
+                    .addResetStoreParams(ConfigKey.of("http", "last_status"));
 
-            httpClient.setFollowRedirects(followRedirects);
-            httpClient.setMaxRedirects(maxRedirects);
+            if (storeContentTo.isPresent()) {
+                try {
+                    http.set("last_content_size", Files.size(file));
+                }
+                catch (IOException ex) {
+                    throw Throwables.propagate(ex);
+                }
+                http.set("last_content_file", storeContentTo.get());
+                builder.addResetStoreParams(ConfigKey.of("http", "last_content_file"));
+                builder.addResetStoreParams(ConfigKey.of("http", "last_content_size"));
+            }
 
-            httpClient.setUserAgentField(new HttpField(
-                    USER_AGENT, userAgent + ' ' + httpClient.getUserAgentField().getValue()));
+            if (!extractContent.isEmpty()) {
+                Config extracted = http.getNestedOrSetEmpty("last_extracted");
+                for (Map.Entry<String, JsonNode> pair : extract(file, extractContent).entrySet()) {
+                    extracted.set(pair.getKey(), pair.getValue());
+                }
+                builder.addResetStoreParams(ConfigKey.of("http", "last_extracted"));
+            }
 
-            try {
-                httpClient.start();
+            return builder
+                    .storeParams(result)
+                    .build();
+        }
+
+        private Map<String, JsonNode> extract(Path file, Map<String, JsonPointer> pointers)
+        {
+            // Parse the content as a stream only once for all pointers so that a large response
+            // is never loaded on memory except the selected values.
+            Map<String, JsonPointer> pending = new LinkedHashMap<>(pointers);
+            Map<String, JsonNode> values = new HashMap<>();
+            try (JsonParser parser = contentMapper.getFactory().createParser(file.toFile())) {
+                JsonToken token;
+                while (!pending.isEmpty() && (token = parser.nextToken()) != null) {
+                    if (token == JsonToken.FIELD_NAME || token.isStructEnd()) {
+                        continue;
+                    }
+                    JsonPointer current = parser.getParsingContext().pathAsPointer();
+                    boolean selected = false;
+                    boolean descendantSelected = false;
+                    for (JsonPointer pointer : pending.values()) {
+                        JsonPointer relative = relativePointer(pointer, current);
+                        if (relative != null) {
+                            if (relative.matches()) {
+                                selected = true;
+                            }
+                            else {
+                                descendantSelected = true;
+                            }
+                        }
+                    }
+                    if (!selected) {
+                        if (!descendantSelected) {
+                            // no pointers select this value or its descendants
+                            parser.skipChildren();
+                        }
+                        continue;
+                    }
+
+                    // a pointer selects this value. Pointers of its descendants are resolved
+                    // on the read tree.
+                    JsonNode node = contentMapper.readTree(parser);
+                    Iterator<Map.Entry<String, JsonPointer>> ite = pending.entrySet().iterator();
+                    while (ite.hasNext()) {
+                        Map.Entry<String, JsonPointer> pair = ite.next();
+                        JsonPointer relative = relativePointer(pair.getValue(), current);
+                        if (relative != null) {
+                            if (node != null) {
+                                JsonNode value = node.at(relative);
+                                if (!value.isMissingNode()) {
+                                    values.put(pair.getKey(), value);
+                                }
+                            }
+                            ite.remove();
+                        }
+                    }
+                }
+            }
+            catch (IOException ex) {
+                throw new TaskExecutionException("Failed to parse response content as JSON: " + ex.getMessage());
+            }
+
+            Map<String, JsonNode> extracted = new LinkedHashMap<>();
+            for (Map.Entry<String, JsonPointer> pair : pointers.entrySet()) {
+                String name = pair.getKey();
+                JsonNode value = values.get(name);
+                if (value == null) {
+                    logger.debug("JSON pointer of extract_content.{} doesn't match: {}", name, pair.getValue());
+                    extracted.put(name, NullNode.getInstance());
+                    continue;
+                }
+
+                int size = value.toString().length();
+                if (size > maxStoredResponseContentSize) {
+                    throw new TaskExecutionException("Extracted content too large: extract_content." + name + ": " + size + " > " + maxStoredResponseContentSize);
+                }
+                extracted.put(name, value);
             }
-            catch (Exception e) {
-                throw new TaskExecutionException(e);
+            return extracted;
+        }
+
+        // Returns the rest of pointer if it's at or under prefix. Otherwise returns null.
+        private static JsonPointer relativePointer(JsonPointer pointer, JsonPointer prefix)
+        {
+            while (!prefix.matches()) {
+                if (pointer.matches() || !pointer.getMatchingProperty().equals(prefix.getMatchingProperty())) {
+                    return null;
+                }
+                pointer = pointer.tail();
+                prefix = prefix.tail();
             }
-            return httpClient;
+            return pointer;
         }
 
-        private void configureProxy(HttpClient httpClient)
+        HttpClientRegistry.Lease client()
+        {
+            boolean insecure = params.get("insecure", boolean.class, false);
+            boolean followRedirects = params.get("follow_redirects", boolean.class, true);
+            Optional<ProxyConfiguration.Proxy> userProxy = userProxy();
+
+            String key = String.format(Locale.ENGLISH, "insecure=%s, follow_redirects=%s, proxy=%s",
+                    insecure, followRedirects,
+                    userProxy.transform(p -> p.getAddress() + (p.isSecure() ? " (tls)" : "")).or("default"));
+
+            return clients.acquire(key, () -> newClient(insecure, followRedirects, userProxy));
+        }
+
+        private Optional<ProxyConfiguration.Proxy> userProxy()
         {
-            List<ProxyConfiguration.Proxy> proxies = httpClient.getProxyConfiguration().getProxies();
             Config userProxyConfig = params.getNestedOrGetEmpty("proxy");
             boolean userProxyEnabled = userProxyConfig.get("enabled", boolean.class, false);
             if (allowUserProxy && userProxyEnabled) {
                 String host = userProxyConfig.get("host", String.class);
                 int port = userProxyConfig.get("port", int.class);
                 boolean tls = userProxyConfig.get("tls", boolean.class, false);
-                proxies.add(new HttpProxy(new Origin.Address(host, port), tls));
+                return Optional.of(new HttpProxy(new Origin.Address(host, port), tls));
             }
             else {
-                if (systemProxy.isPresent()) {
-                    proxies.add(systemProxy.get());
-                }
-                else {
-                    configureEnvProxy("http", proxies);
-                    configureEnvProxy("https", proxies);
-                }
+                return Optional.absent();
             }
         }
+    }
 
-        void stop(HttpClient httpClient)
-        {
-            try {
-                httpClient.stop();
+    private HttpClient newClient(boolean insecure, boolean followRedirects, Optional<ProxyConfiguration.Proxy> userProxy)
+    {
+        HttpClient httpClient = new HttpClient(new SslContextFactory(insecure));
+
+        configureProxy(httpClient, userProxy);
+
+        httpClient.setFollowRedirects(followRedirects);
+        httpClient.setMaxRedirects(maxRedirects);
+
+        httpClient.setUserAgentField(new HttpField(
+                USER_AGENT, userAgent + ' ' + httpClient.getUserAgentField().getValue()));
+
+        return httpClient;
+    }
+
+    private void configureProxy(HttpClient httpClient, Optional<ProxyConfiguration.Proxy> userProxy)
+    {
+        List<ProxyConfiguration.Proxy> proxies = httpClient.getProxyConfiguration().getProxies();
+        if (userProxy.isPresent()) {
+            proxies.add(userProxy.get());
+        }
+        else {
+            if (systemProxy.isPresent()) {
+                proxies.add(systemProxy.get());
             }
-            catch (Exception e) {
-                logger.warn("Failed to stop http client", e);
+            else {
+                configureEnvProxy("http", proxies);
+                configureEnvProxy("https", proxies);
             }
         }
     }
 
+    private interface Sender<T>
+    {
+        T send()
+                throws InterruptedException, TimeoutException, ExecutionException;
+    }
+
     private static boolean defaultRetry(String method)
     {
         switch (method) {
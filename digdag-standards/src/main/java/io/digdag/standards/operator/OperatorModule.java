@@ -7,6 +7,7 @@ import com.google.inject.multibindings.Multibinder;
 import io.digdag.spi.OperatorFactory;
 import io.digdag.standards.operator.aws.EmrOperatorFactory;
 import io.digdag.standards.operator.aws.S3WaitOperatorFactory;
+import io.digdag.standards.operator.jdbc.JdbcConnectionPool;
 import io.digdag.standards.operator.param.ParamGetOperatorFactory;
 import io.digdag.standards.operator.param.ParamSetOperatorFactory;
 import io.digdag.standards.operator.pg.PgOperatorFactory;
@@ -62,6 +63,9 @@ public class OperatorModule
         addStandardOperatorFactory(binder, HttpCallOperatorFactory.class);
         addStandardOperatorFactory(binder, ParamSetOperatorFactory.class);
         addStandardOperatorFactory(binder, ParamGetOperatorFactory.class);
+
+        binder.bind(JdbcConnectionPool.class).in(Scopes.SINGLETON);
+        binder.bind(HttpClientRegistry.class).in(Scopes.SINGLETON);
     }
 
     protected void addStandardOperatorFactory(Binder binder, Class<? extends OperatorFactory> factory)
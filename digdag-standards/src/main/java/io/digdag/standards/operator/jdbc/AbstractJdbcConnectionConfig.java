@@ -1,5 +1,6 @@
 package io.digdag.standards.operator.jdbc;
 
+import java.util.List;
 import java.util.Properties;
 import java.time.Duration;
 import java.sql.SQLException;
@@ -7,6 +8,7 @@ import java.sql.Connection;
 import java.sql.DriverManager;
 import com.google.common.base.Optional;
 import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
 import io.digdag.client.config.Config;
 import io.digdag.spi.SecretProvider;
 import io.digdag.util.DurationParam;
@@ -48,6 +50,15 @@ public abstract class AbstractJdbcConnectionConfig
 
     public abstract Properties buildProperties();
 
+    /**
+     * Statements to run before a pooled connection is reused by another task.
+     */
+    protected List<String> sessionResetStatements()
+    {
+        // roll back a transaction left by a failed task (BEGIN is executed as a statement)
+        return ImmutableList.of("ROLLBACK");
+    }
+
     public String url()
     {
         return String.format(ENGLISH, "jdbc:%s://%s:%d/%s", jdbcProtocolName(), host(), port(), database());
@@ -14,13 +14,17 @@ import io.digdag.spi.TaskResult;
 import io.digdag.spi.TemplateEngine;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 
@@ -31,12 +35,14 @@ public abstract class AbstractJdbcJobOperator<C>
     private static final int INITIAL_POLL_INTERVAL = 1;
     private static final int MAX_POLL_INTERVAL = 1200;
     private static final String QUERY_ID = "queryId";
+    private static final int DEFAULT_FETCH_SIZE = 0;
 
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
     private final long maxStoreLastResultsRows;
     private final int maxStoreLastResultsColumns;
     private final int maxStoreLastResultsValueSize;
+    private final int defaultFetchSize;
 
     private <T> Optional<T> getConfigValue(Config systemConfig, String key, Class<T> clazz)
     {
@@ -50,6 +56,7 @@ public abstract class AbstractJdbcJobOperator<C>
         this.maxStoreLastResultsRows = getConfigValue(systemConfig, "max_store_last_results_rows", long.class).or(8192L);
         this.maxStoreLastResultsColumns = getConfigValue(systemConfig, "max_store_last_results_columns", int.class).or(64);
         this.maxStoreLastResultsValueSize = getConfigValue(systemConfig, "max_store_last_results_value_size", int.class).or(256);
+        this.defaultFetchSize = getConfigValue(systemConfig, "fetch_size", int.class).or(DEFAULT_FETCH_SIZE);
     }
 
     @Override
@@ -80,6 +87,29 @@ public abstract class AbstractJdbcJobOperator<C>
             throw new ConfigException("Can't use both download_file and store_last_results at once");
         }
 
+        Optional<String> lastResultsFile = params.getOptional("last_results_file", String.class);
+        if (lastResultsFile.isPresent() && storeResultsOption != StoreLastResultsOption.ALL) {
+            throw new ConfigException("last_results_file can be used only with store_last_results: all");
+        }
+
+        String fileCompression = params.get("file_compression", String.class, "none");
+        final boolean gzip;
+        switch (fileCompression) {
+        case "none":
+            gzip = false;
+            break;
+        case "gzip":
+            gzip = true;
+            break;
+        default:
+            throw new ConfigException("file_compression must be either none or gzip: " + fileCompression);
+        }
+
+        int fetchSize = params.get("fetch_size", int.class, defaultFetchSize);
+        if (fetchSize < 0) {
+            throw new ConfigException("fetch_size must not be negative: " + fetchSize);
+        }
+
         boolean readOnlyMode = downloadFile.isPresent() || storeResultsOption.isEnabled();
 
         boolean strictTransaction = strictTransaction(params);
@@ -110,13 +140,13 @@ public abstract class AbstractJdbcJobOperator<C>
             if (readOnlyMode) {
                 ImmutableTaskResult.Builder builder = TaskResult.defaultBuilder(request);
                 if (downloadFile.isPresent()) {
-                    connection.executeReadOnlyQuery(query, (results) -> downloadResultsToFile(results, downloadFile.get()));
+                    connection.executeReadOnlyQuery(query, fetchSize, (results) -> downloadResultsToFile(results, downloadFile.get(), gzip));
                 }
                 else if (storeResultsOption.isEnabled()) {
-                    connection.executeReadOnlyQuery(query, (results) -> storeResultsInTaskResult(results, storeResultsOption, builder));
+                    connection.executeReadOnlyQuery(query, fetchSize, (results) -> storeResultsInTaskResult(results, storeResultsOption, lastResultsFile, gzip, builder));
                 }
                 else {
-                    connection.executeReadOnlyQuery(query, (results) -> skipResults(results));
+                    connection.executeReadOnlyQuery(query, fetchSize, (results) -> skipResults(results));
                 }
                 return builder.build();
             }
@@ -193,29 +223,16 @@ public abstract class AbstractJdbcJobOperator<C>
         }
     }
 
-    private void downloadResultsToFile(JdbcResultSet results, String fileName)
+    private void downloadResultsToFile(JdbcResultSet results, String fileName, boolean gzip)
     {
-        try (CsvWriter csvWriter = new CsvWriter(workspace.newBufferedWriter(fileName, UTF_8))) {
-            List<String> columnNames = results.getColumnNames();
-            csvWriter.addCsvHeader(columnNames);
+        try (CsvWriter csvWriter = openCsvWriter(fileName, gzip)) {
+            csvWriter.addCsvHeader(results.getColumnNames());
             while (true) {
                 List<Object> values = results.next();
                 if (values == null) {
                     break;
                 }
-                List<String> row = values.stream().map(value -> {
-                    if (value == null) {
-                        return (String) value;
-                    }
-                    else if (value instanceof String) {
-                        return (String) value;
-                    }
-                    else {
-                        return value.toString();  // TODO use jackson to serialize?
-                    }
-                })
-                .collect(Collectors.toList());
-                csvWriter.addCsvRow(row);
+                csvWriter.addCsvRow(toCsvRow(values));
             }
         }
         catch (IOException ex) {
@@ -223,34 +240,64 @@ public abstract class AbstractJdbcJobOperator<C>
         }
     }
 
+    private CsvWriter openCsvWriter(String fileName, boolean gzip)
+        throws IOException
+    {
+        if (gzip) {
+            OutputStream out = new GZIPOutputStream(workspace.newOutputStream(fileName));
+            return new CsvWriter(new BufferedWriter(new OutputStreamWriter(out, UTF_8)));
+        }
+        else {
+            return new CsvWriter(workspace.newBufferedWriter(fileName, UTF_8));
+        }
+    }
+
+    private static List<String> toCsvRow(List<Object> values)
+    {
+        return values.stream().map(value -> {
+            if (value == null) {
+                return (String) value;
+            }
+            else if (value instanceof String) {
+                return (String) value;
+            }
+            else {
+                return value.toString();  // TODO use jackson to serialize?
+            }
+        })
+        .collect(Collectors.toList());
+    }
+
     private void skipResults(JdbcResultSet results)
     {
         while (results.next() != null)
             ;
     }
 
-    private void storeResultsInTaskResult(JdbcResultSet jdbcResultSet, StoreLastResultsOption option, ImmutableTaskResult.Builder builder)
+    private void storeResultsInTaskResult(JdbcResultSet jdbcResultSet, StoreLastResultsOption option, Optional<String> lastResultsFile, boolean gzip, ImmutableTaskResult.Builder builder)
     {
         int columnsCount = jdbcResultSet.getColumnNames().size();
         if (columnsCount > maxStoreLastResultsColumns) {
             throw new TaskExecutionException("The number of result columns exceeded the limit: " + columnsCount + " > " + maxStoreLastResultsColumns);
         }
 
-        Object lastResults;
+        Config storeParams = request.getConfig().getFactory().create();
+        Config nested = storeParams.getNestedOrSetEmpty(type());
         switch (option) {
         case ALL:
-            lastResults = collectAllResults(jdbcResultSet);
+            if (lastResultsFile.isPresent()) {
+                collectAllResultsOrSpill(jdbcResultSet, lastResultsFile.get(), gzip, nested);
+            }
+            else {
+                nested.set("last_results", collectAllResults(jdbcResultSet));
+            }
             break;
         case FIRST:
-            lastResults = collectFirstResults(jdbcResultSet);
+            nested.set("last_results", collectFirstResults(jdbcResultSet));
             break;
         default:
             throw new AssertionError("Unexpected StoreLastResultsOption: " + option);
         }
-
-        Config storeParams = request.getConfig().getFactory().create();
-        storeParams.getNestedOrSetEmpty(type())
-            .set("last_results", lastResults);
         builder.storeParams(storeParams);
     }
 
@@ -277,6 +324,72 @@ public abstract class AbstractJdbcJobOperator<C>
         return lastResults.build();
     }
 
+    private void collectAllResultsOrSpill(JdbcResultSet jdbcResultSet, String fileName, boolean gzip, Config nested)
+    {
+        // Rows are kept in memory only up to the limits. Once a limit is exceeded,
+        // buffered rows and the rest of results are written to the file and only
+        // the file name is stored in the parameters.
+        List<String> columnNames = jdbcResultSet.getColumnNames();
+        List<List<Object>> buffered = new ArrayList<>();
+
+        while (true) {
+            List<Object> values = jdbcResultSet.next();
+            if (values == null) {
+                break;
+            }
+            buffered.add(values);
+            if (buffered.size() > maxStoreLastResultsRows || exceedsValueSize(values)) {
+                long rows = spillResultsToFile(jdbcResultSet, buffered, fileName, gzip);
+                logger.info("Results of {} rows exceeded the limits of store_last_results. Stored them to {}", rows, fileName);
+                nested.set("last_results", ImmutableList.of());
+                nested.set("last_results_file", fileName);
+                nested.set("last_results_rows", rows);
+                return;
+            }
+        }
+
+        ImmutableList.Builder<Map<String, Object>> lastResults = ImmutableList.builder();
+        for (List<Object> values : buffered) {
+            lastResults.add(buildResultsMap(columnNames, values));
+        }
+        nested.set("last_results", lastResults.build());
+    }
+
+    private boolean exceedsValueSize(List<Object> values)
+    {
+        for (Object v : values) {
+            if (v instanceof String && ((String) v).length() > maxStoreLastResultsValueSize) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private long spillResultsToFile(JdbcResultSet jdbcResultSet, List<List<Object>> buffered, String fileName, boolean gzip)
+    {
+        long rows = 0;
+        try (CsvWriter csvWriter = openCsvWriter(fileName, gzip)) {
+            csvWriter.addCsvHeader(jdbcResultSet.getColumnNames());
+            for (List<Object> values : buffered) {
+                csvWriter.addCsvRow(toCsvRow(values));
+                rows++;
+            }
+            buffered.clear();
+            while (true) {
+                List<Object> values = jdbcResultSet.next();
+                if (values == null) {
+                    break;
+                }
+                csvWriter.addCsvRow(toCsvRow(values));
+                rows++;
+            }
+        }
+        catch (IOException ex) {
+            throw Throwables.propagate(ex);
+        }
+        return rows;
+    }
+
     private Map<String, Object> collectFirstResults(JdbcResultSet jdbcResultSet)
     {
         List<Object> values = jdbcResultSet.next();
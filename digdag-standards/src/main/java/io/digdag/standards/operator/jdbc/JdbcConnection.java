@@ -16,7 +16,18 @@ interface JdbcConnection
 
     void executeUpdate(String sql);
 
-    void executeReadOnlyQuery(String sql, Consumer<JdbcResultSet> resultHandler)
+    default void executeReadOnlyQuery(String sql, Consumer<JdbcResultSet> resultHandler)
+        throws NotReadOnlyException
+    {
+        executeReadOnlyQuery(sql, 0, resultHandler);
+    }
+
+    /**
+     * Runs a read-only query. If fetchSize is positive, results are fetched
+     * from the server by fetchSize rows using a cursor instead of loading
+     * all rows into memory at once.
+     */
+    void executeReadOnlyQuery(String sql, int fetchSize, Consumer<JdbcResultSet> resultHandler)
         throws NotReadOnlyException;
 
     TransactionHelper getStrictTransactionHelper(String statusTableSchema, String statusTableName, Duration cleanupDuration);
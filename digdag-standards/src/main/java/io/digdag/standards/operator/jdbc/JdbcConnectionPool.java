@@ -0,0 +1,473 @@
+package io.digdag.standards.operator.jdbc;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Optional;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.inject.Inject;
+import io.digdag.client.config.Config;
+import io.digdag.metrics.StdDigdagMetrics;
+import io.digdag.spi.metrics.DigdagMetrics;
+import io.digdag.util.DurationParam;
+import io.micrometer.core.instrument.Tags;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PreDestroy;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static io.digdag.spi.metrics.DigdagMetrics.Category;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Agent-wide pool of JDBC connections used by pg> and redshift> operators.
+ *
+ * Connections are pooled per connection target: URL (host, port and database) and
+ * connection properties (user, password, ssl, schema and timeouts). Because the
+ * password is part of the key, a task never gets a connection that was authenticated
+ * with credentials other than its own secrets. The pool of a target is removed once
+ * all of its connections are returned and evicted after config.jdbc.pool.idle_timeout.
+ *
+ * Pooling is disabled unless config.jdbc.pool.enabled (or config.<operator>.pool.enabled)
+ * is true. When disabled, every task opens and closes its own connection as before.
+ */
+public class JdbcConnectionPool
+{
+    private static final Logger logger = LoggerFactory.getLogger(JdbcConnectionPool.class);
+
+    private static final int DEFAULT_MAX_PER_KEY = 4;
+    private static final Duration DEFAULT_IDLE_TIMEOUT = Duration.ofMinutes(5);
+    private static final Duration DEFAULT_ACQUIRE_TIMEOUT = Duration.ofSeconds(30);
+    private static final Duration DEFAULT_LEAK_DETECTION_THRESHOLD = Duration.ZERO;  // disabled
+    private static final Duration VALIDATION_TIMEOUT = Duration.ofSeconds(5);
+    private static final Duration VALIDATION_BYPASS = Duration.ofSeconds(1);
+    private static final long HOUSEKEEPING_INTERVAL_SECONDS = 30;
+
+    private final Config systemConfig;
+    private final int maxPerKey;
+    private final Duration idleTimeout;
+    private final Duration acquireTimeout;
+    private final Duration leakDetectionThreshold;
+
+    private final ConcurrentMap<String, KeyedPool> pools = new ConcurrentHashMap<>();
+    private ScheduledExecutorService housekeeper = null;  // created when the first connection is pooled
+    private boolean closed = false;
+
+    @Inject(optional = true)
+    private DigdagMetrics metrics = StdDigdagMetrics.empty();
+
+    @Inject
+    public JdbcConnectionPool(Config systemConfig)
+    {
+        this.systemConfig = systemConfig;
+        this.maxPerKey = systemConfig.get("config.jdbc.pool.max_per_key", int.class, DEFAULT_MAX_PER_KEY);
+        this.idleTimeout = getDuration(systemConfig, "config.jdbc.pool.idle_timeout", DEFAULT_IDLE_TIMEOUT);
+        this.acquireTimeout = getDuration(systemConfig, "config.jdbc.pool.acquire_timeout", DEFAULT_ACQUIRE_TIMEOUT);
+        this.leakDetectionThreshold = getDuration(systemConfig, "config.jdbc.pool.leak_detection_threshold", DEFAULT_LEAK_DETECTION_THRESHOLD);
+    }
+
+    private static Duration getDuration(Config systemConfig, String key, Duration defaultValue)
+    {
+        return systemConfig.getOptional(key, DurationParam.class)
+            .transform(DurationParam::getDuration)
+            .or(defaultValue);
+    }
+
+    public boolean isEnabled(String operatorType)
+    {
+        return systemConfig.getOptional(String.format("config.%s.pool.enabled", operatorType), boolean.class)
+            .or(systemConfig.getOptional("config.jdbc.pool.enabled", boolean.class))
+            .or(false);
+    }
+
+    /**
+     * Returns a connection to the database described by connectionConfig.
+     *
+     * If pooling is enabled for the operator type, closing the returned
+     * connection returns it to the pool instead of disconnecting.
+     */
+    public Connection getConnection(String operatorType, AbstractJdbcConnectionConfig connectionConfig)
+    {
+        if (!isEnabled(operatorType)) {
+            return connectionConfig.openConnection();
+        }
+        startHousekeeper();
+
+        KeyedPool pool = pools.compute(buildKey(connectionConfig), (key, current) -> {
+            KeyedPool p = (current != null) ? current : new KeyedPool(connectionConfig.toString());
+            // housekeeping doesn't remove the pool until the connection is released
+            p.users.incrementAndGet();
+            return p;
+        });
+        try {
+            return pool.acquire(operatorType, connectionConfig);
+        }
+        catch (RuntimeException ex) {
+            pool.users.decrementAndGet();
+            throw ex;
+        }
+    }
+
+    private static String buildKey(AbstractJdbcConnectionConfig connectionConfig)
+    {
+        // Properties include credentials. Keep only a digest of them in memory as the key.
+        Properties props = connectionConfig.buildProperties();
+        Hasher hasher = Hashing.sha256().newHasher();
+        hasher.putString(connectionConfig.url(), UTF_8);
+        for (String name : new TreeSet<>(props.stringPropertyNames())) {
+            hasher.putInt(name.length()).putString(name, UTF_8);
+            String value = props.getProperty(name);
+            hasher.putInt(value.length()).putString(value, UTF_8);
+        }
+        return hasher.hash().toString();
+    }
+
+    private synchronized void startHousekeeper()
+    {
+        if (closed) {
+            throw new IllegalStateException("JDBC connection pool is already closed");
+        }
+        if (housekeeper == null) {
+            housekeeper = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                    .setDaemon(true)
+                    .setNameFormat("jdbc-connection-pool-housekeeper-%d")
+                    .build());
+            housekeeper.scheduleWithFixedDelay(() -> runHousekeeping(Instant.now()),
+                    HOUSEKEEPING_INTERVAL_SECONDS, HOUSEKEEPING_INTERVAL_SECONDS, SECONDS);
+        }
+    }
+
+    @VisibleForTesting
+    void runHousekeeping(Instant now)
+    {
+        try {
+            int active = 0;
+            int idle = 0;
+            for (KeyedPool pool : pools.values()) {
+                pool.evictIdleConnections(now);
+                pool.detectLeaks(now);
+                active += pool.leases.size();
+                idle += pool.idleCount();
+            }
+            // Remove pools of targets that are not used any more. compute() in getConnection
+            // and this are atomic for the same key, so a removed pool is never acquired again.
+            for (String key : pools.keySet()) {
+                pools.computeIfPresent(key, (k, pool) -> pool.isUnused() ? null : pool);
+            }
+            metrics.gauge(Category.AGENT, "jdbcPoolActiveConnections", Tags.empty(), active);
+            metrics.gauge(Category.AGENT, "jdbcPoolIdleConnections", Tags.empty(), idle);
+        }
+        catch (Throwable t) {
+            logger.error("Uncaught exception during JDBC connection pool housekeeping. Ignoring. Loop will be retried.", t);
+        }
+    }
+
+    @PreDestroy
+    public void close()
+    {
+        synchronized (this) {
+            closed = true;
+            if (housekeeper != null) {
+                housekeeper.shutdownNow();
+            }
+        }
+        for (KeyedPool pool : pools.values()) {
+            pool.closeIdleConnections();
+        }
+    }
+
+    @VisibleForTesting
+    int getPoolCount()
+    {
+        return pools.size();
+    }
+
+    private static void closeQuietly(Connection connection)
+    {
+        try {
+            connection.close();
+        }
+        catch (SQLException ex) {
+            logger.warn("Failed to close a database connection. Ignoring.", ex);
+        }
+    }
+
+    private class KeyedPool
+    {
+        private final String name;  // url without credentials for logging
+        private final Semaphore permits = new Semaphore(maxPerKey, true);
+        private final Deque<IdleConnection> idle = new ArrayDeque<>();  // guarded by this
+        private final Set<Lease> leases = ConcurrentHashMap.newKeySet();
+        private final AtomicInteger users = new AtomicInteger(0);  // acquiring or leased
+
+        KeyedPool(String name)
+        {
+            this.name = name;
+        }
+
+        Connection acquire(String operatorType, AbstractJdbcConnectionConfig connectionConfig)
+        {
+            Tags tags = Tags.of("type", operatorType);
+            long startNanos = System.nanoTime();
+            try {
+                if (!permits.tryAcquire(acquireTimeout.toMillis(), MILLISECONDS)) {
+                    metrics.increment(Category.AGENT, "jdbcPoolAcquireTimeout", tags);
+                    throw new DatabaseException("Failed to connect to the database",
+                            new SQLTransientConnectionException(String.format(
+                                    "Timed out after %d seconds waiting for a pooled connection to %s (max_per_key: %d)",
+                                    acquireTimeout.getSeconds(), name, maxPerKey)));
+                }
+            }
+            catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new DatabaseException("Failed to connect to the database",
+                        new SQLTransientConnectionException("Interrupted while waiting for a pooled connection", ex));
+            }
+            metrics.summary(Category.AGENT, "jdbcPoolAcquireWaitMsec", tags,
+                    (System.nanoTime() - startNanos) / 1_000_000);
+
+            try {
+                Optional<Connection> reused = takeIdleConnection();
+                Connection connection;
+                if (reused.isPresent()) {
+                    connection = reused.get();
+                    metrics.increment(Category.AGENT, "jdbcPoolConnectionReused", tags);
+                }
+                else {
+                    connection = connectionConfig.openConnection();
+                    metrics.increment(Category.AGENT, "jdbcPoolConnectionCreated", tags);
+                }
+                Lease lease = new Lease(connection, connectionConfig.sessionResetStatements(), operatorType);
+                leases.add(lease);
+                return lease.proxy;
+            }
+            catch (RuntimeException ex) {
+                permits.release();
+                throw ex;
+            }
+        }
+
+        private Optional<Connection> takeIdleConnection()
+        {
+            while (true) {
+                IdleConnection entry;
+                synchronized (this) {
+                    entry = idle.pollFirst();  // most recently used one first so that others can expire
+                }
+                if (entry == null) {
+                    return Optional.absent();
+                }
+                if (isUsable(entry)) {
+                    return Optional.of(entry.connection);
+                }
+                closeQuietly(entry.connection);
+            }
+        }
+
+        private boolean isUsable(IdleConnection entry)
+        {
+            if (Duration.between(entry.idleSince, Instant.now()).compareTo(VALIDATION_BYPASS) < 0) {
+                return true;
+            }
+            try {
+                return entry.connection.isValid((int) VALIDATION_TIMEOUT.getSeconds());
+            }
+            catch (SQLException ex) {
+                return false;
+            }
+        }
+
+        void release(Lease lease)
+        {
+            if (!leases.remove(lease)) {
+                return;
+            }
+            try {
+                if (resetSession(lease)) {
+                    synchronized (this) {
+                        idle.addFirst(new IdleConnection(lease.connection, Instant.now()));
+                    }
+                }
+                else {
+                    closeQuietly(lease.connection);
+                    metrics.increment(Category.AGENT, "jdbcPoolConnectionDiscarded", Tags.of("type", lease.operatorType));
+                }
+            }
+            finally {
+                permits.release();
+                // decremented after the connection is added to idle so that isUnused
+                // doesn't see a pool that has neither of them while releasing
+                users.decrementAndGet();
+            }
+        }
+
+        private boolean resetSession(Lease lease)
+        {
+            // A task may leave an open transaction (BEGIN executed as a statement) or
+            // session-level state behind. Those must not leak into the next task.
+            try {
+                if (lease.connection.isClosed()) {
+                    return false;
+                }
+                if (!lease.connection.getAutoCommit()) {
+                    lease.connection.rollback();
+                    lease.connection.setAutoCommit(true);
+                }
+                try (Statement stmt = lease.connection.createStatement()) {
+                    for (String sql : lease.resetStatements) {
+                        stmt.execute(sql);
+                    }
+                }
+                return true;
+            }
+            catch (SQLException ex) {
+                logger.debug("Failed to reset a pooled connection to {}. Discarding it.", name, ex);
+                return false;
+            }
+        }
+
+        synchronized int idleCount()
+        {
+            return idle.size();
+        }
+
+        boolean isUnused()
+        {
+            return users.get() == 0 && idleCount() == 0;
+        }
+
+        void evictIdleConnections(Instant now)
+        {
+            List<Connection> evicted = new ArrayList<>();
+            synchronized (this) {
+                Iterator<IdleConnection> it = idle.descendingIterator();  // least recently used first
+                while (it.hasNext()) {
+                    IdleConnection entry = it.next();
+                    if (Duration.between(entry.idleSince, now).compareTo(idleTimeout) < 0) {
+                        break;
+                    }
+                    it.remove();
+                    evicted.add(entry.connection);
+                }
+            }
+            for (Connection connection : evicted) {
+                closeQuietly(connection);
+                metrics.increment(Category.AGENT, "jdbcPoolConnectionEvicted");
+            }
+        }
+
+        void detectLeaks(Instant now)
+        {
+            if (leakDetectionThreshold.isZero()) {
+                return;
+            }
+            for (Lease lease : leases) {
+                if (Duration.between(lease.acquiredAt, now).compareTo(leakDetectionThreshold) > 0
+                        && lease.leakReported.compareAndSet(false, true)) {
+                    logger.warn("A connection to {} has been used by a {} task for more than {} seconds without being closed. This may be a connection leak.",
+                            name, lease.operatorType, leakDetectionThreshold.getSeconds(), lease.acquiredStack);
+                    metrics.increment(Category.AGENT, "jdbcPoolLeakDetected", Tags.of("type", lease.operatorType));
+                }
+            }
+        }
+
+        void closeIdleConnections()
+        {
+            List<IdleConnection> entries;
+            synchronized (this) {
+                entries = new ArrayList<>(idle);
+                idle.clear();
+            }
+            for (IdleConnection entry : entries) {
+                closeQuietly(entry.connection);
+            }
+        }
+
+        private class Lease
+        {
+            private final Connection connection;
+            private final List<String> resetStatements;
+            private final String operatorType;
+            private final Instant acquiredAt = Instant.now();
+            private final Exception acquiredStack = new Exception("Connection was acquired here");
+            private final AtomicBoolean released = new AtomicBoolean(false);
+            private final AtomicBoolean leakReported = new AtomicBoolean(false);
+            private final Connection proxy;
+
+            Lease(Connection connection, List<String> resetStatements, String operatorType)
+            {
+                this.connection = connection;
+                this.resetStatements = resetStatements;
+                this.operatorType = operatorType;
+                this.proxy = (Connection) Proxy.newProxyInstance(
+                        Connection.class.getClassLoader(),
+                        new Class<?>[] {Connection.class},
+                        (p, method, args) -> {
+                            switch (method.getName()) {
+                            case "close":
+                                if (released.compareAndSet(false, true)) {
+                                    release(this);
+                                }
+                                return null;
+                            case "isClosed":
+                                return released.get() || connection.isClosed();
+                            case "equals":
+                                return p == args[0];
+                            case "hashCode":
+                                return System.identityHashCode(p);
+                            case "toString":
+                                return "Pooled connection to " + name;
+                            default:
+                                if (released.get()) {
+                                    throw new SQLException("Connection is already closed");
+                                }
+                                try {
+                                    return method.invoke(connection, args);
+                                }
+                                catch (InvocationTargetException ex) {
+                                    throw ex.getCause();
+                                }
+                            }
+                        });
+            }
+        }
+    }
+
+    private static class IdleConnection
+    {
+        private final Connection connection;
+        private final Instant idleSince;
+
+        IdleConnection(Connection connection, Instant idleSince)
+        {
+            this.connection = connection;
+            this.idleSince = idleSince;
+        }
+    }
+}
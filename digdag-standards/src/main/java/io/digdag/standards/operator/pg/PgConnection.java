@@ -35,16 +35,42 @@ public class PgConnection
     }
 
     @Override
-    public void executeReadOnlyQuery(String sql, Consumer<JdbcResultSet> resultHandler)
+    public void executeReadOnlyQuery(String sql, int fetchSize, Consumer<JdbcResultSet> resultHandler)
         throws NotReadOnlyException
     {
         try {
-            execute("SET TRANSACTION READ ONLY");
-            try (Statement stmt = connection.createStatement()) {
-                ResultSet rs = stmt.executeQuery(sql);  // executeQuery throws exception if given query includes multiple statements
-                resultHandler.accept(new PgResultSet(rs));
+            if (fetchSize > 0) {
+                // PostgreSQL JDBC driver uses a cursor only when auto-commit is disabled.
+                // Otherwise it reads the whole results into memory regardless of fetch size.
+                connection.setAutoCommit(false);
+                try {
+                    execute("SET TRANSACTION READ ONLY");
+                    try (Statement stmt = connection.createStatement()) {
+                        stmt.setFetchSize(fetchSize);
+                        ResultSet rs = stmt.executeQuery(sql);  // executeQuery throws exception if given query includes multiple statements
+                        resultHandler.accept(new PgResultSet(rs));
+                    }
+                }
+                catch (Throwable ex) {
+                    // don't hide the original exception by a failure of rollback
+                    try {
+                        endReadOnlyTransaction();
+                    }
+                    catch (SQLException rollbackError) {
+                        ex.addSuppressed(rollbackError);
+                    }
+                    throw ex;
+                }
+                endReadOnlyTransaction();
+            }
+            else {
+                execute("SET TRANSACTION READ ONLY");
+                try (Statement stmt = connection.createStatement()) {
+                    ResultSet rs = stmt.executeQuery(sql);  // executeQuery throws exception if given query includes multiple statements
+                    resultHandler.accept(new PgResultSet(rs));
+                }
+                execute("SET TRANSACTION READ WRITE");
             }
-            execute("SET TRANSACTION READ WRITE");
         }
         catch (SQLException ex) {
             if (ex.getSQLState().equals("25006")) {  // 25006 = read_only_sql_transaction error
@@ -56,6 +82,14 @@ public class PgConnection
         }
     }
 
+    private void endReadOnlyTransaction()
+        throws SQLException
+    {
+        // the transaction is read-only. nothing to commit.
+        connection.rollback();
+        connection.setAutoCommit(true);
+    }
+
     @Override
     public String escapeIdent(String ident)
     {
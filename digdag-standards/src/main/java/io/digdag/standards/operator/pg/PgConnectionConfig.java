@@ -2,6 +2,7 @@ package io.digdag.standards.operator.pg;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
 import io.digdag.client.config.Config;
 import io.digdag.spi.SecretProvider;
 import io.digdag.standards.operator.jdbc.AbstractJdbcConnectionConfig;
@@ -9,6 +10,7 @@ import io.digdag.util.DurationParam;
 import org.immutables.value.Value;
 
 import java.time.Duration;
+import java.util.List;
 import java.util.Properties;
 
 @Value.Immutable
@@ -72,6 +74,13 @@ public abstract class PgConnectionConfig
         return props;
     }
 
+    @Override
+    protected List<String> sessionResetStatements()
+    {
+        // DISCARD ALL resets session parameters, prepared statements and temporary tables
+        return ImmutableList.of("ROLLBACK", "DISCARD ALL");
+    }
+
     @Override
     public String toString()
     {
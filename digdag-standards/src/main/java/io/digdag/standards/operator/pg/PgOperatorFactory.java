@@ -7,6 +7,7 @@ import io.digdag.spi.OperatorFactory;
 import io.digdag.spi.SecretProvider;
 import io.digdag.spi.TemplateEngine;
 import io.digdag.standards.operator.jdbc.AbstractJdbcJobOperator;
+import io.digdag.standards.operator.jdbc.JdbcConnectionPool;
 
 
 public class PgOperatorFactory
@@ -15,12 +16,14 @@ public class PgOperatorFactory
     private static final String OPERATOR_TYPE = "pg";
     private final Config systemConfig;
     private final TemplateEngine templateEngine;
+    private final JdbcConnectionPool connectionPool;
 
     @Inject
-    public PgOperatorFactory(Config systemConfig, TemplateEngine templateEngine)
+    public PgOperatorFactory(Config systemConfig, TemplateEngine templateEngine, JdbcConnectionPool connectionPool)
     {
         this.systemConfig = systemConfig;
         this.templateEngine = templateEngine;
+        this.connectionPool = connectionPool;
     }
 
     @Override
@@ -32,15 +35,18 @@ public class PgOperatorFactory
     @Override
     public PgOperator newOperator(OperatorContext context)
     {
-        return new PgOperator(systemConfig, context, templateEngine);
+        return new PgOperator(systemConfig, context, templateEngine, connectionPool);
     }
 
     static class PgOperator
         extends AbstractJdbcJobOperator<PgConnectionConfig>
     {
-        PgOperator(Config systemConfig, OperatorContext context, TemplateEngine templateEngine)
+        private final JdbcConnectionPool connectionPool;
+
+        PgOperator(Config systemConfig, OperatorContext context, TemplateEngine templateEngine, JdbcConnectionPool connectionPool)
         {
             super(systemConfig, context, templateEngine);
+            this.connectionPool = connectionPool;
         }
 
         @Override
@@ -52,7 +58,7 @@ public class PgOperatorFactory
         @Override
         protected PgConnection connect(PgConnectionConfig connectionConfig)
         {
-            return PgConnection.open(connectionConfig);
+            return new PgConnection(connectionPool.getConnection(type(), connectionConfig));
         }
 
         @Override
@@ -18,6 +18,7 @@ import io.digdag.standards.operator.aws.AWSSessionCredentialsFactory;
 import io.digdag.standards.operator.aws.AWSSessionCredentialsFactory.AcceptableUri;
 import io.digdag.standards.operator.jdbc.AbstractJdbcJobOperator;
 import io.digdag.standards.operator.jdbc.DatabaseException;
+import io.digdag.standards.operator.jdbc.JdbcConnectionPool;
 import io.digdag.standards.operator.jdbc.LockConflictException;
 import io.digdag.standards.operator.jdbc.NoTransactionHelper;
 import io.digdag.standards.operator.jdbc.TransactionHelper;
@@ -39,10 +40,13 @@ abstract class BaseRedshiftLoadOperator<T extends RedshiftConnection.StatementCo
 
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
+    private final JdbcConnectionPool connectionPool;
+
     @VisibleForTesting
-    BaseRedshiftLoadOperator(Config systemConfig, OperatorContext context, TemplateEngine templateEngine)
+    BaseRedshiftLoadOperator(Config systemConfig, OperatorContext context, TemplateEngine templateEngine, JdbcConnectionPool connectionPool)
     {
         super(systemConfig, context, templateEngine);
+        this.connectionPool = connectionPool;
     }
 
     /* TODO: This method name should be connectionConfig() or something? */
@@ -56,7 +60,7 @@ abstract class BaseRedshiftLoadOperator<T extends RedshiftConnection.StatementCo
     @Override
     protected RedshiftConnection connect(RedshiftConnectionConfig connectionConfig)
     {
-        return RedshiftConnection.open(connectionConfig);
+        return new RedshiftConnection(connectionPool.getConnection(type(), connectionConfig));
     }
 
     @Override
@@ -2,6 +2,7 @@ package io.digdag.standards.operator.redshift;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
 import io.digdag.client.config.Config;
 import io.digdag.spi.SecretProvider;
 import io.digdag.standards.operator.jdbc.AbstractJdbcConnectionConfig;
@@ -9,6 +10,7 @@ import io.digdag.util.DurationParam;
 import org.immutables.value.Value;
 
 import java.time.Duration;
+import java.util.List;
 import java.util.Properties;
 
 @Value.Immutable
@@ -71,6 +73,13 @@ public abstract class RedshiftConnectionConfig
         return props;
     }
 
+    @Override
+    protected List<String> sessionResetStatements()
+    {
+        // Redshift doesn't support DISCARD. Temporary tables are kept until the connection is closed.
+        return ImmutableList.of("ROLLBACK", "RESET ALL");
+    }
+
     @Override
     public String toString()
     {
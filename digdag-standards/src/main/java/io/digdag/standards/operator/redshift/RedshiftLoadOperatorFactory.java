@@ -20,6 +20,7 @@ import io.digdag.spi.TaskExecutionException;
 import io.digdag.spi.TemplateEngine;
 import io.digdag.standards.operator.aws.AWSSessionCredentialsFactory;
 import io.digdag.standards.operator.aws.AWSSessionCredentialsFactory.AcceptableUri;
+import io.digdag.standards.operator.jdbc.JdbcConnectionPool;
 import io.digdag.util.RetryExecutor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -35,12 +36,14 @@ public class RedshiftLoadOperatorFactory
     private static final String OPERATOR_TYPE = "redshift_load";
     private final TemplateEngine templateEngine;
     private final Config systemConfig;
+    private final JdbcConnectionPool connectionPool;
 
     @Inject
-    public RedshiftLoadOperatorFactory(Config systemConfig, TemplateEngine templateEngine)
+    public RedshiftLoadOperatorFactory(Config systemConfig, TemplateEngine templateEngine, JdbcConnectionPool connectionPool)
     {
         this.systemConfig = systemConfig;
         this.templateEngine = templateEngine;
+        this.connectionPool = connectionPool;
     }
 
     @Override
@@ -52,7 +55,7 @@ public class RedshiftLoadOperatorFactory
     @Override
     public Operator newOperator(OperatorContext context)
     {
-        return new RedshiftLoadOperator(systemConfig, context, templateEngine);
+        return new RedshiftLoadOperator(systemConfig, context, templateEngine, connectionPool);
     }
 
     @VisibleForTesting
@@ -62,9 +65,9 @@ public class RedshiftLoadOperatorFactory
         private final Logger logger = LoggerFactory.getLogger(getClass());
 
         @VisibleForTesting
-        RedshiftLoadOperator(Config systemConfig, OperatorContext context, TemplateEngine templateEngine)
+        RedshiftLoadOperator(Config systemConfig, OperatorContext context, TemplateEngine templateEngine, JdbcConnectionPool connectionPool)
         {
-            super(systemConfig, context, templateEngine);
+            super(systemConfig, context, templateEngine, connectionPool);
         }
 
         @Override
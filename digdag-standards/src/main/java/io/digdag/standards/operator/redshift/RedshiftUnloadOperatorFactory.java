@@ -19,6 +19,7 @@ import io.digdag.spi.SecretProvider;
 import io.digdag.spi.TemplateEngine;
 import io.digdag.standards.operator.aws.AWSSessionCredentialsFactory.AcceptableUri;
 import io.digdag.standards.operator.aws.AWSSessionCredentialsFactory.Mode;
+import io.digdag.standards.operator.jdbc.JdbcConnectionPool;
 
 import io.digdag.util.RetryExecutor;
 import org.slf4j.Logger;
@@ -32,12 +33,14 @@ public class RedshiftUnloadOperatorFactory
     private static final String OPERATOR_TYPE = "redshift_unload";
     private final Config systemConfig;
     private final TemplateEngine templateEngine;
+    private final JdbcConnectionPool connectionPool;
 
     @Inject
-    public RedshiftUnloadOperatorFactory(Config systemConfig, TemplateEngine templateEngine)
+    public RedshiftUnloadOperatorFactory(Config systemConfig, TemplateEngine templateEngine, JdbcConnectionPool connectionPool)
     {
         this.systemConfig = systemConfig;
         this.templateEngine = templateEngine;
+        this.connectionPool = connectionPool;
     }
 
     @Override
@@ -49,7 +52,7 @@ public class RedshiftUnloadOperatorFactory
     @Override
     public Operator newOperator(OperatorContext context)
     {
-        return new RedshiftUnloadOperator(systemConfig, context, templateEngine);
+        return new RedshiftUnloadOperator(systemConfig, context, templateEngine, connectionPool);
     }
 
     @VisibleForTesting
@@ -59,9 +62,9 @@ public class RedshiftUnloadOperatorFactory
         private final Logger logger = LoggerFactory.getLogger(getClass());
 
         @VisibleForTesting
-        RedshiftUnloadOperator(Config systemConfig, OperatorContext context, TemplateEngine templateEngine)
+        RedshiftUnloadOperator(Config systemConfig, OperatorContext context, TemplateEngine templateEngine, JdbcConnectionPool connectionPool)
         {
-            super(systemConfig, context, templateEngine);
+            super(systemConfig, context, templateEngine, connectionPool);
         }
 
         @Override
@@ -0,0 +1,43 @@
+package io.digdag.standards.command;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.digdag.client.config.Config;
+import io.digdag.client.config.ConfigFactory;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class SimpleCommandExecutorTest
+{
+    private final ConfigFactory configFactory = new ConfigFactory(new ObjectMapper());
+
+    @Test
+    public void noCgroupPrefixByDefault()
+    {
+        Config systemConfig = configFactory.create();
+        assertThat(SimpleCommandExecutor.buildCgroupCommandPrefix(systemConfig), is(empty()));
+    }
+
+    @Test
+    public void cgroupPrefixWithLimits()
+    {
+        Config systemConfig = configFactory.create()
+            .set("agent.command_executor.simple.cgroup.memory_max", "2G")
+            .set("agent.command_executor.simple.cgroup.cpu_quota", "200%");
+        assertThat(SimpleCommandExecutor.buildCgroupCommandPrefix(systemConfig),
+                contains("systemd-run", "--user", "--scope", "--quiet", "-p", "MemoryMax=2G", "-p", "CPUQuota=200%", "--"));
+    }
+
+    @Test
+    public void cgroupPrefixWithoutUserScope()
+    {
+        Config systemConfig = configFactory.create()
+            .set("agent.command_executor.simple.cgroup.memory_max", "512M")
+            .set("agent.command_executor.simple.cgroup.user_scope", "false");
+        assertThat(SimpleCommandExecutor.buildCgroupCommandPrefix(systemConfig),
+                contains("systemd-run", "--scope", "--quiet", "-p", "MemoryMax=512M", "--"));
+    }
+}
@@ -0,0 +1,89 @@
+package io.digdag.standards.operator;
+
+import org.eclipse.jetty.client.HttpClient;
+import org.junit.After;
+import org.junit.Test;
+
+import static io.digdag.client.config.ConfigUtils.newConfig;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class HttpClientRegistryTest
+{
+    private final HttpClientRegistry registry = new HttpClientRegistry(newConfig()
+            .set("config.http.max_connections_per_destination", 8)
+            .set("config.http.max_clients", 2));
+
+    @After
+    public void shutdown()
+    {
+        registry.shutdown();
+    }
+
+    @Test
+    public void reuseClientOfSameKey()
+    {
+        HttpClient client;
+        try (HttpClientRegistry.Lease lease = registry.acquire("a", HttpClient::new)) {
+            client = lease.getClient();
+            assertThat(client.isStarted(), is(true));
+            assertThat(client.getMaxConnectionsPerDestination(), is(8));
+        }
+
+        try (HttpClientRegistry.Lease lease = registry.acquire("a", HttpClient::new)) {
+            assertThat(lease.getClient(), is(sameInstance(client)));
+        }
+        try (HttpClientRegistry.Lease lease = registry.acquire("b", HttpClient::new)) {
+            assertThat(lease.getClient(), is(not(sameInstance(client))));
+        }
+    }
+
+    @Test
+    public void stopLeastRecentlyUsedClientOverLimit()
+    {
+        HttpClient a;
+        HttpClient b;
+        try (HttpClientRegistry.Lease lease = registry.acquire("a", HttpClient::new)) {
+            a = lease.getClient();
+        }
+        try (HttpClientRegistry.Lease lease = registry.acquire("b", HttpClient::new)) {
+            b = lease.getClient();
+        }
+        // use a again so that b becomes the least recently used
+        registry.acquire("a", HttpClient::new).close();
+
+        registry.acquire("c", HttpClient::new).close();
+        assertThat(registry.getClientCount(), is(2));
+        assertThat(a.isStarted(), is(true));
+        assertThat(b.isStopped(), is(true));
+    }
+
+    @Test
+    public void removedClientIsStoppedAfterRelease()
+    {
+        HttpClientRegistry.Lease lease = registry.acquire("a", HttpClient::new);
+        HttpClient a = lease.getClient();
+
+        registry.acquire("b", HttpClient::new).close();
+        registry.acquire("c", HttpClient::new).close();
+        assertThat(registry.getClientCount(), is(2));
+
+        // a is removed from the registry but still used by a task
+        assertThat(a.isStarted(), is(true));
+        lease.close();
+        assertThat(a.isStopped(), is(true));
+    }
+
+    @Test
+    public void stopClientsOnShutdown()
+    {
+        HttpClient client;
+        try (HttpClientRegistry.Lease lease = registry.acquire("a", HttpClient::new)) {
+            client = lease.getClient();
+        }
+        registry.shutdown();
+        assertThat(client.isStopped(), is(true));
+    }
+}
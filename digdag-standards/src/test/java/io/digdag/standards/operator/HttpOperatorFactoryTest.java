@@ -4,12 +4,14 @@ import com.github.tomakehurst.wiremock.junit.WireMockRule;
 import io.digdag.client.config.Config;
 import io.digdag.spi.Operator;
 import io.digdag.spi.TaskExecutionException;
+import io.digdag.spi.TaskResult;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 
 import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
@@ -19,6 +21,9 @@ import static io.digdag.client.config.ConfigUtils.newConfig;
 import static io.digdag.core.workflow.OperatorTestingUtils.newContext;
 import static io.digdag.core.workflow.OperatorTestingUtils.newOperatorFactory;
 import static io.digdag.core.workflow.OperatorTestingUtils.newTaskRequest;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
 import static org.junit.Assert.fail;
 
 public class HttpOperatorFactoryTest
@@ -81,4 +86,66 @@ public class HttpOperatorFactoryTest
 			fail("should be success.");
 		}
 	}
+
+	@Test
+	public void storeContentToFile() throws IOException {
+		String body = "{\"items\":[{\"id\":1},{\"id\":2}],\"next\":{\"cursor\":\"abc\"}}";
+		stubFor(get("/api/foobar")
+				.willReturn(aResponse()
+						.withStatus(200)
+						.withBody(body)));
+
+		config.set("store_content_to", "out/foobar.json");
+		config.getNestedOrSetEmpty("extract_content")
+				.set("cursor", "/next/cursor")
+				.set("second", "/items/1")
+				.set("missing", "/nothing");
+
+		Operator op = factory.newOperator(newContext(
+				tempPath,
+				newTaskRequest().withConfig(config)));
+		TaskResult result = op.run();
+
+		assertThat(new String(Files.readAllBytes(tempPath.resolve("out/foobar.json")), UTF_8), is(body));
+
+		Config http = result.getStoreParams().getNested("http");
+		assertThat(http.get("last_status", int.class), is(200));
+		assertThat(http.get("last_content_file", String.class), is("out/foobar.json"));
+		assertThat(http.get("last_content_size", long.class), is((long) body.length()));
+
+		Config extracted = http.getNested("last_extracted");
+		assertThat(extracted.get("cursor", String.class), is("abc"));
+		assertThat(extracted.getNested("second").get("id", int.class), is(2));
+		assertThat(extracted.has("missing"), is(true));
+	}
+
+	@Test
+	public void extractNestedAndOverlappingPointers() throws IOException {
+		String body = "{\"a\":{\"b\":[10,{\"c\":\"x\"}],\"d/e\":true},\"f\":null}";
+		stubFor(get("/api/foobar")
+				.willReturn(aResponse()
+						.withStatus(200)
+						.withBody(body)));
+
+		config.getNestedOrSetEmpty("extract_content")
+				.set("a", "/a")
+				.set("c", "/a/b/1/c")
+				.set("first", "/a/b/0")
+				.set("escaped", "/a/d~1e")
+				.set("null", "/f")
+				.set("missing", "/a/b/2");
+
+		Operator op = factory.newOperator(newContext(
+				tempPath,
+				newTaskRequest().withConfig(config)));
+		TaskResult result = op.run();
+
+		Config extracted = result.getStoreParams().getNested("http").getNested("last_extracted");
+		assertThat(extracted.getNested("a").has("b"), is(true));
+		assertThat(extracted.get("c", String.class), is("x"));
+		assertThat(extracted.get("first", int.class), is(10));
+		assertThat(extracted.get("escaped", boolean.class), is(true));
+		assertThat(extracted.has("null"), is(true));
+		assertThat(extracted.has("missing"), is(true));
+	}
 }
@@ -4,6 +4,7 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.io.ByteStreams;
 import io.digdag.client.DigdagClient;
 import io.digdag.client.config.Config;
 import io.digdag.client.config.ConfigException;
@@ -22,17 +23,22 @@ import org.mockito.Mockito;
 import org.mockito.runners.MockitoJUnitRunner;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.Duration;
 import java.util.Map;
 import java.util.UUID;
 import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.notNullValue;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyObject;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
@@ -45,6 +51,7 @@ import static org.mockito.Mockito.when;
 public class AbstractJdbcJobOperatorTest
 {
     private final JdbcOpTestHelper testHelper = new JdbcOpTestHelper();
+    private Path projectPath;
 
     @Value.Immutable
     public abstract static class TestConnectionConfig
@@ -100,18 +107,14 @@ public class AbstractJdbcJobOperatorTest
             throws IOException
     {
         final TaskRequest taskRequest = testHelper.createTaskRequest(configInput, lastState);
+        projectPath = testHelper.projectPath();
         TemplateEngine templateEngine = testHelper.injector().getInstance(TemplateEngine.class);
         return Mockito.spy(new TestJobOperator(systemConfig.or(new ConfigFactory(DigdagClient.objectMapper()).create()),
                 new OperatorContext() {
             @Override
             public Path getProjectPath()
             {
-                try {
-                    return testHelper.projectPath();
-                }
-                catch (IOException ex) {
-                    throw new RuntimeException(ex);
-                }
+                return projectPath;
             }
 
             @Override
@@ -142,6 +145,12 @@ public class AbstractJdbcJobOperatorTest
 
     private TaskResult runTaskReadOnly(Optional<Config> systemConfig, Map<String, Object> configInput, String sql)
             throws IOException, NotReadOnlyException
+    {
+        return runTaskReadOnly(systemConfig, configInput, sql, 0);
+    }
+
+    private TaskResult runTaskReadOnly(Optional<Config> systemConfig, Map<String, Object> configInput, String sql, int expectedFetchSize)
+            throws IOException, NotReadOnlyException
     {
         TestJobOperator operator = getJdbcOperator(systemConfig, configInput, Optional.absent());
 
@@ -158,18 +167,18 @@ public class AbstractJdbcJobOperatorTest
                     .thenReturn(ImmutableList.of(12345, "bar", 0.12f))
                     .thenReturn(null);
 
-            invocationOnMock.getArgumentAt(1, Consumer.class).accept(jdbcResultSet);
+            invocationOnMock.getArgumentAt(2, Consumer.class).accept(jdbcResultSet);
 
             return null;
         }).
-        when(connection).executeReadOnlyQuery(anyString(), any(Consumer.class));
+        when(connection).executeReadOnlyQuery(anyString(), anyInt(), any(Consumer.class));
 
         when(operator.connect(any(TestConnectionConfig.class))).thenReturn(connection);
 
         TaskResult taskResult = operator.runTask();
         verify(operator).connect(any(TestConnectionConfig.class));
         verify(connection).validateStatement(eq(sql));
-        verify(connection).executeReadOnlyQuery(eq(sql), anyObject());
+        verify(connection).executeReadOnlyQuery(eq(sql), eq(expectedFetchSize), anyObject());
 
         return taskResult;
     }
@@ -216,6 +225,81 @@ public class AbstractJdbcJobOperatorTest
         );
 
         runTaskReadOnly(configInput, sql);
+
+        assertThat(new String(Files.readAllBytes(projectPath.resolve("result.csv")), UTF_8),
+                is("int,str,float\r\n42,foo,3.14\r\n12345,bar,0.12\r\n"));
+    }
+
+    @Test
+    public void selectAndDownloadCompressedFile()
+            throws IOException, NotReadOnlyException
+    {
+        String sql = "SELECT * FROM users";
+        Map<String, Object> configInput = ImmutableMap.<String, Object>builder()
+                .put("host", "foobar.com")
+                .put("user", "testuser")
+                .put("database", "testdb")
+                .put("download_file", "result.csv.gz")
+                .put("file_compression", "gzip")
+                .put("query", sql)
+                .build();
+
+        runTaskReadOnly(configInput, sql);
+
+        assertThat(readGzipFile(projectPath.resolve("result.csv.gz")),
+                is("int,str,float\r\n42,foo,3.14\r\n12345,bar,0.12\r\n"));
+    }
+
+    @Test
+    public void downloadFileIsNotCompressedByName()
+            throws IOException, NotReadOnlyException
+    {
+        String sql = "SELECT * FROM users";
+        Map<String, Object> configInput = ImmutableMap.of(
+                "host", "foobar.com",
+                "user", "testuser",
+                "database", "testdb",
+                "download_file", "result.csv.gz",
+                "query", sql
+        );
+
+        runTaskReadOnly(configInput, sql);
+
+        assertThat(new String(Files.readAllBytes(projectPath.resolve("result.csv.gz")), UTF_8),
+                is("int,str,float\r\n42,foo,3.14\r\n12345,bar,0.12\r\n"));
+    }
+
+    @Test
+    public void selectWithFetchSize()
+            throws IOException, NotReadOnlyException
+    {
+        String sql = "SELECT * FROM users";
+        Map<String, Object> configInput = ImmutableMap.<String, Object>builder()
+                .put("host", "foobar.com")
+                .put("user", "testuser")
+                .put("database", "testdb")
+                .put("download_file", "result.csv")
+                .put("fetch_size", 1000)
+                .put("query", sql)
+                .build();
+
+        runTaskReadOnly(Optional.absent(), configInput, sql, 1000);
+    }
+
+    @Test(expected = ConfigException.class)
+    public void unknownFileCompression()
+            throws IOException, NotReadOnlyException
+    {
+        String sql = "SELECT * FROM users";
+        Map<String, Object> configInput = ImmutableMap.of(
+                "host", "foobar.com",
+                "user", "testuser",
+                "database", "testdb",
+                "download_file", "result.csv.bz2",
+                "file_compression", "bzip2",
+                "query", sql
+        );
+        getJdbcOperator(configInput, Optional.absent()).runTask();
     }
 
     @Test
@@ -359,6 +443,57 @@ public class AbstractJdbcJobOperatorTest
         runTaskReadOnly(Optional.of(systemConfig), configInput, sql);
     }
 
+    @Test
+    public void selectAndStoreAllResultsSpilledToFile()
+            throws IOException, NotReadOnlyException
+    {
+        String sql = "SELECT * FROM users";
+        Map<String, Object> configInput = ImmutableMap.<String, Object>builder()
+                .put("host", "foobar.com")
+                .put("user", "testuser")
+                .put("database", "testdb")
+                .put("store_last_results", "all")
+                .put("last_results_file", "results.csv.gz")
+                .put("file_compression", "gzip")
+                .put("query", sql)
+                .build();
+        Config systemConfig = new ConfigFactory(DigdagClient.objectMapper()).create();
+        systemConfig.set("config.jdbc.max_store_last_results_rows", 1);
+
+        TaskResult taskResult = runTaskReadOnly(Optional.of(systemConfig), configInput, sql);
+        Config stored = taskResult.getStoreParams().getNestedOrGetEmpty("testop");
+
+        assertThat(stored.get("last_results", JsonNode.class).size(), is(0));
+        assertThat(stored.get("last_results_file", String.class), is("results.csv.gz"));
+        assertThat(stored.get("last_results_rows", long.class), is(2L));
+        assertThat(readGzipFile(projectPath.resolve("results.csv.gz")),
+                is("int,str,float\r\n42,foo,3.14\r\n12345,bar,0.12\r\n"));
+    }
+
+    private static String readGzipFile(Path path)
+            throws IOException
+    {
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(path))) {
+            return new String(ByteStreams.toByteArray(in), UTF_8);
+        }
+    }
+
+    @Test(expected = ConfigException.class)
+    public void lastResultsFileRequiresStoreAllResults()
+            throws IOException, NotReadOnlyException
+    {
+        String sql = "SELECT * FROM users";
+        Map<String, Object> configInput = ImmutableMap.of(
+                "host", "foobar.com",
+                "user", "testuser",
+                "database", "testdb",
+                "store_last_results", "first",
+                "last_results_file", "results.csv",
+                "query", sql
+        );
+        getJdbcOperator(configInput, Optional.absent()).runTask();
+    }
+
     @Test(expected = ConfigException.class)
     public void selectAndStoreLastResultsWithConflictOption()
             throws IOException, NotReadOnlyException
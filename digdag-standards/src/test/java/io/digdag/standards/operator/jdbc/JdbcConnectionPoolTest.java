@@ -0,0 +1,251 @@
+package io.digdag.standards.operator.jdbc;
+
+import com.google.common.base.Optional;
+import io.digdag.util.DurationParam;
+import org.junit.After;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import static io.digdag.client.config.ConfigUtils.newConfig;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class JdbcConnectionPoolTest
+{
+    private JdbcConnectionPool pool;
+
+    @After
+    public void tearDown()
+    {
+        if (pool != null) {
+            pool.close();
+        }
+    }
+
+    @Test
+    public void disabledByDefault()
+            throws Exception
+    {
+        pool = new JdbcConnectionPool(newConfig());
+        TestConnectionConfig config = new TestConnectionConfig("secret");
+
+        Connection conn = pool.getConnection("pg", config);
+        assertThat(conn, is(sameInstance(config.opened.get(0))));
+        conn.close();
+
+        pool.getConnection("pg", config).close();
+        assertThat(config.opened.size(), is(2));
+        verify(config.opened.get(0)).close();
+    }
+
+    @Test
+    public void reuseConnection()
+            throws Exception
+    {
+        pool = new JdbcConnectionPool(newConfig().set("config.jdbc.pool.enabled", true));
+        TestConnectionConfig config = new TestConnectionConfig("secret");
+
+        pool.getConnection("pg", config).close();
+        pool.getConnection("pg", config).close();
+
+        assertThat(config.opened.size(), is(1));
+        Connection physical = config.opened.get(0);
+        verify(physical.createStatement(), times(2)).execute("ROLLBACK");
+        verify(physical, never()).close();
+    }
+
+    @Test
+    public void enabledPerOperator()
+            throws Exception
+    {
+        pool = new JdbcConnectionPool(newConfig().set("config.redshift.pool.enabled", true));
+        assertThat(pool.isEnabled("redshift"), is(true));
+        assertThat(pool.isEnabled("pg"), is(false));
+    }
+
+    @Test
+    public void connectionsAreNotSharedAcrossCredentials()
+            throws Exception
+    {
+        pool = new JdbcConnectionPool(newConfig().set("config.jdbc.pool.enabled", true));
+        TestConnectionConfig config1 = new TestConnectionConfig("secret1");
+        TestConnectionConfig config2 = new TestConnectionConfig("secret2");
+
+        pool.getConnection("pg", config1).close();
+        pool.getConnection("pg", config2).close();
+
+        assertThat(config1.opened.size(), is(1));
+        assertThat(config2.opened.size(), is(1));
+    }
+
+    @Test
+    public void closedConnectionIsNotUsable()
+            throws Exception
+    {
+        pool = new JdbcConnectionPool(newConfig().set("config.jdbc.pool.enabled", true));
+        TestConnectionConfig config = new TestConnectionConfig("secret");
+
+        Connection conn = pool.getConnection("pg", config);
+        conn.close();
+        conn.close();  // closing twice is allowed
+        assertThat(conn.isClosed(), is(true));
+        try {
+            conn.createStatement();
+            fail();
+        }
+        catch (SQLException ex) {
+        }
+    }
+
+    @Test
+    public void discardConnectionIfResetFails()
+            throws Exception
+    {
+        pool = new JdbcConnectionPool(newConfig().set("config.jdbc.pool.enabled", true));
+        TestConnectionConfig config = new TestConnectionConfig("secret");
+
+        Connection conn = pool.getConnection("pg", config);
+        Connection physical = config.opened.get(0);
+        when(physical.createStatement().execute(anyString())).thenThrow(new SQLException("broken"));
+        conn.close();
+        verify(physical).close();
+
+        Connection next = pool.getConnection("pg", config);
+        assertThat(config.opened.size(), is(2));
+        assertThat(next, is(not(sameInstance(conn))));
+    }
+
+    @Test
+    public void waitForAvailableConnection()
+            throws Exception
+    {
+        pool = new JdbcConnectionPool(newConfig()
+                .set("config.jdbc.pool.enabled", true)
+                .set("config.jdbc.pool.max_per_key", 1)
+                .set("config.jdbc.pool.acquire_timeout", "1s"));
+        TestConnectionConfig config = new TestConnectionConfig("secret");
+
+        Connection conn = pool.getConnection("pg", config);
+        try {
+            pool.getConnection("pg", config);
+            fail();
+        }
+        catch (DatabaseException ex) {
+        }
+        conn.close();
+
+        pool.getConnection("pg", config).close();
+        assertThat(config.opened.size(), is(1));
+    }
+
+    @Test
+    public void removeUnusedPool()
+            throws Exception
+    {
+        pool = new JdbcConnectionPool(newConfig().set("config.jdbc.pool.enabled", true));
+        TestConnectionConfig config = new TestConnectionConfig("secret");
+
+        Connection conn = pool.getConnection("pg", config);
+        pool.runHousekeeping(Instant.now().plus(Duration.ofHours(1)));
+        assertThat(pool.getPoolCount(), is(1));
+
+        conn.close();
+        pool.runHousekeeping(Instant.now());
+        assertThat(pool.getPoolCount(), is(1));
+
+        // the idle connection is evicted after idle_timeout and then the pool is removed
+        pool.runHousekeeping(Instant.now().plus(Duration.ofHours(1)));
+        assertThat(pool.getPoolCount(), is(0));
+        verify(config.opened.get(0)).close();
+
+        pool.getConnection("pg", config).close();
+        assertThat(config.opened.size(), is(2));
+        assertThat(pool.getPoolCount(), is(1));
+    }
+
+    private static class TestConnectionConfig
+            extends AbstractJdbcConnectionConfig
+    {
+        private final String password;
+        private final List<Connection> opened = new ArrayList<>();
+
+        TestConnectionConfig(String password)
+        {
+            this.password = password;
+        }
+
+        @Override
+        public Connection openConnection()
+        {
+            try {
+                Connection conn = mock(Connection.class);
+                Statement stmt = mock(Statement.class);
+                when(conn.createStatement()).thenReturn(stmt);
+                when(conn.getAutoCommit()).thenReturn(true);
+                when(conn.isValid(anyInt())).thenReturn(true);
+                opened.add(conn);
+                return conn;
+            }
+            catch (SQLException ex) {
+                throw new AssertionError(ex);
+            }
+        }
+
+        @Override
+        public String host() { return "localhost"; }
+
+        @Override
+        public int port() { return 5432; }
+
+        @Override
+        public boolean ssl() { return false; }
+
+        @Override
+        public String user() { return "digdag"; }
+
+        @Override
+        public Optional<String> password() { return Optional.of(password); }
+
+        @Override
+        public String database() { return "digdag_test"; }
+
+        @Override
+        public DurationParam connectTimeout() { return DurationParam.of(Duration.ofSeconds(30)); }
+
+        @Override
+        public DurationParam socketTimeout() { return DurationParam.of(Duration.ofSeconds(1800)); }
+
+        @Override
+        public String jdbcProtocolName() { return "postgresql"; }
+
+        @Override
+        public String jdbcDriverName() { return "org.postgresql.Driver"; }
+
+        @Override
+        public Properties buildProperties()
+        {
+            Properties props = new Properties();
+            props.setProperty("user", user());
+            props.setProperty("password", password);
+            return props;
+        }
+    }
+}
@@ -19,10 +19,13 @@ import java.util.UUID;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 
+import static org.hamcrest.Matchers.arrayContaining;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.sameInstance;
 import static org.junit.Assert.*;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.verify;
@@ -74,6 +77,28 @@ public class PgConnectionTest
         assertThat(rs.get(), is(notNullValue()));
     }
 
+    @Test
+    public void keepOriginalExceptionIfRollbackFails()
+            throws IOException, NotReadOnlyException, SQLException
+    {
+        SQLException rollbackError = new SQLException("connection is broken");
+        doThrow(rollbackError).when(connection).rollback();
+        IllegalStateException error = new IllegalStateException("failed to handle results");
+
+        try {
+            pgConnection.executeReadOnlyQuery(SQL, 100, (rs) -> {
+                throw error;
+            });
+            fail();
+        }
+        catch (IllegalStateException ex) {
+            assertThat(ex, is(sameInstance(error)));
+            assertThat(ex.getSuppressed(), is(arrayContaining((Throwable) rollbackError)));
+        }
+        verify(statement).setFetchSize(100);
+        verify(connection).rollback();
+    }
+
     @Test
     public void buildInsertStatement()
             throws IOException, NotReadOnlyException, SQLException
@@ -5,6 +5,8 @@ import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableMap;
 import io.digdag.spi.OperatorContext;
 import io.digdag.spi.TaskRequest;
+import io.digdag.spi.TemplateEngine;
+import io.digdag.standards.operator.jdbc.JdbcConnectionPool;
 import io.digdag.standards.operator.jdbc.JdbcOpTestHelper;
 import org.junit.Before;
 import org.junit.Rule;
@@ -16,11 +18,13 @@ import java.sql.Connection;
 import java.util.Map;
 import java.util.UUID;
 
+import static io.digdag.client.config.ConfigUtils.newConfig;
 import static io.digdag.core.workflow.OperatorTestingUtils.newOperatorFactory;
 import static org.hamcrest.core.Is.is;
 import static org.hamcrest.core.IsInstanceOf.instanceOf;
 import static org.junit.Assert.*;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class RedshiftUnloadOperatorFactoryTest
@@ -88,6 +92,30 @@ public class RedshiftUnloadOperatorFactoryTest
         assertThat(operator, is(instanceOf(RedshiftUnloadOperatorFactory.RedshiftUnloadOperator.class)));
     }
 
+    @Test
+    public void connectThroughConnectionPool()
+            throws IOException
+    {
+        JdbcConnectionPool connectionPool = mock(JdbcConnectionPool.class);
+        Connection connection = mock(Connection.class);
+        RedshiftConnectionConfig connectionConfig = mock(RedshiftConnectionConfig.class);
+        when(connectionPool.getConnection("redshift_unload", connectionConfig)).thenReturn(connection);
+
+        Map<String, Object> configInput = ImmutableMap.of(
+                "query", "select * from users",
+                "to", "s3://my-bucket/my-path"
+        );
+        TaskRequest taskRequest = testHelper.createTaskRequest(configInput, Optional.absent());
+        OperatorContext operatorContext = mock(OperatorContext.class);
+        when(operatorContext.getProjectPath()).thenReturn(testHelper.projectPath());
+        when(operatorContext.getTaskRequest()).thenReturn(taskRequest);
+        RedshiftUnloadOperatorFactory.RedshiftUnloadOperator operator = new RedshiftUnloadOperatorFactory.RedshiftUnloadOperator(
+                newConfig(), operatorContext, mock(TemplateEngine.class), connectionPool);
+
+        operator.connect(connectionConfig);
+        verify(connectionPool).getConnection("redshift_unload", connectionConfig);
+    }
+
     @Test
     public void createUnloadConfigWithSimpleOption()
             throws IOException